@@ -1,10 +1,13 @@
 package com.content_generation_service.client;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
@@ -13,8 +16,13 @@ import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.dto.OpenAiChatMessage;
 import com.content_generation_service.dto.OpenAiChatRequest;
 import com.content_generation_service.dto.OpenAiChatResponse;
+import com.content_generation_service.dto.OpenAiChatStreamChunk;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
@@ -22,25 +30,31 @@ import java.io.IOException;
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @Slf4j
 public class OpenAiLlmClient {
 
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SERVER_SENT_EVENT_TYPE = new ParameterizedTypeReference<>() {};
+    private static final String STREAM_DONE_MARKER = "[DONE]";
+
     private final WebClient webClient;
     private final AppProperties appProperties;
+    private final ObjectMapper objectMapper;
     
     // Injected Config Values for Timeout and Retry
     private final long timeoutSeconds;
     private final int maxRetryAttempts;
     private final long minBackoffSeconds;
 
-    public OpenAiLlmClient(WebClient.Builder webClientBuilder, AppProperties appProperties,
+    public OpenAiLlmClient(ProviderHttpClientFactory httpClientFactory, AppProperties appProperties, ObjectMapper objectMapper,
             @Value("${app.openai.llm.timeout-seconds}") long timeoutSeconds,
             @Value("${app.openai.llm.retry.max-attempts}") int maxRetryAttempts,
             @Value("${app.openai.llm.retry.min-backoff-seconds}") long minBackoffSeconds) {
         this.appProperties = appProperties;
-        this.webClient = webClientBuilder
+        this.objectMapper = objectMapper;
+        this.webClient = httpClientFactory.builderFor(Providers.OPENAI_LLM)
             .baseUrl(appProperties.getOpenai().getLlm().getUrl())
             .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
             .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + appProperties.getOpenai().getApiKey())
@@ -72,17 +86,7 @@ public class OpenAiLlmClient {
             .retrieve()
             .onStatus(
                 status -> status.is4xxClientError() || status.is5xxServerError(),
-                clientResponse -> clientResponse.bodyToMono(String.class)
-                    .flatMap(errorBody -> {
-                        log.error("Error response from OpenAI: {} {}", clientResponse.statusCode(), errorBody);
-                        return Mono.error(WebClientResponseException.create(
-                            clientResponse.statusCode().value(),
-                            "API call failed",
-                            null,
-                            errorBody.getBytes(),
-                            null
-                        ));
-                    })
+                this::toApiError
             )
             .bodyToMono(OpenAiChatResponse.class)
             .timeout(Duration.ofSeconds(this.timeoutSeconds))
@@ -97,6 +101,82 @@ public class OpenAiLlmClient {
             .onErrorMap(e -> !(e instanceof OpenAiApiException), e -> new OpenAiApiException("An unexpected error occurred while calling OpenAI API.", e));
     }
 
+    /**
+     * Calls the OpenAI Chat Completions API in streaming mode.
+     * The returned Flux emits the content deltas as they arrive, so callers can start
+     * processing the answer before the model has finished generating it.
+     * Transient failures are only retried while nothing has been emitted yet, since
+     * a retry after the first delta would replay content the caller already consumed.
+     *
+     * @param prompt The user prompt to send to the LLM.
+     * @return A Flux of content fragments, in order.
+     */
+    public Flux<String> stream(String prompt) {
+        log.info("Streaming OpenAI API response with model: {}", appProperties.getOpenai().getLlm().getModel());
+
+        var openAiRequest = new OpenAiChatRequest(
+            appProperties.getOpenai().getLlm().getModel(),
+            List.of(new OpenAiChatMessage("user", prompt)),
+            true
+        );
+
+        return Flux.defer(() -> {
+            AtomicBoolean emittedContent = new AtomicBoolean(false);
+            return webClient.post()
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(openAiRequest)
+                .retrieve()
+                .onStatus(
+                    status -> status.is4xxClientError() || status.is5xxServerError(),
+                    this::toApiError
+                )
+                .bodyToFlux(SERVER_SENT_EVENT_TYPE)
+                .map(event -> event.data() == null ? "" : event.data())
+                .takeWhile(data -> !STREAM_DONE_MARKER.equals(data))
+                .map(this::extractDeltaContent)
+                .filter(content -> !content.isEmpty())
+                .doOnNext(content -> emittedContent.set(true))
+                // Applies to the first delta and to every gap between deltas
+                .timeout(Duration.ofSeconds(this.timeoutSeconds))
+                .retryWhen(Retry.backoff(this.maxRetryAttempts, Duration.ofSeconds(this.minBackoffSeconds))
+                    .filter(e -> !emittedContent.get() && isTransientError(e))
+                    .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) ->
+                        new OpenAiApiException("OpenAI streaming call failed after " + retrySignal.totalRetries() + " retries.", retrySignal.failure())
+                    )
+                );
+        })
+        .doOnError(e -> log.error("Unexpected error during OpenAI streaming API call", e))
+        .onErrorMap(e -> !(e instanceof OpenAiApiException), e -> new OpenAiApiException("An unexpected error occurred while streaming from OpenAI API.", e));
+    }
+
+    private Mono<? extends Throwable> toApiError(ClientResponse clientResponse) {
+        return clientResponse.bodyToMono(String.class)
+            .defaultIfEmpty("")
+            .flatMap(errorBody -> {
+                log.error("Error response from OpenAI: {} {}", clientResponse.statusCode(), errorBody);
+                return Mono.error(WebClientResponseException.create(
+                    clientResponse.statusCode().value(),
+                    "API call failed",
+                    null,
+                    errorBody.getBytes(),
+                    null
+                ));
+            });
+    }
+
+    private String extractDeltaContent(String eventData) {
+        try {
+            OpenAiChatStreamChunk chunk = objectMapper.readValue(eventData, OpenAiChatStreamChunk.class);
+            if (chunk.choices() == null || chunk.choices().isEmpty() || chunk.choices().get(0).delta() == null) {
+                return "";
+            }
+            String content = chunk.choices().get(0).delta().content();
+            return content == null ? "" : content;
+        } catch (JsonProcessingException e) {
+            throw new OpenAiApiException("Received a malformed streaming chunk from OpenAI: " + eventData, e);
+        }
+    }
+
     /**
      * Determines if an error is transient and should be retried.
      * Retries on network issues, timeouts, rate limiting (429), and server errors (5xx).
@@ -0,0 +1,19 @@
+package com.content_generation_service.client;
+
+/**
+ * Names of the external providers this service calls. They are the keys of 'app.rate-limits'
+ * and 'app.http-pools', and name the shared limiter and connection pool of each provider.
+ */
+public final class Providers {
+
+    public static final String OPENAI_LLM = "openai-llm";
+    public static final String OPENAI_TTS = "openai-tts";
+    public static final String OPENAI_TRANSCRIPTION = "openai-transcription";
+    public static final String SPEECHIFY = "speechify";
+    public static final String GOOGLE_CSE = "google-cse";
+    // Downloads of search results from arbitrary hosts; pooled but not rate limited
+    public static final String IMAGE_DOWNLOAD = "image-download";
+
+    private Providers() {
+    }
+}
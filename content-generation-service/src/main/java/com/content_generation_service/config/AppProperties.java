@@ -1,7 +1,13 @@
 package com.content_generation_service.config;
 
+import com.shortscreator.shared.client.http.HttpPoolProperties;
+import com.shortscreator.shared.client.ratelimit.RateLimitProperties;
 import lombok.Data;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -55,12 +61,53 @@ public class AppProperties {
     public static class Transcription {
         @NotEmpty
         private String provider; // e.g., "openai"
+        private Batching batching = new Batching();
+    }
+
+    @Data
+    public static class Batching {
+        // Transcribe all the segments of a job in one API call instead of one call per segment
+        private boolean enabled = false;
+        // Silence inserted between segments so words are not merged across boundaries
+        private double gapSeconds = 1.0;
+        // Bitrate of the compact (mono Opus) upload
+        private String bitrate = "24k";
     }
     
     @Data
     public static class Tts {
         private Elevenlabs elevenlabs = new Elevenlabs();
         private Speechify speechify = new Speechify();
+        private Chunking chunking = new Chunking();
+        private Resilience resilience = new Resilience();
+    }
+
+    @Data
+    public static class Resilience {
+        // Hedging: a call still running after the provider's observed p95 latency gets one duplicate
+        private boolean hedgingEnabled = true;
+        // Hedges may never exceed this fraction of the calls made to a provider
+        private double maxHedgeRatio = 0.1;
+        // Latency samples kept per provider, and the minimum needed before hedging starts
+        private int latencyWindow = 200;
+        private int minLatencySamples = 20;
+        // Never hedge earlier than this, even if the provider is usually faster
+        private long minHedgeDelayMillis = 2000;
+        // Circuit breaker: opens when this fraction of the last calls failed...
+        private double failureRateThreshold = 0.5;
+        private int breakerWindow = 20;
+        // ...but only once at least this many calls were observed
+        private int breakerMinimumCalls = 10;
+        // How long an open circuit fails fast before letting a probe call through
+        private long openSeconds = 30;
+    }
+
+    @Data
+    public static class Chunking {
+        // Texts longer than this are split at sentence boundaries and synthesized in parallel
+        private int maxChars = 1000;
+        // Maximum number of chunks of a single text being synthesized at the same time
+        private int maxConcurrency = 4;
     }
     @Data
     public static class Elevenlabs {
@@ -86,6 +133,8 @@ public class AppProperties {
     public static class Queues {
         @NotEmpty
         private String generationRequests;
+        @NotEmpty
+        private String renderChunks; // e.g., "q.render.chunks"
     }
 
     @Data
@@ -96,6 +145,10 @@ public class AppProperties {
         private String generationRequestPrefix; // e.g., "request.generate."
         @NotEmpty
         private String contentStatus; // e.g., "content.status"
+        @NotEmpty
+        private String generationCancel; // e.g., "generation.cancel"
+        @NotEmpty
+        private String renderChunk; // e.g., "render.chunk"
     }
 
     @Valid
@@ -124,6 +177,8 @@ public class AppProperties {
         private String images; // e.g., "assets/images/"
         @NotEmpty
         private String fonts; // e.g., "assets/fonts/"
+        @NotEmpty
+        private String music; // e.g., "assets/audio/music/"
     }
 
     private Google google = new Google();
@@ -134,6 +189,189 @@ public class AppProperties {
         private String apiKey;
         @NotEmpty
         private String cseId;
+        // Downloads are streamed to disk and aborted as soon as they exceed this size
+        private int maxImageSizeMb = 10;
+    }
+
+    private RenderDedup renderDedup = new RenderDedup();
+
+    @Data
+    public static class RenderDedup {
+        // Reuse the stored video of an identical earlier request instead of rendering again
+        private boolean enabled = true;
+        // Part of every fingerprint: bump it when a rendering change must invalidate earlier outputs
+        private String pipelineVersion = "2";
+    }
+
+    private ArtifactCache artifactCache = new ArtifactCache();
+
+    @Data
+    public static class ArtifactCache {
+        // Keep per-stage artifacts so a resubmitted draft only regenerates the stages whose inputs changed
+        private boolean enabled = true;
+        // Artifacts of a content are deleted after this long without a generation of that content
+        private long ttlHours = 72;
+    }
+
+    private JobLeases jobLeases = new JobLeases();
+
+    @Data
+    public static class JobLeases {
+        // Take a lease on the shared temp storage per running job, so a redelivered request is not rendered twice
+        private boolean enabled = true;
+        // How often the node holding a lease refreshes it
+        private long heartbeatSeconds = 10;
+        // A lease not refreshed for this long belongs to a dead node and can be taken over
+        private long staleAfterSeconds = 45;
+    }
+
+    private Checkpoints checkpoints = new Checkpoints();
+
+    @Data
+    public static class Checkpoints {
+        // Save the outputs of expensive stages so a job interrupted by the loss of its node resumes where it stopped
+        private boolean enabled = true;
+        // Checkpoints of jobs that were never resumed are deleted after this long
+        private long ttlHours = 24;
+        // How often the checkpoints older than the TTL are looked for and deleted
+        private Duration sweepInterval = Duration.ofHours(1);
     }
 
-}
\ No newline at end of file
+    private ResultSpool resultSpool = new ResultSpool();
+
+    @Data
+    public static class ResultSpool {
+        // Local directory holding rendered videos and results whose upload or dispatch failed; must survive restarts
+        @NotEmpty
+        private String path;
+        // Backoff between retries, doubling from the base up to the max
+        private long retryBaseSeconds = 15;
+        private long retryMaxSeconds = 900;
+        // A spooled result still failing after this long is given up on and reported as failed
+        private long maxAgeHours = 24;
+    }
+
+    private Drain drain = new Drain();
+
+    @Data
+    public static class Drain {
+        // On shutdown, running jobs get this long to finish before they are aborted and requeued
+        private long timeoutSeconds = 90;
+        // Time left to aborted jobs to requeue their request and release their lease
+        private long abortGraceSeconds = 15;
+    }
+
+    private Warmup warmup = new Warmup();
+
+    @Data
+    public static class Warmup {
+        // Render a tiny synthetic video at startup, before the node reports ready
+        private boolean enabled = true;
+        // Abort the startup when the warm-up fails (e.g. ffmpeg missing), instead of starting cold
+        private boolean failOnError = false;
+    }
+
+    private FontIndex fontIndex = new FontIndex();
+
+    @Data
+    public static class FontIndex {
+        // Give each render a directory holding only its subtitle font family, instead of the whole fonts asset directory
+        private boolean enabled = true;
+        // Local disk directory holding the per-family font directories, rebuilt at startup
+        private String dir;
+    }
+
+    private Music music = new Music();
+
+    @Data
+    public static class Music {
+        // Local disk directory holding the music assets decoded to loopable PCM, reused across restarts
+        private String dir;
+        // Gain of the music under the narration, before the ducking while the narration speaks
+        private double volume = 0.25;
+    }
+
+    private Preview preview = new Preview();
+
+    @Data
+    public static class Preview {
+        // Publish HLS fragments of whole (non-distributed) renders while they encode, so the video can be watched early
+        private boolean enabled = false;
+        // Target fragment length; keyframes are forced on the fragment boundaries
+        private double segmentSeconds = 2.0;
+        // How often the fragments written so far are checked and published
+        private long pollMillis = 1000;
+    }
+
+    private DerivedOutputs derivedOutputs = new DerivedOutputs();
+
+    @Data
+    public static class DerivedOutputs {
+        // Heights of the extra renditions encoded from the same decode as the final video, e.g. 720 for mobile; empty for none
+        private List<Integer> renditionHeights = new ArrayList<>(List.of(720));
+        // Time of the poster frame in the video; negative for no poster
+        private double posterAtSeconds = 1.0;
+        private int posterHeight = 960;
+        // Length of the silent, low frame rate preview clip from the start of the video; 0 for no clip
+        private double previewClipSeconds = 3.0;
+        private double previewClipFps = 8.0;
+        private int previewClipHeight = 480;
+    }
+
+    private Subtitles subtitles = new Subtitles();
+
+    @Data
+    public static class Subtitles {
+        // 'word': one event per word. 'phrase': one event per few words, highlighted word by word with karaoke tags
+        private String grouping = "word";
+        // A phrase ends after this many words, at the end of a sentence, or at a pause
+        private int phraseMaxWords = 4;
+        private double phraseMaxGapSeconds = 0.5;
+        // 'ass': burned by libass inside FFmpeg. 'raster': drawn in Java at each caption change and overlaid as images
+        private String renderer = "ass";
+        // Caption images drawn at once by the 'raster' renderer
+        private int rasterParallelism = 4;
+    }
+
+    private Backlog backlog = new Backlog();
+
+    @Data
+    public static class Backlog {
+        // Generation requests this node works on at the same time (consumers of the request queue)
+        private int renderSlots = 1;
+        // How often the depths of the queues are read from the broker
+        private long refreshSeconds = 10;
+        // Wall time of a job of each template until some were observed, keyed by templateId
+        private Map<String, Double> templateCostSeconds = new HashMap<>();
+        // Cost of the templates without an estimate
+        private double defaultJobSeconds = 120;
+    }
+
+    private DistributedRender distributedRender = new DistributedRender();
+
+    @Data
+    public static class DistributedRender {
+        // Coordinator mode: long videos are cut into chunks rendered by the render workers of every node
+        private boolean enabled = false;
+        // Whether this node renders chunks for the coordinators, and how many at a time
+        private boolean workerEnabled = true;
+        private int workerConcurrency = 1;
+        // Shorter videos are rendered whole, on the node running the job
+        private int minDurationSeconds = 60;
+        // Target length of a chunk, and the most chunks a single video is cut into
+        private int chunkSeconds = 20;
+        private int maxChunks = 16;
+        // A chunk no worker has started within this long is rendered by the coordinator itself
+        private long queueTimeoutSeconds = 60;
+        // A started chunk not done within this long is reassigned: its worker is presumed dead or hung
+        private long chunkTimeoutSeconds = 300;
+        // Attempts on the workers before the coordinator renders the chunk itself
+        private int maxAttempts = 3;
+    }
+
+    // Outbound limits per external provider, keyed by provider name (e.g. "openai-llm")
+    private Map<String, RateLimitProperties> rateLimits = new HashMap<>();
+
+    // Outbound connection pools per external provider, keyed by the same provider names as the rate limits
+    private Map<String, HttpPoolProperties> httpPools = new HashMap<>();
+}
@@ -1,18 +1,26 @@
 package com.content_generation_service.config;
 
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.config.ContainerCustomizer;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.content_generation_service.generation.job.GenerationIntake;
+import com.content_generation_service.generation.service.visual.distributed.ChunkRenderWorker;
+
 import lombok.RequiredArgsConstructor;
 
+import java.time.Duration;
+
 @Configuration
 @RequiredArgsConstructor
 public class RabbitMQConfig {
@@ -43,6 +51,25 @@ public class RabbitMQConfig {
         return rabbitTemplate;
     }
 
+    /**
+     * Keeps the channels of the listener containers open while the node drains on shutdown,
+     * so that the requests of aborted jobs can still be rejected back to their queue.
+     * Generation requests and render chunks are prefetched one at a time, so that queued work goes to
+     * whichever node is idle and stays visible in the depth of its queue.
+     */
+    @Bean
+    public ContainerCustomizer<SimpleMessageListenerContainer> drainAwareContainerCustomizer() {
+        AppProperties.Drain drain = appProperties.getDrain();
+        long shutdownTimeout = Duration.ofSeconds(drain.getTimeoutSeconds() + drain.getAbortGraceSeconds() + 5).toMillis();
+        return container -> {
+            container.setShutdownTimeout(shutdownTimeout);
+            String listenerId = container.getListenerId();
+            if (GenerationIntake.GENERATION_REQUESTS_LISTENER_ID.equals(listenerId) || ChunkRenderWorker.LISTENER_ID.equals(listenerId)) {
+                container.setPrefetchCount(1);
+            }
+        };
+    }
+
     @Bean
     public TopicExchange contentExchange() {
         // 2. Use the getter from the properties class
@@ -63,4 +90,40 @@ public class RabbitMQConfig {
                              .to(contentExchange)
                              .with(generationRequestPrefix + "#");
     }
-}
\ No newline at end of file
+
+    /**
+     * Each node gets its own exclusive, auto-deleted queue, so that every node receives every
+     * cancellation and can stop the job if it is the one running it.
+     */
+    @Bean
+    public Queue generationCancelQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding generationCancelBinding(Queue generationCancelQueue, TopicExchange contentExchange) {
+        return BindingBuilder.bind(generationCancelQueue)
+                             .to(contentExchange)
+                             .with(appProperties.getRabbitmq().getRoutingKeys().getGenerationCancel());
+    }
+
+    @Bean
+    public Queue renderChunkQueue() {
+        return new Queue(appProperties.getRabbitmq().getQueues().getRenderChunks(), true);
+    }
+
+    @Bean
+    public Binding renderChunkBinding(Queue renderChunkQueue, TopicExchange contentExchange) {
+        return BindingBuilder.bind(renderChunkQueue)
+                             .to(contentExchange)
+                             .with(appProperties.getRabbitmq().getRoutingKeys().getRenderChunk());
+    }
+
+    /**
+     * Replies of the render workers to the chunks published by this node, sent straight to this queue.
+     */
+    @Bean
+    public Queue chunkRenderReplyQueue() {
+        return new AnonymousQueue();
+    }
+}
@@ -0,0 +1,12 @@
+package com.content_generation_service.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled housekeeping tasks, such as the expiry of cached stage artifacts.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,12 +1,19 @@
 package com.content_generation_service.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
 public record OpenAiChatRequest(
     String model,
-    List<OpenAiChatMessage> messages
+    List<OpenAiChatMessage> messages,
     //Double temperature,
     //@JsonProperty("max_completion_tokens")
     //Integer maxTokens
-) {}
\ No newline at end of file
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Boolean stream
+) {
+    public OpenAiChatRequest(String model, List<OpenAiChatMessage> messages) {
+        this(model, messages, null);
+    }
+}
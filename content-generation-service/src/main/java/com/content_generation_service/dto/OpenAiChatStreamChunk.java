@@ -0,0 +1,20 @@
+package com.content_generation_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+
+// A single server-sent event of a streamed Chat Completions response
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record OpenAiChatStreamChunk(
+    List<Choice> choices
+) {
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Choice(
+        Delta delta
+    ) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Delta(
+        String content
+    ) {}
+}
@@ -0,0 +1,56 @@
+package com.content_generation_service.generation.job;
+
+import com.content_generation_service.config.AppProperties;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Drains the node on shutdown (SIGTERM), before the message listeners are stopped.
+ * <p>
+ * The node first refuses traffic, which stops the consumption of generation requests (see
+ * {@link GenerationIntake}). Running jobs then get 'app.drain.timeout-seconds' to finish; jobs still
+ * running after that are aborted, which makes their listener reject the request back to the queue. Every stage they completed is checkpointed, so the node picking the
+ * request up resumes from there.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GenerationDrain {
+
+    private final JobRegistry jobRegistry;
+    private final GenerationIntake generationIntake;
+    private final AppProperties appProperties;
+
+    // ContextClosedEvent is published before any lifecycle bean (including the listener containers) is stopped
+    @EventListener(ContextClosedEvent.class)
+    public void drain() {
+        jobRegistry.startDraining();
+        generationIntake.setAccepting(false);
+        if (jobRegistry.runningCount() == 0) {
+            return;
+        }
+
+        AppProperties.Drain drain = appProperties.getDrain();
+        log.info("Draining {} running generation job(s) before shutdown (up to {}s)", jobRegistry.runningCount(), drain.getTimeoutSeconds());
+        try {
+            if (jobRegistry.awaitIdle(Duration.ofSeconds(drain.getTimeoutSeconds()))) {
+                log.info("All generation jobs finished, shutting down");
+                return;
+            }
+            log.warn("Aborting {} generation job(s) still running; their requests are requeued and resume from their checkpoints",
+                jobRegistry.runningCount());
+            jobRegistry.abortAll();
+            if (!jobRegistry.awaitIdle(Duration.ofSeconds(drain.getAbortGraceSeconds()))) {
+                log.warn("{} generation job(s) did not stop in time", jobRegistry.runningCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
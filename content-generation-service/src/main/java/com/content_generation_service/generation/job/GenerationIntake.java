@@ -0,0 +1,98 @@
+package com.content_generation_service.generation.job;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.visual.distributed.ChunkRenderWorker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Ties the consumption of generation requests (and of chunk render tasks) to the readiness state of the node.
+ * <p>
+ * Their listeners do not start with the context: they start once the node is ready, that is after
+ * the startup warm-up, so a node never takes work before it can render it.
+ * <p>
+ * A node refusing traffic (scale-in, drain on shutdown) stops taking new requests, while its running
+ * jobs carry on; once {@link JobRegistry#runningCount()} is back to zero it can be removed without
+ * losing work. Accepting traffic again resumes consumption, unless the node is shutting down.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GenerationIntake {
+
+    // Id of the @RabbitListener consuming generation requests
+    public static final String GENERATION_REQUESTS_LISTENER_ID = "generationRequests";
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final JobRegistry jobRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ApplicationAvailability availability;
+    private final AppProperties appProperties;
+
+    public boolean isAccepting() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(GENERATION_REQUESTS_LISTENER_ID);
+        return availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC && container != null && container.isRunning();
+    }
+
+    /**
+     * Changes the readiness state of the node; the consumption of requests follows it.
+     */
+    public void setAccepting(boolean accepting) {
+        AvailabilityChangeEvent.publish(eventPublisher, this, accepting ? ReadinessState.ACCEPTING_TRAFFIC : ReadinessState.REFUSING_TRAFFIC);
+    }
+
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.REFUSING_TRAFFIC) {
+            stopConsuming();
+        } else {
+            startConsuming();
+        }
+    }
+
+    private void stopConsuming() {
+        List<MessageListenerContainer> running = containers().stream().filter(MessageListenerContainer::isRunning).toList();
+        if (running.isEmpty()) {
+            return;
+        }
+        log.info("Refusing traffic: no longer taking generation requests ({} job(s) running)", jobRegistry.runningCount());
+        // Stopping cancels the consumers right away but blocks until the in-flight messages are handled,
+        // so it runs aside while the jobs carry on
+        Thread stopper = new Thread(() -> running.forEach(MessageListenerContainer::stop), "generation-requests-stop");
+        stopper.setDaemon(true);
+        stopper.start();
+    }
+
+    private void startConsuming() {
+        if (jobRegistry.isDraining()) {
+            return;
+        }
+        List<MessageListenerContainer> stopped = containers().stream().filter(container -> !container.isRunning()).toList();
+        if (stopped.isEmpty()) {
+            return;
+        }
+        log.info("Accepting traffic: taking generation requests");
+        stopped.forEach(MessageListenerContainer::start);
+    }
+
+    private List<MessageListenerContainer> containers() {
+        List<String> listenerIds = new ArrayList<>(List.of(GENERATION_REQUESTS_LISTENER_ID));
+        if (appProperties.getDistributedRender().isWorkerEnabled()) {
+            listenerIds.add(ChunkRenderWorker.LISTENER_ID);
+        }
+        return listenerIds.stream().map(listenerRegistry::getListenerContainer).filter(Objects::nonNull).toList();
+    }
+}
@@ -0,0 +1,196 @@
+package com.content_generation_service.generation.job;
+
+import com.content_generation_service.config.AppProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-node leases on generation jobs, kept as files under 'leases/' on the shared temp storage.
+ * <p>
+ * A lease file is created atomically by the node starting the job, holds that node's id, and is
+ * refreshed (its modification time) on every heartbeat. A lease whose modification time did not change
+ * for 'app.job-leases.stale-after-seconds' belongs to a node that died and can be taken over. The
+ * modification times are only compared with each other, never with the clock of this node.
+ */
+@Slf4j
+@Component
+public class GenerationLeaseStore {
+
+    private static final String LEASE_DIR = "leases";
+
+    private final AppProperties appProperties;
+    private final Path leaseDir;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    // First look at the leases other nodes hold on jobs this node was asked to run
+    private final Map<String, Sighting> contended = new ConcurrentHashMap<>();
+
+    public GenerationLeaseStore(AppProperties appProperties,
+            @Value("${app.storage.shared-temp.base-path}") String sharedTempBasePath) {
+        this.appProperties = appProperties;
+        this.leaseDir = Paths.get(sharedTempBasePath).resolve(LEASE_DIR);
+    }
+
+    /**
+     * Tries to take the lease of a job, without waiting. The heartbeats of a lease held by another node
+     * are only compared with each other: a first look records its modification time, and a later
+     * attempt, typically the requeued request, tells from it whether the holder is alive.
+     * Failures of the storage itself are logged and grant the lease, so they never block generations.
+     *
+     * @return {@link Acquisition#ACQUIRED} if the lease was taken, {@link Acquisition#RUN_ELSEWHERE} if the job
+     *         is being (or was just) run by another node, {@link Acquisition#UNDECIDED} if the request must be
+     *         tried again later to find out.
+     */
+    public Acquisition acquire(String contentId) {
+        if (!appProperties.getJobLeases().isEnabled()) {
+            return Acquisition.ACQUIRED;
+        }
+        Path lease = leaseFile(contentId);
+        try {
+            Files.createDirectories(leaseDir);
+            while (true) {
+                try {
+                    Files.writeString(lease, nodeId, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    contended.remove(contentId);
+                    held.add(contentId);
+                    return Acquisition.ACQUIRED;
+                } catch (FileAlreadyExistsException e) {
+                    // Held by another node (or a dead one); look at its heartbeats below
+                }
+
+                FileTime lastHeartbeat;
+                try {
+                    lastHeartbeat = Files.getLastModifiedTime(lease);
+                } catch (NoSuchFileException e) {
+                    if (contended.remove(contentId) != null) {
+                        log.info("Lease of contentId: {} was released by the node that ran it", contentId);
+                        return Acquisition.RUN_ELSEWHERE;
+                    }
+                    continue;
+                }
+
+                Sighting first = contended.putIfAbsent(contentId, new Sighting(lastHeartbeat, System.nanoTime()));
+                if (first == null) {
+                    // Come back once the holder had the time to prove it is alive
+                    return Acquisition.UNDECIDED;
+                }
+                if (!lastHeartbeat.equals(first.heartbeat())) {
+                    contended.remove(contentId);
+                    log.info("ContentId: {} is being generated by another node (lease held by {})", contentId, readOwner(lease));
+                    return Acquisition.RUN_ELSEWHERE;
+                }
+                if (Duration.ofNanos(System.nanoTime() - first.seenAtNanos()).compareTo(staleAfter()) < 0) {
+                    return Acquisition.UNDECIDED;
+                }
+                contended.remove(contentId);
+                takeOver(contentId, lease);
+            }
+        } catch (IOException e) {
+            log.warn("Could not take the lease of contentId: {}, proceeding without it: {}", contentId, e.getMessage());
+            return Acquisition.ACQUIRED;
+        }
+    }
+
+    /**
+     * Releases a lease held by this node. A lease that was taken over in the meantime is left alone.
+     */
+    public void release(String contentId) {
+        if (!held.remove(contentId)) {
+            return;
+        }
+        Path lease = leaseFile(contentId);
+        try {
+            if (nodeId.equals(readOwner(lease))) {
+                Files.deleteIfExists(lease);
+            }
+        } catch (IOException e) {
+            log.warn("Could not release the lease of contentId: {}: {}", contentId, e.getMessage());
+        }
+    }
+
+    /**
+     * Refreshes the leases held by this node.
+     */
+    @Scheduled(fixedDelayString = "${app.job-leases.heartbeat-seconds:10}", timeUnit = TimeUnit.SECONDS)
+    public void heartbeat() {
+        // A request that was not tried again, e.g. because another node took it, needs no decision anymore
+        contended.values().removeIf(sighting -> Duration.ofNanos(System.nanoTime() - sighting.seenAtNanos()).compareTo(staleAfter().multipliedBy(2)) > 0);
+        for (String contentId : held) {
+            Path lease = leaseFile(contentId);
+            try {
+                if (!nodeId.equals(readOwner(lease))) {
+                    log.warn("Lost the lease of contentId: {}, another node may be generating it too", contentId);
+                    held.remove(contentId);
+                    continue;
+                }
+                Files.setLastModifiedTime(lease, FileTime.from(Instant.now()));
+            } catch (IOException e) {
+                log.warn("Could not refresh the lease of contentId: {}: {}", contentId, e.getMessage());
+            }
+        }
+    }
+
+    private void takeOver(String contentId, Path lease) throws IOException {
+        // Moving the stale lease aside is atomic, so only one of several waiting nodes removes it
+        Path stale = lease.resolveSibling(lease.getFileName() + "." + UUID.randomUUID() + ".stale");
+        try {
+            Files.move(lease, stale, StandardCopyOption.ATOMIC_MOVE);
+            log.warn("Taking over the stale lease of contentId: {} from node {}", contentId, readOwner(stale));
+            Files.deleteIfExists(stale);
+        } catch (NoSuchFileException e) {
+            // Another node moved it first; the next attempt to create the lease decides who runs the job
+        }
+    }
+
+    private String readOwner(Path lease) throws IOException {
+        try {
+            return Files.readString(lease, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Duration staleAfter() {
+        return Duration.ofSeconds(appProperties.getJobLeases().getStaleAfterSeconds());
+    }
+
+    /**
+     * Outcome of {@link #acquire(String)}.
+     */
+    public enum Acquisition {
+        ACQUIRED,
+        RUN_ELSEWHERE,
+        UNDECIDED
+    }
+
+    private record Sighting(FileTime heartbeat, long seenAtNanos) {}
+
+    private Path leaseFile(String contentId) {
+        Path lease = leaseDir.resolve(contentId + ".lease").normalize();
+        if (!lease.getParent().equals(leaseDir.normalize())) {
+            throw new IllegalArgumentException("Invalid contentId for a job lease: " + contentId);
+        }
+        return lease;
+    }
+}
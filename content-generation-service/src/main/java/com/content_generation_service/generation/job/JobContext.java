@@ -0,0 +1,162 @@
+package com.content_generation_service.generation.job;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The in-flight state of one generation job on this node, used to stop it when the user cancels
+ * or when the node shuts down before the job could finish.
+ * <p>
+ * Reactive work observes {@link #onStop()}. Blocking stages run with the context bound to their
+ * thread (see {@link #bind()}), so that external processes started there can be registered with
+ * {@link #track(Process)} and have their whole process tree destroyed on cancellation.
+ */
+@Slf4j
+public class JobContext {
+
+    private static final ThreadLocal<JobContext> CURRENT = new ThreadLocal<>();
+
+    private final String contentId;
+    private final AtomicReference<StopReason> stopReason = new AtomicReference<>();
+    private final Sinks.Empty<Void> stopSignal = Sinks.empty();
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+
+    public JobContext(String contentId) {
+        this.contentId = contentId;
+    }
+
+    public String getContentId() {
+        return contentId;
+    }
+
+    /**
+     * @return A Mono completing as soon as the job is cancelled or aborted.
+     */
+    public Mono<Void> onStop() {
+        return stopSignal.asMono();
+    }
+
+    public boolean isStopped() {
+        return stopReason.get() != null;
+    }
+
+    public boolean isCancelled() {
+        return stopReason.get() == StopReason.CANCELLED;
+    }
+
+    public void throwIfStopped() {
+        if (isStopped()) {
+            throw stoppedException();
+        }
+    }
+
+    /**
+     * @return The exception a stopped job ends with: {@link JobCancelledException} or {@link JobAbortedException}.
+     */
+    public RuntimeException stoppedException() {
+        return stopReason.get() == StopReason.SHUTDOWN ? new JobAbortedException(contentId) : new JobCancelledException(contentId);
+    }
+
+    /**
+     * Cancels the job on behalf of the user: signals the reactive chains and destroys every tracked process tree.
+     * Idempotent, and a no-op once the job is stopped.
+     */
+    public void cancel() {
+        stop(StopReason.CANCELLED);
+    }
+
+    /**
+     * Stops the job because this node is shutting down, so that its request can be requeued and resumed elsewhere.
+     */
+    public void abort() {
+        stop(StopReason.SHUTDOWN);
+    }
+
+    private void stop(StopReason reason) {
+        if (!stopReason.compareAndSet(null, reason)) {
+            return;
+        }
+        log.info("Stopping generation job for contentId: {} ({}, {} running process(es))", contentId, reason, processes.size());
+        stopSignal.tryEmitEmpty();
+        processes.forEach(JobContext::destroyTree);
+    }
+
+    /**
+     * Binds this context to the current thread until the returned scope is closed.
+     */
+    public Scope bind() {
+        JobContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        };
+    }
+
+    /**
+     * @return The job bound to the current thread, if any.
+     */
+    public static Optional<JobContext> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Registers a process started on the current thread with the job bound to it, if any, so that
+     * cancelling the job destroys it. Close the returned scope once the process has exited.
+     * Without a bound job this is a no-op.
+     */
+    public static Scope track(Process process) {
+        JobContext job = CURRENT.get();
+        if (job == null) {
+            return () -> {};
+        }
+        job.processes.add(process);
+        // The job may have been stopped just before the process was registered
+        if (job.isStopped()) {
+            destroyTree(process);
+        }
+        return () -> job.processes.remove(process);
+    }
+
+    private static void destroyTree(Process process) {
+        // FFmpeg may spawn helpers; kill the children first so nothing is left orphaned
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * A binding or registration that is undone on close.
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private enum StopReason { CANCELLED, SHUTDOWN }
+
+    /**
+     * Thrown when a job stops because it was cancelled. It is not a failure and must not be reported as one.
+     */
+    public static class JobCancelledException extends RuntimeException {
+        public JobCancelledException(String contentId) {
+            super("Generation was cancelled for contentId: " + contentId);
+        }
+    }
+
+    /**
+     * Thrown when a job stops because the node is shutting down. Its request must be requeued, not failed,
+     * so that another node resumes it from its checkpoints.
+     */
+    public static class JobAbortedException extends RuntimeException {
+        public JobAbortedException(String contentId) {
+            super("Generation was interrupted by a shutdown for contentId: " + contentId);
+        }
+    }
+}
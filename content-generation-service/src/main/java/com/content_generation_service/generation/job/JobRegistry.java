@@ -0,0 +1,164 @@
+package com.content_generation_service.generation.job;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the generation jobs running on this node, keyed by contentId.
+ * <p>
+ * A job runs at most once at a time: a second start for the same content, typically a redelivered
+ * request, is rejected whether the job runs on this node or, through {@link GenerationLeaseStore},
+ * on another one.
+ * <p>
+ * Cancellations are broadcast to every node. A cancellation for a job that is not running here is
+ * remembered for a while, so the job is skipped if its request is only picked up afterwards.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JobRegistry {
+
+    private static final Duration PENDING_CANCELLATION_TTL = Duration.ofHours(1);
+
+    private final Map<String, JobContext> running = new ConcurrentHashMap<>();
+    private final Map<String, Instant> pendingCancellations = new ConcurrentHashMap<>();
+    private final GenerationLeaseStore leaseStore;
+    private volatile boolean draining = false;
+
+    /**
+     * Checks whether a request was cancelled while it was still queued, and forgets the cancellation.
+     *
+     * @param publishedAt When the request was published, or null if unknown. A cancellation older than
+     *                    the request belongs to an earlier submission of the same content and is ignored.
+     * @return true if the request must be skipped.
+     */
+    public boolean consumePendingCancellation(String contentId, Instant publishedAt) {
+        Instant cancelledAt = pendingCancellations.remove(contentId);
+        return cancelledAt != null && (publishedAt == null || !cancelledAt.isBefore(publishedAt));
+    }
+
+    /**
+     * Registers a job that is about to start and takes its cross-node lease.
+     *
+     * @throws DuplicateJobException if the same content is already being generated, here or on another node.
+     * @throws LeaseContendedException if another node holds the lease and it is not known yet whether that node is alive.
+     * @throws JobContext.JobAbortedException if the node is shutting down.
+     */
+    public JobContext start(String contentId) {
+        if (draining) {
+            throw new JobContext.JobAbortedException(contentId);
+        }
+        JobContext job = new JobContext(contentId);
+        if (running.putIfAbsent(contentId, job) != null) {
+            throw new DuplicateJobException(contentId, "on this node");
+        }
+        switch (leaseStore.acquire(contentId)) {
+            case ACQUIRED -> {
+                return job;
+            }
+            case RUN_ELSEWHERE -> {
+                running.remove(contentId, job);
+                throw new DuplicateJobException(contentId, "on another node");
+            }
+            default -> {
+                running.remove(contentId, job);
+                throw new LeaseContendedException(contentId);
+            }
+        }
+    }
+
+    /**
+     * Removes a finished (or failed, or cancelled) job from the registry and releases its lease.
+     */
+    public void finish(JobContext job) {
+        if (running.remove(job.getContentId(), job)) {
+            leaseStore.release(job.getContentId());
+        }
+    }
+
+    public Optional<JobContext> get(String contentId) {
+        return Optional.ofNullable(running.get(contentId));
+    }
+
+    public int runningCount() {
+        return running.size();
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Stops accepting jobs: any later {@link #start(String)} is aborted so that its request is requeued.
+     */
+    public void startDraining() {
+        draining = true;
+    }
+
+    /**
+     * Waits until no job runs on this node anymore.
+     *
+     * @return true if the node became idle within the timeout.
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        Instant deadline = Instant.now().plus(timeout);
+        while (!running.isEmpty()) {
+            if (Instant.now().isAfter(deadline)) {
+                return false;
+            }
+            Thread.sleep(250);
+        }
+        return true;
+    }
+
+    /**
+     * Aborts every running job, so that their requests are requeued and resumed by another node.
+     */
+    public void abortAll() {
+        running.values().forEach(JobContext::abort);
+    }
+
+    /**
+     * Cancels the job of the given content if it runs on this node, otherwise remembers the cancellation.
+     *
+     * @return true if a running job was cancelled.
+     */
+    public boolean cancel(String contentId) {
+        JobContext job = running.get(contentId);
+        if (job != null) {
+            job.cancel();
+            return true;
+        }
+        Instant now = Instant.now();
+        pendingCancellations.values().removeIf(cancelledAt -> cancelledAt.isBefore(now.minus(PENDING_CANCELLATION_TTL)));
+        pendingCancellations.put(contentId, now);
+        return false;
+    }
+
+    /**
+     * Thrown when a job is started while the same content is already being generated.
+     * The request is a duplicate and must be dropped without reporting a result.
+     */
+    public static class DuplicateJobException extends RuntimeException {
+        public DuplicateJobException(String contentId, String where) {
+            super("ContentId: " + contentId + " is already being generated " + where);
+        }
+    }
+
+    /**
+     * Thrown when a job is started while another node holds its lease, before that node was seen alive or dead.
+     * The request must be requeued: trying it again, one heartbeat later or more, settles it.
+     */
+    public static class LeaseContendedException extends RuntimeException {
+        public LeaseContendedException(String contentId) {
+            super("The lease of contentId: " + contentId + " is held by another node that was not seen heartbeating yet");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.content_generation_service.generation.job;
+
+import com.content_generation_service.config.AppProperties;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The amount of work waiting for the render nodes, as a scaling signal that leads CPU usage.
+ * <p>
+ * Exposed as gauges and through the 'renderbacklog' actuator endpoint: the messages ready in each queue,
+ * the render seconds they represent (see {@link RenderCostEstimator}), and the jobs and free render slots
+ * of this node. Queue depths are read from the broker every 'app.backlog.refresh-seconds'.
+ */
+@Slf4j
+@Component
+public class RenderBacklog {
+
+    private final AppProperties appProperties;
+    private final AmqpAdmin amqpAdmin;
+    private final JobRegistry jobRegistry;
+    private final GenerationIntake generationIntake;
+    private final RenderCostEstimator costEstimator;
+
+    private volatile Map<String, Long> queueDepths = Map.of();
+
+    public RenderBacklog(AppProperties appProperties, AmqpAdmin amqpAdmin, JobRegistry jobRegistry,
+            GenerationIntake generationIntake, RenderCostEstimator costEstimator, MeterRegistry meterRegistry) {
+        this.appProperties = appProperties;
+        this.amqpAdmin = amqpAdmin;
+        this.jobRegistry = jobRegistry;
+        this.generationIntake = generationIntake;
+        this.costEstimator = costEstimator;
+
+        for (String queue : queues()) {
+            Gauge.builder("cgs.queue.depth", this, backlog -> backlog.queueDepths.getOrDefault(queue, 0L))
+                .tag("queue", queue)
+                .description("Messages ready in the queue")
+                .register(meterRegistry);
+        }
+        Gauge.builder("cgs.backlog.render.seconds", this, backlog -> backlog.snapshot().backlogRenderSeconds())
+            .description("Estimated render seconds of the queued generation requests")
+            .register(meterRegistry);
+        Gauge.builder("cgs.jobs.in.flight", jobRegistry, JobRegistry::runningCount)
+            .description("Generation jobs running on this node")
+            .register(meterRegistry);
+        Gauge.builder("cgs.render.slots.free", this, backlog -> backlog.snapshot().freeRenderSlots())
+            .description("Generation jobs this node can still take")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.backlog.refresh-seconds:10}", timeUnit = TimeUnit.SECONDS)
+    public void refreshQueueDepths() {
+        Map<String, Long> depths = new LinkedHashMap<>();
+        for (String queue : queues()) {
+            try {
+                QueueInformation info = amqpAdmin.getQueueInfo(queue);
+                depths.put(queue, info == null ? 0L : info.getMessageCount());
+            } catch (RuntimeException e) {
+                // Keep the last known depth while the broker cannot be reached
+                log.debug("Could not read the depth of queue {}: {}", queue, e.getMessage());
+                depths.put(queue, queueDepths.getOrDefault(queue, 0L));
+            }
+        }
+        queueDepths = depths;
+    }
+
+    public Snapshot snapshot() {
+        Map<String, Long> depths = queueDepths;
+        String requestQueue = appProperties.getRabbitmq().getQueues().getGenerationRequests();
+        double expectedJobSeconds = costEstimator.expectedJobSeconds();
+        int renderSlots = appProperties.getBacklog().getRenderSlots();
+        int inFlight = jobRegistry.runningCount();
+        boolean accepting = generationIntake.isAccepting();
+        return new Snapshot(depths, expectedJobSeconds, depths.getOrDefault(requestQueue, 0L) * expectedJobSeconds,
+            inFlight, renderSlots, accepting ? Math.max(0, renderSlots - inFlight) : 0, accepting);
+    }
+
+    private List<String> queues() {
+        AppProperties.Queues queues = appProperties.getRabbitmq().getQueues();
+        return List.of(queues.getGenerationRequests(), queues.getRenderChunks());
+    }
+
+    /**
+     * @param queueDepth Messages ready (not yet delivered to a consumer) per queue.
+     * @param freeRenderSlots Jobs this node can still take; none while it refuses traffic.
+     */
+    public record Snapshot(
+        Map<String, Long> queueDepth,
+        double expectedJobSeconds,
+        double backlogRenderSeconds,
+        int inFlightJobs,
+        int renderSlots,
+        int freeRenderSlots,
+        boolean accepting
+    ) {}
+}
@@ -0,0 +1,31 @@
+package com.content_generation_service.generation.job;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint for the autoscaler: GET reads the backlog, POST {"accepting": false} takes the node
+ * out of rotation before scaling it in (it is safe to remove once no job is in flight anymore).
+ */
+@Component
+@Endpoint(id = "renderbacklog")
+@RequiredArgsConstructor
+public class RenderBacklogEndpoint {
+
+    private final RenderBacklog renderBacklog;
+    private final GenerationIntake generationIntake;
+
+    @ReadOperation
+    public RenderBacklog.Snapshot backlog() {
+        return renderBacklog.snapshot();
+    }
+
+    @WriteOperation
+    public RenderBacklog.Snapshot accepting(boolean accepting) {
+        generationIntake.setAccepting(accepting);
+        return renderBacklog.snapshot();
+    }
+}
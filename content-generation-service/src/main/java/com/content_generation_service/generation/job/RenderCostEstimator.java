@@ -0,0 +1,59 @@
+package com.content_generation_service.generation.job;
+
+import com.content_generation_service.config.AppProperties;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimates the render cost of queued generation requests, whose templates are not known until they are consumed.
+ * <p>
+ * Every template has a cost: the wall time of its jobs on this node, as a moving average seeded with
+ * 'app.backlog.template-cost-seconds'. The expected cost of a queued request weighs these costs by the
+ * recent mix of templates in the requests this node received.
+ */
+@Component
+@RequiredArgsConstructor
+public class RenderCostEstimator {
+
+    // Weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+
+    private final AppProperties appProperties;
+    private final Map<String, Double> costSeconds = new HashMap<>();
+    private final Map<String, Double> templateShare = new HashMap<>();
+
+    public synchronized void recordArrival(String templateId) {
+        templateShare.replaceAll((template, share) -> share * (1 - ALPHA));
+        templateShare.merge(templateId, ALPHA, Double::sum);
+    }
+
+    public synchronized void recordCompletion(String templateId, double seconds) {
+        double previous = costSeconds(templateId);
+        costSeconds.put(templateId, previous + ALPHA * (seconds - previous));
+    }
+
+    public synchronized double costSeconds(String templateId) {
+        AppProperties.Backlog backlog = appProperties.getBacklog();
+        return costSeconds.getOrDefault(templateId,
+            backlog.getTemplateCostSeconds().getOrDefault(templateId, backlog.getDefaultJobSeconds()));
+    }
+
+    /**
+     * @return The expected render seconds of the next queued request.
+     */
+    public synchronized double expectedJobSeconds() {
+        double totalShare = templateShare.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (totalShare <= 0) {
+            return appProperties.getBacklog().getDefaultJobSeconds();
+        }
+        double expected = 0;
+        for (Map.Entry<String, Double> entry : templateShare.entrySet()) {
+            expected += entry.getValue() / totalShare * costSeconds(entry.getKey());
+        }
+        return expected;
+    }
+}
@@ -2,15 +2,33 @@ package com.content_generation_service.generation.orchestrator;
 
 import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.*;
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.generation.job.JobContext.JobAbortedException;
+import com.content_generation_service.generation.job.JobContext.JobCancelledException;
+import com.content_generation_service.generation.job.JobRegistry;
+import com.content_generation_service.generation.pipeline.StageGraph;
+import com.content_generation_service.generation.pipeline.StageCodec;
+import com.content_generation_service.generation.pipeline.StageCodecs;
+import com.content_generation_service.generation.pipeline.StageKey;
 import com.content_generation_service.generation.service.CharacterDialogueEnrichmentService;
 import com.content_generation_service.generation.service.assets.AssetProvider;
+import com.content_generation_service.generation.service.assets.FontIndexService;
+import com.content_generation_service.generation.service.assets.MusicLibraryService;
 import com.content_generation_service.generation.service.audio.AudioService;
+import com.content_generation_service.generation.service.audio.TextToSpeechProvider;
+import com.content_generation_service.generation.service.audio.TextToSpeechService;
+import com.content_generation_service.generation.service.cache.StageCheckpointStore;
 import com.content_generation_service.generation.service.google.GoogleImageSearchService;
-import com.content_generation_service.generation.service.speechify.audio.SpeechifyVoiceCloningProvider;
+import com.content_generation_service.generation.service.storage.PreviewPublisher;
+import com.content_generation_service.generation.service.storage.RenderDeduplicationService;
 import com.content_generation_service.generation.service.storage.StorageService;
 import com.content_generation_service.generation.service.visual.*;
+import com.content_generation_service.generation.service.visual.distributed.DistributedRenderCoordinator;
+import com.content_generation_service.messaging.ResultSpool;
+import com.content_generation_service.messaging.ResultSpool.ResultSpooledException;
 import com.content_generation_service.messaging.VideoStatusUpdateDispatcher;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
 import lombok.RequiredArgsConstructor;
@@ -18,6 +36,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple2;
@@ -32,6 +51,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -42,24 +62,48 @@ import java.util.stream.StreamSupport;
 public class CharacterExplainsOrchestrator {
 
     public static final String CHARACTER_EXPLAINS_TEMPLATE_ID = "character_explains_v1";
+    // Character voices are cloned with Speechify
+    private static final String VOICE_CLONE_PROVIDER_ID = "speechify-clone";
 
     // --- Core Services ---
-    private final SpeechifyVoiceCloningProvider textToSpeechProvider;
+    private final TextToSpeechService textToSpeechService;
     private final CharacterDialogueEnrichmentService dialogueEnrichmentService;
     private final GoogleImageSearchService googleImageSearchService;
     private final AudioService audioService;
     private final StorageService storageService;
+    // Keeps the rendered video when its upload fails, and retries it
+    private final ResultSpool resultSpool;
+    private final RenderDeduplicationService renderDeduplicationService;
+    // Outputs of the completed stages of an interrupted job, so that its redelivered request resumes from there
+    private final StageCheckpointStore checkpointStore;
+    private final ObjectMapper objectMapper;
 
     // --- Visual & Asset Services ---
     private final VideoAssetService videoAssetService;
     private final SubtitleService subtitleService;
+    private final SubtitleRasterizer subtitleRasterizer;
     private final ImageUtilitiesService imageUtilitiesService;
     private final AssetProvider assetProvider;
+    private final FontIndexService fontIndexService;
+    private final MusicLibraryService musicLibraryService;
+    // Publishes the video while it renders, when progressive previews are enabled
+    private final PreviewPublisher previewPublisher;
     private final ObjectProvider<VideoCompositionBuilder> videoCompositionBuilderProvider;
+    // Renders long videos in chunks across the nodes, when enabled
+    private final DistributedRenderCoordinator renderCoordinator;
 
     // --- Messaging & Config ---
     private final VideoStatusUpdateDispatcher videoStatusUpdateDispatcher;
     private final AppProperties appProperties;
+    // Tracks the running job so that a user cancellation can stop it
+    private final JobRegistry jobRegistry;
+
+    // --- Stages of the generation graph ---
+    private static final StageKey<List<DialogueLineResult>> MEDIA = StageKey.of("media");
+    private static final StageKey<MediaAssets> COMBINED_ASSETS = StageKey.of("combineAudio");
+    private static final StageKey<Path> SUBTITLES = StageKey.of("subtitles");
+    private static final StageKey<Path> FINAL_VIDEO = StageKey.of("render");
+    private static final StageKey<GeneratedVideoDetailsV1> STORED_VIDEO = StageKey.of("store");
 
     @Value("${app.storage.shared-temp.base-path}")
     private String sharedTempBasePath;
@@ -71,6 +115,7 @@ public class CharacterExplainsOrchestrator {
         // A thread-safe list to collect all temporary files for cleanup
         List<Path> tempFiles = new CopyOnWriteArrayList<>();
 
+        JobContext job = jobRegistry.start(contentId);
         try {
             // Check if we need to generate images
             boolean generateImages = params.path("generateImages").asBoolean(false);
@@ -78,90 +123,154 @@ public class CharacterExplainsOrchestrator {
             if (generateImages && (dialogue == null || !dialogue.isArray() || ((ArrayNode) dialogue).isEmpty())) {
                 throw new IllegalArgumentException("Dialogue must be a non-empty array when generateImages is true.");
             }
-            if (generateImages) {
-                // Enrich Dialogue with Search Queries using LLM
-                dialogue = dialogueEnrichmentService.enrichDialogueWithSearchQueries(params.get("dialogue")).block();
-                if (dialogue == null) throw new RuntimeException("Failed to get enriched dialogue from LLM.");
-                log.debug("Enriched Dialogue: {}", dialogue);
-            }
-
-            // Generate Audio & Download Images Concurrently
-            List<DialogueLineResult> dialogueResults = generateMediaAssets(dialogue, generateImages).block();
-            if (dialogueResults == null) throw new RuntimeException("Failed to generate media assets.");
-            dialogueResults.forEach(res -> {
-                log.debug("Dialogue Line - Narration: {}, Images: {}", res.narrationSegment(), res.imagePaths());
-            });
 
-            // Collect temp files from results
-            dialogueResults.forEach(res -> {
-                tempFiles.add(res.narrationSegment().getAudioFilePath());
-                tempFiles.addAll(res.imagePaths());
-            });
-
-            // Process Timings and Combine Audio
-            MediaAssets mediaAssets = processAndCombineAssets(dialogueResults, dialogue);
-            tempFiles.add(mediaAssets.narration().getAudioFilePath()); // Add combined audio to cleanup list
-
-            // Prepare Video Composition Assets
+            // Resolved once: the same paths identify the request and feed the render
             Path backgroundVideo = videoAssetService.getBackgroundVideo(params.get("backgroundVideoId").asText());
-            Path subtitleFile = createSubtitleFile(mediaAssets.narration(), params.get("subtitles"));
-            tempFiles.add(subtitleFile);
-
-            Map<String, Path> characterImageMap = getCharacterImages(params.get("characterPresetId").asText());
-
-            // Build the Final Video
-            VideoCompositionBuilder builder = buildVideoComposition(
-                backgroundVideo,
-                subtitleFile,
-                characterImageMap,
-                mediaAssets,
-                scopedProgressListener
-            );
-            Path finalVideoPath = builder.buildAndExecute(Paths.get(sharedTempBasePath));
+            Map<String, Path> characterImages = getCharacterImages(params.get("characterPresetId").asText());
+            Path fontDir = fontIndexService.fontDir(params.path("subtitles").path("font").asText("Arial"));
+            Optional<Path> backgroundMusic = musicLibraryService.track(params.path("backgroundMusicId").asText(MusicLibraryService.NO_MUSIC));
+
+            // Identical requests (retries, duplicated drafts) reuse the video stored by the first one
+            List<Path> assets = new ArrayList<>(characterImages.values());
+            assets.add(backgroundVideo);
+            assets.add(fontDir);
+            String fingerprint = renderDeduplicationService.fingerprint(CHARACTER_EXPLAINS_TEMPLATE_ID, params, assets, backgroundMusic);
+            Optional<GeneratedVideoDetailsV1> reused = renderDeduplicationService.findRendered(fingerprint, CHARACTER_EXPLAINS_TEMPLATE_ID, contentId, userId);
+            if (reused.isPresent()) {
+                scopedProgressListener.onComplete();
+                return reused.get();
+            }
 
-            // Store and Return
-            GeneratedVideoDetailsV1 videoDetails = storageService.storeFinalVideo(finalVideoPath, CHARACTER_EXPLAINS_TEMPLATE_ID, contentId, userId);
+            final JsonNode dialogueLines = dialogue;
+            StageGraph graph = new StageGraph(CHARACTER_EXPLAINS_TEMPLATE_ID + ":" + contentId)
+                .forJob(job)
+                .withCheckpoint(checkpointStore.open(contentId, fingerprint))
+                // Generate Audio & Download Images Concurrently, while the LLM enrichment is still streaming
+                .reactiveStage(MEDIA, List.of(), in -> generateMediaAssets(dialogueLines, generateImages, tempFiles)
+                    .doOnNext(results -> results.forEach(res ->
+                        log.debug("Dialogue Line - Narration: {}, Images: {}", res.narrationSegment(), res.imagePaths()))))
+                // Process Timings and Combine Audio
+                .stage(COMBINED_ASSETS, List.of(MEDIA), in -> {
+                    MediaAssets mediaAssets = processAndCombineAssets(in.get(MEDIA), dialogueLines);
+                    tempFiles.add(mediaAssets.narration().getAudioFilePath()); // Add combined audio to cleanup list
+                    return mediaAssets;
+                })
+                .stage(SUBTITLES, List.of(COMBINED_ASSETS), in -> {
+                    Path subtitleFile = createSubtitleFile(in.get(COMBINED_ASSETS).narration(), params.get("subtitles"));
+                    // Rasterized subtitles are a directory of frames around their list
+                    tempFiles.add(SubtitleRasterizer.isFrameList(subtitleFile) ? subtitleFile.getParent() : subtitleFile);
+                    return subtitleFile;
+                })
+                // Build the Final Video
+                // The background, fonts and character images were resolved up front, for the fingerprint
+                .stage(FINAL_VIDEO, List.of(COMBINED_ASSETS, SUBTITLES), in -> {
+                    VideoCompositionBuilder builder = buildVideoComposition(
+                        backgroundVideo,
+                        in.get(SUBTITLES),
+                        fontDir,
+                        characterImages,
+                        in.get(COMBINED_ASSETS),
+                        scopedProgressListener
+                    );
+                    backgroundMusic.ifPresent(music -> builder.withBackgroundMusic(music, appProperties.getMusic().getVolume()));
+                    previewPublisher.open(CHARACTER_EXPLAINS_TEMPLATE_ID, contentId, scopedProgressListener).ifPresent(builder::withPreview);
+                    builder.withDerivedOutputs(DerivedOutput.configured(appProperties.getDerivedOutputs()));
+                    return renderCoordinator.render(builder, Paths.get(sharedTempBasePath));
+                })
+                // Store and Return
+                .stage(STORED_VIDEO, List.of(FINAL_VIDEO), in ->
+                    resultSpool.storeOrSpool(in.get(FINAL_VIDEO), CHARACTER_EXPLAINS_TEMPLATE_ID, contentId, userId, fingerprint))
+                // The combined assets stand for all the TTS, LLM and image download work
+                .checkpointed(COMBINED_ASSETS, mediaAssetsCodec())
+                .checkpointed(FINAL_VIDEO, StageCodecs.file())
+                .checkpointed(STORED_VIDEO, StageCodecs.json(objectMapper, GeneratedVideoDetailsV1.class));
+
+            GeneratedVideoDetailsV1 videoDetails = graph.execute().get(STORED_VIDEO);
+            renderDeduplicationService.register(fingerprint, videoDetails);
+            checkpointStore.discard(contentId);
             scopedProgressListener.onComplete();
             return videoDetails;
+        } catch (JobCancelledException e) {
+            log.info("Generation cancelled for contentId: {}", contentId);
+            scopedProgressListener.onCancelled();
+            checkpointStore.discard(contentId);
+            throw e;
+        } catch (JobAbortedException e) {
+            // The node is shutting down; the request is requeued and resumed from its checkpoint elsewhere
+            log.info("Generation interrupted for contentId: {}", contentId);
+            throw e;
         } catch (Exception e) {
+            if (e.getCause() instanceof ResultSpooledException spooled) {
+                // The render succeeded; the spool uploads it and reports the result
+                checkpointStore.discard(contentId);
+                throw spooled;
+            }
             log.error("Video composition failed for contentId: {}", contentId, e);
             scopedProgressListener.onError();
             throw new RuntimeException("Failed to compose final video", e);
         } finally {
+            jobRegistry.finish(job);
             cleanupTempFiles(tempFiles);
         }
     }
 
-    private Mono<List<DialogueLineResult>> generateMediaAssets(JsonNode dialogue, boolean generateImages) {
-        return Flux.fromIterable(dialogue)
-            .flatMapSequential(line -> {
-                String characterId = line.get("characterId").asText();
-                String text = line.get("text").asText();
-                List<String> queries = generateImages ?
-                    StreamSupport.stream(line.get("query_list").spliterator(), false)
-                        .map(JsonNode::asText)
-                        .toList()
-                    : List.of();
+    /**
+     * Generates the narration and the overlay images for every dialogue line.
+     * Narration only needs the original text, so all lines are sent to TTS immediately.
+     * Image downloads for a line start as soon as the LLM has streamed that line's search queries.
+     * Generated files are registered in tempFiles as they arrive, so they are cleaned up even on failure.
+     */
+    private Mono<List<DialogueLineResult>> generateMediaAssets(JsonNode dialogue, boolean generateImages, List<Path> tempFiles) {
+        TextToSpeechProvider textToSpeechProvider = textToSpeechService.getProvider(VOICE_CLONE_PROVIDER_ID);
+        Flux<NarrationSegment> narrations = Flux.fromIterable(dialogue)
+            .flatMapSequential(line -> textToSpeechProvider
+                .generate(line.get("text").asText(), line.get("characterId").asText(), true)
+                .doOnNext(segment -> tempFiles.add(segment.getAudioFilePath()))
+            );
+
+        Mono<Map<Integer, List<Path>>> imagesPerLine = generateImages
+            ? streamImagesPerLine(dialogue, tempFiles).collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            : Mono.just(Map.of());
+
+        return Mono.zip(narrations.collectList(), imagesPerLine, (segments, images) -> {
+            List<DialogueLineResult> results = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                // Lines the LLM did not return (or a failed enrichment) simply get no images
+                results.add(new DialogueLineResult(segments.get(i), images.getOrDefault(i, List.of())));
+            }
+            return results;
+        });
+    }
 
-                Mono<NarrationSegment> audioMono = textToSpeechProvider.generate(text, characterId, true).cache();
+    /**
+     * @return The images of every line the enrichment returned, keyed by the index of the dialogue line.
+     */
+    private Flux<Map.Entry<Integer, List<Path>>> streamImagesPerLine(JsonNode dialogue, List<Path> tempFiles) {
+        return dialogueEnrichmentService.streamEnrichedDialogue(dialogue)
+            .onErrorResume(e -> {
+                log.warn("Dialogue enrichment failed. Continuing without images for the remaining lines. Reason: {}", e.getMessage());
+                return Flux.empty();
+            })
+            .flatMapSequential(line -> {
+                List<String> queries = StreamSupport.stream(line.path("query_list").spliterator(), false)
+                    .map(JsonNode::asText)
+                    .toList();
 
-                Mono<List<Path>> imagesMono = Flux.fromIterable(queries)
+                return Flux.fromIterable(queries)
                     .flatMapSequential(query -> googleImageSearchService.downloadImageForQuery(query)
                         // this makes the process fault tolerant to individual image download failures
                         .timeout(Duration.ofSeconds(10))
+                        .doOnNext(tempFiles::add)
                         .onErrorResume(e -> {
                             log.warn("Could not download image for query '{}'. Skipping it. Reason: {}", query, e.getMessage());
                             return Mono.empty(); // On error, return an empty Mono to skip this element
                         })
                     )
-                    .collectList();
-                
-                // Execute audio generation and image downloads in parallel for this line
-                return Mono.zip(audioMono, imagesMono, DialogueLineResult::new);
-            })
-            .collectList();
+                    .collectList()
+                    .map(images -> Map.entry(line.get("index").asInt(), images));
+            });
     }
-    
+
     private MediaAssets processAndCombineAssets(List<DialogueLineResult> results, JsonNode dialogue) {
         List<NarrationSegment> audioSegments = results.stream().map(DialogueLineResult::narrationSegment).toList();
         
@@ -235,6 +344,11 @@ public class CharacterExplainsOrchestrator {
         String font = subtitleParams.get("font").asText("Arial");
         String color = subtitleParams.get("color").asText("#FFFFFF");
         String position = subtitleParams.get("position").asText("bottom");
+        if (subtitleRasterizer.isEnabled()) {
+            // On the shared storage, where the render workers of a distributed render read the frames too
+            return subtitleRasterizer.rasterize(narration.getWordTimings(), font, color, position,
+                appProperties.getVideo().getWidth(), appProperties.getVideo().getHeight(), Paths.get(sharedTempBasePath));
+        }
         return subtitleService.createAssFile(narration.getWordTimings(), font, color, position);
     }
     
@@ -252,7 +366,7 @@ public class CharacterExplainsOrchestrator {
             ));
     }
 
-    private VideoCompositionBuilder buildVideoComposition(Path backgroundVideo, Path subtitleFile, Map<String, Path> characterImageMap, MediaAssets assets, ProgressListener listener) throws IOException {
+    private VideoCompositionBuilder buildVideoComposition(Path backgroundVideo, Path subtitleFile, Path fontDirPath, Map<String, Path> characterImageMap, MediaAssets assets, ProgressListener listener) throws IOException {
         VideoCompositionBuilder builder = videoCompositionBuilderProvider.getObject()
             .withDimensions(appProperties.getVideo().getWidth(), appProperties.getVideo().getHeight())
             .withBackground(backgroundVideo)
@@ -275,7 +389,6 @@ public class CharacterExplainsOrchestrator {
         builder.withTextWatermark();
 
         // Add subtitles last so they are on top
-        Path fontDirPath = assetProvider.getAssetDir(appProperties.getAssets().getFonts());
         builder.withSubtitles(fontDirPath, subtitleFile);
         
         return builder;
@@ -306,14 +419,58 @@ public class CharacterExplainsOrchestrator {
         log.info("Cleaning up {} temporary files...", tempFiles.size());
         for (Path file : tempFiles) {
             try {
-                if (file != null) Files.deleteIfExists(file);
+                if (file != null) FileSystemUtils.deleteRecursively(file);
             } catch (IOException e) {
                 log.warn("Failed to delete temporary file: {}", file, e);
             }
         }
     }
     
+    /**
+     * Checkpoints the combined narration and image overlays, with their audio and image files.
+     */
+    private StageCodec<MediaAssets> mediaAssetsCodec() {
+        return new StageCodec<>() {
+            @Override
+            public JsonNode encode(MediaAssets assets, CheckpointFiles files) throws IOException {
+                CharacterNarration narration = assets.narration();
+                List<CheckpointedDialogueLine> lines = narration.getDialogueTimings().stream()
+                    .map(line -> new CheckpointedDialogueLine(line.getCharacterId(), line.getStartTime(), line.getDuration()))
+                    .toList();
+                List<CheckpointedOverlay> overlays = new ArrayList<>();
+                for (ImageOverlaySegment overlay : assets.imageOverlays()) {
+                    overlays.add(new CheckpointedOverlay(files.put(overlay.getImagePath()), overlay.getDurationSeconds(),
+                        overlay.getTimeRange(), overlay.getPosition()));
+                }
+                return objectMapper.valueToTree(new CheckpointedMediaAssets(files.put(narration.getAudioFilePath()),
+                    narration.getDurationSeconds(), narration.getWordTimings(), lines, overlays));
+            }
+
+            @Override
+            public MediaAssets decode(JsonNode node, CheckpointFiles files) throws IOException {
+                CheckpointedMediaAssets checkpointed = objectMapper.treeToValue(node, CheckpointedMediaAssets.class);
+                List<DialogueLineInfo> lines = checkpointed.dialogueLines().stream()
+                    .map(line -> new DialogueLineInfo(line.characterId(), line.startTime(), line.duration()))
+                    .toList();
+                List<ImageOverlaySegment> overlays = new ArrayList<>();
+                for (CheckpointedOverlay overlay : checkpointed.overlays()) {
+                    overlays.add(new ImageOverlaySegment(files.get(overlay.image()), overlay.durationSeconds(),
+                        overlay.timeRange(), overlay.position()));
+                }
+                CharacterNarration narration = new CharacterNarration(files.get(checkpointed.audio()),
+                    checkpointed.durationSeconds(), checkpointed.wordTimings(), lines);
+                return new MediaAssets(narration, overlays);
+            }
+        };
+    }
+
     // Helper records for cleaner data flow
     private record DialogueLineResult(NarrationSegment narrationSegment, List<Path> imagePaths) {}
     private record MediaAssets(CharacterNarration narration, List<ImageOverlaySegment> imageOverlays) {}
+
+    // Checkpointed form of MediaAssets, with files as checkpoint references
+    private record CheckpointedMediaAssets(String audio, double durationSeconds, List<WordTiming> wordTimings,
+                                           List<CheckpointedDialogueLine> dialogueLines, List<CheckpointedOverlay> overlays) {}
+    private record CheckpointedDialogueLine(String characterId, double startTime, double duration) {}
+    private record CheckpointedOverlay(String image, double durationSeconds, TimeRange timeRange, ImagePosition position) {}
 }
\ No newline at end of file
@@ -1,26 +1,45 @@
 package com.content_generation_service.generation.orchestrator;
 
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.generation.job.JobContext.JobAbortedException;
+import com.content_generation_service.generation.job.JobContext.JobCancelledException;
+import com.content_generation_service.generation.job.JobRegistry;
+import com.content_generation_service.generation.pipeline.StageGraph;
+import com.content_generation_service.generation.pipeline.StageCodecs;
+import com.content_generation_service.generation.pipeline.StageKey;
 import com.content_generation_service.generation.service.assets.AssetProvider;
+import com.content_generation_service.generation.service.assets.FontIndexService;
+import com.content_generation_service.generation.service.assets.MusicLibraryService;
 import com.content_generation_service.generation.service.audio.AudioService;
 import com.content_generation_service.generation.service.audio.TextToSpeechProvider;
 import com.content_generation_service.generation.service.audio.TextToSpeechService.ParsedVoiceId;
+import com.content_generation_service.generation.service.cache.StageArtifactCache;
+import com.content_generation_service.generation.service.cache.StageCheckpointStore;
 import com.content_generation_service.generation.service.reddit.visual.RedditImageService;
+import com.content_generation_service.generation.service.storage.PreviewPublisher;
+import com.content_generation_service.generation.service.storage.RenderDeduplicationService;
 import com.content_generation_service.generation.service.storage.StorageService;
+import com.content_generation_service.generation.service.visual.DerivedOutput;
 import com.content_generation_service.generation.service.visual.ProgressListener;
+import com.content_generation_service.generation.service.visual.SubtitleRasterizer;
 import com.content_generation_service.generation.service.visual.SubtitleService;
 import com.content_generation_service.generation.service.visual.VideoAssetService;
 import com.content_generation_service.generation.service.visual.VideoCompositionBuilder;
+import com.content_generation_service.generation.service.visual.distributed.DistributedRenderCoordinator;
+import com.content_generation_service.messaging.ResultSpool;
+import com.content_generation_service.messaging.ResultSpool.ResultSpooledException;
 import com.content_generation_service.messaging.VideoStatusUpdateDispatcher;
 import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.ImagePosition;
 import com.content_generation_service.generation.model.NarrationSegment;
 import com.content_generation_service.generation.model.RedditNarration;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -28,8 +47,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -47,21 +71,45 @@ public class RedditStoryOrchestrator {
     private final TextToSpeechService textToSpeechService;
     private final VideoAssetService videoAssetService;
     private final SubtitleService subtitleService;
+    private final SubtitleRasterizer subtitleRasterizer;
     private final RedditImageService redditImageService;
     private final VideoStatusUpdateDispatcher videoStatusUpdateDispatcher;
     private final AudioService audioService;
 
     private final ObjectProvider<VideoCompositionBuilder> videoCompositionBuilderProvider;
+    // Renders long videos in chunks across the nodes, when enabled
+    private final DistributedRenderCoordinator renderCoordinator;
     private final AssetProvider assetProvider;
+    private final FontIndexService fontIndexService;
+    private final MusicLibraryService musicLibraryService;
+    // Publishes the video while it renders, when progressive previews are enabled
+    private final PreviewPublisher previewPublisher;
     private final AppProperties appProperties;
+    // Tracks the running job so that a user cancellation can stop it
+    private final JobRegistry jobRegistry;
 
     // Service responsible for uploading to S3 and cleaning up local files
     private final StorageService storageService;
+    // Keeps the rendered video when its upload fails, and retries it
+    private final ResultSpool resultSpool;
+    private final RenderDeduplicationService renderDeduplicationService;
+    // Per-stage artifacts of earlier generations of the same content, reused when their inputs are unchanged
+    private final StageArtifactCache artifactCache;
+    // Outputs of the completed stages of an interrupted job, so that its redelivered request resumes from there
+    private final StageCheckpointStore checkpointStore;
+    private final ObjectMapper objectMapper;
 
     // Use a clear property for the shared temporary path
     @Value("${app.storage.shared-temp.base-path}")
     private String sharedTempBasePath;
     
+    // --- Stages of the generation graph ---
+    private static final StageKey<RedditNarration> NARRATION = StageKey.of("narration");
+    private static final StageKey<Path> TITLE_IMAGE = StageKey.of("titleImage");
+    private static final StageKey<Path> SUBTITLES = StageKey.of("subtitles");
+    private static final StageKey<Path> FINAL_VIDEO = StageKey.of("render");
+    private static final StageKey<GeneratedVideoDetailsV1> STORED_VIDEO = StageKey.of("store");
+
     // This is the main business logic flow
     public GeneratedVideoDetailsV1 generate(JsonNode params, String contentId, String userId) {
         log.debug("Starting Reddit Story generation...");
@@ -71,74 +119,146 @@ public class RedditStoryOrchestrator {
         // Ensure the shared directory exists before we start
         Path sharedOutputPath = Paths.get(sharedTempBasePath);
 
-        // Declare variables outside the try block
-        RedditNarration narration = null;
-        Path titleImage = null;
-        Path subtitleFile = null;
-        
+        // A thread-safe list to collect all temporary files for cleanup, since stages run concurrently
+        List<Path> tempFiles = new CopyOnWriteArrayList<>();
+
+        JobContext job = jobRegistry.start(contentId);
         try {
             Files.createDirectories(sharedOutputPath);
-            // Get narration from TTS API
-            narration = generateNarration(params.get("postTitle").asText(), params.get("postDescription").asText(), params.get("comments"), params.get("voiceSelection").asText());
 
-            // Get background video
+            // Resolved once: the same paths identify the request and feed the render
             Path backgroundVideo = videoAssetService.getBackgroundVideo(params.get("backgroundVideoId").asText());
+            // Only the family of the subtitle font, so libass does not scan the whole fonts directory
+            Path fontDir = fontIndexService.fontDir(params.path("subtitles").path("font").asText("Arial"));
+            Optional<Path> backgroundMusic = musicLibraryService.track(params.path("backgroundMusicId").asText(MusicLibraryService.NO_MUSIC));
+            Path avatarImage = assetProvider.getAssetPath(appProperties.getAssets().getImages(),
+                params.path("avatarImageUrl").asText(RedditImageService.DEFAULT_AVATAR));
+
+            // Identical requests (retries, duplicated drafts) reuse the video stored by the first one
+            String fingerprint = renderDeduplicationService.fingerprint(REDDIT_STORY_TEMPLATE_ID, params, List.of(
+                backgroundVideo, avatarImage, fontDir), backgroundMusic);
+            Optional<GeneratedVideoDetailsV1> reused = renderDeduplicationService.findRendered(fingerprint, REDDIT_STORY_TEMPLATE_ID, contentId, userId);
+            if (reused.isPresent()) {
+                scopedProgressListener.onComplete();
+                return reused.get();
+            }
+
+            StageGraph graph = new StageGraph(REDDIT_STORY_TEMPLATE_ID + ":" + contentId)
+                .forJob(job)
+                .withCheckpoint(checkpointStore.open(contentId, fingerprint))
+                // Get narration from TTS API
+                .reactiveStage(NARRATION, List.of(), in -> generateNarration(
+                        params.get("postTitle").asText(), params.get("postDescription").asText(),
+                        params.get("comments"), params.get("voiceSelection").asText(), contentId)
+                    .doOnNext(narration -> tempFiles.add(narration.getAudioFilePath())))
+                // Create image for post title
+                .stage(TITLE_IMAGE, List.of(), in -> {
+                    String key = artifactCache.key("titleImage", params.path("theme").asText(), params.path("avatarImageUrl").asText(),
+                        params.path("subreddit").asText(), params.path("username").asText(), params.path("postTitle").asText());
+                    Path titleImage = artifactCache.getFile(contentId, key, ".png").orElseGet(() -> {
+                        Path created = redditImageService.createRedditPostImage(params);
+                        artifactCache.putFile(contentId, key, created);
+                        return created;
+                    });
+                    tempFiles.add(titleImage);
+                    return titleImage;
+                })
+                // Generate subtitles from the audio timings
+                .stage(SUBTITLES, List.of(NARRATION), in -> {
+                    JsonNode subtitles = params.get("subtitles");
+                    if (subtitleRasterizer.isEnabled()) {
+                        // Rasterized frames are quick to draw again, and a whole directory
+                        Path subtitleFrames = createSubtitleFile(in.get(NARRATION), subtitles);
+                        tempFiles.add(subtitleFrames.getParent());
+                        return subtitleFrames;
+                    }
+                    String key = artifactCache.key("subtitles", objectMapper.writeValueAsString(in.get(NARRATION).getWordTimings()), subtitles.toString(),
+                        objectMapper.writeValueAsString(appProperties.getSubtitles()));
+                    Optional<Path> cachedSubtitles = artifactCache.getFile(contentId, key, ".ass");
+                    Path subtitleFile = cachedSubtitles.isPresent() ? cachedSubtitles.get() : createSubtitleFile(in.get(NARRATION), subtitles);
+                    if (cachedSubtitles.isEmpty()) {
+                        artifactCache.putFile(contentId, key, subtitleFile);
+                    }
+                    tempFiles.add(subtitleFile);
+                    return subtitleFile;
+                })
+                // Combine everything into a final video composition; the background and fonts were resolved up front, for the fingerprint
+                .stage(FINAL_VIDEO, List.of(NARRATION, TITLE_IMAGE, SUBTITLES), in -> {
+                    RedditNarration narration = in.get(NARRATION);
+                    VideoCompositionBuilder builder = videoCompositionBuilderProvider.getObject()
+                        .withDimensions(appProperties.getVideo().getWidth(), appProperties.getVideo().getHeight())
+                        .withBackground(backgroundVideo) // Assuming 9:16 aspect ratio
+                        .withNarration(narration.getAudioFilePath())
+                        .withImageOverlay(in.get(TITLE_IMAGE), ImagePosition.CENTER, 0, narration.getTitleDurationSeconds())
+                        .withSubtitles(fontDir, in.get(SUBTITLES))
+                        .withProgressListener(scopedProgressListener); // Pass the scoped listener
+                    backgroundMusic.ifPresent(music -> builder.withBackgroundMusic(music, appProperties.getMusic().getVolume()));
+                    previewPublisher.open(REDDIT_STORY_TEMPLATE_ID, contentId, scopedProgressListener).ifPresent(builder::withPreview);
+                    builder.withDerivedOutputs(DerivedOutput.configured(appProperties.getDerivedOutputs()));
+                    return renderCoordinator.render(builder, sharedOutputPath);
+                })
+                .stage(STORED_VIDEO, List.of(FINAL_VIDEO), in ->
+                    resultSpool.storeOrSpool(in.get(FINAL_VIDEO), REDDIT_STORY_TEMPLATE_ID, contentId, userId, fingerprint))
+                // Narration, title card and subtitles already resume through the artifact cache
+                .checkpointed(FINAL_VIDEO, StageCodecs.file())
+                .checkpointed(STORED_VIDEO, StageCodecs.json(objectMapper, GeneratedVideoDetailsV1.class));
 
-            // Create image for post title
-            titleImage = redditImageService.createRedditPostImage(params);
-
-            // Generate subtitles from the audio timings
-            JsonNode subtitles = params.get("subtitles");
-            String font = subtitles.get("font").asText("Arial");
-            //String font = "Montserrat ExtraBold"; // test
-            String color = subtitles.get("color").asText("#FFFFFF");
-            String position = subtitles.get("position").asText("bottom");
-            subtitleFile = subtitleService.createAssFile(narration.getWordTimings(), font, color, position);
-            // Use the AssetProvider to get the path to the FONTS directory
-            Path fontDirPath = assetProvider.getAssetDir(appProperties.getAssets().getFonts());
-
-            // Get dimensions from AppProperties
-            int videoWidth = appProperties.getVideo().getWidth();
-            int videoHeight = appProperties.getVideo().getHeight();
-            // Combine everything into a final video composition
-            VideoCompositionBuilder compositionBuilder = videoCompositionBuilderProvider.getObject();
-            Path finalVideoPath = compositionBuilder
-                .withDimensions(videoWidth, videoHeight)
-                .withBackground(backgroundVideo) // Assuming 9:16 aspect ratio
-                .withNarration(narration.getAudioFilePath())
-                .withImageOverlay(titleImage, ImagePosition.CENTER, 0, narration.getTitleDurationSeconds())
-                .withSubtitles(fontDirPath, subtitleFile)
-                .withProgressListener(scopedProgressListener) // Pass the scoped listener
-                .buildAndExecute(sharedOutputPath);
-
-            GeneratedVideoDetailsV1 videoDetails = storageService.storeFinalVideo(finalVideoPath, REDDIT_STORY_TEMPLATE_ID, contentId, userId);
+            GeneratedVideoDetailsV1 videoDetails = graph.execute().get(STORED_VIDEO);
+            renderDeduplicationService.register(fingerprint, videoDetails);
+            checkpointStore.discard(contentId);
             scopedProgressListener.onComplete(); // Notify the listener of success
             return videoDetails;
+        } catch (JobCancelledException e) {
+            log.info("Generation cancelled for contentId: {}", contentId);
+            scopedProgressListener.onCancelled();
+            checkpointStore.discard(contentId);
+            throw e;
+        } catch (JobAbortedException e) {
+            // The node is shutting down; the request is requeued and resumed from its checkpoint elsewhere
+            log.info("Generation interrupted for contentId: {}", contentId);
+            throw e;
         } catch (Exception e) {
+            if (e.getCause() instanceof ResultSpooledException spooled) {
+                // The render succeeded; the spool uploads it and reports the result
+                checkpointStore.discard(contentId);
+                throw spooled;
+            }
             log.error("Video composition failed for contentId: {}", contentId, e);
             scopedProgressListener.onError(); // Notify the listener of failure
             throw new RuntimeException("Failed to compose final video", e);
         } finally {
+            jobRegistry.finish(job);
             log.debug("Executing cleanup block for contentId: {}", contentId);
-            // null-checks before attempting cleanup
-            try {
-                if (titleImage != null) Files.deleteIfExists(titleImage);
-                if (subtitleFile != null) Files.deleteIfExists(subtitleFile);
-                if (narration != null && narration.getAudioFilePath() != null) {
-                    Files.deleteIfExists(narration.getAudioFilePath());
+            for (Path file : tempFiles) {
+                try {
+                    if (file != null) FileSystemUtils.deleteRecursively(file);
+                } catch (IOException e) {
+                    // Log cleanup errors but don't re-throw, as an exception might already be in flight
+                    log.error("Error during resource cleanup for contentId: {}", contentId, e);
                 }
-            } catch (IOException e) {
-                // Log cleanup errors but don't re-throw, as an exception might already be in flight
-                log.error("Error during resource cleanup for contentId: {}", contentId, e);
             }
         }
     }
 
+    private Path createSubtitleFile(RedditNarration narration, JsonNode subtitles) throws IOException {
+        String font = subtitles.get("font").asText("Arial");
+        String color = subtitles.get("color").asText("#FFFFFF");
+        String position = subtitles.get("position").asText("bottom");
+        if (subtitleRasterizer.isEnabled()) {
+            // On the shared storage, where the render workers of a distributed render read the frames too
+            return subtitleRasterizer.rasterize(narration.getWordTimings(), font, color, position,
+                appProperties.getVideo().getWidth(), appProperties.getVideo().getHeight(), Paths.get(sharedTempBasePath));
+        }
+        return subtitleService.createAssFile(narration.getWordTimings(), font, color, position);
+    }
+
     /**
      * Generates separate narration for title, description, and comments, then combines them.
-     * This method blocks until all API calls and processing are complete.
+     * The TTS calls run in parallel; the final audio concatenation runs on the bounded elastic scheduler.
+     * Segments cached by an earlier generation of the same content are reused, so after an edit
+     * only the changed texts are synthesized again.
      */
-    public RedditNarration generateNarration(String title, String description, JsonNode comments, String globalVoiceId) {
+    public Mono<RedditNarration> generateNarration(String title, String description, JsonNode comments, String globalVoiceId, String contentId) {
         ParsedVoiceId parsedId = TextToSpeechService.parseGlobalVoiceId(globalVoiceId);
         TextToSpeechProvider ttsProvider = textToSpeechService.getProvider(parsedId.providerId());
 
@@ -149,41 +269,43 @@ public class RedditStoryOrchestrator {
         String voice = parsedId.voiceId();
         log.info("Generating Reddit narration using provider: {}, voice: {}", ttsProvider.getProviderId(), voice);
 
-        Mono<NarrationSegment> titleMono = ttsProvider.generate(title, voice, false);
-        // Conditionally generate narration for the description
-        Mono<NarrationSegment> descriptionMono;
+        String transcriptionProvider = appProperties.getTranscription().getProvider();
+        Mono<NarrationSegment> titleMono = cachedNarration(contentId,
+            artifactCache.key("narration", ttsProvider.getProviderId(), voice, "untimed", title),
+            () -> ttsProvider.generate(title, voice, false));
+
+        // The description (if any) and the comments need timings, so they are generated as one batch.
+        // Long texts are split into sentence-aligned chunks synthesized in parallel, and providers that
+        // transcribe their audio can extract the timings of the whole batch in a single call.
+        List<String> timedTexts = new ArrayList<>();
         if (description != null && !description.trim().isEmpty()) {
-            descriptionMono = ttsProvider.generate(description, voice, true);
+            timedTexts.add(description);
         } else {
-            // Return a NarrationSegment for an empty description with zero duration
-            descriptionMono = Mono.just(new NarrationSegment(null, 0.0, List.of()));
             log.info("Description is empty, skipping TTS generation.");
         }
-        
-        List<Mono<NarrationSegment>> commentMonos = new ArrayList<>();
         if (comments.isArray()) {
             for (JsonNode commentNode : comments) {
-                String commentText = commentNode.get("text").asText();
-                commentMonos.add(ttsProvider.generate(commentText, voice, true));
+                timedTexts.add(commentNode.get("text").asText());
             }
         }
+        List<String> timedKeys = timedTexts.stream()
+            .map(text -> artifactCache.key("narration", ttsProvider.getProviderId(), voice, "timed:" + transcriptionProvider, text))
+            .toList();
+        Mono<List<NarrationSegment>> timedMono = timedTexts.isEmpty()
+            ? Mono.just(List.of())
+            : cachedTimedNarrations(contentId, timedKeys, timedTexts, missing -> audioService.generateChunked(ttsProvider, missing, voice, true));
 
         // Execute all TTS calls in parallel and process the results
-        return Mono.zip(titleMono, descriptionMono, Flux.concat(commentMonos).collectList())
+        return Mono.zip(titleMono, timedMono)
+            // combineAudioTracks runs FFmpeg synchronously, keep it off the HTTP event loop
+            .publishOn(Schedulers.boundedElastic())
             .flatMap(tuple -> {
                 NarrationSegment titleNarration = tuple.getT1();
-                NarrationSegment descriptionNarration = tuple.getT2();
-                List<NarrationSegment> commentNarrations = tuple.getT3();
 
                 // Build the full list of segments for combination
                 List<NarrationSegment> allSegments = new ArrayList<>();
                 allSegments.add(titleNarration);
-
-                // Conditionally add description narration
-                if (descriptionNarration.getAudioFilePath() != null) {
-                    allSegments.add(descriptionNarration);
-                }
-                allSegments.addAll(commentNarrations);
+                allSegments.addAll(tuple.getT2());
 
                 // Use the inherited method to combine audio and adjust timestamps
                 return audioService.combineAudioTracks(allSegments)
@@ -193,6 +315,44 @@ public class RedditStoryOrchestrator {
                         combinedSegment.getWordTimings(),
                         titleNarration.getDurationSeconds() // Keep track of title duration specifically
                     ));
-            }).block(); // Block until the entire process is complete
+            });
+    }
+
+    private Mono<NarrationSegment> cachedNarration(String contentId, String key, Supplier<Mono<NarrationSegment>> generate) {
+        return Mono.fromCallable(() -> artifactCache.getNarration(contentId, key).orElse(null))
+            .subscribeOn(Schedulers.boundedElastic())
+            .switchIfEmpty(Mono.defer(() -> generate.get()
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(segment -> artifactCache.putNarration(contentId, key, segment))));
+    }
+
+    /**
+     * Looks up each text's narration in the artifact cache and generates only the missing ones, in a single batch.
+     */
+    private Mono<List<NarrationSegment>> cachedTimedNarrations(String contentId, List<String> keys, List<String> texts,
+            Function<List<String>, Mono<List<NarrationSegment>>> generateBatch) {
+        return Mono.fromCallable(() -> keys.stream().map(key -> artifactCache.getNarration(contentId, key).orElse(null)).toList())
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(cached -> {
+                List<Integer> missing = new ArrayList<>();
+                for (int i = 0; i < cached.size(); i++) {
+                    if (cached.get(i) == null) missing.add(i);
+                }
+                if (missing.isEmpty()) {
+                    log.info("Reusing all {} cached narration segments for contentId: {}", cached.size(), contentId);
+                    return Mono.just(cached);
+                }
+                log.info("Reusing {} of {} cached narration segments for contentId: {}", cached.size() - missing.size(), cached.size(), contentId);
+                return generateBatch.apply(missing.stream().map(texts::get).toList())
+                    .publishOn(Schedulers.boundedElastic())
+                    .map(generated -> {
+                        List<NarrationSegment> merged = new ArrayList<>(cached);
+                        for (int i = 0; i < missing.size(); i++) {
+                            merged.set(missing.get(i), generated.get(i));
+                            artifactCache.putNarration(contentId, keys.get(missing.get(i)), generated.get(i));
+                        }
+                        return merged;
+                    });
+            });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.content_generation_service.generation.pipeline;
+
+import java.util.Optional;
+
+/**
+ * Durable record of the completed stages of one job, so that a job interrupted by the loss of its
+ * node resumes from its last completed stages instead of starting over.
+ * Implementations must never fail the job: errors are logged and behave like a missing checkpoint.
+ */
+public interface StageCheckpoint {
+
+    <T> Optional<T> restore(StageKey<T> key, StageCodec<T> codec);
+
+    <T> void save(StageKey<T> key, StageCodec<T> codec, T value);
+}
@@ -0,0 +1,39 @@
+package com.content_generation_service.generation.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Converts the output of a stage to and from the JSON stored in a {@link StageCheckpoint}.
+ * Files referenced by the output must go through {@link CheckpointFiles}, so that they survive
+ * the loss of the node that produced them.
+ *
+ * @param <T> The type of the stage output.
+ */
+public interface StageCodec<T> {
+
+    JsonNode encode(T value, CheckpointFiles files) throws IOException;
+
+    T decode(JsonNode node, CheckpointFiles files) throws IOException;
+
+    /**
+     * Access to the files of a checkpoint.
+     */
+    interface CheckpointFiles {
+
+        /**
+         * Makes a file part of the checkpoint (copying it to the shared storage if it is not there yet).
+         *
+         * @return The reference to store in the encoded JSON.
+         */
+        String put(Path file) throws IOException;
+
+        /**
+         * @return The checkpointed file behind a reference returned by {@link #put(Path)}.
+         * @throws IOException if the file no longer exists.
+         */
+        Path get(String reference) throws IOException;
+    }
+}
@@ -0,0 +1,51 @@
+package com.content_generation_service.generation.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * {@link StageCodec}s for the common kinds of stage output.
+ */
+public final class StageCodecs {
+
+    private StageCodecs() {
+    }
+
+    /**
+     * For stages producing a single file.
+     */
+    public static StageCodec<Path> file() {
+        return new StageCodec<>() {
+            @Override
+            public JsonNode encode(Path value, CheckpointFiles files) throws IOException {
+                return TextNode.valueOf(files.put(value));
+            }
+
+            @Override
+            public Path decode(JsonNode node, CheckpointFiles files) throws IOException {
+                return files.get(node.asText());
+            }
+        };
+    }
+
+    /**
+     * For stages producing plain data that Jackson can (de)serialize, without any file.
+     */
+    public static <T> StageCodec<T> json(ObjectMapper objectMapper, Class<T> type) {
+        return new StageCodec<>() {
+            @Override
+            public JsonNode encode(T value, CheckpointFiles files) {
+                return objectMapper.valueToTree(value);
+            }
+
+            @Override
+            public T decode(JsonNode node, CheckpointFiles files) throws IOException {
+                return objectMapper.treeToValue(node, type);
+            }
+        };
+    }
+}
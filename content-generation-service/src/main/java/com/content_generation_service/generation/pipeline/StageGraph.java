@@ -0,0 +1,329 @@
+package com.content_generation_service.generation.pipeline;
+
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.generation.job.JobContext.JobAbortedException;
+import com.content_generation_service.generation.job.JobContext.JobCancelledException;
+import com.content_generation_service.generation.pipeline.StageResults.StageTiming;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A small dependency-graph executor for the stages of a generation job.
+ * Each stage declares the stages it depends on and starts as soon as all of them
+ * have completed, so independent work overlaps without the orchestrator having to
+ * wire the concurrency by hand. Every stage is timed and a breakdown is logged per job.
+ * <p>
+ * If a stage fails, stages depending on it are skipped, stages already running are
+ * allowed to finish (so their outputs can be cleaned up by the caller), and
+ * {@link #execute()} throws a {@link StageExecutionException} naming the failed stage.
+ * When the graph runs for a job ({@link #forJob(JobContext)}), cancelling the job stops the running
+ * stages right away and {@link #execute()} throws a {@link JobCancelledException}
+ * (or a {@link JobAbortedException} when the node is shutting down).
+ * <p>
+ * With a {@link StageCheckpoint} ({@link #withCheckpoint(StageCheckpoint)}), the outputs of the stages
+ * declared {@link #checkpointed(StageKey, StageCodec) checkpointed} are saved as soon as they complete.
+ * On a later run of the same job, those stages are restored instead of run, and stages only needed
+ * to produce restored outputs are skipped.
+ * A graph instance is meant to be built and executed once.
+ */
+@Slf4j
+public class StageGraph {
+
+    private final String jobName;
+    private final Map<StageKey<?>, StageDefinition> stages = new LinkedHashMap<>();
+    private final Map<StageKey<?>, StageCodec<?>> codecs = new HashMap<>();
+    private JobContext job;
+    private StageCheckpoint checkpoint;
+
+    public StageGraph(String jobName) {
+        this.jobName = jobName;
+    }
+
+    /**
+     * Runs the graph on behalf of a cancellable job. Blocking stages run with the job bound to their
+     * thread, so the processes they start are destroyed when the job is cancelled.
+     */
+    public StageGraph forJob(JobContext job) {
+        this.job = job;
+        return this;
+    }
+
+    /**
+     * Saves the outputs of checkpointed stages to the given checkpoint, and restores them from it.
+     */
+    public StageGraph withCheckpoint(StageCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    /**
+     * Declares a stage whose output is worth checkpointing (expensive to produce, cheap to store).
+     */
+    public <T> StageGraph checkpointed(StageKey<T> key, StageCodec<T> codec) {
+        codecs.put(key, codec);
+        return this;
+    }
+
+    /**
+     * Adds a stage with a blocking body (file IO, FFmpeg, ...). The body runs on the bounded elastic scheduler.
+     */
+    public <T> StageGraph stage(StageKey<T> key, List<StageKey<?>> dependsOn, BlockingStage<T> body) {
+        return addStage(key, dependsOn, inputs -> Mono.fromCallable(() -> {
+                if (job == null) {
+                    return body.run(inputs);
+                }
+                try (JobContext.Scope ignored = job.bind()) {
+                    job.throwIfStopped();
+                    return body.run(inputs);
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Adds a stage whose body is already reactive. The body must not block.
+     */
+    public <T> StageGraph reactiveStage(StageKey<T> key, List<StageKey<?>> dependsOn, Function<StageResults, Mono<T>> body) {
+        return addStage(key, dependsOn, body::apply);
+    }
+
+    private StageGraph addStage(StageKey<?> key, List<StageKey<?>> dependsOn, Function<StageResults, Mono<?>> body) {
+        if (stages.containsKey(key)) {
+            throw new IllegalArgumentException("Stage '" + key + "' is already defined in graph " + jobName);
+        }
+        stages.put(key, new StageDefinition(key, List.copyOf(dependsOn), body));
+        return this;
+    }
+
+    /**
+     * Runs the whole graph and blocks until every stage has settled.
+     *
+     * @return The outputs of all stages, together with their timings.
+     * @throws StageExecutionException if any stage failed.
+     */
+    public StageResults execute() {
+        validate();
+
+        Map<StageKey<?>, Object> values = new ConcurrentHashMap<>();
+        Map<StageKey<?>, StageTiming> timings = new ConcurrentHashMap<>();
+        AtomicReference<StageFailure> firstFailure = new AtomicReference<>();
+        long graphStart = System.nanoTime();
+
+        List<StageKey<?>> order = topologicalOrder();
+        Set<StageKey<?>> restored = restoreCheckpoints(order, values);
+        Set<StageKey<?>> toRun = stagesToRun(order, restored);
+
+        Map<StageKey<?>, Mono<Void>> stageMonos = new HashMap<>();
+        for (StageKey<?> key : order) {
+            if (!toRun.contains(key)) {
+                stageMonos.put(key, Mono.empty());
+                continue;
+            }
+            StageDefinition definition = stages.get(key);
+            List<Mono<Void>> dependencies = definition.dependsOn().stream().map(stageMonos::get).toList();
+            StageResults inputs = new StageResults(values, Set.copyOf(definition.dependsOn()), List.of());
+
+            Mono<Void> stageMono = Mono.when(dependencies)
+                .then(Mono.defer(() -> {
+                    long stageStart = System.nanoTime();
+                    return cancellable(definition.body().apply(inputs))
+                        .flatMap(value -> saveCheckpoint(key, value).thenReturn(value))
+                        .doOnNext(value -> values.put(key, value))
+                        .then()
+                        .doOnSuccess(ignored -> {
+                            values.putIfAbsent(key, StageResults.wrap(null));
+                            timings.put(key, timing(key, graphStart, stageStart, true));
+                        })
+                        .doOnError(e -> {
+                            timings.put(key, timing(key, graphStart, stageStart, false));
+                            firstFailure.compareAndSet(null, new StageFailure(key, e));
+                        });
+                }))
+                .cache();
+            stageMonos.put(key, stageMono);
+        }
+
+        try {
+            Mono.whenDelayError(stageMonos.values()).block();
+        } catch (RuntimeException e) {
+            if (job != null && job.isStopped()) {
+                throw job.stoppedException();
+            }
+            StageFailure failure = firstFailure.get();
+            if (failure == null) throw e;
+            throw new StageExecutionException(jobName, failure.stage().getName(), failure.error());
+        } finally {
+            logTimings(timings, restored, graphStart);
+        }
+
+        List<StageTiming> orderedTimings = stages.keySet().stream().map(timings::get).filter(Objects::nonNull).toList();
+        return new StageResults(values, null, orderedTimings);
+    }
+
+    /**
+     * Makes a running stage fail as soon as the job is stopped.
+     * The stage body is unsubscribed, which disposes HTTP calls and interrupts blocking work.
+     */
+    private Mono<?> cancellable(Mono<?> body) {
+        if (job == null) {
+            return body;
+        }
+        return Mono.firstWithSignal(body, job.onStop().then(Mono.error(job::stoppedException)));
+    }
+
+    /**
+     * Puts the checkpointed outputs of earlier runs into the values.
+     *
+     * @return The restored stages.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<StageKey<?>> restoreCheckpoints(List<StageKey<?>> order, Map<StageKey<?>, Object> values) {
+        Set<StageKey<?>> restored = new HashSet<>();
+        if (checkpoint == null) {
+            return restored;
+        }
+        for (StageKey<?> key : order) {
+            StageCodec<Object> codec = (StageCodec<Object>) codecs.get(key);
+            if (codec == null) continue;
+            Optional<Object> value = checkpoint.restore((StageKey<Object>) key, codec);
+            if (value.isPresent()) {
+                values.put(key, value.get());
+                restored.add(key);
+            }
+        }
+        if (!restored.isEmpty()) {
+            log.info("Resuming {} from checkpointed stages: {}", jobName, restored);
+        }
+        return restored;
+    }
+
+    /**
+     * A stage runs unless it was restored, or every stage depending on it was restored (or is itself not run).
+     * Stages nothing depends on are the goals of the graph and always run unless restored.
+     */
+    private Set<StageKey<?>> stagesToRun(List<StageKey<?>> order, Set<StageKey<?>> restored) {
+        Map<StageKey<?>, List<StageKey<?>>> dependents = new HashMap<>();
+        for (StageDefinition definition : stages.values()) {
+            for (StageKey<?> dependency : definition.dependsOn()) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(definition.key());
+            }
+        }
+        Set<StageKey<?>> toRun = new HashSet<>();
+        // Reverse topological order visits every dependent before its dependencies
+        for (StageKey<?> key : order.reversed()) {
+            if (restored.contains(key)) continue;
+            List<StageKey<?>> keyDependents = dependents.getOrDefault(key, List.of());
+            if (keyDependents.isEmpty() || keyDependents.stream().anyMatch(toRun::contains)) {
+                toRun.add(key);
+            }
+        }
+        return toRun;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Void> saveCheckpoint(StageKey<?> key, Object value) {
+        StageCodec<Object> codec = (StageCodec<Object>) codecs.get(key);
+        if (checkpoint == null || codec == null) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> checkpoint.save((StageKey<Object>) key, codec, value))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private StageTiming timing(StageKey<?> key, long graphStart, long stageStart, boolean succeeded) {
+        long now = System.nanoTime();
+        return new StageTiming(key.getName(), (stageStart - graphStart) / 1_000_000, (now - stageStart) / 1_000_000, succeeded);
+    }
+
+    private void logTimings(Map<StageKey<?>, StageTiming> timings, Set<StageKey<?>> restored, long graphStart) {
+        String breakdown = stages.keySet().stream()
+            .map(key -> {
+                StageTiming timing = timings.get(key);
+                if (timing == null) return key.getName() + (restored.contains(key) ? "=restored" : "=skipped");
+                return String.format("%s=%dms@+%dms%s", key.getName(), timing.durationMillis(), timing.startOffsetMillis(),
+                    timing.succeeded() ? "" : "(failed)");
+            })
+            .collect(Collectors.joining(", "));
+        log.info("Stage timings for {} (total {}ms): {}", jobName, (System.nanoTime() - graphStart) / 1_000_000, breakdown);
+    }
+
+    private void validate() {
+        for (StageDefinition definition : stages.values()) {
+            for (StageKey<?> dependency : definition.dependsOn()) {
+                if (!stages.containsKey(dependency)) {
+                    throw new IllegalStateException("Stage '" + definition.key() + "' depends on unknown stage '" + dependency + "' in graph " + jobName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the stages so that every stage comes after its dependencies (depth-first), failing on cycles.
+     */
+    private List<StageKey<?>> topologicalOrder() {
+        List<StageKey<?>> order = new ArrayList<>();
+        Set<StageKey<?>> visited = new HashSet<>();
+        Set<StageKey<?>> inProgress = new HashSet<>();
+        for (StageKey<?> key : stages.keySet()) {
+            visit(key, visited, inProgress, order);
+        }
+        return order;
+    }
+
+    private void visit(StageKey<?> key, Set<StageKey<?>> visited, Set<StageKey<?>> inProgress, List<StageKey<?>> order) {
+        if (visited.contains(key)) return;
+        if (!inProgress.add(key)) {
+            throw new IllegalStateException("Dependency cycle detected at stage '" + key + "' in graph " + jobName);
+        }
+        for (StageKey<?> dependency : stages.get(key).dependsOn()) {
+            visit(dependency, visited, inProgress, order);
+        }
+        inProgress.remove(key);
+        visited.add(key);
+        order.add(key);
+    }
+
+    /**
+     * Body of a stage that performs blocking work.
+     */
+    @FunctionalInterface
+    public interface BlockingStage<T> {
+        T run(StageResults inputs) throws Exception;
+    }
+
+    private record StageDefinition(StageKey<?> key, List<StageKey<?>> dependsOn, Function<StageResults, Mono<?>> body) {}
+
+    private record StageFailure(StageKey<?> stage, Throwable error) {}
+
+    /**
+     * Thrown when a stage of the graph failed. The cause is the original stage error.
+     */
+    public static class StageExecutionException extends RuntimeException {
+        private final String stageName;
+
+        public StageExecutionException(String jobName, String stageName, Throwable cause) {
+            super("Stage '" + stageName + "' failed in " + jobName + ": " + cause.getMessage(), cause);
+            this.stageName = stageName;
+        }
+
+        public String getStageName() {
+            return stageName;
+        }
+    }
+}
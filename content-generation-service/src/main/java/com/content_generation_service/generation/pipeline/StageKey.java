@@ -0,0 +1,31 @@
+package com.content_generation_service.generation.pipeline;
+
+/**
+ * Typed identifier of a stage in a {@link StageGraph}.
+ * The type parameter is the type of the value the stage produces, so that
+ * dependent stages can read it back without casting.
+ * Keys are compared by identity, so declare them once (typically as constants).
+ *
+ * @param <T> The type of the stage output.
+ */
+public final class StageKey<T> {
+
+    private final String name;
+
+    private StageKey(String name) {
+        this.name = name;
+    }
+
+    public static <T> StageKey<T> of(String name) {
+        return new StageKey<>(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
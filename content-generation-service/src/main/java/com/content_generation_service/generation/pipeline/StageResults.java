@@ -0,0 +1,58 @@
+package com.content_generation_service.generation.pipeline;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read access to the outputs of completed stages.
+ * A stage only sees the outputs of the stages it declared as dependencies, which keeps
+ * the declared graph honest: reading an undeclared stage would be a hidden race.
+ */
+public class StageResults {
+
+    private static final Object NULL_VALUE = new Object();
+
+    private final Map<StageKey<?>, Object> values;
+    private final Set<StageKey<?>> visibleKeys;
+    private final List<StageTiming> timings;
+
+    StageResults(Map<StageKey<?>, Object> values, Set<StageKey<?>> visibleKeys, List<StageTiming> timings) {
+        this.values = values;
+        this.visibleKeys = visibleKeys;
+        this.timings = timings;
+    }
+
+    /**
+     * Returns the output of the given stage.
+     *
+     * @throws IllegalStateException if the stage is not visible from here or has not completed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(StageKey<T> key) {
+        if (visibleKeys != null && !visibleKeys.contains(key)) {
+            throw new IllegalStateException("Stage '" + key + "' is not a declared dependency.");
+        }
+        Object value = values.get(key);
+        if (value == null) {
+            throw new IllegalStateException("Stage '" + key + "' has not completed.");
+        }
+        return value == NULL_VALUE ? null : (T) value;
+    }
+
+    /**
+     * @return The per-stage timings of the run, in declaration order. Only populated on the final results.
+     */
+    public List<StageTiming> getTimings() {
+        return timings;
+    }
+
+    static Object wrap(Object value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
+    /**
+     * Timing of a single stage relative to the start of the graph run.
+     */
+    public record StageTiming(String stage, long startOffsetMillis, long durationMillis, boolean succeeded) {}
+}
@@ -1,14 +1,21 @@
 package com.content_generation_service.generation.service;
 
 import com.content_generation_service.client.OpenAiLlmClient;
+import com.content_generation_service.util.JsonArrayStreamSplitter;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashSet;
+import java.util.Set;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -20,19 +27,35 @@ public class CharacterDialogueEnrichmentService {
     /**
      * Enriches the given character dialogue JSON by adding relevant Google Images search queries
      * to each line of dialogue using an LLM.
+     * The LLM answer is streamed and every dialogue line is emitted as soon as its object
+     * is complete, so downstream work for early lines can start before the full answer arrives.
+     * <p>
+     * Every line is sent with its position in the dialogue as "index", which the LLM echoes back. Lines it
+     * returns with a missing, unknown or repeated index, or with a text that is not the one at that index,
+     * are dropped, so a line the LLM drops, merges or reorders never gets the queries of another line.
      *
      * @param initialDialogue The initial JSON dialogue as a JsonNode.
-     * @return A Mono emitting the enriched JsonNode with added "query_list" attributes.
+     * @return A Flux emitting the enriched dialogue lines, each with the "index" of its dialogue line and a "query_list" attribute.
      */
-    public Mono<JsonNode> enrichDialogueWithSearchQueries(JsonNode initialDialogue) {
-        String prompt = buildPrompt(initialDialogue);
-        log.debug("Sending dialogue to LLM for enrichment...");
+    public Flux<JsonNode> streamEnrichedDialogue(JsonNode initialDialogue) {
+        String prompt = buildPrompt(indexed(initialDialogue));
+        log.debug("Streaming dialogue to LLM for enrichment...");
 
-        // Delegate the API call to the dedicated client
-        return openAiLlmClient.call(prompt)
-            .flatMap(this::parseJsonString)
-            .doOnSuccess(result -> log.debug("Successfully enriched dialogue from LLM."))
-            .doOnError(e -> log.error("Failed to enrich dialogue from LLM", e));
+        return Flux.defer(() -> {
+            JsonArrayStreamSplitter splitter = new JsonArrayStreamSplitter();
+            Set<Integer> matchedLines = new HashSet<>();
+            return openAiLlmClient.stream(prompt)
+                .concatMapIterable(splitter::feed)
+                .concatMap(this::parseJsonString)
+                .filter(line -> matchesDialogue(line, initialDialogue, matchedLines))
+                .doOnComplete(() -> {
+                    if (!splitter.isArrayClosed()) {
+                        log.warn("LLM enrichment stream ended before the JSON array was closed.");
+                    }
+                });
+        })
+        .doOnComplete(() -> log.debug("Successfully enriched dialogue from LLM."))
+        .doOnError(e -> log.error("Failed to enrich dialogue from LLM", e));
     }
 
     private String buildPrompt(JsonNode dialogue) {
@@ -41,7 +64,8 @@ public class CharacterDialogueEnrichmentService {
         You are an assistant that processes JSON. Respond ONLY with the JSON content, without any commentary, explanations, or markdown formatting.
         
         Given the following JSON dialogue array, add a new attribute to each object called "query_list".
-        This attribute must be an array of strings. Each string should be a concise, relevant Google Images search query for the content of the "line".
+        This attribute must be an array of strings. Each string should be a concise, relevant Google Images search query for the content of the "text".
+        Return every object with its "index" and "text" unchanged, in the same order, without merging or splitting objects.
         
         Rules:
         - Generate 1-2 queries for explanatory lines.
@@ -52,25 +76,29 @@ public class CharacterDialogueEnrichmentService {
         Input:
         [
           {
-            "character": "Professor",
-            "line": "Quantum entanglement is a phenomenon where two particles become linked."
+            "index": 0,
+            "characterId": "professor",
+            "text": "Quantum entanglement is a phenomenon where two particles become linked."
           },
           {
-            "character": "Student",
-            "line": "Wow, that's wild."
+            "index": 1,
+            "characterId": "student",
+            "text": "Wow, that's wild."
           }
         ]
         
         Expected Output:
         [
           {
-            "character": "Professor",
-            "line": "Quantum entanglement is a phenomenon where two particles become linked.",
+            "index": 0,
+            "characterId": "professor",
+            "text": "Quantum entanglement is a phenomenon where two particles become linked.",
             "query_list": ["quantum entanglement diagram", "linked particles visualization"]
           },
           {
-            "character": "Student",
-            "line": "Wow, that's wild.",
+            "index": 1,
+            "characterId": "student",
+            "text": "Wow, that's wild.",
             "query_list": []
           }
         ]
@@ -79,6 +107,40 @@ public class CharacterDialogueEnrichmentService {
         """ + dialogue.toPrettyString();
     }
 
+    // The dialogue as sent to the LLM: every line with its position, for the LLM to echo back
+    private ArrayNode indexed(JsonNode dialogue) {
+        ArrayNode indexed = objectMapper.createArrayNode();
+        for (int i = 0; i < dialogue.size(); i++) {
+            ObjectNode line = indexed.addObject();
+            line.put("index", i);
+            line.set("characterId", dialogue.get(i).path("characterId"));
+            line.set("text", dialogue.get(i).path("text"));
+        }
+        return indexed;
+    }
+
+    private boolean matchesDialogue(JsonNode line, JsonNode dialogue, Set<Integer> matchedLines) {
+        JsonNode index = line.path("index");
+        if (!index.canConvertToInt() || index.asInt() < 0 || index.asInt() >= dialogue.size()) {
+            log.warn("Dropping an enriched line without a valid dialogue index: {}", line);
+            return false;
+        }
+        String expectedText = normalize(dialogue.get(index.asInt()).path("text").asText());
+        if (line.has("text") && !normalize(line.path("text").asText()).equals(expectedText)) {
+            log.warn("Dropping the enriched line {}: its text does not match the dialogue line", index.asInt());
+            return false;
+        }
+        if (!matchedLines.add(index.asInt())) {
+            log.warn("Dropping a repeated enriched line {}", index.asInt());
+            return false;
+        }
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return text.strip().replaceAll("\\s+", " ");
+    }
+
     /**
      * Parses the JSON string response from the LLM into a JsonNode.
      *
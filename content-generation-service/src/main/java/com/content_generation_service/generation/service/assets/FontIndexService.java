@@ -0,0 +1,179 @@
+package com.content_generation_service.generation.service.assets;
+
+import com.content_generation_service.config.AppProperties;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Indexes the fonts asset directory by family at startup, and serves each render a font directory holding
+ * only the family of its subtitle font.
+ * <p>
+ * libass hands its whole fontsdir to fontconfig, which scans (or at least stats) every font in it in each
+ * FFmpeg process. The per-family directories live on local disk, built from hard links to the asset fonts,
+ * or copies when the assets are on another file system; they keep their paths and modification times for the
+ * life of the node, so the fontconfig cache of each one stays valid and initializing the subtitle filter
+ * is close to free.
+ * <p>
+ * Fonts are looked up the way fontconfig matches them, ignoring case and blanks, by family, full or PostScript
+ * name. A font that is not among the assets gets an empty directory: fontconfig resolves it from the system
+ * fonts, exactly as it did with the whole fonts directory. If the index cannot be built, every render gets
+ * the whole fonts directory as before.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FontIndexService {
+
+    private static final Pattern FONT_FILE = Pattern.compile("(?i).+\\.(ttf|otf|ttc)");
+    private static final Pattern BLANKS = Pattern.compile("\\s+");
+    private static final String FAMILIES_DIR = "families";
+    // Family directories are named after a slug of the family, so this name never clashes with one
+    private static final String SYSTEM_FONTS_DIR = "_system";
+
+    private final AppProperties appProperties;
+    private final AssetProvider assetProvider;
+
+    private volatile Index index;
+
+    /**
+     * @param familyDirs The directory of each family, by every normalized name of its fonts.
+     * @param fonts Every asset font, by each of its normalized names, for rendering text in Java.
+     * @param systemFontsDir The empty directory given to fonts which are not among the assets.
+     */
+    private record Index(Map<String, Path> familyDirs, Map<String, Font> fonts, Path systemFontsDir) {}
+
+    @PostConstruct
+    public void index() {
+        AppProperties.FontIndex config = appProperties.getFontIndex();
+        if (!config.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            Path fontsDir = assetProvider.getAssetDir(appProperties.getAssets().getFonts());
+            Path root = Paths.get(config.getDir()).resolve(FAMILIES_DIR);
+            // Rebuilt from scratch, so fonts removed from (or replaced in) the assets do not linger
+            FileSystemUtils.deleteRecursively(root);
+            Files.createDirectories(root);
+
+            Map<String, Set<Path>> familyFiles = new LinkedHashMap<>();
+            Map<String, String> familyByName = new HashMap<>();
+            Map<String, Font> fontsByName = new HashMap<>();
+            for (Path file : fontFiles(fontsDir)) {
+                Font[] fonts;
+                try {
+                    fonts = Font.createFonts(file.toFile());
+                } catch (FontFormatException | IOException e) {
+                    log.warn("Skipping unreadable font {}: {}", file.getFileName(), e.getMessage());
+                    continue;
+                }
+                for (Font font : fonts) {
+                    String family = font.getFamily(Locale.ROOT);
+                    familyFiles.computeIfAbsent(family, f -> new LinkedHashSet<>()).add(file);
+                    for (String name : List.of(family, font.getFontName(Locale.ROOT), font.getPSName())) {
+                        familyByName.putIfAbsent(normalize(name), family);
+                        fontsByName.putIfAbsent(normalize(name), font);
+                    }
+                }
+            }
+
+            Map<String, Path> familyDirPaths = new HashMap<>();
+            for (Map.Entry<String, Set<Path>> family : familyFiles.entrySet()) {
+                Path familyDir = Files.createDirectories(root.resolve(slug(family.getKey(), familyDirPaths.size())));
+                for (Path file : family.getValue()) {
+                    link(file, familyDir.resolve(file.getFileName().toString()));
+                }
+                familyDirPaths.put(family.getKey(), familyDir);
+            }
+            Map<String, Path> familyDirs = new HashMap<>();
+            familyByName.forEach((name, family) -> familyDirs.put(name, familyDirPaths.get(family)));
+
+            index = new Index(Map.copyOf(familyDirs), Map.copyOf(fontsByName), Files.createDirectories(root.resolve(SYSTEM_FONTS_DIR)));
+            log.info("Indexed {} font families from {} in {} ms", familyFiles.size(), fontsDir,
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not index the fonts, renders get the whole fonts directory: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param fontName The font requested for the subtitles, as written in their ASS style.
+     * @return The directory to pass as the fontsdir of the subtitles.
+     * @throws IOException if the fonts are not indexed and the fonts asset directory is missing.
+     */
+    public Path fontDir(String fontName) throws IOException {
+        Index current = index;
+        if (!appProperties.getFontIndex().isEnabled() || current == null) {
+            return assetProvider.getAssetDir(appProperties.getAssets().getFonts());
+        }
+        Path familyDir = fontName == null ? null : current.familyDirs().get(normalize(fontName));
+        return familyDir != null ? familyDir : current.systemFontsDir();
+    }
+
+    /**
+     * @param fontName The font requested for the subtitles.
+     * @return The asset font of that name, at size 1, or empty if it is not among the assets.
+     */
+    public Optional<Font> font(String fontName) {
+        Index current = index;
+        if (current == null || fontName == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(current.fonts().get(normalize(fontName)));
+    }
+
+    private static List<Path> fontFiles(Path fontsDir) throws IOException {
+        try (Stream<Path> paths = Files.walk(fontsDir)) {
+            return paths
+                .filter(Files::isRegularFile)
+                .filter(path -> FONT_FILE.matcher(path.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+
+    // A hard link costs nothing, but cannot cross file systems (e.g. assets on a network mount). A copy keeps
+    // the modification time of the asset, so render fingerprints stay the same across restarts and nodes
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            log.debug("Font {} is already in {}", target.getFileName(), target.getParent());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static String normalize(String fontName) {
+        return BLANKS.matcher(fontName).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static String slug(String family, int index) {
+        String slug = family.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+        // The index keeps families differing only in punctuation apart
+        return (slug.isEmpty() ? "font" : slug) + "-" + index;
+    }
+}
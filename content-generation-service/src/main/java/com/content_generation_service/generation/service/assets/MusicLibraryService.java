@@ -0,0 +1,128 @@
+package com.content_generation_service.generation.service.assets;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.audio.WavFile;
+import com.content_generation_service.generation.service.visual.FfmpegRunner;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Decodes the background music assets at startup into loopable PCM files on local disk, so that renders
+ * mix music without decoding a compressed track in every job.
+ * <p>
+ * A track is identified by the name of its asset file without the extension (e.g. "lofi1" for "lofi1.mp3"),
+ * the value of the backgroundMusicId of the templates. Every track is decoded once to 44.1 kHz stereo 16-bit
+ * PCM, the format of the final mix, with its edges faded so the render can loop it without a click. Decoded
+ * files are reused across restarts as long as they are newer than their asset. A track that cannot be decoded
+ * is served as its compressed asset, which the render then decodes itself.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MusicLibraryService {
+
+    public static final String NO_MUSIC = "none";
+
+    private static final Pattern MUSIC_FILE = Pattern.compile("(?i)(.+)\\.(mp3|m4a|aac|ogg|opus|flac|wav)");
+    private static final double LOOP_FADE_SECONDS = 0.03;
+
+    private final AppProperties appProperties;
+    private final AssetProvider assetProvider;
+
+    private volatile Map<String, Path> tracks = Map.of();
+
+    @PostConstruct
+    public void decode() {
+        long start = System.nanoTime();
+        Path musicDir;
+        try {
+            musicDir = assetProvider.getAssetDir(appProperties.getAssets().getMusic());
+        } catch (IOException e) {
+            log.info("No background music assets: {}", e.getMessage());
+            return;
+        }
+        try {
+            Path cacheDir = Files.createDirectories(Paths.get(appProperties.getMusic().getDir()));
+            Map<String, Path> decoded = new HashMap<>();
+            for (Path file : musicFiles(musicDir)) {
+                Matcher matcher = MUSIC_FILE.matcher(file.getFileName().toString());
+                matcher.matches();
+                String id = matcher.group(1);
+                decoded.put(id, decodeTrack(file, cacheDir.resolve(id + ".wav")));
+            }
+            tracks = Map.copyOf(decoded);
+            log.info("Prepared {} background music tracks from {} in {} ms", decoded.size(), musicDir,
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not prepare the background music, renders go without it: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param musicId The backgroundMusicId of the template, may be null.
+     * @return The loopable track to mix under the narration, or empty for "none" and for unknown tracks.
+     */
+    public Optional<Path> track(String musicId) {
+        if (musicId == null || musicId.isBlank() || NO_MUSIC.equals(musicId)) {
+            return Optional.empty();
+        }
+        Path track = tracks.get(musicId);
+        if (track == null) {
+            log.warn("Background music '{}' is not among the music assets, rendering without music", musicId);
+        }
+        return Optional.ofNullable(track);
+    }
+
+    private Path decodeTrack(Path source, Path target) {
+        try {
+            if (Files.exists(target) && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(source)) >= 0) {
+                return target;
+            }
+        } catch (IOException e) {
+            log.debug("Could not compare {} with its decoded copy: {}", source.getFileName(), e.getMessage());
+        }
+        Path partial = target.resolveSibling(target.getFileName() + ".partial.wav");
+        try {
+            FfmpegRunner.run(List.of("ffmpeg", "-v", "error", "-i", source.toAbsolutePath().toString(), "-vn",
+                "-ac", "2", "-ar", "44100", "-c:a", "pcm_s16le", "-y", partial.toAbsolutePath().toString()), partial, -1, null);
+            WavFile.fadeEdges(partial, LOOP_FADE_SECONDS);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Could not decode background music {}, renders decode it themselves: {}", source.getFileName(), e.getMessage());
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // A leftover partial file is overwritten by the next decode
+            }
+            return source;
+        }
+    }
+
+    private static List<Path> musicFiles(Path musicDir) throws IOException {
+        try (Stream<Path> paths = Files.list(musicDir)) {
+            return paths
+                .filter(Files::isRegularFile)
+                .filter(path -> MUSIC_FILE.matcher(path.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+}
@@ -7,16 +7,22 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
 import org.springframework.stereotype.Service;
 
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.NarrationSegment;
 import com.content_generation_service.generation.model.WordTiming;
 import com.content_generation_service.generation.service.visual.MediaMetadataService;
@@ -28,6 +34,66 @@ import com.content_generation_service.util.ResourceHelperService;
 public class AudioService {
 
     private final ResourceHelperService resourceHelperService;
+    private final AppProperties appProperties;
+
+    /**
+     * Synthesizes a text that may exceed what a single TTS request handles well.
+     * The text is split at sentence boundaries, the chunks are synthesized in parallel and
+     * stitched back together in order, with the word timings shifted by each chunk's offset.
+     * Short texts go straight to the provider.
+     *
+     * @param provider The TTS provider to use for every chunk.
+     * @param text The text to narrate.
+     * @param voiceId The provider-specific voice identifier.
+     * @param generateTimings If true, word timings are extracted for every chunk.
+     * @return A Mono emitting a single NarrationSegment covering the whole text.
+     */
+    public Mono<NarrationSegment> generateChunked(TextToSpeechProvider provider, String text, String voiceId, boolean generateTimings) {
+        return generateChunked(provider, List.of(text), voiceId, generateTimings).map(segments -> segments.get(0));
+    }
+
+    /**
+     * Synthesizes several texts as one batch: every text is chunked as in
+     * {@link #generateChunked(TextToSpeechProvider, String, String, boolean)}, all chunks are handed
+     * to the provider together (so it can e.g. transcribe them in a single call), and the chunks
+     * are then stitched back into one NarrationSegment per text.
+     *
+     * @return A Mono emitting one NarrationSegment per text, in the order of the texts.
+     */
+    public Mono<List<NarrationSegment>> generateChunked(TextToSpeechProvider provider, List<String> texts, String voiceId, boolean generateTimings) {
+        AppProperties.Chunking chunking = appProperties.getTts().getChunking();
+        List<List<String>> chunksPerText = texts.stream()
+            .map(text -> {
+                List<String> chunks = TextChunker.split(text, chunking.getMaxChars());
+                // Let the provider deal with (and report) a blank text as before
+                return chunks.isEmpty() ? List.of(text) : chunks;
+            })
+            .toList();
+        List<String> allChunks = chunksPerText.stream().flatMap(List::stream).toList();
+        if (allChunks.size() > texts.size()) {
+            log.info("Splitting {} texts into {} TTS chunks", texts.size(), allChunks.size());
+        }
+
+        // Track finished chunks so their files are not leaked if another chunk fails
+        List<NarrationSegment> generated = new CopyOnWriteArrayList<>();
+        return provider.generateBatch(allChunks, voiceId, generateTimings, chunking.getMaxConcurrency())
+            .doOnNext(generated::add)
+            .collectList()
+            // combineAudioTracks runs FFmpeg synchronously, keep it off the HTTP event loop
+            .publishOn(Schedulers.boundedElastic())
+            .flatMap(segments -> {
+                List<List<NarrationSegment>> segmentsPerText = new ArrayList<>();
+                int index = 0;
+                for (List<String> chunks : chunksPerText) {
+                    segmentsPerText.add(segments.subList(index, index + chunks.size()));
+                    index += chunks.size();
+                }
+                return Flux.fromIterable(segmentsPerText)
+                    .concatMap(group -> group.size() == 1 ? Mono.just(group.get(0)) : combineAudioTracks(group))
+                    .collectList();
+            })
+            .doOnError(e -> generated.forEach(segment -> resourceHelperService.deleteTemporaryFile(segment.getAudioFilePath())));
+    }
 
     /**
      * Adjusts the start and end times of a list of WordTiming objects by a given offset.
@@ -49,8 +115,111 @@ public class AudioService {
     }
 
     /**
-     * Combines multiple narration segments into a single audio track using FFmpeg and adjusts timestamps.
-     * This method is designed to be called by subclasses with a list of generated narration segments.
+     * Splits word timings of a batch transcription back into the segments the batch was built from.
+     * A word belongs to the segment whose time slot (its audio plus half of the surrounding gaps)
+     * contains the middle of the word; its times are then made relative to the segment and clamped to it.
+     *
+     * @param timings The word timings of the whole batch.
+     * @param segmentStarts The start of every segment within the batch, in seconds.
+     * @param segmentDurations The duration of every segment, in seconds.
+     * @return One list of word timings per segment, relative to the start of that segment.
+     */
+    public List<List<WordTiming>> splitTimingsBySegment(List<WordTiming> timings, List<Double> segmentStarts, List<Double> segmentDurations) {
+        List<List<WordTiming>> result = new ArrayList<>();
+        segmentStarts.forEach(start -> result.add(new ArrayList<>()));
+
+        int segment = 0;
+        for (WordTiming timing : timings) {
+            double middle = (timing.getStartTimeSeconds() + timing.getEndTimeSeconds()) / 2.0;
+            // Timings are ordered, so the segment index only moves forward
+            while (segment < segmentStarts.size() - 1 && middle >= slotEnd(segment, segmentStarts, segmentDurations)) {
+                segment++;
+            }
+            double start = segmentStarts.get(segment);
+            double duration = segmentDurations.get(segment);
+            double relativeStart = Math.min(Math.max(timing.getStartTimeSeconds() - start, 0.0), duration);
+            double relativeEnd = Math.min(Math.max(timing.getEndTimeSeconds() - start, relativeStart), duration);
+            result.get(segment).add(new WordTiming(timing.getWord(), relativeStart, relativeEnd));
+        }
+        return result;
+    }
+
+    private double slotEnd(int segment, List<Double> segmentStarts, List<Double> segmentDurations) {
+        double audioEnd = segmentStarts.get(segment) + segmentDurations.get(segment);
+        return (audioEnd + segmentStarts.get(segment + 1)) / 2.0;
+    }
+
+    /**
+     * Concatenates audio files into a single compact file meant only for transcription:
+     * 16 kHz mono Opus, with a fixed silence gap after every file. Each file occupies exactly
+     * its duration plus the gap, so the start offsets of the inputs are known up front.
+     *
+     * @param audioFiles The audio files to concatenate, in order.
+     * @param durations The duration of every audio file, in seconds.
+     * @param gapSeconds The silence inserted after every file.
+     * @param bitrate The Opus bitrate (e.g. "24k").
+     * @return The path to the concatenated temporary file. The caller is responsible for deleting it.
+     */
+    public Path concatenateForTranscription(List<Path> audioFiles, List<Double> durations, double gapSeconds, String bitrate) throws IOException, InterruptedException {
+        Path batchPath = Files.createTempFile("transcription-batch-", ".ogg");
+
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        audioFiles.forEach(path -> {
+            command.add("-i");
+            command.add(path.toAbsolutePath().toString());
+        });
+        StringBuilder filter = new StringBuilder();
+        for (int i = 0; i < audioFiles.size(); i++) {
+            String slot = String.format(Locale.ROOT, "%.3f", durations.get(i) + gapSeconds);
+            filter.append("[").append(i).append(":a]aresample=16000,aformat=channel_layouts=mono,")
+                .append("apad=whole_dur=").append(slot).append(",atrim=end=").append(slot).append("[s").append(i).append("];");
+        }
+        for (int i = 0; i < audioFiles.size(); i++) {
+            filter.append("[s").append(i).append("]");
+        }
+        filter.append("concat=n=").append(audioFiles.size()).append(":v=0:a=1[a]");
+        command.add("-filter_complex");
+        command.add(filter.toString());
+        command.add("-map");
+        command.add("[a]");
+        command.add("-c:a");
+        command.add("libopus");
+        command.add("-b:a");
+        command.add(bitrate);
+        command.add("-y");
+        command.add(batchPath.toAbsolutePath().toString());
+
+        log.info("Executing FFmpeg command: {}", String.join(" ", command));
+        try {
+            runFfmpeg(command);
+        } catch (IOException | InterruptedException e) {
+            resourceHelperService.deleteTemporaryFile(batchPath);
+            throw e;
+        }
+        return batchPath;
+    }
+
+    private void runFfmpeg(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).start();
+        int exitCode;
+        try (JobContext.Scope ignored = JobContext.track(process);
+             BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+            errorReader.lines().forEach(log::debug);
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+        if (exitCode != 0) {
+            throw new IOException("FFmpeg process exited with non-zero code: " + exitCode);
+        }
+    }
+
+    /**
+     * Combines multiple narration segments into a single uncompressed audio track and adjusts timestamps.
+     * PCM WAV segments of one encoding are joined by copying their samples; anything else is decoded
+     * by FFmpeg into PCM, so the narration is only compressed once, by the final render.
      *
      * @param narrationSegments A list of NarrationSegment objects to be combined in order.
      * @return A Mono emitting the final, combined NarrationSegment.
@@ -66,45 +235,23 @@ public class AudioService {
 
         Path finalAudioPath;
         try {
-            finalAudioPath = Files.createTempFile("combined-narration-", ".mp3");
+            finalAudioPath = Files.createTempFile("combined-narration-", ".wav");
         } catch (IOException e) {
             log.error("Failed to create temporary file for final narration", e);
             return Mono.error(e);
         }
 
-        // Build FFmpeg command
-        List<String> command = new ArrayList<>();
-        command.add("ffmpeg");
-        audioFiles.forEach(path -> {
-            command.add("-i");
-            command.add(path.toAbsolutePath().toString());
-        });
-        command.add("-filter_complex");
-        String filter = audioFiles.stream()
-                .map(path -> "[" + audioFiles.indexOf(path) + ":a]")
-                .collect(Collectors.joining()) + "concat=n=" + audioFiles.size() + ":v=0:a=1[a]";
-        command.add(filter);
-        command.add("-map");
-        command.add("[a]");
-        command.add("-y");
-        command.add(finalAudioPath.toAbsolutePath().toString());
-
-        log.info("Executing FFmpeg command: {}", String.join(" ", command));
-
-        // Execute the command
         try {
-            Process process = new ProcessBuilder(command).start();
-            try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                errorReader.lines().forEach(log::debug);
+            if (WavFile.concat(audioFiles, finalAudioPath)) {
+                log.info("Joined {} PCM narration segments at: {}", audioFiles.size(), finalAudioPath);
+            } else {
+                concatenateToPcm(audioFiles, finalAudioPath);
+                log.info("FFmpeg successfully created combined audio at: {}", finalAudioPath);
             }
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                return Mono.error(new IOException("FFmpeg process exited with non-zero code: " + exitCode));
-            }
-            log.info("FFmpeg successfully created combined audio at: {}", finalAudioPath);
         } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Failed to execute FFmpeg command", e);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.error("Failed to combine narration segments", e);
+            resourceHelperService.deleteTemporaryFile(finalAudioPath);
             return Mono.error(e);
         }
 
@@ -125,4 +272,30 @@ public class AudioService {
         // Return a new NarrationSegment representing the combined result
         return Mono.just(new NarrationSegment(finalAudioPath, currentOffset, combinedTimings));
     }
+
+    /**
+     * Concatenates audio files of any format into a 16-bit PCM WAV file with FFmpeg.
+     */
+    private void concatenateToPcm(List<Path> audioFiles, Path finalAudioPath) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        audioFiles.forEach(path -> {
+            command.add("-i");
+            command.add(path.toAbsolutePath().toString());
+        });
+        command.add("-filter_complex");
+        String filter = audioFiles.stream()
+                .map(path -> "[" + audioFiles.indexOf(path) + ":a]")
+                .collect(Collectors.joining()) + "concat=n=" + audioFiles.size() + ":v=0:a=1[a]";
+        command.add(filter);
+        command.add("-map");
+        command.add("[a]");
+        command.add("-c:a");
+        command.add("pcm_s16le");
+        command.add("-y");
+        command.add(finalAudioPath.toAbsolutePath().toString());
+
+        log.info("Executing FFmpeg command: {}", String.join(" ", command));
+        runFfmpeg(command);
+    }
 }
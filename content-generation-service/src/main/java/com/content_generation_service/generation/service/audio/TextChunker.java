@@ -0,0 +1,86 @@
+package com.content_generation_service.generation.service.audio;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits long texts into chunks that can be synthesized independently.
+ * Chunks end at sentence boundaries whenever possible, so every TTS request gets
+ * complete sentences and the stitched narration keeps a natural prosody.
+ * A single sentence longer than the limit is split at word boundaries.
+ */
+public final class TextChunker {
+
+    private TextChunker() {
+    }
+
+    /**
+     * @param text The text to split.
+     * @param maxChars The maximum number of characters per chunk.
+     * @return The non-blank chunks, in order. A text within the limit is returned as a single chunk.
+     */
+    public static List<String> split(String text, int maxChars) {
+        if (maxChars <= 0) {
+            throw new IllegalArgumentException("maxChars must be positive");
+        }
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return chunks;
+        }
+        String trimmed = text.strip();
+        if (trimmed.length() <= maxChars) {
+            chunks.add(trimmed);
+            return chunks;
+        }
+
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(trimmed);
+        StringBuilder current = new StringBuilder();
+        int start = sentences.first();
+        for (int end = sentences.next(); end != BreakIterator.DONE; start = end, end = sentences.next()) {
+            String sentence = trimmed.substring(start, end).strip();
+            if (sentence.isEmpty()) continue;
+
+            if (sentence.length() > maxChars) {
+                flush(current, chunks);
+                splitLongSentence(sentence, maxChars, chunks);
+            } else if (current.length() + sentence.length() + 1 > maxChars) {
+                flush(current, chunks);
+                current.append(sentence);
+            } else {
+                if (!current.isEmpty()) current.append(' ');
+                current.append(sentence);
+            }
+        }
+        flush(current, chunks);
+        return chunks;
+    }
+
+    private static void splitLongSentence(String sentence, int maxChars, List<String> chunks) {
+        StringBuilder current = new StringBuilder();
+        for (String word : sentence.split("\\s+")) {
+            // A single word longer than the limit is hard-cut, there is nothing better to do with it
+            while (word.length() > maxChars) {
+                flush(current, chunks);
+                chunks.add(word.substring(0, maxChars));
+                word = word.substring(maxChars);
+            }
+            if (word.isEmpty()) continue;
+            if (current.length() + word.length() + 1 > maxChars) {
+                flush(current, chunks);
+            }
+            if (!current.isEmpty()) current.append(' ');
+            current.append(word);
+        }
+        flush(current, chunks);
+    }
+
+    private static void flush(StringBuilder current, List<String> chunks) {
+        if (!current.isEmpty()) {
+            chunks.add(current.toString());
+            current.setLength(0);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.content_generation_service.generation.service.audio;
 
 import com.content_generation_service.generation.model.NarrationSegment;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * An interface representing a provider for Text-to-Speech services.
  * This abstraction allows for easily swapping different TTS APIs (OpenAI, ElevenLabs, etc.).
@@ -19,6 +22,22 @@ public interface TextToSpeechProvider {
      */
     Mono<NarrationSegment> generate(String text, String voiceId, boolean generateTimings);
 
+    /**
+     * Generates one segment of audio per text, in order.
+     * Providers whose timings come from a separate transcription step can override this
+     * to transcribe all the generated audio at once.
+     *
+     * @param texts The texts to narrate.
+     * @param voiceId The identifier for the voice to use (specific to the provider).
+     * @param generateTimings If true, perform the extra step of extracting word-level timings.
+     * @param maxConcurrency The maximum number of texts being synthesized at the same time.
+     * @return A Flux emitting one NarrationSegment per text, in the order of the texts.
+     */
+    default Flux<NarrationSegment> generateBatch(List<String> texts, String voiceId, boolean generateTimings, int maxConcurrency) {
+        return Flux.fromIterable(texts)
+            .flatMapSequential(text -> generate(text, voiceId, generateTimings), maxConcurrency);
+    }
+
     /**
      * Indicates which provider this implementation represents (e.g., "openai").
      * @return The unique key for this provider.
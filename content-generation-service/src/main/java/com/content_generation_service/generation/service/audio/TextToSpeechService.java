@@ -1,5 +1,8 @@
 package com.content_generation_service.generation.service.audio;
 
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.audio.resilience.ResilientTextToSpeechProvider;
+
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -22,10 +25,13 @@ public class TextToSpeechService {
 
     /**
      * Constructs the service by creating a map of available TTS providers.
+     * Every provider is wrapped with hedging and a circuit breaker, so callers should obtain
+     * providers through {@link #getProvider(String)} rather than injecting them directly.
      * @param providers A list of all beans implementing TextToSpeechProvider, injected by Spring.
      */
-    protected TextToSpeechService(List<TextToSpeechProvider> providers) {
+    protected TextToSpeechService(List<TextToSpeechProvider> providers, AppProperties appProperties) {
         this.providerMap = providers.stream()
+                .map(provider -> (TextToSpeechProvider) new ResilientTextToSpeechProvider(provider, appProperties.getTts().getResilience()))
                 .collect(Collectors.toMap(TextToSpeechProvider::getProviderId, Function.identity()));
         log.info("Initialized TextToSpeechService with providers: {}", providerMap.keySet());
     }
@@ -2,6 +2,7 @@ package com.content_generation_service.generation.service.audio;
 
 import com.content_generation_service.generation.model.NarrationSegment;
 import com.content_generation_service.generation.model.WordTiming;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.nio.file.Path;
@@ -27,6 +28,39 @@ public interface TranscriptionProvider {
      */
     Mono<NarrationSegment> getNarrationSegmentFromAudioFile(Path audioFile, boolean generateTimings);
 
+    /**
+     * Processes several audio files at once, returning one NarrationSegment per file, in order.
+     * Implementations backed by a remote API can override this to transcribe all files in a single call.
+     */
+    default Mono<List<NarrationSegment>> getNarrationSegmentsFromAudioFiles(List<Path> audioFiles, boolean generateTimings) {
+        return Flux.fromIterable(audioFiles)
+            .flatMapSequential(audioFile -> getNarrationSegmentFromAudioFile(audioFile, generateTimings))
+            .collectList();
+    }
+
+    /**
+     * Same as {@link #getNarrationSegmentFromAudioFile(Path, boolean)}, for callers that know the text spoken in the file.
+     * Providers that align a known text instead of recognizing speech need this variant.
+     */
+    default Mono<NarrationSegment> getNarrationSegmentFromAudioFile(Path audioFile, String spokenText, boolean generateTimings) {
+        return getNarrationSegmentFromAudioFile(audioFile, generateTimings);
+    }
+
+    /**
+     * Same as {@link #getNarrationSegmentsFromAudioFiles(List, boolean)}, with the text spoken in every file.
+     */
+    default Mono<List<NarrationSegment>> getNarrationSegmentsFromAudioFiles(List<Path> audioFiles, List<String> spokenTexts, boolean generateTimings) {
+        return getNarrationSegmentsFromAudioFiles(audioFiles, generateTimings);
+    }
+
+    /**
+     * Whether this provider can only produce timings through the text-aware methods. Callers that cannot
+     * supply the spoken text must check this when they are created and refuse such a provider.
+     */
+    default boolean requiresSpokenText() {
+        return false;
+    }
+
     /**
      * Indicates which provider this implementation represents (e.g., "openai").
      * @return The unique key for this provider.
@@ -0,0 +1,237 @@
+package com.content_generation_service.generation.service.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Reads and writes the RIFF/WAVE container of the uncompressed narration intermediates.
+ * Narration stays PCM from the TTS provider up to the final render, so its duration can be read
+ * exactly from the header and narration chunks can be joined by copying bytes instead of re-encoding.
+ */
+public final class WavFile {
+
+    /** The size of the canonical header written by {@link #writePcmHeader}, where the samples start. */
+    public static final int HEADER_SIZE = 44;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private WavFile() {
+    }
+
+    /**
+     * The encoding and the location of the samples of a WAV file.
+     *
+     * @param dataOffset The position of the first sample byte in the file.
+     * @param dataSize The number of sample bytes.
+     */
+    public record Format(int audioFormat, int channels, int sampleRate, int bitsPerSample, int blockAlign, long dataOffset, long dataSize) {
+
+        public double durationSeconds() {
+            return (double) (dataSize / blockAlign) / sampleRate;
+        }
+
+        boolean sameEncodingAs(Format other) {
+            return audioFormat == other.audioFormat && channels == other.channels
+                && sampleRate == other.sampleRate && bitsPerSample == other.bitsPerSample;
+        }
+    }
+
+    public static boolean isWav(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+
+    /**
+     * Turns a file holding a {@link #HEADER_SIZE}-byte gap followed by raw little-endian PCM samples
+     * into a valid WAV file, by writing the header sized after the samples actually present.
+     */
+    public static void writePcmHeader(Path file, int sampleRate, int channels, int bitsPerSample) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long dataSize = channel.size() - HEADER_SIZE;
+            if (dataSize < 0) {
+                throw new IOException("File is shorter than a WAV header: " + file);
+            }
+            channel.write(header(sampleRate, channels, bitsPerSample, dataSize), 0);
+        }
+    }
+
+    /**
+     * Reads the format and the sample location of a WAV file. Headers written by streaming encoders,
+     * whose data size is a placeholder, are sized after the length of the file.
+     *
+     * @return The format, or empty if the file is not a readable PCM or float WAV file.
+     */
+    public static Optional<Format> readFormat(Path file) {
+        if (!isWav(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer riff = read(channel, 0, 12);
+            if (riff == null || riff.getInt(0) != fourCc("RIFF") || riff.getInt(8) != fourCc("WAVE")) {
+                return Optional.empty();
+            }
+
+            ByteBuffer fmt = null;
+            long position = 12;
+            ByteBuffer chunk;
+            while ((chunk = read(channel, position, 8)) != null) {
+                int id = chunk.getInt(0);
+                long size = Integer.toUnsignedLong(chunk.getInt(4));
+                if (id == fourCc("fmt ")) {
+                    fmt = read(channel, position + 8, 16);
+                } else if (id == fourCc("data")) {
+                    if (fmt == null) {
+                        return Optional.empty();
+                    }
+                    long dataOffset = position + 8;
+                    long available = channel.size() - dataOffset;
+                    long dataSize = size == 0 || size > available ? available : size;
+                    return format(fmt, dataOffset, dataSize);
+                }
+                // Chunks are padded to an even size
+                position += 8 + size + (size & 1);
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return The exact duration of a WAV file, or empty if it is not one {@link #readFormat} can read.
+     */
+    public static OptionalDouble durationSeconds(Path file) {
+        return readFormat(file).map(format -> OptionalDouble.of(format.durationSeconds())).orElse(OptionalDouble.empty());
+    }
+
+    /**
+     * Joins PCM WAV files sharing one encoding by copying their samples after a single header.
+     *
+     * @return False, with nothing written, if an input is not a PCM WAV file or the encodings differ.
+     */
+    public static boolean concat(List<Path> inputs, Path output) throws IOException {
+        List<Format> formats = new ArrayList<>();
+        for (Path input : inputs) {
+            Optional<Format> format = readFormat(input);
+            if (format.isEmpty() || format.get().audioFormat() != FORMAT_PCM
+                    || (!formats.isEmpty() && !formats.get(0).sameEncodingAs(format.get()))) {
+                return false;
+            }
+            formats.add(format.get());
+        }
+        if (formats.isEmpty()) {
+            return false;
+        }
+
+        Format first = formats.get(0);
+        long dataSize = formats.stream().mapToLong(Format::dataSize).sum();
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = header(first.sampleRate(), first.channels(), first.bitsPerSample(), dataSize);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                try (FileChannel in = FileChannel.open(inputs.get(i), StandardOpenOption.READ)) {
+                    long position = formats.get(i).dataOffset();
+                    long end = position + formats.get(i).dataSize();
+                    while (position < end) {
+                        position += in.transferTo(position, end - position, out);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fades a 16-bit PCM WAV file in and out over its first and last samples, in place, so that it
+     * loops without a click where its end meets its start.
+     *
+     * @throws IOException if the file is not a 16-bit PCM WAV file.
+     */
+    public static void fadeEdges(Path file, double fadeSeconds) throws IOException {
+        Format format = readFormat(file)
+            .filter(f -> f.audioFormat() == FORMAT_PCM && f.bitsPerSample() == 16)
+            .orElseThrow(() -> new IOException("Not a 16-bit PCM WAV file: " + file));
+        long totalFrames = format.dataSize() / format.blockAlign();
+        int fadeFrames = (int) Math.min(Math.round(fadeSeconds * format.sampleRate()), totalFrames / 2);
+        if (fadeFrames == 0) {
+            return;
+        }
+        long tailOffset = format.dataOffset() + (totalFrames - fadeFrames) * format.blockAlign();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            fade(channel, format, format.dataOffset(), fadeFrames, true);
+            fade(channel, format, tailOffset, fadeFrames, false);
+        }
+    }
+
+    private static void fade(FileChannel channel, Format format, long offset, int frames, boolean in) throws IOException {
+        ByteBuffer samples = read(channel, offset, frames * format.blockAlign());
+        if (samples == null) {
+            throw new IOException("WAV file is shorter than its header says");
+        }
+        for (int frame = 0; frame < frames; frame++) {
+            double gain = (double) (in ? frame : frames - 1 - frame) / frames;
+            for (int channelIndex = 0; channelIndex < format.channels(); channelIndex++) {
+                int position = frame * format.blockAlign() + channelIndex * 2;
+                samples.putShort(position, (short) Math.round(samples.getShort(position) * gain));
+            }
+        }
+        samples.rewind();
+        while (samples.hasRemaining()) {
+            channel.write(samples, offset + samples.position());
+        }
+    }
+
+    private static Optional<Format> format(ByteBuffer fmt, long dataOffset, long dataSize) {
+        int audioFormat = Short.toUnsignedInt(fmt.getShort(0));
+        int channels = Short.toUnsignedInt(fmt.getShort(2));
+        int sampleRate = fmt.getInt(4);
+        int blockAlign = Short.toUnsignedInt(fmt.getShort(12));
+        int bitsPerSample = Short.toUnsignedInt(fmt.getShort(14));
+        if (audioFormat == FORMAT_EXTENSIBLE) {
+            // Only plain integer samples are expected here; the subformat is not inspected
+            audioFormat = FORMAT_PCM;
+        }
+        if ((audioFormat != FORMAT_PCM && audioFormat != FORMAT_FLOAT) || channels == 0 || sampleRate <= 0 || blockAlign == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new Format(audioFormat, channels, sampleRate, bitsPerSample, blockAlign, dataOffset, dataSize));
+    }
+
+    private static ByteBuffer header(int sampleRate, int channels, int bitsPerSample, long dataSize) {
+        int blockAlign = channels * bitsPerSample / 8;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(fourCc("RIFF")).putInt((int) (36 + dataSize)).putInt(fourCc("WAVE"));
+        header.putInt(fourCc("fmt ")).putInt(16).putShort((short) FORMAT_PCM).putShort((short) channels)
+            .putInt(sampleRate).putInt(sampleRate * blockAlign).putShort((short) blockAlign).putShort((short) bitsPerSample);
+        header.putInt(fourCc("data")).putInt((int) dataSize);
+        return header.flip();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer;
+    }
+
+    // Chunk ids as read by a little-endian buffer
+    private static int fourCc(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+}
@@ -0,0 +1,130 @@
+package com.content_generation_service.generation.service.audio.resilience;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Count-based circuit breaker for one provider.
+ * <p>
+ * CLOSED: calls flow and their outcomes are kept in a sliding window. When the failure rate
+ * of the window reaches the threshold, the circuit OPENs and calls fail fast.
+ * After the open period a single probe call is let through (HALF_OPEN): its success closes
+ * the circuit again, its failure re-opens it for another period.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final boolean[] outcomes; // true = failure
+    private int next = 0;
+    private int count = 0;
+    private int failures = 0;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private boolean probeInFlight = false;
+
+    public CircuitBreaker(String name, double failureRateThreshold, int windowSize, int minimumCalls, Duration openDuration) {
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = openDuration.toNanos();
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+    }
+
+    /**
+     * @return true if a call may be made now. Every permitted call must report its outcome.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                log.info("Circuit for provider '{}' is half-open, letting a probe call through.", name);
+                // fall through to the probe handling
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.OPEN) {
+            return; // a call started before the circuit opened
+        }
+        if (state == State.HALF_OPEN) {
+            log.info("Probe call succeeded, closing circuit for provider '{}'.", name);
+            state = State.CLOSED;
+            probeInFlight = false;
+            resetWindow();
+            return;
+        }
+        recordOutcome(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.OPEN) {
+            return; // a call started before the circuit opened
+        }
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            open("probe call failed");
+            return;
+        }
+        recordOutcome(true);
+        if (state == State.CLOSED && count >= minimumCalls && (double) failures / count >= failureRateThreshold) {
+            open(String.format("%d of the last %d calls failed", failures, count));
+        }
+    }
+
+    /**
+     * Reports a permitted call that ended without a meaningful outcome (e.g. it was cancelled).
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        resetWindow();
+        log.warn("Opening circuit for provider '{}' for {}s: {}", name, openNanos / 1_000_000_000, reason);
+    }
+
+    private void recordOutcome(boolean failure) {
+        if (count == outcomes.length) {
+            if (outcomes[next]) failures--;
+        } else {
+            count++;
+        }
+        outcomes[next] = failure;
+        if (failure) failures++;
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void resetWindow() {
+        next = 0;
+        count = 0;
+        failures = 0;
+    }
+}
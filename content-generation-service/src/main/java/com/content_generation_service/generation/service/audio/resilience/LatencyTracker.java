@@ -0,0 +1,43 @@
+package com.content_generation_service.generation.service.audio.resilience;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent call latencies of a provider in a ring buffer and reports percentiles.
+ */
+public class LatencyTracker {
+
+    private final long[] samplesNanos;
+    private final int minSamples;
+    private int next = 0;
+    private int count = 0;
+
+    public LatencyTracker(int windowSize, int minSamples) {
+        this.samplesNanos = new long[Math.max(1, windowSize)];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(Duration latency) {
+        samplesNanos[next] = latency.toNanos();
+        next = (next + 1) % samplesNanos.length;
+        count = Math.min(count + 1, samplesNanos.length);
+    }
+
+    /**
+     * @param percentile The percentile to compute, between 0 and 1 (e.g. 0.95).
+     * @return The latency at the given percentile, or null if too few samples were recorded yet.
+     */
+    public Duration percentile(double percentile) {
+        long[] copy;
+        synchronized (this) {
+            if (count < Math.max(1, minSamples)) {
+                return null;
+            }
+            copy = Arrays.copyOf(samplesNanos, count);
+        }
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(percentile * copy.length) - 1;
+        return Duration.ofNanos(copy[Math.max(0, Math.min(index, copy.length - 1))]);
+    }
+}
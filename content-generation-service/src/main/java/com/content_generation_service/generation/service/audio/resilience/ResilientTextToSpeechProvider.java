@@ -0,0 +1,157 @@
+package com.content_generation_service.generation.service.audio.resilience;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.NarrationSegment;
+import com.content_generation_service.generation.service.audio.TextToSpeechProvider;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a TextToSpeechProvider with tail-latency hedging and a circuit breaker.
+ * <p>
+ * Hedging: once enough latencies were observed, a call still running after the provider's p95
+ * (but never earlier than the configured minimum) gets one duplicate request, and whichever
+ * answers first wins; the other one is cancelled. Every primary call earns a fraction of a hedge
+ * credit, so hedges can never exceed the configured ratio of calls.
+ * <p>
+ * Circuit breaking: when the recent failure rate spikes, calls fail fast with
+ * {@link CircuitOpenException} instead of waiting for timeouts and retries.
+ * Batches go through the breaker but are never hedged, as duplicating a batch is too expensive.
+ */
+@Slf4j
+public class ResilientTextToSpeechProvider implements TextToSpeechProvider {
+
+    private static final double HEDGE_PERCENTILE = 0.95;
+    // Upper bound of unused hedge credit, so a quiet period can't fund a burst of duplicates
+    private static final double MAX_HEDGE_CREDIT = 5.0;
+
+    private final TextToSpeechProvider delegate;
+    private final AppProperties.Resilience config;
+    private final LatencyTracker latencyTracker;
+    private final CircuitBreaker circuitBreaker;
+    private double hedgeCredit = 0.0;
+
+    public ResilientTextToSpeechProvider(TextToSpeechProvider delegate, AppProperties.Resilience config) {
+        this.delegate = delegate;
+        this.config = config;
+        this.latencyTracker = new LatencyTracker(config.getLatencyWindow(), config.getMinLatencySamples());
+        this.circuitBreaker = new CircuitBreaker(delegate.getProviderId(), config.getFailureRateThreshold(),
+            config.getBreakerWindow(), config.getBreakerMinimumCalls(), Duration.ofSeconds(config.getOpenSeconds()));
+    }
+
+    @Override
+    public String getProviderId() {
+        return delegate.getProviderId();
+    }
+
+    @Override
+    public Mono<NarrationSegment> generate(String text, String voiceId, boolean generateTimings) {
+        return guarded(() -> hedged(text, voiceId, generateTimings));
+    }
+
+    @Override
+    public Flux<NarrationSegment> generateBatch(List<String> texts, String voiceId, boolean generateTimings, int maxConcurrency) {
+        return guarded(() -> delegate.generateBatch(texts, voiceId, generateTimings, maxConcurrency).collectList())
+            .flatMapIterable(segments -> segments);
+    }
+
+    private <T> Mono<T> guarded(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Mono.error(new CircuitOpenException(getProviderId()));
+            }
+            AtomicBoolean reported = new AtomicBoolean(false);
+            return call.get()
+                .doOnSuccess(result -> {
+                    if (reported.compareAndSet(false, true)) circuitBreaker.onSuccess();
+                })
+                .doOnError(e -> {
+                    if (!reported.compareAndSet(false, true)) return;
+                    // Bad input says nothing about the health of the provider
+                    if (e instanceof IllegalArgumentException) circuitBreaker.onIgnored();
+                    else circuitBreaker.onFailure();
+                })
+                .doOnCancel(() -> {
+                    if (reported.compareAndSet(false, true)) circuitBreaker.onIgnored();
+                });
+        });
+    }
+
+    private Mono<NarrationSegment> hedged(String text, String voiceId, boolean generateTimings) {
+        earnHedgeCredit();
+        Mono<NarrationSegment> primary = timed(delegate.generate(text, voiceId, generateTimings));
+
+        Duration p95 = config.isHedgingEnabled() ? latencyTracker.percentile(HEDGE_PERCENTILE) : null;
+        if (p95 == null) {
+            return primary;
+        }
+        Duration hedgeDelay = p95.compareTo(Duration.ofMillis(config.getMinHedgeDelayMillis())) > 0
+            ? p95 : Duration.ofMillis(config.getMinHedgeDelayMillis());
+
+        // Stop waiting to hedge as soon as the primary has failed: its error should surface right away
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        Mono<NarrationSegment> watchedPrimary = primary.doOnError(e -> {
+            firstError.compareAndSet(null, e);
+            primaryFailed.tryEmitValue(true);
+        });
+        Mono<NarrationSegment> backup = Mono.delay(hedgeDelay)
+            .takeUntilOther(primaryFailed.asMono())
+            .filter(tick -> trySpendHedgeCredit())
+            .flatMap(tick -> {
+                log.info("TTS call to provider '{}' exceeded {} ms, sending a hedged duplicate.", getProviderId(), hedgeDelay.toMillis());
+                return delegate.generate(text, voiceId, generateTimings)
+                    .doOnError(e -> firstError.compareAndSet(null, e))
+                    .doOnNext(segment -> log.info("Hedged duplicate won the race for provider '{}'.", getProviderId()));
+            });
+
+        return Mono.firstWithValue(watchedPrimary, backup)
+            // Both sides failed or the hedge never fired: report the first real error
+            .onErrorMap(NoSuchElementException.class, e -> firstError.get() != null ? firstError.get() : e);
+    }
+
+    /**
+     * Records the latency of successful calls. A call abandoned because the hedge won still
+     * contributes its elapsed time, as a lower bound of what it would have taken.
+     */
+    private Mono<NarrationSegment> timed(Mono<NarrationSegment> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                .doOnSuccess(result -> latencyTracker.record(Duration.ofNanos(System.nanoTime() - start)))
+                .doOnCancel(() -> latencyTracker.record(Duration.ofNanos(System.nanoTime() - start)));
+        });
+    }
+
+    private synchronized void earnHedgeCredit() {
+        hedgeCredit = Math.min(MAX_HEDGE_CREDIT, hedgeCredit + config.getMaxHedgeRatio());
+    }
+
+    private synchronized boolean trySpendHedgeCredit() {
+        if (hedgeCredit < 1.0) {
+            log.debug("Hedge budget exhausted for provider '{}', waiting for the primary call only.", getProviderId());
+            return false;
+        }
+        hedgeCredit -= 1.0;
+        return true;
+    }
+
+    /**
+     * Thrown without calling the provider while its circuit is open.
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String providerId) {
+            super("TTS provider '" + providerId + "' is temporarily unavailable (circuit open).");
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.content_generation_service.generation.service.cache;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.NarrationSegment;
+import com.content_generation_service.generation.model.WordTiming;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the intermediate artifacts of a content's stages (per-line narration, title card, subtitles)
+ * on the shared temp storage under 'artifact-cache/&lt;contentId&gt;/', keyed by a hash of each stage's inputs.
+ * When a draft is edited and resubmitted, only the stages whose inputs changed are generated again.
+ * <p>
+ * Artifacts are copied out on every hit, so callers own (and may delete) the files they get back.
+ * Entries of a content expire after 'app.artifact-cache.ttl-hours' without use. Cache failures
+ * are logged and behave like a miss; they never fail a job.
+ */
+@Slf4j
+@Service
+public class StageArtifactCache {
+
+    private static final String CACHE_DIR = "artifact-cache";
+
+    private final AppProperties appProperties;
+    private final ObjectMapper objectMapper;
+    private final Path cacheRoot;
+
+    public StageArtifactCache(AppProperties appProperties, ObjectMapper objectMapper,
+            @Value("${app.storage.shared-temp.base-path}") String sharedTempBasePath) {
+        this.appProperties = appProperties;
+        this.objectMapper = objectMapper;
+        this.cacheRoot = Paths.get(sharedTempBasePath).resolve(CACHE_DIR);
+    }
+
+    /**
+     * Builds a cache key from the inputs of a stage. The pipeline version is always part of the key,
+     * so a rendering change that bumps it also invalidates the cached artifacts.
+     *
+     * @param stage The name of the stage producing the artifact.
+     * @param inputs Every input the artifact depends on.
+     */
+    public String key(String stage, String... inputs) {
+        MessageDigest digest = Fingerprints.sha256();
+        Fingerprints.update(digest, appProperties.getRenderDedup().getPipelineVersion());
+        Fingerprints.update(digest, stage);
+        for (String input : inputs) {
+            Fingerprints.update(digest, input == null ? "" : input);
+        }
+        return stage + "-" + Fingerprints.hex(digest);
+    }
+
+    /**
+     * @return A private copy of the cached narration segment, or empty on a miss.
+     */
+    public Optional<NarrationSegment> getNarration(String contentId, String key) {
+        if (!appProperties.getArtifactCache().isEnabled()) {
+            return Optional.empty();
+        }
+        Path entry = contentDir(contentId).resolve(key + ".json");
+        try {
+            if (!Files.exists(entry)) {
+                return Optional.empty();
+            }
+            CachedNarration cached = objectMapper.readValue(entry.toFile(), CachedNarration.class);
+            Path audio = copyOut(contentDir(contentId).resolve(cached.audioFileName()));
+            touch(contentId);
+            log.debug("Artifact cache hit for {} of contentId: {}", key, contentId);
+            return Optional.of(new NarrationSegment(audio, cached.durationSeconds(), cached.wordTimings()));
+        } catch (IOException e) {
+            log.warn("Could not read cached narration {} for contentId: {}: {}", key, contentId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a copy of a generated narration segment. The given file is left untouched.
+     */
+    public void putNarration(String contentId, String key, NarrationSegment segment) {
+        if (!appProperties.getArtifactCache().isEnabled()) {
+            return;
+        }
+        try {
+            Path dir = Files.createDirectories(contentDir(contentId));
+            String audioFileName = key + extensionOf(segment.getAudioFilePath());
+            copyIn(segment.getAudioFilePath(), dir.resolve(audioFileName));
+            // The metadata is written last: once it exists, the audio is complete
+            Path metadata = Files.createTempFile(dir, key, ".tmp");
+            objectMapper.writeValue(metadata.toFile(), new CachedNarration(audioFileName, segment.getDurationSeconds(), segment.getWordTimings()));
+            Files.move(metadata, dir.resolve(key + ".json"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not cache narration {} for contentId: {}: {}", key, contentId, e.getMessage());
+        }
+    }
+
+    /**
+     * @param extension The extension of the cached file, including the dot (e.g. ".png").
+     * @return A private copy of the cached file, or empty on a miss.
+     */
+    public Optional<Path> getFile(String contentId, String key, String extension) {
+        if (!appProperties.getArtifactCache().isEnabled()) {
+            return Optional.empty();
+        }
+        Path entry = contentDir(contentId).resolve(key + extension);
+        try {
+            if (!Files.exists(entry)) {
+                return Optional.empty();
+            }
+            Path copy = copyOut(entry);
+            touch(contentId);
+            log.debug("Artifact cache hit for {} of contentId: {}", key, contentId);
+            return Optional.of(copy);
+        } catch (IOException e) {
+            log.warn("Could not read cached artifact {} for contentId: {}: {}", key, contentId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a copy of a generated file under the key, keeping its extension. The given file is left untouched.
+     */
+    public void putFile(String contentId, String key, Path file) {
+        if (!appProperties.getArtifactCache().isEnabled()) {
+            return;
+        }
+        try {
+            Path dir = Files.createDirectories(contentDir(contentId));
+            copyIn(file, dir.resolve(key + extensionOf(file)));
+        } catch (IOException e) {
+            log.warn("Could not cache artifact {} for contentId: {}: {}", key, contentId, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the artifacts of contents that have not been generated for longer than the TTL.
+     */
+    @Scheduled(fixedDelayString = "${app.artifact-cache.sweep-interval:PT1H}", initialDelayString = "${app.artifact-cache.sweep-interval:PT1H}")
+    public void evictExpired() {
+        if (!Files.isDirectory(cacheRoot)) {
+            return;
+        }
+        Instant expiry = Instant.now().minus(Duration.ofHours(appProperties.getArtifactCache().getTtlHours()));
+        try (Stream<Path> contentDirs = Files.list(cacheRoot)) {
+            for (Path dir : contentDirs.filter(Files::isDirectory).toList()) {
+                if (Files.getLastModifiedTime(dir).toInstant().isBefore(expiry)) {
+                    FileSystemUtils.deleteRecursively(dir);
+                    log.debug("Evicted expired stage artifacts: {}", dir);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Artifact cache sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private Path contentDir(String contentId) {
+        Path dir = cacheRoot.resolve(contentId).normalize();
+        if (!dir.getParent().equals(cacheRoot.normalize())) {
+            throw new IllegalArgumentException("Invalid contentId for artifact cache: " + contentId);
+        }
+        return dir;
+    }
+
+    private void touch(String contentId) throws IOException {
+        // The directory's modification time is the last use of the content's artifacts
+        Files.setLastModifiedTime(contentDir(contentId), FileTime.from(Instant.now()));
+    }
+
+    private static void copyIn(Path source, Path destination) throws IOException {
+        // Copy next to the destination first, so that readers never see a partial file
+        Path partial = destination.resolveSibling(destination.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(source, partial);
+            Files.move(partial, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private static Path copyOut(Path cached) throws IOException {
+        Path copy = Files.createTempFile("cached-" + UUID.randomUUID(), extensionOf(cached));
+        Files.copy(cached, copy, StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    private record CachedNarration(String audioFileName, double durationSeconds, List<WordTiming> wordTimings) {}
+}
@@ -0,0 +1,205 @@
+package com.content_generation_service.generation.service.cache;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.pipeline.StageCheckpoint;
+import com.content_generation_service.generation.pipeline.StageCodec;
+import com.content_generation_service.generation.pipeline.StageKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the checkpoints of running generation jobs on the shared temp storage, under
+ * 'checkpoints/&lt;contentId&gt;/': a manifest with the encoded output of every completed
+ * checkpointed stage, plus the files those outputs reference.
+ * <p>
+ * A checkpoint belongs to one version of a request: the manifest records the render fingerprint
+ * (see {@link com.content_generation_service.generation.service.storage.RenderDeduplicationService}),
+ * and a checkpoint with another fingerprint is discarded when the job is opened. Checkpoints are
+ * discarded once their job completes or is cancelled, and expire after 'app.checkpoints.ttl-hours'.
+ */
+@Slf4j
+@Service
+public class StageCheckpointStore {
+
+    private static final String CHECKPOINT_DIR = "checkpoints";
+    private static final String MANIFEST = "manifest.json";
+
+    private final AppProperties appProperties;
+    private final ObjectMapper objectMapper;
+    private final Path sharedTempRoot;
+    private final Path checkpointRoot;
+
+    public StageCheckpointStore(AppProperties appProperties, ObjectMapper objectMapper,
+            @Value("${app.storage.shared-temp.base-path}") String sharedTempBasePath) {
+        this.appProperties = appProperties;
+        this.objectMapper = objectMapper;
+        this.sharedTempRoot = Paths.get(sharedTempBasePath).toAbsolutePath().normalize();
+        this.checkpointRoot = sharedTempRoot.resolve(CHECKPOINT_DIR);
+    }
+
+    /**
+     * Opens the checkpoint of a job, keeping what an earlier run of the same request saved.
+     *
+     * @return The checkpoint, or null when checkpoints are disabled.
+     */
+    public StageCheckpoint open(String contentId, String fingerprint) {
+        if (!appProperties.getCheckpoints().isEnabled()) {
+            return null;
+        }
+        Path dir = contentDir(contentId);
+        ObjectNode manifest = readManifest(dir);
+        if (manifest != null && !fingerprint.equals(manifest.path("fingerprint").asText())) {
+            log.info("Discarding the checkpoint of contentId: {}, it belongs to an earlier version of the request", contentId);
+            discard(contentId);
+            manifest = null;
+        }
+        if (manifest == null) {
+            manifest = objectMapper.createObjectNode().put("fingerprint", fingerprint);
+            manifest.putObject("stages");
+        }
+        return new ContentCheckpoint(contentId, dir, manifest);
+    }
+
+    /**
+     * Deletes the checkpoint of a job that no longer needs to be resumed.
+     */
+    public void discard(String contentId) {
+        try {
+            FileSystemUtils.deleteRecursively(contentDir(contentId));
+        } catch (IOException e) {
+            log.warn("Could not delete the checkpoint of contentId: {}: {}", contentId, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the checkpoints of jobs that were never resumed.
+     */
+    @Scheduled(fixedDelayString = "${app.checkpoints.sweep-interval:PT1H}", initialDelayString = "${app.checkpoints.sweep-interval:PT1H}")
+    public void evictExpired() {
+        if (!Files.isDirectory(checkpointRoot)) {
+            return;
+        }
+        Instant expiry = Instant.now().minus(Duration.ofHours(appProperties.getCheckpoints().getTtlHours()));
+        try (Stream<Path> contentDirs = Files.list(checkpointRoot)) {
+            for (Path dir : contentDirs.filter(Files::isDirectory).toList()) {
+                if (Files.getLastModifiedTime(dir).toInstant().isBefore(expiry)) {
+                    FileSystemUtils.deleteRecursively(dir);
+                    log.debug("Evicted expired checkpoint: {}", dir);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Checkpoint sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private ObjectNode readManifest(Path dir) {
+        Path manifest = dir.resolve(MANIFEST);
+        try {
+            return Files.exists(manifest) ? (ObjectNode) objectMapper.readTree(manifest.toFile()) : null;
+        } catch (IOException | ClassCastException e) {
+            log.warn("Ignoring unreadable checkpoint manifest {}: {}", manifest, e.getMessage());
+            return null;
+        }
+    }
+
+    private Path contentDir(String contentId) {
+        Path dir = checkpointRoot.resolve(contentId).normalize();
+        if (!dir.getParent().equals(checkpointRoot)) {
+            throw new IllegalArgumentException("Invalid contentId for a checkpoint: " + contentId);
+        }
+        return dir;
+    }
+
+    /**
+     * The checkpoint of one job. Stages complete concurrently, so manifest updates are serialized.
+     */
+    private class ContentCheckpoint implements StageCheckpoint, StageCodec.CheckpointFiles {
+
+        private final String contentId;
+        private final Path dir;
+        private final ObjectNode manifest;
+
+        ContentCheckpoint(String contentId, Path dir, ObjectNode manifest) {
+            this.contentId = contentId;
+            this.dir = dir;
+            this.manifest = manifest;
+        }
+
+        @Override
+        public synchronized <T> Optional<T> restore(StageKey<T> key, StageCodec<T> codec) {
+            JsonNode encoded = manifest.path("stages").get(key.getName());
+            if (encoded == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.ofNullable(codec.decode(encoded, this));
+            } catch (IOException e) {
+                log.info("Checkpoint of stage '{}' for contentId: {} is no longer usable: {}", key, contentId, e.getMessage());
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public synchronized <T> void save(StageKey<T> key, StageCodec<T> codec, T value) {
+            try {
+                Files.createDirectories(dir);
+                ((ObjectNode) manifest.get("stages")).set(key.getName(), codec.encode(value, this));
+                // Write next to the manifest and move it over, so a crash never leaves a torn manifest
+                Path partial = Files.createTempFile(dir, MANIFEST, ".tmp");
+                objectMapper.writeValue(partial.toFile(), manifest);
+                Files.move(partial, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                log.debug("Checkpointed stage '{}' for contentId: {}", key, contentId);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not checkpoint stage '{}' for contentId: {}: {}", key, contentId, e.getMessage());
+            }
+        }
+
+        @Override
+        public String put(Path file) throws IOException {
+            Path source = file.toAbsolutePath().normalize();
+            // Files already on the shared storage (like the rendered video) are referenced in place
+            if (!source.startsWith(sharedTempRoot)) {
+                String name = UUID.randomUUID() + extensionOf(source);
+                Path partial = dir.resolve(name + ".tmp");
+                Files.copy(source, partial, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(partial, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                source = dir.resolve(name);
+            }
+            return sharedTempRoot.relativize(source).toString();
+        }
+
+        @Override
+        public Path get(String reference) throws IOException {
+            Path file = sharedTempRoot.resolve(reference).normalize();
+            if (!file.startsWith(sharedTempRoot) || !Files.isRegularFile(file)) {
+                throw new NoSuchFileException(reference);
+            }
+            return file;
+        }
+
+        private static String extensionOf(Path file) {
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            return dot < 0 ? "" : name.substring(dot);
+        }
+    }
+}
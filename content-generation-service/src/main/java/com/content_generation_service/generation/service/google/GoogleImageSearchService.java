@@ -1,26 +1,38 @@
 package com.content_generation_service.generation.service.google;
 
+import com.content_generation_service.client.Providers;
 import com.content_generation_service.config.AppProperties;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
 public class GoogleImageSearchService {
 
+    // Google Custom Search API calls, subject to the shared provider limit
+    private final WebClient searchClient;
+    // Image downloads from arbitrary hosts, not rate limited
     private final WebClient webClient;
     private final AppProperties appProperties;
     
@@ -28,24 +40,15 @@ public class GoogleImageSearchService {
     private String sharedTempBasePath;
 
     private static final String GOOGLE_SEARCH_API_URL = "https://www.googleapis.com/customsearch/v1";
-    private static final int maxImageSizeMb = 2;
 
     public GoogleImageSearchService(
-            WebClient.Builder webClientBuilder,
+            ProviderHttpClientFactory httpClientFactory,
             AppProperties appProperties
     ) {
         this.appProperties = appProperties;
-        
-        final int maxInMemorySize = maxImageSizeMb * 1024 * 1024; // Convert MB to bytes
-        final ExchangeStrategies strategies = ExchangeStrategies.builder()
-            .codecs(configurer -> configurer
-                .defaultCodecs()
-                .maxInMemorySize(maxInMemorySize))
-            .build();
-
-        this.webClient = webClientBuilder
-            .exchangeStrategies(strategies)
-            .build();
+        this.searchClient = httpClientFactory.builderFor(Providers.GOOGLE_CSE).build();
+        // Image bodies are streamed straight to disk, so no in-memory buffer limit needs raising here
+        this.webClient = httpClientFactory.builderFor(Providers.IMAGE_DOWNLOAD).build();
     }
 
     public Mono<Path> downloadImageForQuery(String query) {
@@ -68,8 +71,8 @@ public class GoogleImageSearchService {
             .build()
             .toUri();
 
-        // Use the pre-configured webClient instance
-        return this.webClient
+        // Use the pre-configured, rate limited search client
+        return this.searchClient
             .get()
             .uri(searchUri)
             .retrieve()
@@ -83,6 +86,7 @@ public class GoogleImageSearchService {
     private Mono<Path> downloadImageToTempFile(String imageUrl) {
         String browserUserAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/125.0.0.0 Safari/537.36";
         String acceptHeader = "image/webp,image/png,image/jpeg,image/gif,*/*;q=0.8";
+        final long maxImageSizeBytes = appProperties.getGoogle().getMaxImageSizeMb() * 1024L * 1024L;
 
         return this.webClient
             .get()
@@ -90,21 +94,126 @@ public class GoogleImageSearchService {
             .header("User-Agent", browserUserAgent) // mimic a real browser
             .header("Referer", "https://www.google.com/") // Add Referer header
             .header("Accept", acceptHeader)             // Add common Accept header
-            .retrieve()
-            .bodyToMono(byte[].class)
-            .flatMap(imageBytes -> {
+            .exchangeToMono(response -> {
+                if (!response.statusCode().is2xxSuccessful()) {
+                    return response.releaseBody()
+                        .then(Mono.error(new IOException("Image download failed with status " + response.statusCode() + " for " + imageUrl)));
+                }
+                // Reject early when the server announces a body that is already too large
+                long declaredLength = response.headers().contentLength().orElse(-1L);
+                if (declaredLength > maxImageSizeBytes) {
+                    return response.releaseBody()
+                        .then(Mono.error(new ImageTooLargeException(imageUrl, declaredLength, maxImageSizeBytes)));
+                }
+                MediaType contentType = response.headers().contentType().orElse(null);
+
+                Path partialFile;
                 try {
                     Path tempDir = Path.of(sharedTempBasePath);
                     Files.createDirectories(tempDir);
-                    // Use a unique name to avoid collisions
-                    String fileName = UUID.randomUUID().toString() + ".jpg";
-                    Path tempFile = Files.createFile(tempDir.resolve(fileName));
-                    Files.write(tempFile, imageBytes);
-                    log.debug("Successfully downloaded image to {}", tempFile);
-                    return Mono.just(tempFile);
+                    // Written under a neutral name first; the extension is only known after sniffing
+                    partialFile = tempDir.resolve(UUID.randomUUID() + ".part");
                 } catch (IOException e) {
-                    return Mono.error(new RuntimeException("Failed to save downloaded image to temp file", e));
+                    return response.releaseBody()
+                        .then(Mono.error(new RuntimeException("Failed to prepare temp file for downloaded image", e)));
                 }
-            });
+
+                Flux<DataBuffer> body = limitBodySize(response.bodyToFlux(DataBuffer.class), imageUrl, maxImageSizeBytes);
+                return DataBufferUtils.write(body, partialFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                    .then(Mono.fromCallable(() -> renameWithDetectedExtension(partialFile, contentType)))
+                    .doOnError(e -> deletePartialFile(partialFile))
+                    .doOnCancel(() -> deletePartialFile(partialFile));
+            })
+            .doOnNext(path -> log.debug("Successfully downloaded image to {}", path));
+    }
+
+    /**
+     * Counts the bytes flowing through the body and fails the stream as soon as the limit is exceeded.
+     * Failing the Flux cancels the upstream subscription, which aborts the HTTP exchange.
+     */
+    private Flux<DataBuffer> limitBodySize(Flux<DataBuffer> body, String imageUrl, long maxImageSizeBytes) {
+        AtomicLong receivedBytes = new AtomicLong();
+        return body.handle((buffer, sink) -> {
+            long total = receivedBytes.addAndGet(buffer.readableByteCount());
+            if (total > maxImageSizeBytes) {
+                DataBufferUtils.release(buffer);
+                sink.error(new ImageTooLargeException(imageUrl, total, maxImageSizeBytes));
+            } else {
+                sink.next(buffer);
+            }
+        });
+    }
+
+    /**
+     * Picks the file extension from the magic bytes of the downloaded file, falling back to the
+     * declared Content-Type, and moves the partial file to its final name.
+     */
+    private Path renameWithDetectedExtension(Path partialFile, MediaType contentType) throws IOException {
+        byte[] header = new byte[12];
+        int read;
+        try (InputStream in = Files.newInputStream(partialFile)) {
+            read = in.readNBytes(header, 0, header.length);
+        }
+
+        String extension = detectExtensionFromMagicBytes(header, read);
+        if (extension == null) {
+            extension = extensionFromContentType(contentType);
+        }
+        if (extension == null) {
+            throw new IOException("Downloaded file is not a supported image (Content-Type: " + contentType + ")");
+        }
+
+        String fileName = partialFile.getFileName().toString();
+        Path imageFile = partialFile.resolveSibling(fileName.substring(0, fileName.length() - ".part".length()) + "." + extension);
+        return Files.move(partialFile, imageFile);
+    }
+
+    private static String detectExtensionFromMagicBytes(byte[] header, int length) {
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        }
+        if (length >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return "png";
+        }
+        if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return "gif";
+        }
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "webp";
+        }
+        if (length >= 2 && header[0] == 'B' && header[1] == 'M') {
+            return "bmp";
+        }
+        return null;
+    }
+
+    private static String extensionFromContentType(MediaType contentType) {
+        if (contentType == null || !"image".equals(contentType.getType())) {
+            return null;
+        }
+        return switch (contentType.getSubtype().toLowerCase(Locale.ROOT)) {
+            case "jpeg", "jpg", "pjpeg" -> "jpg";
+            case "png" -> "png";
+            case "gif" -> "gif";
+            case "webp" -> "webp";
+            case "bmp", "x-ms-bmp" -> "bmp";
+            default -> null;
+        };
+    }
+
+    private void deletePartialFile(Path partialFile) {
+        try {
+            Files.deleteIfExists(partialFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete partial image download: {}", partialFile, e);
+        }
+    }
+
+    // Raised when an image is larger than the configured download limit
+    public static class ImageTooLargeException extends IOException {
+        public ImageTooLargeException(String imageUrl, long sizeBytes, long maxSizeBytes) {
+            super("Image at " + imageUrl + " exceeds the size limit (" + sizeBytes + " > " + maxSizeBytes + " bytes)");
+        }
     }
-}
\ No newline at end of file
+}
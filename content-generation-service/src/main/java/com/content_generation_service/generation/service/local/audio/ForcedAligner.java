@@ -0,0 +1,195 @@
+package com.content_generation_service.generation.service.local.audio;
+
+import com.content_generation_service.generation.model.WordTiming;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aligns a known text against mono PCM audio without any speech recognition.
+ * <p>
+ * The audio is cut into short frames whose energy is compared against an adaptive
+ * threshold (between the noise floor and the speech level of the clip) to find the
+ * regions that contain speech. The words are then laid out over the speech-only time,
+ * each taking a share proportional to its estimated syllable count, and mapped back
+ * onto the real timeline. Pauses therefore never receive words, and a word that would
+ * straddle a pause is snapped to the side holding most of it.
+ */
+public final class ForcedAligner {
+
+    private static final double FRAME_SECONDS = 0.02;
+    // Speech blips shorter than this are treated as noise
+    private static final double MIN_SPEECH_SECONDS = 0.06;
+    // Silences shorter than this are considered part of the surrounding speech (gaps inside words)
+    private static final double MIN_PAUSE_SECONDS = 0.12;
+    // Where the threshold sits between the noise floor and the speech level, in dB
+    private static final double THRESHOLD_RATIO = 0.35;
+    private static final double SILENCE_DB = -90.0;
+
+    private ForcedAligner() {
+    }
+
+    /**
+     * @param samples Mono 16-bit PCM samples.
+     * @param sampleRate The sample rate of the samples, in Hz.
+     * @param text The text spoken in the audio.
+     * @return One WordTiming per word of the text, in order. Empty if the text has no words.
+     */
+    public static List<WordTiming> align(short[] samples, int sampleRate, String text) {
+        List<String> words = tokenize(text);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        double totalSeconds = (double) samples.length / sampleRate;
+        List<double[]> regions = detectSpeechRegions(samples, sampleRate);
+        if (regions.isEmpty()) {
+            // Nothing stood out from the noise floor, spread the words over the whole clip
+            regions = List.of(new double[]{0.0, totalSeconds});
+        }
+
+        double speechSeconds = regions.stream().mapToDouble(region -> region[1] - region[0]).sum();
+        double totalWeight = words.stream().mapToDouble(ForcedAligner::syllables).sum();
+
+        List<WordTiming> timings = new ArrayList<>();
+        double cumulativeWeight = 0.0;
+        for (String word : words) {
+            double speechStart = speechSeconds * cumulativeWeight / totalWeight;
+            cumulativeWeight += syllables(word);
+            double speechEnd = speechSeconds * cumulativeWeight / totalWeight;
+            timings.add(toRealTime(word, speechStart, speechEnd, regions));
+        }
+        return timings;
+    }
+
+    /**
+     * Splits the text into words, dropping surrounding punctuation (as speech recognition output does).
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) return List.of();
+        return Arrays.stream(text.trim().split("\\s+"))
+            .map(token -> token.replaceAll("^[^\\p{L}\\p{N}]+|[^\\p{L}\\p{N}]+$", ""))
+            .filter(token -> !token.isEmpty())
+            .toList();
+    }
+
+    /**
+     * Rough syllable estimate: the number of vowel groups, ignoring a silent trailing 'e'.
+     * Tokens without vowels (numbers, acronyms) are weighted by their length.
+     */
+    static int syllables(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        int groups = 0;
+        boolean inVowel = false;
+        for (char c : lower.toCharArray()) {
+            boolean vowel = "aeiouy".indexOf(c) >= 0;
+            if (vowel && !inVowel) groups++;
+            inVowel = vowel;
+        }
+        if (groups > 1 && lower.endsWith("e") && !lower.endsWith("le")) {
+            groups--;
+        }
+        if (groups == 0) {
+            return Math.max(1, (lower.length() + 1) / 2);
+        }
+        return groups;
+    }
+
+    /**
+     * Finds the speech regions as [start, end] pairs in seconds, in order.
+     */
+    static List<double[]> detectSpeechRegions(short[] samples, int sampleRate) {
+        int frameSize = Math.max(1, (int) Math.round(sampleRate * FRAME_SECONDS));
+        int frameCount = samples.length / frameSize;
+        if (frameCount == 0) return List.of();
+
+        double[] frameDb = new double[frameCount];
+        for (int frame = 0; frame < frameCount; frame++) {
+            double sumSquares = 0.0;
+            for (int i = frame * frameSize; i < (frame + 1) * frameSize; i++) {
+                double sample = samples[i] / 32768.0;
+                sumSquares += sample * sample;
+            }
+            double rms = Math.sqrt(sumSquares / frameSize);
+            frameDb[frame] = rms > 0 ? Math.max(20 * Math.log10(rms), SILENCE_DB) : SILENCE_DB;
+        }
+
+        double[] sorted = frameDb.clone();
+        Arrays.sort(sorted);
+        double noiseFloor = sorted[(int) (0.10 * (frameCount - 1))];
+        double speechLevel = sorted[(int) (0.95 * (frameCount - 1))];
+        if (speechLevel - noiseFloor < 6.0) {
+            // No meaningful contrast between speech and silence
+            return List.of();
+        }
+        double threshold = noiseFloor + THRESHOLD_RATIO * (speechLevel - noiseFloor);
+
+        // Collect raw regions of consecutive loud frames
+        List<double[]> raw = new ArrayList<>();
+        int regionStart = -1;
+        for (int frame = 0; frame <= frameCount; frame++) {
+            boolean speech = frame < frameCount && frameDb[frame] >= threshold;
+            if (speech && regionStart < 0) {
+                regionStart = frame;
+            } else if (!speech && regionStart >= 0) {
+                raw.add(new double[]{(double) regionStart * frameSize / sampleRate, (double) frame * frameSize / sampleRate});
+                regionStart = -1;
+            }
+        }
+
+        // Merge regions separated by short gaps, then drop blips
+        List<double[]> merged = new ArrayList<>();
+        for (double[] region : raw) {
+            if (!merged.isEmpty() && region[0] - merged.get(merged.size() - 1)[1] < MIN_PAUSE_SECONDS) {
+                merged.get(merged.size() - 1)[1] = region[1];
+            } else {
+                merged.add(region);
+            }
+        }
+        return merged.stream().filter(region -> region[1] - region[0] >= MIN_SPEECH_SECONDS).toList();
+    }
+
+    private static WordTiming toRealTime(String word, double speechStart, double speechEnd, List<double[]> regions) {
+        int startRegion = regionIndex(speechStart, regions, false);
+        int endRegion = regionIndex(speechEnd, regions, true);
+        double start = toRealTime(speechStart, startRegion, regions);
+        double end = toRealTime(speechEnd, endRegion, regions);
+
+        if (startRegion != endRegion) {
+            // The word straddles a pause: keep it on the side holding most of it
+            double beforePause = regions.get(startRegion)[1] - start;
+            double afterPause = end - regions.get(endRegion)[0];
+            if (beforePause >= afterPause) {
+                end = regions.get(startRegion)[1];
+            } else {
+                start = regions.get(endRegion)[0];
+            }
+        }
+        return new WordTiming(word, start, Math.max(start, end));
+    }
+
+    /**
+     * Finds the region containing the given speech-time instant. Boundary instants belong to the
+     * next region for word starts and to the previous region for word ends.
+     */
+    private static int regionIndex(double speechTime, List<double[]> regions, boolean isEnd) {
+        double elapsed = 0.0;
+        for (int i = 0; i < regions.size(); i++) {
+            double length = regions.get(i)[1] - regions.get(i)[0];
+            boolean inside = isEnd ? speechTime <= elapsed + length : speechTime < elapsed + length;
+            if (inside) return i;
+            elapsed += length;
+        }
+        return regions.size() - 1;
+    }
+
+    private static double toRealTime(double speechTime, int regionIndex, List<double[]> regions) {
+        double elapsed = 0.0;
+        for (int i = 0; i < regionIndex; i++) {
+            elapsed += regions.get(i)[1] - regions.get(i)[0];
+        }
+        double[] region = regions.get(regionIndex);
+        return Math.min(region[0] + (speechTime - elapsed), region[1]);
+    }
+}
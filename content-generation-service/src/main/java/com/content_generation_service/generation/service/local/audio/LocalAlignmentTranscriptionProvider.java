@@ -0,0 +1,127 @@
+package com.content_generation_service.generation.service.local.audio;
+
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.generation.model.NarrationSegment;
+import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.generation.service.audio.TranscriptionProvider;
+import com.content_generation_service.generation.service.visual.MediaMetadataService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TranscriptionProvider that aligns the known narration text against the audio on this machine,
+ * without any network call. The audio is decoded to PCM with FFmpeg and the words are placed
+ * by {@link ForcedAligner}. Since it needs the spoken text, only the text-aware methods produce timings;
+ * the others fail right away when asked for timings.
+ * This bean is only created if the property 'app.transcription.provider' is set to 'local'.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.transcription.provider", havingValue = "local")
+public class LocalAlignmentTranscriptionProvider implements TranscriptionProvider {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private final MediaMetadataService mediaMetadataService;
+
+    @Override
+    public String getProviderId() {
+        return "local";
+    }
+
+    @Override
+    public boolean requiresSpokenText() {
+        return true;
+    }
+
+    @Override
+    public Mono<List<WordTiming>> getWordTimings(Path audioFilePath) {
+        throw missingSpokenText(audioFilePath);
+    }
+
+    @Override
+    public Mono<NarrationSegment> getNarrationSegmentFromAudioFile(Path audioFile, boolean generateTimings) {
+        if (generateTimings) {
+            throw missingSpokenText(audioFile);
+        }
+        return Mono.fromCallable(() -> new NarrationSegment(audioFile, mediaMetadataService.getAudioDuration(audioFile), Collections.emptyList()))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<NarrationSegment> getNarrationSegmentFromAudioFile(Path audioFile, String spokenText, boolean generateTimings) {
+        if (!generateTimings) {
+            return getNarrationSegmentFromAudioFile(audioFile, false);
+        }
+        return Mono.fromCallable(() -> {
+                double duration = mediaMetadataService.getAudioDuration(audioFile);
+                short[] samples = decodeToPcm(audioFile);
+                List<WordTiming> timings = ForcedAligner.align(samples, SAMPLE_RATE, spokenText);
+                // Keep the timings within the duration reported for the file, as the other providers do
+                timings.forEach(timing -> {
+                    timing.setStartTimeSeconds(Math.min(timing.getStartTimeSeconds(), duration));
+                    timing.setEndTimeSeconds(Math.min(timing.getEndTimeSeconds(), duration));
+                });
+                log.debug("Locally aligned {} words for audio file: {}", timings.size(), audioFile);
+                return new NarrationSegment(audioFile, duration, timings);
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<List<NarrationSegment>> getNarrationSegmentsFromAudioFiles(List<Path> audioFiles, List<String> spokenTexts, boolean generateTimings) {
+        return Flux.range(0, audioFiles.size())
+            .flatMapSequential(i -> getNarrationSegmentFromAudioFile(audioFiles.get(i), spokenTexts.get(i), generateTimings))
+            .collectList();
+    }
+
+    private static IllegalStateException missingSpokenText(Path audioFile) {
+        return new IllegalStateException("The local transcription provider aligns a known text and cannot time " + audioFile.getFileName()
+            + " without it. Pass the spoken text, or set 'app.transcription.provider' to 'openai'.");
+    }
+
+    /**
+     * Decodes any audio file to 16 kHz mono signed 16-bit little-endian PCM using FFmpeg.
+     */
+    private short[] decodeToPcm(Path audioFile) throws IOException, InterruptedException {
+        List<String> command = List.of(
+            "ffmpeg", "-v", "error", "-i", audioFile.toAbsolutePath().toString(),
+            "-ac", "1", "-ar", String.valueOf(SAMPLE_RATE), "-f", "s16le", "-"
+        );
+        Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+
+        byte[] pcm;
+        int exitCode;
+        try (JobContext.Scope ignored = JobContext.track(process);
+             InputStream output = process.getInputStream()) {
+            pcm = output.readAllBytes();
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+        if (exitCode != 0) {
+            throw new IOException("FFmpeg PCM decoding exited with non-zero code: " + exitCode);
+        }
+
+        short[] samples = new short[pcm.length / 2];
+        ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return samples;
+    }
+}
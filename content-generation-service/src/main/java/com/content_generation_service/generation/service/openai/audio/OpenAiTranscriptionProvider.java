@@ -1,25 +1,27 @@
 package com.content_generation_service.generation.service.openai.audio;
 
+import com.content_generation_service.client.Providers;
 import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.NarrationSegment;
 import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.generation.service.audio.AudioService;
 import com.content_generation_service.generation.service.audio.TranscriptionProvider;
 import com.content_generation_service.generation.service.visual.MediaMetadataService;
+import com.content_generation_service.util.ResourceHelperService;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.file.Path;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,14 +38,19 @@ public class OpenAiTranscriptionProvider implements TranscriptionProvider {
     private final WebClient webClient;
     private final String apiKey;
     private final MediaMetadataService mediaMetadataService;
+    private final AudioService audioService;
+    private final ResourceHelperService resourceHelperService;
+    private final AppProperties.Batching batching;
 
-    public OpenAiTranscriptionProvider(WebClient.Builder webClientBuilder, AppProperties appProperties, MediaMetadataService mediaMetadataService) {
-        // The transcription API can take a while, so we increase the timeout.
+    public OpenAiTranscriptionProvider(ProviderHttpClientFactory httpClientFactory, AppProperties appProperties, MediaMetadataService mediaMetadataService,
+            AudioService audioService, ResourceHelperService resourceHelperService) {
+        // The transcription API can take a while; its pool has a longer response timeout (app.http-pools.openai-transcription)
         this.mediaMetadataService = mediaMetadataService;
-        HttpClient httpClient = HttpClient.create().responseTimeout(Duration.ofMinutes(2));
-        this.webClient = webClientBuilder
+        this.audioService = audioService;
+        this.resourceHelperService = resourceHelperService;
+        this.batching = appProperties.getTranscription().getBatching();
+        this.webClient = httpClientFactory.builderFor(Providers.OPENAI_TRANSCRIPTION)
                 .baseUrl("https://api.openai.com/v1/audio")
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .build();
                 
         this.apiKey = appProperties.getOpenai().getApiKey(); // Re-using the same API key
@@ -104,6 +111,45 @@ public class OpenAiTranscriptionProvider implements TranscriptionProvider {
         return timingsMono.map(timings -> new NarrationSegment(audioFile, realDuration, timings));
     }
 
+    /**
+     * Transcribes several audio files with a single Whisper call when batching is enabled.
+     * The files are concatenated (with a silence gap between them) into one compact Opus upload,
+     * and the returned word timings are split back per file by their known offsets.
+     */
+    @Override
+    public Mono<List<NarrationSegment>> getNarrationSegmentsFromAudioFiles(List<Path> audioFiles, boolean generateTimings) {
+        if (!batching.isEnabled() || !generateTimings || audioFiles.size() < 2) {
+            return TranscriptionProvider.super.getNarrationSegmentsFromAudioFiles(audioFiles, generateTimings);
+        }
+
+        return Mono.fromCallable(() -> {
+                List<Double> durations = audioFiles.stream().map(mediaMetadataService::getAudioDuration).toList();
+                Path batchFile = audioService.concatenateForTranscription(audioFiles, durations, batching.getGapSeconds(), batching.getBitrate());
+                return new TranscriptionBatch(batchFile, durations);
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(batch -> {
+                log.info("Transcribing {} audio segments in a single batch: {}", audioFiles.size(), batch.file());
+                return getWordTimings(batch.file())
+                    .map(timings -> {
+                        List<Double> starts = new ArrayList<>();
+                        double offset = 0.0;
+                        for (double duration : batch.durations()) {
+                            starts.add(offset);
+                            offset += duration + batching.getGapSeconds();
+                        }
+                        List<List<WordTiming>> timingsPerFile = audioService.splitTimingsBySegment(timings, starts, batch.durations());
+
+                        List<NarrationSegment> segments = new ArrayList<>();
+                        for (int i = 0; i < audioFiles.size(); i++) {
+                            segments.add(new NarrationSegment(audioFiles.get(i), batch.durations().get(i), timingsPerFile.get(i)));
+                        }
+                        return segments;
+                    })
+                    .doFinally(signal -> resourceHelperService.deleteTemporaryFile(batch.file()));
+            });
+    }
+
     /**
      * Parses the 'verbose_json' response from the Whisper API to extract word timings.
      * @param response The top-level JsonNode of the API response.
@@ -132,4 +178,6 @@ public class OpenAiTranscriptionProvider implements TranscriptionProvider {
         log.debug("Successfully parsed {} word timings from OpenAI response.", timings.size());
         return timings;
     }
+
+    private record TranscriptionBatch(Path file, List<Double> durations) {}
 }
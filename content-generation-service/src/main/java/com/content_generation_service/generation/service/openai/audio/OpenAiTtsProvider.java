@@ -1,10 +1,13 @@
 package com.content_generation_service.generation.service.openai.audio;
 
+import com.content_generation_service.client.Providers;
 import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.NarrationSegment;
 import com.content_generation_service.generation.service.audio.TextToSpeechProvider;
 import com.content_generation_service.generation.service.audio.TranscriptionProvider;
+import com.content_generation_service.generation.service.audio.WavFile;
 import com.content_generation_service.util.ResourceHelperService;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.buffer.DataBuffer;
@@ -15,23 +18,32 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Slf4j
 @Service
 public class OpenAiTtsProvider implements TextToSpeechProvider {
 
+    // The 'pcm' response format: 24 kHz mono, signed 16-bit little-endian samples without a header
+    private static final int PCM_SAMPLE_RATE = 24000;
+
     private final WebClient webClient;
     private final String apiKey;
     private final TranscriptionProvider transcriptionProvider;
     private final ResourceHelperService resourceHelperService;
 
-    public OpenAiTtsProvider(WebClient.Builder webClientBuilder, AppProperties appProperties, TranscriptionProvider transcriptionProvider, ResourceHelperService resourceHelperService) {
-        this.webClient = webClientBuilder.baseUrl("https://api.openai.com/v1/audio").build();
+    public OpenAiTtsProvider(ProviderHttpClientFactory httpClientFactory, AppProperties appProperties, TranscriptionProvider transcriptionProvider,
+            ResourceHelperService resourceHelperService) {
+        this.webClient = httpClientFactory.builderFor(Providers.OPENAI_TTS)
+                .baseUrl("https://api.openai.com/v1/audio")
+                .build();
         this.apiKey = appProperties.getOpenai().getApiKey();
         this.transcriptionProvider = transcriptionProvider;
         this.resourceHelperService = resourceHelperService;
@@ -59,24 +71,52 @@ public class OpenAiTtsProvider implements TextToSpeechProvider {
 
         return createAudioFile(text, voiceId)
                 .doOnNext(path -> tempAudioFile[0] = path) // Store the path when it's created
-                .flatMap(path -> transcriptionProvider.getNarrationSegmentFromAudioFile(path, generateTimings))
+                .flatMap(path -> transcriptionProvider.getNarrationSegmentFromAudioFile(path, text, generateTimings))
                 .doOnError(err -> {
                     // Centralized cleanup: If any step fails, delete the temp file.
                     if (tempAudioFile[0] != null) {
                         resourceHelperService.deleteTemporaryFile(tempAudioFile[0]);
                     }
+                })
+                .doOnCancel(() -> {
+                    // Same when the call is abandoned, e.g. a hedged duplicate won the race
+                    if (tempAudioFile[0] != null) {
+                        resourceHelperService.deleteTemporaryFile(tempAudioFile[0]);
+                    }
                 });
     }
 
+    /**
+     * Generates the audio for all texts in parallel, then hands every file to the
+     * transcription provider at once so the timings can be extracted in a single call.
+     */
+    @Override
+    public Flux<NarrationSegment> generateBatch(List<String> texts, String voiceId, boolean generateTimings, int maxConcurrency) {
+        log.info("Requesting {} narrations from OpenAI. Voice: [{}], Generate Timings: {}", texts.size(), voiceId, generateTimings);
+
+        // Track created files so they are removed if any step of the batch fails or the batch is abandoned
+        List<Path> tempAudioFiles = new CopyOnWriteArrayList<>();
+
+        return Flux.fromIterable(texts)
+                .flatMapSequential(text -> createAudioFile(text, voiceId).doOnNext(tempAudioFiles::add), maxConcurrency)
+                .collectList()
+                .flatMap(paths -> transcriptionProvider.getNarrationSegmentsFromAudioFiles(paths, texts, generateTimings))
+                .flatMapIterable(segments -> segments)
+                .doOnError(err -> tempAudioFiles.forEach(resourceHelperService::deleteTemporaryFile))
+                .doOnCancel(() -> tempAudioFiles.forEach(resourceHelperService::deleteTemporaryFile));
+    }
+
     /**
      * Calls the OpenAI TTS API to generate an audio file from text.
-     * @return A Mono emitting the Path to the temporary audio file.
+     * The audio is requested as raw PCM and written after a WAV header, so it is never decoded
+     * or re-encoded before the final render and its duration is known exactly.
+     * @return A Mono emitting the Path to the temporary WAV file.
      */
     private Mono<Path> createAudioFile(String text, String voiceId) {
-        Map<String, Object> requestBody = Map.of("model", "tts-1-hd", "input", text, "voice", voiceId);
+        Map<String, Object> requestBody = Map.of("model", "tts-1-hd", "input", text, "voice", voiceId, "response_format", "pcm");
 
         try {
-            Path tempFile = Files.createTempFile("openai-narration-" + UUID.randomUUID(), ".mp3");
+            Path tempFile = Files.createTempFile("openai-narration-" + UUID.randomUUID(), ".wav");
             
             Flux<DataBuffer> audioStream = webClient.post()
                     .uri("/speech")
@@ -85,15 +125,31 @@ public class OpenAiTtsProvider implements TextToSpeechProvider {
                     .retrieve()
                     .bodyToFlux(DataBuffer.class);
             
-            return DataBufferUtils.write(audioStream, tempFile, StandardOpenOption.CREATE)
+            // The samples go after the space of the header, which is written once their size is known
+            return Mono.using(
+                        () -> AsynchronousFileChannel.open(tempFile, StandardOpenOption.WRITE),
+                        channel -> DataBufferUtils.write(audioStream, channel, WavFile.HEADER_SIZE).map(DataBufferUtils::release).then(),
+                        this::closeQuietly)
                     .then(Mono.fromCallable(() -> {
+                        WavFile.writePcmHeader(tempFile, PCM_SAMPLE_RATE, 1, 16);
                         log.debug("Successfully streamed OpenAI audio to temporary file: {}", tempFile);
                         return tempFile;
-                    }));
+                    }))
+                    // A failed or abandoned download must not leave a partial file behind
+                    .doOnError(e -> resourceHelperService.deleteTemporaryFile(tempFile))
+                    .doOnCancel(() -> resourceHelperService.deleteTemporaryFile(tempFile));
 
         } catch (IOException e) {
             log.error("Failed to create temporary file for OpenAI audio", e);
             return Mono.error(e);
         }
     }
-}
\ No newline at end of file
+
+    private void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close OpenAI audio file channel", e);
+        }
+    }
+}
@@ -28,6 +28,9 @@ public class RedditImageService {
 
     private final ImageUtilitiesService imageUtils;
 
+    // Avatar used when the request has none, relative to the images assets
+    public static final String DEFAULT_AVATAR = "reddit/reddit_avatar_placeholder.png";
+
     // --- Design Constants ---
     private static final int TARGET_WIDTH = 750; // Width of the final image
     private static final int HORIZONTAL_PADDING = 25;
@@ -60,7 +63,7 @@ public class RedditImageService {
         log.info("Starting simplified Reddit post image creation process.");
 
         final String theme = params.get("theme").asText("dark");
-        final String avatarUrl = params.path("avatarImageUrl").asText("reddit/reddit_avatar_placeholder.png");
+        final String avatarUrl = params.path("avatarImageUrl").asText(DEFAULT_AVATAR);
         final String subreddit = params.get("subreddit").asText();
         final String username = params.get("username").asText();
         final String postTitle = params.get("postTitle").asText();
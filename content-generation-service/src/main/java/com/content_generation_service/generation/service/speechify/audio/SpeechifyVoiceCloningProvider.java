@@ -1,11 +1,14 @@
 package com.content_generation_service.generation.service.speechify.audio;
 
+import com.content_generation_service.client.Providers;
 import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.NarrationSegment;
 import com.content_generation_service.generation.model.WordTiming;
 import com.content_generation_service.generation.service.audio.TextToSpeechProvider;
+import com.content_generation_service.generation.service.audio.WavFile;
 import com.content_generation_service.generation.service.speechify.dto.SpeechifyAudioResponse;
 import com.content_generation_service.generation.service.speechify.dto.SpeechifyAudioResponse.SpeechMarks;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -38,13 +41,15 @@ public class SpeechifyVoiceCloningProvider implements TextToSpeechProvider {
     private final long minBackoffSeconds;
 
     public SpeechifyVoiceCloningProvider(
-            WebClient.Builder webClientBuilder,
+            ProviderHttpClientFactory httpClientFactory,
             AppProperties appProperties,
             @Value("${app.tts.speechify.timeout-seconds}") long timeoutSeconds,
             @Value("${app.tts.speechify.retry.max-attempts}") int maxRetryAttempts,
             @Value("${app.tts.speechify.retry.min-backoff-seconds}") long minBackoffSeconds) {
 
-        this.webClient = webClientBuilder.baseUrl("https://api.sws.speechify.com/v1").build();
+        this.webClient = httpClientFactory.builderFor(Providers.SPEECHIFY)
+            .baseUrl("https://api.sws.speechify.com/v1")
+            .build();
         this.apiKey = appProperties.getTts().getSpeechify().getApiKey();
         this.voiceMapping = appProperties.getTts().getSpeechify().getVoiceMapping();
         
@@ -88,7 +93,7 @@ public class SpeechifyVoiceCloningProvider implements TextToSpeechProvider {
         Map<String, Object> requestBody = Map.of(
             "input", text,
             "voice_id", speechifyVoiceId,
-            "audio_format", "mp3",
+            "audio_format", "wav",
             "model", "simba-english"
         );
 
@@ -121,14 +126,16 @@ public class SpeechifyVoiceCloningProvider implements TextToSpeechProvider {
                     byte[] audioBytes = Base64.getDecoder().decode(response.getAudioData());
 
                     // Create a temporary file and write the decoded bytes to it.
-                    Path tempOutputFile = Files.createTempFile("speechify-tts-", ".mp3");
+                    Path tempOutputFile = Files.createTempFile("speechify-tts-", ".wav");
                     Files.write(tempOutputFile, audioBytes);
                     
                     log.debug("Successfully decoded and wrote Speechify audio to temporary file: {}", tempOutputFile);
 
                     List<WordTiming> wordTimings = new ArrayList<>();
                     SpeechMarks speechMarks = response.getSpeechMarks();
-                    double duration = (speechMarks.getEnd_time() - speechMarks.getStart_time()) / 1000.0; // Convert milliseconds to seconds
+                    // The length of the audio itself, so chunks are stitched at their real boundaries
+                    double duration = WavFile.durationSeconds(tempOutputFile)
+                        .orElse((speechMarks.getEnd_time() - speechMarks.getStart_time()) / 1000.0); // Convert milliseconds to seconds
                     if (!speechMarks.getChunks().isEmpty()) {
                         // Process speech marks if available
                         List<SpeechifyAudioResponse.SpeechMark> speechMarkChunks = speechMarks.getChunks();
@@ -1,8 +1,11 @@
 package com.content_generation_service.generation.service.storage;
 
 import com.content_generation_service.generation.model.VideoMetadata;
+import com.content_generation_service.generation.service.visual.DerivedOutput;
 import com.content_generation_service.generation.service.visual.MediaMetadataService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import com.shortscreator.shared.dto.VideoRenditionV1;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -13,6 +16,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Slf4j
@@ -21,12 +27,18 @@ import java.util.UUID;
 public class LocalStorageService implements StorageService {
 
     private final Path localUploadPath;
+    // Small JSON files mapping a render fingerprint to the stored video it produced
+    private final Path renderIndexPath;
     private final MediaMetadataService videoMetadataService;
+    private final ObjectMapper objectMapper;
 
-    public LocalStorageService(@Value("${app.storage.local.upload-dir}") String uploadDir, MediaMetadataService videoMetadataService) throws IOException {
+    public LocalStorageService(@Value("${app.storage.local.upload-dir}") String uploadDir, MediaMetadataService videoMetadataService,
+            ObjectMapper objectMapper) throws IOException {
         this.localUploadPath = Paths.get(uploadDir);
+        this.renderIndexPath = localUploadPath.resolve("render-index");
         this.videoMetadataService = videoMetadataService;
-        Files.createDirectories(this.localUploadPath);
+        this.objectMapper = objectMapper;
+        Files.createDirectories(this.renderIndexPath);
     }
 
     @Override
@@ -37,6 +49,8 @@ public class LocalStorageService implements StorageService {
             // Get metadata BEFORE you clean up the local file
             VideoMetadata metadata = videoMetadataService.getVideoMetadata(localPath);
 
+            List<DerivedOutput.Written> derived = DerivedOutput.writtenFor(localPath);
+
             log.info("DEV MODE: Moving final video from [{}] to local storage [{}]", localPath, destinationPath);
             Files.move(localPath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
 
@@ -46,13 +60,93 @@ public class LocalStorageService implements StorageService {
             int height = metadata.height();
 
             // Return a file URI for local access
-            return new GeneratedVideoDetailsV1(destinationPath.toUri().toString(), destinationPath.toString(), duration, width, height);
+            GeneratedVideoDetailsV1 details = new GeneratedVideoDetailsV1(destinationPath.toUri().toString(), destinationPath.toString(), duration, width, height);
+            storeDerivedOutputs(derived, destinationPath, details, false);
+            return details;
         } catch (IOException e) {
             log.error("Failed to move local file for development storage", e);
             throw new RuntimeException("Local storage failed", e);
         }
     }
 
+    @Override
+    public Optional<GeneratedVideoDetailsV1> copyRenderedVideo(String fingerprint, String templateId, String contentId, String userId) {
+        Path indexEntry = renderIndexPath.resolve(fingerprint + ".json");
+        try {
+            if (!Files.exists(indexEntry)) {
+                return Optional.empty();
+            }
+            GeneratedVideoDetailsV1 original = objectMapper.readValue(indexEntry.toFile(), GeneratedVideoDetailsV1.class);
+            Path source = Paths.get(original.getS3Key());
+            if (!Files.exists(source)) {
+                Files.deleteIfExists(indexEntry);
+                return Optional.empty();
+            }
+            Path destinationPath = localUploadPath.resolve(templateId + "_" + contentId + "_" + UUID.randomUUID() + ".mp4");
+            log.info("DEV MODE: Copying previously rendered video [{}] to [{}]", source, destinationPath);
+            Files.copy(source, destinationPath);
+            GeneratedVideoDetailsV1 copy = new GeneratedVideoDetailsV1(destinationPath.toUri().toString(), destinationPath.toString(),
+                original.getDurationSeconds(), original.getWidth(), original.getHeight());
+            storeDerivedOutputs(DerivedOutput.writtenFor(source), destinationPath, copy, true);
+            return Optional.of(copy);
+        } catch (IOException e) {
+            throw new RuntimeException("Local render index lookup failed", e);
+        }
+    }
+
+    // Moves (or copies) the derived outputs next to the stored video, named after it; one that cannot be stored is left out
+    private void storeDerivedOutputs(List<DerivedOutput.Written> derived, Path videoPath, GeneratedVideoDetailsV1 details, boolean copy) {
+        List<VideoRenditionV1> renditions = new ArrayList<>();
+        for (DerivedOutput.Written output : derived) {
+            Path destinationPath = videoPath.resolveSibling(DerivedOutput.baseName(videoPath) + output.suffix());
+            try {
+                if (copy) {
+                    Files.copy(output.path(), destinationPath, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.move(output.path(), destinationPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                log.warn("DEV MODE: Could not store derived output {}: {}", output.path(), e.getMessage());
+                continue;
+            }
+            String url = destinationPath.toUri().toString();
+            switch (output.kind()) {
+                case RENDITION -> {
+                    VideoMetadata metadata = videoMetadataService.getVideoMetadata(destinationPath);
+                    renditions.add(new VideoRenditionV1(url, destinationPath.toString(), metadata.width(), metadata.height()));
+                }
+                case POSTER -> details.setPosterUrl(url);
+                case PREVIEW_CLIP -> details.setPreviewClipUrl(url);
+            }
+        }
+        if (!renditions.isEmpty()) {
+            details.setRenditions(renditions);
+        }
+    }
+
+    @Override
+    public void registerRenderedVideo(String fingerprint, GeneratedVideoDetailsV1 videoDetails) {
+        try {
+            objectMapper.writeValue(renderIndexPath.resolve(fingerprint + ".json").toFile(), videoDetails);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write local render index entry", e);
+        }
+    }
+
+    @Override
+    public String storePreviewFile(Path localPath, String previewId, String fileName) {
+        try {
+            Path destinationPath = Files.createDirectories(localUploadPath.resolve("previews").resolve(previewId)).resolve(fileName);
+            // Copied aside and moved in place, so a reader never sees half a playlist
+            Path partial = destinationPath.resolveSibling(fileName + ".tmp");
+            Files.copy(localPath, partial, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial, destinationPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return destinationPath.toUri().toString();
+        } catch (IOException e) {
+            throw new RuntimeException("Local preview storage failed", e);
+        }
+    }
+
     @Override
     public void cleanupLocalFile(Path localPath) {
         // Not needed, because storeFinalVideo MOVES the file, which is a cleanup itself.
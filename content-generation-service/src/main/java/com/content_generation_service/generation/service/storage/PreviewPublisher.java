@@ -0,0 +1,35 @@
+package com.content_generation_service.generation.service.storage;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.visual.ProgressListener;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Opens the progressive previews of renders, when they are enabled. See {@link ProgressivePreview}.
+ */
+@Service
+@RequiredArgsConstructor
+public class PreviewPublisher {
+
+    private final StorageService storageService;
+    private final AppProperties appProperties;
+
+    /**
+     * @param listener Told the playlist URL once the preview can be played.
+     * @return A preview to hand to the composition builder, or empty if previews are disabled.
+     */
+    public Optional<ProgressivePreview> open(String templateId, String contentId, ProgressListener listener) {
+        AppProperties.Preview config = appProperties.getPreview();
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        // Every render of the content gets its own playlist, so a retry never mixes with the fragments of an earlier attempt
+        String previewId = templateId + "/" + contentId + "/" + UUID.randomUUID();
+        return Optional.of(new ProgressivePreview(storageService, previewId, config.getSegmentSeconds(), config.getPollMillis(), listener));
+    }
+}
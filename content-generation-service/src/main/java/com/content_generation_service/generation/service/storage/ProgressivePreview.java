@@ -0,0 +1,166 @@
+package com.content_generation_service.generation.service.storage;
+
+import com.content_generation_service.generation.service.visual.ProgressListener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The progressive preview of one render: FFmpeg writes HLS fragments (fMP4) into a local directory next to
+ * the final MP4, and a publisher thread uploads every completed fragment, then the playlist referring to it,
+ * while the encode goes on. The listener is told the playlist URL once the first fragment is playable.
+ * <p>
+ * FFmpeg writes each fragment and playlist under a temporary name and renames it when complete, so every file
+ * the playlist lists is whole. Publishing failures are logged and retried on the next poll; they never fail
+ * the render, whose MP4 stays the real result.
+ */
+@Slf4j
+public class ProgressivePreview {
+
+    public static final String PLAYLIST = "index.m3u8";
+
+    private static final Pattern MAP_URI = Pattern.compile("#EXT-X-MAP:.*URI=\"([^\"]+)\"");
+
+    private final StorageService storageService;
+    private final String previewId;
+    private final double segmentSeconds;
+    private final long pollMillis;
+    private final ProgressListener listener;
+
+    private final Set<String> published = new HashSet<>();
+    private Path directory;
+    private Thread publisher;
+    private volatile boolean stopped = false;
+    private String publishedPlaylist;
+    private boolean announced = false;
+
+    ProgressivePreview(StorageService storageService, String previewId, double segmentSeconds, long pollMillis, ProgressListener listener) {
+        this.storageService = storageService;
+        this.previewId = previewId;
+        this.segmentSeconds = segmentSeconds;
+        this.pollMillis = pollMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates the directory FFmpeg writes the fragments to, and starts publishing them.
+     *
+     * @return The directory, where FFmpeg must write the playlist as {@link #PLAYLIST}.
+     */
+    public synchronized Path start() throws IOException {
+        directory = Files.createTempDirectory("preview-");
+        publisher = new Thread(this::publishUntilStopped, "preview-" + previewId.replace('/', '-'));
+        publisher.setDaemon(true);
+        publisher.start();
+        return directory;
+    }
+
+    public double segmentSeconds() {
+        return segmentSeconds;
+    }
+
+    /**
+     * Stops publishing and removes the local fragments. After a successful render the final playlist, which
+     * marks the end of the video, is published first.
+     */
+    public void finish(boolean rendered) throws InterruptedException {
+        Thread running;
+        synchronized (this) {
+            running = publisher;
+        }
+        if (running == null) {
+            return;
+        }
+        // The flag also covers an interrupt swallowed by an upload in progress
+        stopped = true;
+        running.interrupt();
+        running.join();
+        try {
+            if (rendered) {
+                publish();
+            }
+        } finally {
+            try {
+                FileSystemUtils.deleteRecursively(directory);
+            } catch (IOException e) {
+                log.warn("Could not delete preview fragments {}", directory, e);
+            }
+        }
+    }
+
+    private void publishUntilStopped() {
+        try {
+            while (!stopped) {
+                publish();
+                Thread.sleep(pollMillis);
+            }
+        } catch (InterruptedException e) {
+            // Stopped by finish()
+        }
+    }
+
+    /**
+     * Uploads the fragments of the current playlist that are not published yet, then the playlist itself.
+     */
+    synchronized void publish() {
+        Path playlistFile = directory.resolve(PLAYLIST);
+        try {
+            if (!Files.exists(playlistFile)) {
+                return;
+            }
+            String playlist = Files.readString(playlistFile);
+            if (playlist.equals(publishedPlaylist)) {
+                return;
+            }
+            List<String> files = referencedFiles(playlist);
+            for (String file : files) {
+                if (!published.contains(file)) {
+                    storageService.storePreviewFile(directory.resolve(file), previewId, file);
+                    published.add(file);
+                }
+            }
+            String url = storageService.storePreviewFile(playlistFile, previewId, PLAYLIST);
+            publishedPlaylist = playlist;
+            if (!announced && files.stream().anyMatch(file -> !isInitSegment(playlist, file))) {
+                announced = true;
+                log.info("Progressive preview of {} is available at {}", previewId, url);
+                if (listener != null) {
+                    listener.onPreviewAvailable(url);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not publish the preview of {}, retrying on the next poll: {}", previewId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The files a media playlist refers to: its init segment, then its media segments, in order.
+     */
+    static List<String> referencedFiles(String playlist) {
+        List<String> files = new ArrayList<>();
+        for (String line : playlist.split("\\R")) {
+            String trimmed = line.trim();
+            Matcher map = MAP_URI.matcher(trimmed);
+            if (map.matches()) {
+                files.add(map.group(1));
+            } else if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                files.add(trimmed);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isInitSegment(String playlist, String file) {
+        return playlist.contains("URI=\"" + file + "\"");
+    }
+}
@@ -0,0 +1,166 @@
+package com.content_generation_service.generation.service.storage;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.cache.Fingerprints;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Avoids rendering the same video twice. A request is identified by a SHA-256 fingerprint of the
+ * template, its canonicalized parameters, the versions (size and modification time) of the asset
+ * files it uses, the background music track it resolved to, the configured derived outputs and subtitles,
+ * and the configured pipeline version. When a finished video with the same fingerprint
+ * was stored before, it is copied for the new content instead of being rendered again.
+ * <p>
+ * The pipeline version ('app.render-dedup.pipeline-version') must be bumped whenever a change to the
+ * rendering code should stop older outputs from being reused.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RenderDeduplicationService {
+
+    private static final String NO_MUSIC = "no-music";
+
+    private final StorageService storageService;
+    private final AppProperties appProperties;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Computes the render fingerprint of a request.
+     *
+     * @param templateId The template of the request.
+     * @param params The template parameters of the request.
+     * @param assets The asset files and directories the render reads.
+     * @param backgroundMusic The music track mixed under the narration, or empty when the render goes without.
+     *                        The requested music id alone is not enough: an unknown or undecodable track renders silently.
+     * @return The fingerprint as a lowercase hex string.
+     * @throws IOException if an asset can't be read.
+     */
+    public String fingerprint(String templateId, JsonNode params, List<Path> assets, Optional<Path> backgroundMusic) throws IOException {
+        MessageDigest digest = Fingerprints.sha256();
+        Fingerprints.update(digest, "pipeline:" + appProperties.getRenderDedup().getPipelineVersion());
+        // The stored renditions, poster and preview clip follow the configuration, not the code
+        Fingerprints.update(digest, "derived:" + objectMapper.writeValueAsString(appProperties.getDerivedOutputs()));
+        // So do the grouping and renderer of the burned-in subtitles
+        Fingerprints.update(digest, "subtitles:" + objectMapper.writeValueAsString(appProperties.getSubtitles()));
+        Fingerprints.update(digest, "template:" + templateId);
+        Fingerprints.update(digest, "params:" + objectMapper.writeValueAsString(canonicalize(params)));
+        for (Path asset : assets) {
+            for (String version : assetVersions(asset)) {
+                Fingerprints.update(digest, "asset:" + version);
+            }
+        }
+        if (backgroundMusic.isPresent()) {
+            for (String version : assetVersions(backgroundMusic.get())) {
+                Fingerprints.update(digest, "music:" + version);
+            }
+        } else {
+            Fingerprints.update(digest, "music:" + NO_MUSIC);
+        }
+        return Fingerprints.hex(digest);
+    }
+
+    /**
+     * Looks for a video already rendered for this fingerprint and copies it for the given content.
+     * Lookup failures are logged and treated as a miss, so the request is simply rendered.
+     *
+     * @return Details of the copy, or empty if the video has to be rendered.
+     */
+    public Optional<GeneratedVideoDetailsV1> findRendered(String fingerprint, String templateId, String contentId, String userId) {
+        if (!appProperties.getRenderDedup().isEnabled()) {
+            return Optional.empty();
+        }
+        try {
+            Optional<GeneratedVideoDetailsV1> reused = storageService.copyRenderedVideo(fingerprint, templateId, contentId, userId);
+            reused.ifPresent(details -> log.info("Reusing previously rendered video for contentId: {} (fingerprint {})", contentId, fingerprint));
+            return reused;
+        } catch (Exception e) {
+            log.warn("Render deduplication lookup failed for contentId: {}, rendering instead: {}", contentId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records a freshly stored video under its fingerprint. Failures are only logged, as the video itself is stored.
+     */
+    public void register(String fingerprint, GeneratedVideoDetailsV1 videoDetails) {
+        if (!appProperties.getRenderDedup().isEnabled()) {
+            return;
+        }
+        try {
+            storageService.registerRenderedVideo(fingerprint, videoDetails);
+        } catch (Exception e) {
+            log.warn("Failed to register render fingerprint {}: {}", fingerprint, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a copy of the parameters where equivalent requests look the same: object fields are sorted
+     * and null ones dropped, strings are trimmed and Unicode-normalized, and numbers lose trailing zeros.
+     */
+    static JsonNode canonicalize(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return JsonNodeFactory.instance.nullNode();
+        }
+        if (node.isObject()) {
+            ObjectNode canonical = JsonNodeFactory.instance.objectNode();
+            List<String> fieldNames = new ArrayList<>();
+            node.fieldNames().forEachRemaining(fieldNames::add);
+            fieldNames.stream()
+                .sorted()
+                .filter(name -> !node.get(name).isNull())
+                .forEach(name -> canonical.set(name, canonicalize(node.get(name))));
+            return canonical;
+        }
+        if (node.isArray()) {
+            ArrayNode canonical = JsonNodeFactory.instance.arrayNode();
+            node.forEach(element -> canonical.add(canonicalize(element)));
+            return canonical;
+        }
+        if (node.isTextual()) {
+            return JsonNodeFactory.instance.textNode(Normalizer.normalize(node.asText().trim(), Normalizer.Form.NFC));
+        }
+        if (node.isNumber()) {
+            return JsonNodeFactory.instance.textNode(node.decimalValue().stripTrailingZeros().toPlainString());
+        }
+        return node;
+    }
+
+    /**
+     * Identifies the version of an asset file, or of every file in an asset directory, by relative name,
+     * size and modification time. Hashing the contents of large videos on every request would cost more
+     * than it saves.
+     */
+    private List<String> assetVersions(Path asset) throws IOException {
+        if (!Files.isDirectory(asset)) {
+            return List.of(asset.getFileName() + ":" + Files.size(asset) + ":" + Files.getLastModifiedTime(asset).toMillis());
+        }
+        List<String> versions = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(asset)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                versions.add(asset.relativize(file) + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis());
+            }
+        }
+        return versions;
+    }
+}
@@ -1,19 +1,28 @@
 package com.content_generation_service.generation.service.storage;
 
 import com.content_generation_service.generation.model.VideoMetadata;
+import com.content_generation_service.generation.service.visual.DerivedOutput;
 import com.content_generation_service.generation.service.visual.MediaMetadataService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import com.shortscreator.shared.dto.VideoRenditionV1;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Slf4j
@@ -22,8 +31,14 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class S3StorageService implements StorageService {
 
+    // Small JSON objects mapping a render fingerprint to the stored video it produced
+    private static final String RENDER_INDEX_PREFIX = "render-index/";
+    // Progressive previews of renders in progress; expired by a lifecycle rule of the bucket
+    private static final String PREVIEW_PREFIX = "previews/";
+
     private final S3Client s3Client;
     private final MediaMetadataService videoMetadataService;
+    private final ObjectMapper objectMapper;
     
     @Value("${app.aws.s3.bucket-name}")
     private String bucketName;
@@ -38,6 +53,7 @@ public class S3StorageService implements StorageService {
         log.debug("Uploading file [{}] to S3 at s3://{}/{}", localPath.getFileName(), bucketName, destinationKey);
         String s3Url;
         try {
+            List<DerivedOutput.Written> derived = DerivedOutput.writtenFor(localPath);
             PutObjectRequest request = PutObjectRequest.builder()
                     .bucket(bucketName)
                     .key(destinationKey)
@@ -46,25 +62,153 @@ public class S3StorageService implements StorageService {
             s3Client.putObject(request, localPath);
             s3Url = s3Client.utilities().getUrl(b -> b.bucket(bucketName).key(destinationKey)).toExternalForm();
             log.debug("Successfully uploaded file to {}", s3Url);
+            cleanupLocalFile(localPath);
 
             // Return the complete details
-            return new GeneratedVideoDetailsV1(
+            GeneratedVideoDetailsV1 details = new GeneratedVideoDetailsV1(
                 s3Url,
                 destinationKey,
                 metadata.duration(),
                 metadata.width(),
                 metadata.height()
             );
+            storeDerivedOutputs(derived, destinationKey, details);
+            return details;
 
         } catch (Exception e) {
+            // The local file is kept, so that the upload can be retried without rendering again
             log.error("Failed to upload file {} to S3", localPath, e);
             throw new RuntimeException("S3 upload failed", e);
-        } finally {
-            // Ensure we always attempt to clean up the local file
-            cleanupLocalFile(localPath);
         }
     }
 
+    @Override
+    public Optional<GeneratedVideoDetailsV1> copyRenderedVideo(String fingerprint, String templateId, String contentId, String userId) {
+        GeneratedVideoDetailsV1 original;
+        try {
+            byte[] indexEntry = s3Client.getObjectAsBytes(b -> b.bucket(bucketName).key(RENDER_INDEX_PREFIX + fingerprint + ".json")).asByteArray();
+            original = objectMapper.readValue(indexEntry, GeneratedVideoDetailsV1.class);
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new RuntimeException("Unreadable render index entry for fingerprint " + fingerprint, e);
+        }
+
+        String destinationKey = String.format("%s/%s/%s.mp4", templateId, contentId, UUID.randomUUID());
+        try {
+            // Server-side copy: the video bytes never leave S3
+            s3Client.copyObject(b -> b
+                .sourceBucket(bucketName).sourceKey(original.getS3Key())
+                .destinationBucket(bucketName).destinationKey(destinationKey));
+        } catch (S3Exception e) {
+            // CopyObject reports a missing source as a bare 404, not as NoSuchKeyException
+            if (e.statusCode() != 404) {
+                throw e;
+            }
+            // The original video was deleted since it was indexed
+            log.debug("Indexed video {} no longer exists, dropping render index entry {}", original.getS3Key(), fingerprint);
+            s3Client.deleteObject(b -> b.bucket(bucketName).key(RENDER_INDEX_PREFIX + fingerprint + ".json"));
+            return Optional.empty();
+        }
+        String s3Url = s3Client.utilities().getUrl(b -> b.bucket(bucketName).key(destinationKey)).toExternalForm();
+        log.debug("Copied previously rendered video {} to {}", original.getS3Key(), destinationKey);
+        GeneratedVideoDetailsV1 copy = new GeneratedVideoDetailsV1(s3Url, destinationKey, original.getDurationSeconds(), original.getWidth(), original.getHeight());
+        copyDerivedOutputs(original, copy);
+        return Optional.of(copy);
+    }
+
+    /**
+     * Uploads the assets derived from the video in the same render next to it, named after it. They are
+     * best-effort: one that cannot be uploaded is left out of the details, and the video is delivered without it.
+     */
+    private void storeDerivedOutputs(List<DerivedOutput.Written> derived, String videoKey, GeneratedVideoDetailsV1 details) {
+        List<VideoRenditionV1> renditions = new ArrayList<>();
+        for (DerivedOutput.Written output : derived) {
+            String key = withoutExtension(videoKey) + output.suffix();
+            try {
+                s3Client.putObject(b -> b.bucket(bucketName).key(key)
+                    .contentType(output.kind() == DerivedOutput.Kind.POSTER ? "image/jpeg" : "video/mp4"), output.path());
+                String url = s3Client.utilities().getUrl(b -> b.bucket(bucketName).key(key)).toExternalForm();
+                switch (output.kind()) {
+                    case RENDITION -> {
+                        VideoMetadata metadata = videoMetadataService.getVideoMetadata(output.path());
+                        renditions.add(new VideoRenditionV1(url, key, metadata.width(), metadata.height()));
+                    }
+                    case POSTER -> details.setPosterUrl(url);
+                    case PREVIEW_CLIP -> details.setPreviewClipUrl(url);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to upload derived output {}, delivering the video without it: {}", output.path().getFileName(), e.getMessage());
+            } finally {
+                cleanupLocalFile(output.path());
+            }
+        }
+        if (!renditions.isEmpty()) {
+            details.setRenditions(renditions);
+        }
+    }
+
+    // Server-side copies of the derived outputs of the original, named after the copy of its video; missing ones are left out
+    private void copyDerivedOutputs(GeneratedVideoDetailsV1 original, GeneratedVideoDetailsV1 copy) {
+        String sourceBase = withoutExtension(original.getS3Key());
+        String destinationBase = withoutExtension(copy.getS3Key());
+        if (original.getRenditions() != null) {
+            List<VideoRenditionV1> renditions = new ArrayList<>();
+            for (VideoRenditionV1 rendition : original.getRenditions()) {
+                String destinationKey = destinationBase + rendition.getS3Key().substring(sourceBase.length());
+                copyObject(rendition.getS3Key(), destinationKey)
+                    .ifPresent(url -> renditions.add(new VideoRenditionV1(url, destinationKey, rendition.getWidth(), rendition.getHeight())));
+            }
+            copy.setRenditions(renditions.isEmpty() ? null : renditions);
+        }
+        if (original.getPosterUrl() != null) {
+            copyObject(sourceBase + DerivedOutput.POSTER_SUFFIX, destinationBase + DerivedOutput.POSTER_SUFFIX).ifPresent(copy::setPosterUrl);
+        }
+        if (original.getPreviewClipUrl() != null) {
+            copyObject(sourceBase + DerivedOutput.PREVIEW_CLIP_SUFFIX, destinationBase + DerivedOutput.PREVIEW_CLIP_SUFFIX).ifPresent(copy::setPreviewClipUrl);
+        }
+    }
+
+    private Optional<String> copyObject(String sourceKey, String destinationKey) {
+        try {
+            s3Client.copyObject(b -> b
+                .sourceBucket(bucketName).sourceKey(sourceKey)
+                .destinationBucket(bucketName).destinationKey(destinationKey));
+            return Optional.of(s3Client.utilities().getUrl(b -> b.bucket(bucketName).key(destinationKey)).toExternalForm());
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) {
+                throw e;
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static String withoutExtension(String key) {
+        return key.substring(0, key.lastIndexOf('.'));
+    }
+
+    @Override
+    public void registerRenderedVideo(String fingerprint, GeneratedVideoDetailsV1 videoDetails) {
+        try {
+            s3Client.putObject(b -> b.bucket(bucketName).key(RENDER_INDEX_PREFIX + fingerprint + ".json").contentType("application/json"),
+                RequestBody.fromBytes(objectMapper.writeValueAsBytes(videoDetails)));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize render index entry", e);
+        }
+    }
+
+    @Override
+    public String storePreviewFile(Path localPath, String previewId, String fileName) {
+        String key = PREVIEW_PREFIX + previewId + "/" + fileName;
+        boolean playlist = fileName.endsWith(".m3u8");
+        s3Client.putObject(b -> b.bucket(bucketName).key(key)
+                .contentType(playlist ? "application/vnd.apple.mpegurl" : "video/mp4")
+                // The playlist grows while the render runs, the segments never change
+                .cacheControl(playlist ? "no-cache" : "max-age=86400"),
+            RequestBody.fromFile(localPath));
+        return s3Client.utilities().getUrl(b -> b.bucket(bucketName).key(key)).toExternalForm();
+    }
+
     @Override
     public void cleanupLocalFile(Path localPath) {
         try {
@@ -2,12 +2,14 @@ package com.content_generation_service.generation.service.storage;
 
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
 import java.nio.file.Path;
+import java.util.Optional;
 
 public interface StorageService {
 
     /**
      * Takes a locally generated video file and processes it for final storage.
      * In production, this uploads to S3. In development, it moves it to a local directory.
+     * The local file is only removed on success, so a failed call can be retried.
      *
      * @param localPath The path to the temporary generated video on the filesystem.
      * @param contentId The ID of the content for path construction.
@@ -21,4 +23,28 @@ public interface StorageService {
      * Note: This might not be necessary if the storeFinalVideo implementation moves the file.
      */
     void cleanupLocalFile(Path localPath);
+
+    /**
+     * Looks up a video stored earlier under the given render fingerprint and copies it for new content,
+     * so that every content owns its own stored object.
+     *
+     * @param fingerprint The render fingerprint computed by {@link RenderDeduplicationService}.
+     * @return Details of the copy, or empty if no video was stored under this fingerprint.
+     */
+    Optional<GeneratedVideoDetailsV1> copyRenderedVideo(String fingerprint, String templateId, String contentId, String userId);
+
+    /**
+     * Records a stored video under its render fingerprint, for later reuse by identical requests.
+     */
+    void registerRenderedVideo(String fingerprint, GeneratedVideoDetailsV1 videoDetails);
+
+    /**
+     * Publishes one file of the progressive preview of a render (its HLS playlist, init segment or a media
+     * segment), replacing an earlier version of the same file. The local file is left untouched.
+     *
+     * @param previewId Identifies the preview; its files are stored side by side, as the playlist refers to them.
+     * @param fileName The name of the file within the preview.
+     * @return The URL the file is served at.
+     */
+    String storePreviewFile(Path localPath, String previewId, String fileName);
 }
\ No newline at end of file
@@ -0,0 +1,475 @@
+package com.content_generation_service.generation.service.visual;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * A fully resolved video composition, as built by {@link VideoCompositionBuilder#plan()}: its inputs,
+ * its filter graph and the random start in the background video.
+ * <p>
+ * A plan renders either whole, or as time windows of the video only which are rendered separately
+ * (possibly on other nodes) and stitched back together with the narration. It travels inside chunk
+ * render tasks, so it only holds plain values.
+ *
+ * @param inputs Every file input, in the order of their indices in the filter graph (the background first).
+ * @param filters The filters applied between the background and the subtitles.
+ * @param overlaidVideoTag The tag of the video stream the subtitles are burned onto.
+ * @param outputDurationSeconds The forced output duration, or -1 to end with the narration.
+ * @param narrationDurationSeconds The duration of the narration, or -1 if unknown.
+ * @param musicInputIndex The input of the background music, looped under the narration, or null for none.
+ * @param musicVolume The gain of the background music, before it is ducked under the narration.
+ * @param derivedOutputs The extra assets cut from the composed video in the same run, written next to the output.
+ */
+public record CompositionPlan(
+    int width,
+    int height,
+    Path background,
+    double backgroundStartSeconds,
+    double backgroundDurationSeconds,
+    List<Path> inputs,
+    Integer narrationInputIndex,
+    List<String> filters,
+    String overlaidVideoTag,
+    Path subtitleFile,
+    Path fontsDir,
+    double outputDurationSeconds,
+    double narrationDurationSeconds,
+    Integer musicInputIndex,
+    double musicVolume,
+    List<DerivedOutput> derivedOutputs
+) {
+
+    private static final String SILENT_AUDIO = "anullsrc=channel_layout=stereo:sample_rate=44100";
+    private static final String SUBTITLED_VIDEO_TAG = "[v_with_subs]";
+    private static final String CHUNK_VIDEO_TAG = "[chunk]";
+    private static final String MIXED_AUDIO_TAG = "[a_mixed]";
+    private static final String MAIN_VIDEO_TAG = "[v_main]";
+    private static final String MAIN_AUDIO_TAG = "[a_main]";
+    // The format of the final mix, and of the decoded music tracks
+    private static final String MIX_FORMAT = "aformat=sample_rates=44100:channel_layouts=stereo";
+    // Compresses the music 8:1 while the narration speaks, and releases it over 400 ms once it pauses
+    private static final String DUCKING = "sidechaincompress=threshold=0.02:ratio=8:attack=20:release=400";
+
+    /**
+     * A composition without background music.
+     */
+    public CompositionPlan(int width, int height, Path background, double backgroundStartSeconds, double backgroundDurationSeconds,
+            List<Path> inputs, Integer narrationInputIndex, List<String> filters, String overlaidVideoTag, Path subtitleFile,
+            Path fontsDir, double outputDurationSeconds, double narrationDurationSeconds) {
+        this(width, height, background, backgroundStartSeconds, backgroundDurationSeconds, inputs, narrationInputIndex, filters,
+            overlaidVideoTag, subtitleFile, fontsDir, outputDurationSeconds, narrationDurationSeconds, null, 0.0);
+    }
+
+    /**
+     * A composition without derived outputs.
+     */
+    public CompositionPlan(int width, int height, Path background, double backgroundStartSeconds, double backgroundDurationSeconds,
+            List<Path> inputs, Integer narrationInputIndex, List<String> filters, String overlaidVideoTag, Path subtitleFile,
+            Path fontsDir, double outputDurationSeconds, double narrationDurationSeconds, Integer musicInputIndex, double musicVolume) {
+        this(width, height, background, backgroundStartSeconds, backgroundDurationSeconds, inputs, narrationInputIndex, filters,
+            overlaidVideoTag, subtitleFile, fontsDir, outputDurationSeconds, narrationDurationSeconds, musicInputIndex, musicVolume,
+            List.of());
+    }
+
+    public CompositionPlan {
+        // Plans serialized before derived outputs existed have none
+        derivedOutputs = derivedOutputs == null ? List.of() : List.copyOf(derivedOutputs);
+    }
+
+    /**
+     * A time window of the composition, rendered as one chunk.
+     */
+    public record Window(int index, double startSeconds, double durationSeconds) {}
+
+    /**
+     * @return The duration of the rendered video, or a non-positive value if unknown.
+     */
+    public double durationSeconds() {
+        return outputDurationSeconds > 0 ? outputDurationSeconds : narrationDurationSeconds;
+    }
+
+    public Path narration() {
+        return narrationInputIndex == null ? null : inputs.get(narrationInputIndex);
+    }
+
+    public Path music() {
+        return musicInputIndex == null ? null : inputs.get(musicInputIndex);
+    }
+
+    /**
+     * @return A copy of this plan with every file it references (inputs, subtitles, fonts) mapped.
+     */
+    public CompositionPlan withPaths(UnaryOperator<Path> mapping) {
+        return new CompositionPlan(width, height, background == null ? null : mapping.apply(background),
+            backgroundStartSeconds, backgroundDurationSeconds, inputs.stream().map(mapping).toList(), narrationInputIndex,
+            filters, overlaidVideoTag, subtitleFile == null ? null : mapping.apply(subtitleFile),
+            fontsDir == null ? null : mapping.apply(fontsDir), outputDurationSeconds, narrationDurationSeconds,
+            musicInputIndex, musicVolume, derivedOutputs);
+    }
+
+    /**
+     * @return The FFmpeg command rendering the whole composition, with its narration and music, to the output.
+     */
+    public List<String> command(Path output) {
+        return command(output, null, 0.0);
+    }
+
+    /**
+     * Builds the command rendering the whole composition, which with a preview directory also writes the video
+     * as HLS fragments of fMP4 into that directory, from the same encode, as the render progresses.
+     *
+     * @param previewDir Where the playlist ({@code index.m3u8}) and its fragments are written, or null for none.
+     * @param segmentSeconds The length of the fragments; keyframes are forced on their boundaries.
+     */
+    public List<String> command(Path output, Path previewDir, double segmentSeconds) {
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+
+        // Add background video input with the -ss (seek) option
+        if (background != null) {
+            addSeek(command, backgroundStartSeconds);
+            addInput(command, background);
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            // Skip the background path since we already added it
+            if (inputs.get(i).equals(background)) {
+                continue;
+            }
+            if (musicInputIndex != null && i == musicInputIndex) {
+                addLoopedInput(command, inputs.get(i));
+            } else {
+                addInput(command, inputs.get(i));
+            }
+        }
+        // Add virtual inputs (like silent audio) if necessary
+        if (narrationInputIndex == null && musicInputIndex == null) {
+            addSilentAudio(command);
+        }
+
+        List<String> filterGraph = filterGraph(0.0);
+        List<String> audioGraph = audioGraph(narrationInputIndex, musicInputIndex);
+        String videoTag = filterGraph.isEmpty() ? "0:v" : finalVideoTag();
+        // The silent audio is the last input. Its index is inputs.size().
+        String audioTag = !audioGraph.isEmpty() ? MIXED_AUDIO_TAG : (narrationInputIndex != null ? narrationInputIndex : inputs.size()) + ":a";
+        List<String> graph = new ArrayList<>(filterGraph);
+        graph.addAll(audioGraph);
+        if (!derivedOutputs.isEmpty()) {
+            graph.addAll(derivedGraph(videoTag, true, audioTag));
+            videoTag = MAIN_VIDEO_TAG;
+            audioTag = mainAudioTag(audioTag);
+        }
+        if (!graph.isEmpty()) {
+            command.add("-filter_complex");
+            command.add(String.join(";", graph));
+        }
+
+        // All mapping commands must come after all inputs
+        command.add("-map");
+        command.add(videoTag);
+        command.add("-map");
+        command.add(audioTag);
+
+        addVideoCodec(command);
+        command.add("-c:a");
+        command.add("aac");
+        if (previewDir != null) {
+            // Every fragment starts with a keyframe, so it can be played on its own
+            command.add("-force_key_frames");
+            command.add(String.format(Locale.US, "expr:gte(t,n_forced*%.3f)", segmentSeconds));
+        }
+        command.add("-y"); // Overwrite output file
+        if (outputDurationSeconds > 0) {
+            addDuration(command, outputDurationSeconds);
+        }
+        command.add("-shortest"); // Ensure output duration matches shortest stream (video or audio)
+        if (previewDir == null) {
+            addFastStart(command);
+            command.add(output.toAbsolutePath().toString());
+        } else {
+            // The tee muxer writes the encoded streams to both outputs; an event playlist only ever grows
+            command.add("-f");
+            command.add("tee");
+            command.add(String.format(Locale.US,
+                "[f=mp4:movflags=+faststart]%s|[f=hls:hls_time=%.3f:hls_playlist_type=event:hls_segment_type=fmp4:"
+                    + "hls_fmp4_init_filename=init.mp4:hls_flags=temp_file+independent_segments]%s",
+                output.toAbsolutePath(), segmentSeconds, previewDir.resolve("index.m3u8").toAbsolutePath()));
+        }
+        addDerivedOutputs(command, output, audioTag, outputDurationSeconds);
+        return command;
+    }
+
+    /**
+     * Builds the FFmpeg command rendering the video of one window, without audio.
+     * <p>
+     * The background is seeked to the window, and its timestamps are shifted so that the rest of the
+     * graph sees the timeline of the whole video: overlays and subtitles keep their absolute times.
+     * The timestamps are reset at the end of the graph, so the chunks concatenate back to back.
+     */
+    public List<String> chunkCommand(Window window, Path output) {
+        if (background == null) {
+            throw new IllegalStateException("Only compositions over a background video can be rendered in chunks");
+        }
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        addSeek(command, backgroundStartSeconds + window.startSeconds());
+        addInput(command, background);
+        for (int i = 0; i < inputs.size(); i++) {
+            if (inputs.get(i).equals(background)) {
+                continue;
+            }
+            // The narration and music are not part of a chunk; silence keeps the input indices of the graph valid
+            if ((narrationInputIndex != null && i == narrationInputIndex) || (musicInputIndex != null && i == musicInputIndex)) {
+                addSilentAudio(command);
+            } else {
+                addInput(command, inputs.get(i));
+            }
+        }
+
+        List<String> filterGraph = filterGraph(window.startSeconds());
+        filterGraph.add(finalVideoTag() + "setpts=PTS-STARTPTS" + CHUNK_VIDEO_TAG);
+        command.add("-filter_complex");
+        command.add(String.join(";", filterGraph));
+        command.add("-map");
+        command.add(CHUNK_VIDEO_TAG);
+        command.add("-an");
+        addVideoCodec(command);
+        // Every chunk must share the same time base for the stream copy concat
+        command.add("-video_track_timescale");
+        command.add("90000");
+        addDuration(command, window.durationSeconds());
+        command.add("-y");
+        command.add(output.toAbsolutePath().toString());
+        return command;
+    }
+
+    /**
+     * Builds the FFmpeg command stitching rendered chunks: their video is stream-copied, and the narration
+     * (mixed with the music) is encoded once over the whole video, so that no audio priming gap is left at the
+     * chunk boundaries.
+     *
+     * @param concatList A concat demuxer list of the chunks, in order.
+     */
+    public List<String> stitchCommand(Path concatList, Path output) {
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-f");
+        command.add("concat");
+        command.add("-safe");
+        command.add("0");
+        addInput(command, concatList);
+        if (narrationInputIndex != null) {
+            addInput(command, narration());
+        } else if (musicInputIndex == null) {
+            addSilentAudio(command);
+        }
+        Integer stitchMusicIndex = null;
+        if (musicInputIndex != null) {
+            stitchMusicIndex = narrationInputIndex != null ? 2 : 1;
+            addLoopedInput(command, music());
+        }
+        List<String> audioGraph = audioGraph(narrationInputIndex != null ? 1 : null, stitchMusicIndex);
+        String audioTag = audioGraph.isEmpty() ? "1:a" : MIXED_AUDIO_TAG;
+        List<String> graph = new ArrayList<>(audioGraph);
+        if (!derivedOutputs.isEmpty()) {
+            // The chunks are decoded once more only for the derived outputs; the final video stays a stream copy
+            graph.addAll(derivedGraph("0:v", false, audioTag));
+            audioTag = mainAudioTag(audioTag);
+        }
+        if (!graph.isEmpty()) {
+            command.add("-filter_complex");
+            command.add(String.join(";", graph));
+        }
+        command.add("-map");
+        command.add("0:v");
+        command.add("-map");
+        command.add(audioTag);
+        command.add("-c:v");
+        command.add("copy");
+        command.add("-c:a");
+        command.add("aac");
+        addDuration(command, durationSeconds());
+        command.add("-shortest");
+        command.add("-y");
+        addFastStart(command);
+        command.add(output.toAbsolutePath().toString());
+        addDerivedOutputs(command, output, audioTag, durationSeconds());
+        return command;
+    }
+
+    /**
+     * Splits the composed video, and the audio when a derived output carries it, between the main output and
+     * the derived outputs, each of which gets its own branch of filters.
+     *
+     * @param videoTag The composed video, a filter output or a stream specifier.
+     * @param splitMainVideo Whether the main output takes a branch of the video too, or reads it on its own.
+     * @param audioTag The final audio, a filter output or a stream specifier.
+     */
+    private List<String> derivedGraph(String videoTag, boolean splitMainVideo, String audioTag) {
+        List<String> graph = new ArrayList<>();
+        StringBuilder split = new StringBuilder(asFilterInput(videoTag))
+            .append("split=").append(derivedOutputs.size() + (splitMainVideo ? 1 : 0));
+        if (splitMainVideo) {
+            split.append(MAIN_VIDEO_TAG);
+        }
+        for (int i = 0; i < derivedOutputs.size(); i++) {
+            split.append("[v_split").append(i).append("]");
+        }
+        graph.add(split.toString());
+        for (int i = 0; i < derivedOutputs.size(); i++) {
+            graph.add("[v_split" + i + "]" + derivedOutputs.get(i).filter() + "[v_derived" + i + "]");
+        }
+        // A filter output can only be mapped once, unlike an input stream
+        long audioOutputs = derivedOutputs.stream().filter(DerivedOutput::hasAudio).count();
+        if (audioOutputs > 0 && audioTag.startsWith("[")) {
+            StringBuilder asplit = new StringBuilder(audioTag).append("asplit=").append(audioOutputs + 1).append(MAIN_AUDIO_TAG);
+            for (int i = 0; i < derivedOutputs.size(); i++) {
+                if (derivedOutputs.get(i).hasAudio()) {
+                    asplit.append("[a_derived").append(i).append("]");
+                }
+            }
+            graph.add(asplit.toString());
+        }
+        return graph;
+    }
+
+    // The audio of the main output once the derived outputs take their share of it
+    private String mainAudioTag(String audioTag) {
+        return audioTag.startsWith("[") && derivedOutputs.stream().anyMatch(DerivedOutput::hasAudio) ? MAIN_AUDIO_TAG : audioTag;
+    }
+
+    private void addDerivedOutputs(List<String> command, Path output, String audioTag, double durationSeconds) {
+        for (int i = 0; i < derivedOutputs.size(); i++) {
+            DerivedOutput derived = derivedOutputs.get(i);
+            command.add("-map");
+            command.add("[v_derived" + i + "]");
+            switch (derived.kind()) {
+                case RENDITION -> {
+                    command.add("-map");
+                    command.add(audioTag.equals(MAIN_AUDIO_TAG) ? "[a_derived" + i + "]" : audioTag);
+                    addVideoCodec(command);
+                    command.add("-c:a");
+                    command.add("aac");
+                    if (durationSeconds > 0) {
+                        addDuration(command, durationSeconds);
+                    }
+                    command.add("-shortest");
+                    addFastStart(command);
+                }
+                case POSTER -> {
+                    command.add("-frames:v");
+                    command.add("1");
+                    command.add("-q:v");
+                    command.add("3");
+                }
+                case PREVIEW_CLIP -> {
+                    command.add("-an");
+                    addVideoCodec(command);
+                    addFastStart(command);
+                }
+            }
+            command.add(derived.pathFor(output).toAbsolutePath().toString());
+        }
+    }
+
+    private static String asFilterInput(String tag) {
+        return tag.startsWith("[") ? tag : "[" + tag + "]";
+    }
+
+    private List<String> filterGraph(double timelineOffsetSeconds) {
+        List<String> graph = new ArrayList<>();
+        if (background != null) {
+            String offset = timelineOffsetSeconds > 0 ? String.format(Locale.US, "+%.3f/TB", timelineOffsetSeconds) : "";
+            graph.add(String.format(Locale.US, "[0:v]setpts=PTS-STARTPTS%s,scale=%d:%d:force_original_aspect_ratio=increase,crop=%d:%d,setsar=1[bg]",
+                offset, width, height, width, height));
+        }
+        graph.addAll(filters);
+        if (subtitleFile != null) {
+            String escapedPath = escapePathForFilter(subtitleFile.toAbsolutePath().toString());
+            graph.add(String.format(Locale.US, "%sass=filename='%s':fontsdir='%s'%s",
+                overlaidVideoTag, escapedPath, fontsDir.toAbsolutePath().toString(), SUBTITLED_VIDEO_TAG));
+        }
+        return graph;
+    }
+
+    /**
+     * Mixes the music under the narration, ducked by the narration itself as the sidechain; the mix ends with
+     * the narration. Both are brought to one format first, as the compressor and the mixer require.
+     *
+     * @return The filters of the mix, ending in {@link #MIXED_AUDIO_TAG}, or none without music.
+     */
+    private List<String> audioGraph(Integer narrationIndex, Integer musicIndex) {
+        if (musicIndex == null) {
+            return List.of();
+        }
+        String music = String.format(Locale.US, "[%d:a]%s,volume=%.3f", musicIndex, MIX_FORMAT, musicVolume);
+        if (narrationIndex == null) {
+            return List.of(music + MIXED_AUDIO_TAG);
+        }
+        return List.of(
+            String.format(Locale.US, "[%d:a]%s,asplit=2[narration][voice_key]", narrationIndex, MIX_FORMAT),
+            music + "[music]",
+            "[music][voice_key]" + DUCKING + "[ducked]",
+            // normalize=0 keeps the narration at its level instead of halving both inputs
+            "[narration][ducked]amix=inputs=2:duration=first:dropout_transition=0:normalize=0" + MIXED_AUDIO_TAG);
+    }
+
+    private String finalVideoTag() {
+        return subtitleFile != null ? SUBTITLED_VIDEO_TAG : overlaidVideoTag;
+    }
+
+    private static void addSeek(List<String> command, double seconds) {
+        command.add("-ss");
+        command.add(String.format(Locale.US, "%.3f", seconds));
+    }
+
+    private static void addInput(List<String> command, Path input) {
+        if (SubtitleRasterizer.isFrameList(input)) {
+            // Rasterized subtitles: an ffconcat list of images, each with the time it stays on screen
+            command.add("-f");
+            command.add("concat");
+            command.add("-safe");
+            command.add("0");
+        }
+        command.add("-i");
+        command.add(input.toAbsolutePath().toString());
+    }
+
+    // The music is looped for as long as the rest of the output needs it
+    private static void addLoopedInput(List<String> command, Path input) {
+        command.add("-stream_loop");
+        command.add("-1");
+        addInput(command, input);
+    }
+
+    private static void addSilentAudio(List<String> command) {
+        command.add("-f");
+        command.add("lavfi");
+        command.add("-i");
+        command.add(SILENT_AUDIO);
+    }
+
+    private static void addVideoCodec(List<String> command) {
+        command.add("-c:v");
+        command.add("libx264");
+        command.add("-pix_fmt");
+        command.add("yuv420p");
+    }
+
+    // The index goes before the media, so players can start and seek without downloading the whole file
+    private static void addFastStart(List<String> command) {
+        command.add("-movflags");
+        command.add("+faststart");
+    }
+
+    private static void addDuration(List<String> command, double seconds) {
+        command.add("-t");
+        command.add(String.format(Locale.US, "%.3f", seconds));
+    }
+
+    private static String escapePathForFilter(String path) {
+        return path.replace("\\", "/").replace(":", "\\:");
+    }
+}
@@ -0,0 +1,150 @@
+package com.content_generation_service.generation.service.visual;
+
+import com.content_generation_service.config.AppProperties;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An extra asset cut from the composed video in the same FFmpeg run as the final video: the composition is
+ * decoded and filtered once, and split between the final output and every derived output.
+ * <p>
+ * A derived output is written next to the final video and named after it (see {@link #pathFor}), which is
+ * how the storage finds it. It is best-effort: storage skips the ones that were not written.
+ *
+ * @param height The height it is scaled to; the width follows the aspect ratio.
+ * @param startSeconds Where the poster frame or the clip is taken in the video.
+ * @param durationSeconds The length of the clip.
+ * @param fps The frame rate of the clip.
+ */
+public record DerivedOutput(Kind kind, int height, double startSeconds, double durationSeconds, double fps) {
+
+    public static final String POSTER_SUFFIX = "-poster.jpg";
+    public static final String PREVIEW_CLIP_SUFFIX = "-clip.mp4";
+
+    private static final Pattern SUFFIX = Pattern.compile("-(?:(\\d+)p\\.mp4|(poster)\\.jpg|(clip)\\.mp4)");
+
+    public enum Kind {
+        /** The whole video with its audio, at a lower resolution. */
+        RENDITION,
+        /** A single JPEG frame. */
+        POSTER,
+        /** A short, silent clip at a low frame rate, to loop in place of a thumbnail. */
+        PREVIEW_CLIP
+    }
+
+    public static DerivedOutput rendition(int height) {
+        return new DerivedOutput(Kind.RENDITION, height, 0.0, -1.0, 0.0);
+    }
+
+    public static DerivedOutput poster(double atSeconds, int height) {
+        return new DerivedOutput(Kind.POSTER, height, atSeconds, -1.0, 0.0);
+    }
+
+    public static DerivedOutput previewClip(double startSeconds, double durationSeconds, double fps, int height) {
+        return new DerivedOutput(Kind.PREVIEW_CLIP, height, startSeconds, durationSeconds, fps);
+    }
+
+    /**
+     * @return The derived outputs enabled in the configuration.
+     */
+    public static List<DerivedOutput> configured(AppProperties.DerivedOutputs config) {
+        List<DerivedOutput> outputs = new ArrayList<>();
+        for (int height : config.getRenditionHeights()) {
+            outputs.add(rendition(height));
+        }
+        if (config.getPosterAtSeconds() >= 0) {
+            outputs.add(poster(config.getPosterAtSeconds(), config.getPosterHeight()));
+        }
+        if (config.getPreviewClipSeconds() > 0) {
+            outputs.add(previewClip(0.0, config.getPreviewClipSeconds(), config.getPreviewClipFps(), config.getPreviewClipHeight()));
+        }
+        return outputs;
+    }
+
+    /**
+     * A derived output found next to a final video.
+     *
+     * @param suffix What follows the name of the video without its extension, e.g. "-720p.mp4"; stored
+     *               copies are named the same way after the stored video.
+     */
+    public record Written(Kind kind, Path path, String suffix) {}
+
+    /**
+     * @return Where this output is written for the given final video, e.g. "final-video-1-720p.mp4" for "final-video-1.mp4".
+     */
+    public Path pathFor(Path video) {
+        return video.resolveSibling(baseName(video) + switch (kind) {
+            case RENDITION -> String.format(Locale.US, "-%dp.mp4", height);
+            case POSTER -> POSTER_SUFFIX;
+            case PREVIEW_CLIP -> PREVIEW_CLIP_SUFFIX;
+        });
+    }
+
+    /**
+     * @return The derived outputs written next to the video, by kind.
+     */
+    public static List<Written> writtenFor(Path video) throws IOException {
+        String base = baseName(video);
+        List<Written> written = new ArrayList<>();
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(video.toAbsolutePath().getParent(), base + "-*")) {
+            for (Path sibling : siblings) {
+                Matcher matcher = SUFFIX.matcher(sibling.getFileName().toString().substring(base.length()));
+                if (matcher.matches()) {
+                    Kind kind = matcher.group(1) != null ? Kind.RENDITION : matcher.group(2) != null ? Kind.POSTER : Kind.PREVIEW_CLIP;
+                    written.add(new Written(kind, sibling, matcher.group()));
+                }
+            }
+        }
+        written.sort(Comparator.comparing(Written::kind).thenComparing(Written::suffix));
+        return written;
+    }
+
+    /**
+     * Deletes the derived outputs written next to the video, e.g. by a render that failed. Best-effort: a file
+     * that cannot be deleted is left behind.
+     */
+    public static void deleteFor(Path video) {
+        try {
+            for (Written written : writtenFor(video)) {
+                Files.deleteIfExists(written.path());
+            }
+        } catch (IOException e) {
+            // Left for the cleanup of the temp storage
+        }
+    }
+
+    /**
+     * @return The name of the video without its extension, which its derived outputs start with.
+     */
+    public static String baseName(Path video) {
+        String name = video.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    /**
+     * @return The filters turning the composed video into this output; "-2" keeps the width even, as H.264 requires.
+     */
+    String filter() {
+        String scale = String.format(Locale.US, "scale=-2:%d", height);
+        return switch (kind) {
+            case RENDITION -> scale;
+            case POSTER -> String.format(Locale.US, "trim=start=%.3f,setpts=PTS-STARTPTS,%s", startSeconds, scale);
+            case PREVIEW_CLIP -> String.format(Locale.US, "trim=start=%.3f:duration=%.3f,setpts=PTS-STARTPTS,fps=%s,%s",
+                startSeconds, durationSeconds, fps, scale);
+        };
+    }
+
+    boolean hasAudio() {
+        return kind == Kind.RENDITION;
+    }
+}
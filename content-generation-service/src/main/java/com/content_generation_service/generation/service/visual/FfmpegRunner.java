@@ -0,0 +1,93 @@
+package com.content_generation_service.generation.service.visual;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.content_generation_service.generation.job.JobContext;
+
+/**
+ * Runs an FFmpeg command producing a single output file, reporting its progress from FFmpeg's stderr.
+ */
+@Slf4j
+public final class FfmpegRunner {
+
+    // Pattern to extract time from FFmpeg progress output
+    private static final Pattern FFMPEG_TIME_PATTERN = Pattern.compile("time=(\\d{2}:\\d{2}:\\d{2}\\.\\d{2})");
+
+    private FfmpegRunner() {}
+
+    /**
+     * Runs the command and waits for it. The output is deleted if FFmpeg fails or the wait is interrupted.
+     *
+     * @param output The file the command writes.
+     * @param durationSeconds The expected duration of the output, used to compute the progress; ignored if not positive.
+     * @param progressListener Notified of the progress, may be null.
+     */
+    public static void run(List<String> command, Path output, double durationSeconds, ProgressListener progressListener)
+            throws IOException, InterruptedException {
+        log.debug("Executing FFmpeg command: {}", String.join(" ", command));
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        Process process = processBuilder.start();
+
+        StringBuilder errorOutput = new StringBuilder();
+        int exitCode;
+        // Registered with the running job, so that cancelling it kills FFmpeg and ends the read loop below
+        try (JobContext.Scope ignored = JobContext.track(process);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                errorOutput.append(line).append("\n");
+
+                // Parse progress
+                Matcher matcher = FFMPEG_TIME_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    double currentTimeSeconds = parseTimeToSeconds(matcher.group(1));
+
+                    // Calculate progress percentage
+                    if (durationSeconds > 0 && progressListener != null) {
+                        double percentage = (currentTimeSeconds / durationSeconds) * 100.0;
+                        percentage = Math.min(100.0, Math.max(0.0, percentage)); // Clamp between 0 and 100
+                        progressListener.onProgress(percentage);
+                    }
+                }
+            }
+            exitCode = process.waitFor();
+        } catch (IOException e) {
+            log.error("Error reading FFmpeg stderr: {}", e.getMessage(), e);
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Files.deleteIfExists(output);
+            throw e;
+        }
+
+        if (exitCode != 0) {
+            // Don't leave a partial video behind on the shared storage
+            Files.deleteIfExists(output);
+            throw new IOException("FFmpeg process exited with code " + exitCode + ". Full error output:\n" + errorOutput);
+        }
+    }
+
+    // Helper method to parse HH:MM:SS.ms to seconds
+    private static double parseTimeToSeconds(String timeString) {
+        try {
+            String[] parts = timeString.split(":");
+            double hours = Double.parseDouble(parts[0]);
+            double minutes = Double.parseDouble(parts[1]);
+            double seconds = Double.parseDouble(parts[2]);
+            return (hours * 3600) + (minutes * 60) + seconds;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            log.error("Failed to parse time string: {}", timeString, e);
+            return 0.0;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.content_generation_service.generation.service.visual;
 
 import com.content_generation_service.generation.model.VideoMetadata;
+import com.content_generation_service.generation.service.audio.WavFile;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +12,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
+import java.util.OptionalDouble;
 import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
@@ -69,9 +71,15 @@ public class MediaMetadataService {
 
     /**
      * Gets the duration for an AUDIO file.
-     * Uses the audio stream (a:0) and a simpler output format.
+     * WAV files are sized from their header; anything else uses the audio stream (a:0) and a simpler output format.
      */
     public double getAudioDuration(Path audioPath) {
+        // PCM intermediates carry their exact length in the header, no need to spawn ffprobe
+        OptionalDouble headerDuration = WavFile.durationSeconds(audioPath);
+        if (headerDuration.isPresent()) {
+            return headerDuration.getAsDouble();
+        }
+
         // This command is specific to audio files and gets only the duration
         String[] command = {
             "ffprobe", "-v", "error", "-select_streams", "a:0",
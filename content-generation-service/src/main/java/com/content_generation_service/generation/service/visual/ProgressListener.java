@@ -4,4 +4,13 @@ public interface ProgressListener {
     void onProgress(double percentage);
     void onComplete();
     void onError();
+    void onCancelled();
+
+    /**
+     * Called once, when the first fragments of the video being rendered can be played.
+     *
+     * @param previewUrl The URL of the HLS playlist, which grows until the render completes.
+     */
+    default void onPreviewAvailable(String previewUrl) {
+    }
 }
@@ -0,0 +1,133 @@
+package com.content_generation_service.generation.service.visual;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.ImagePosition;
+import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.generation.service.assets.FontIndexService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shortscreator.shared.dto.GenerationRequestV1;
+import com.shortscreator.shared.dto.GenerationResultV1;
+import com.shortscreator.shared.enums.ContentStatus;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms the render path up at startup, before the node reports ready and starts taking requests.
+ * <p>
+ * Checks that ffmpeg and ffprobe run, then renders a tiny composition from lavfi test sources through
+ * the same builder, filters and fonts as a real job. This primes the fontconfig cache, and the JIT for
+ * the composition and JSON code, so the first real render starts warm.
+ * A failed warm-up stops the startup when 'app.warmup.fail-on-error' is set, so that a node that
+ * cannot render never takes a request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RenderWarmup implements ApplicationRunner {
+
+    // 9:16 like the real outputs, but small enough to render in a moment
+    private static final int WIDTH = 216;
+    private static final int HEIGHT = 384;
+    private static final double DURATION_SECONDS = 2.0;
+    private static final int JSON_ROUND_TRIPS = 200;
+
+    private final AppProperties appProperties;
+    private final ObjectProvider<VideoCompositionBuilder> videoCompositionBuilderProvider;
+    private final SubtitleService subtitleService;
+    private final SubtitleRasterizer subtitleRasterizer;
+    private final FontIndexService fontIndexService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        AppProperties.Warmup warmup = appProperties.getWarmup();
+        if (!warmup.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Path dir = Files.createTempDirectory("render-warmup");
+        try {
+            checkTool(dir, "ffmpeg");
+            checkTool(dir, "ffprobe");
+            renderSyntheticComposition(dir);
+            roundTripJson();
+            log.info("Render warm-up done in {} ms", Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (Exception e) {
+            if (warmup.isFailOnError()) {
+                throw new IllegalStateException("Render warm-up failed, this node cannot render", e);
+            }
+            log.warn("Render warm-up failed, the first render starts cold: {}", e.getMessage());
+        } finally {
+            try {
+                FileSystemUtils.deleteRecursively(dir);
+            } catch (IOException e) {
+                log.warn("Could not delete the render warm-up directory {}: {}", dir, e.getMessage());
+            }
+        }
+    }
+
+    private static void checkTool(Path dir, String tool) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(tool, "-version")
+            .redirectErrorStream(true)
+            .redirectOutput(dir.resolve(tool + "-version.txt").toFile())
+            .start();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException(tool + " -version did not return");
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException(tool + " -version exited with code " + process.exitValue());
+        }
+    }
+
+    private void renderSyntheticComposition(Path dir) throws IOException, InterruptedException {
+        String duration = String.format(Locale.US, "%.1f", DURATION_SECONDS);
+        Path background = dir.resolve("background.mp4");
+        FfmpegRunner.run(List.of("ffmpeg", "-f", "lavfi", "-i", "testsrc2=size=" + WIDTH + "x" + HEIGHT + ":rate=30:duration=" + duration,
+            "-c:v", "libx264", "-pix_fmt", "yuv420p", "-y", background.toString()), background, DURATION_SECONDS, null);
+        Path narration = dir.resolve("narration.m4a");
+        FfmpegRunner.run(List.of("ffmpeg", "-f", "lavfi", "-i", "sine=frequency=440:duration=" + duration,
+            "-c:a", "aac", "-y", narration.toString()), narration, DURATION_SECONDS, null);
+        Path image = dir.resolve("overlay.png");
+        FfmpegRunner.run(List.of("ffmpeg", "-f", "lavfi", "-i", "color=c=white:s=64x64", "-frames:v", "1",
+            "-y", image.toString()), image, 0, null);
+
+        List<WordTiming> words = List.of(new WordTiming("Warming", 0.0, 0.8), new WordTiming("up", 0.8, 1.6));
+        Path subtitles = subtitleRasterizer.isEnabled()
+            ? subtitleRasterizer.rasterize(words, "Arial", "#FFFFFF", "bottom", WIDTH, HEIGHT, dir)
+            : subtitleService.createAssFile(words, "Arial", "#FFFFFF", "bottom");
+        // Burning the subtitles initializes fontconfig and writes its cache, as a real job would
+        videoCompositionBuilderProvider.getObject()
+            .withDimensions(WIDTH, HEIGHT)
+            .withBackground(background)
+            .withNarration(narration)
+            .withImageOverlay(image, ImagePosition.CENTER, 0.0, 1.0)
+            .withTextWatermark()
+            .withSubtitles(fontIndexService.fontDir("Arial"), subtitles)
+            .buildAndExecute(dir);
+    }
+
+    private void roundTripJson() throws IOException {
+        GenerationRequestV1 request = new GenerationRequestV1("warmup", "warmup", "warmup",
+            objectMapper.readTree("{\"subtitles\":{\"font\":\"Arial\",\"color\":\"#FFFFFF\"}}"));
+        GenerationResultV1 result = new GenerationResultV1("warmup", ContentStatus.FAILED, null, "warmup");
+        for (int i = 0; i < JSON_ROUND_TRIPS; i++) {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(request), GenerationRequestV1.class);
+            objectMapper.readValue(objectMapper.writeValueAsBytes(result), GenerationResultV1.class);
+        }
+    }
+}
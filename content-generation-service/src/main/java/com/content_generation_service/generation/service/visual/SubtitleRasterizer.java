@@ -0,0 +1,302 @@
+package com.content_generation_service.generation.service.visual;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.generation.service.assets.FontIndexService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Draws subtitles in Java instead of having libass burn them inside FFmpeg ('app.subtitles.renderer: raster').
+ * <p>
+ * Captions only change when a word starts or ends, so each caption is drawn once, as a transparent frame of
+ * the size of the video, in parallel. The frames are listed with their durations in an ffconcat file, which
+ * FFmpeg reads as a sparse image stream and overlays on top of the video (see
+ * {@link VideoCompositionBuilder#withSubtitles}); the filter graph thread no longer renders text.
+ * <p>
+ * The frames follow the style of {@link SubtitleService}: the same font, size, outline, shadow, margins
+ * and phrase grouping, with the words of a phrase lit as they are spoken.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SubtitleRasterizer {
+
+    private static final String FRAME_LIST_EXTENSION = ".ffconcat";
+    private static final String RASTER_RENDERER = "raster";
+    private static final String BLANK_FRAME = "blank.png";
+
+    // The style of SubtitleService, in the units of an ASS script without PlayRes (384x288)
+    private static final double SCRIPT_WIDTH = 384.0;
+    private static final double SCRIPT_HEIGHT = 288.0;
+    private static final double FONT_SIZE = 21.0;
+    private static final double MARGIN_H = 10.0;
+    private static final double MARGIN_V = 40.0;
+    // Borders are not scaled with the script (no ScaledBorderAndShadow), they are in video pixels
+    private static final float OUTLINE = 6f;
+    private static final int SHADOW = 2;
+    // Words not spoken yet, as the &H80 alpha of the ASS secondary colour
+    private static final int UNLIT_ALPHA = 0x7F;
+
+    private final AppProperties appProperties;
+    private final SubtitleService subtitleService;
+    private final FontIndexService fontIndexService;
+
+    /**
+     * One state of the captions: the words on screen, of which the first {@code litWords} are lit.
+     */
+    record Caption(long startCs, long endCs, List<String> words, int litWords) {}
+
+    /**
+     * @return Whether the subtitle file is the frame list of rasterized subtitles, rather than an .ass script.
+     */
+    public static boolean isFrameList(Path subtitleFile) {
+        return subtitleFile.getFileName().toString().endsWith(FRAME_LIST_EXTENSION);
+    }
+
+    /**
+     * @return Whether subtitles are drawn by this rasterizer, rather than burned by libass.
+     */
+    public boolean isEnabled() {
+        return RASTER_RENDERER.equalsIgnoreCase(appProperties.getSubtitles().getRenderer());
+    }
+
+    /**
+     * Draws the captions of the words, as frames of the size of the video.
+     *
+     * @param baseDir The directory the frames are written to, in a directory of their own.
+     * @return The ffconcat list of the frames; its directory holds them all.
+     */
+    public Path rasterize(List<WordTiming> wordTimings, String font, String color, String position,
+            int width, int height, Path baseDir) throws IOException {
+        long start = System.nanoTime();
+        List<Caption> captions = captions(wordTimings);
+        Path framesDir = Files.createDirectories(baseDir.resolve("subtitle-frames-" + UUID.randomUUID()));
+        try {
+            Style style = new Style(baseFont(font), parseColor(color), position, width, height);
+            writeFrame(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), framesDir.resolve(BLANK_FRAME));
+            // CPU bound, so on the parallel scheduler; the stages calling this run on the bounded elastic one
+            Flux.range(0, captions.size())
+                .flatMap(i -> Mono.fromCallable(() -> {
+                    writeFrame(draw(captions.get(i), style), framesDir.resolve(frameName(i)));
+                    return i;
+                }).subscribeOn(Schedulers.parallel()), Math.max(1, appProperties.getSubtitles().getRasterParallelism()))
+                .then()
+                .block();
+
+            Path frameList = framesDir.resolve("subtitles" + FRAME_LIST_EXTENSION);
+            writeFrameList(captions, frameList);
+            log.debug("Rasterized {} captions in {} ms", captions.size(), (System.nanoTime() - start) / 1_000_000);
+            return frameList;
+        } catch (IOException | RuntimeException e) {
+            FileSystemUtils.deleteRecursively(framesDir);
+            // Failures of the parallel draws come out of block() wrapped
+            if (Exceptions.unwrap(e) instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The successive states of the captions, as {@link SubtitleService} would show them.
+     */
+    List<Caption> captions(List<WordTiming> wordTimings) {
+        List<Caption> captions = new ArrayList<>();
+        if (wordTimings == null) {
+            return captions;
+        }
+        if (!subtitleService.phraseGrouping()) {
+            for (WordTiming timing : wordTimings) {
+                addCaption(captions, new Caption(centiseconds(timing.getStartTimeSeconds()), centiseconds(timing.getEndTimeSeconds()),
+                    List.of(timing.getWord().toUpperCase()), 1));
+            }
+            return captions;
+        }
+        int first = 0;
+        while (first < wordTimings.size()) {
+            int end = subtitleService.phraseEnd(wordTimings, first);
+            List<String> words = wordTimings.subList(first, end).stream().map(timing -> timing.getWord().toUpperCase()).toList();
+            long phraseEndCs = centiseconds(wordTimings.get(end - 1).getEndTimeSeconds());
+            for (int i = first; i < end; i++) {
+                long wordStartCs = centiseconds(wordTimings.get(i).getStartTimeSeconds());
+                long nextStartCs = i + 1 < end ? centiseconds(wordTimings.get(i + 1).getStartTimeSeconds()) : phraseEndCs;
+                addCaption(captions, new Caption(wordStartCs, nextStartCs, words, i - first + 1));
+            }
+            first = end;
+        }
+        return captions;
+    }
+
+    // Captions never overlap on screen: one starting before the previous one ends waits for it
+    private static void addCaption(List<Caption> captions, Caption caption) {
+        long startCs = caption.startCs();
+        if (!captions.isEmpty()) {
+            startCs = Math.max(startCs, captions.get(captions.size() - 1).endCs());
+        }
+        if (caption.endCs() > startCs) {
+            captions.add(new Caption(startCs, caption.endCs(), caption.words(), caption.litWords()));
+        }
+    }
+
+    /**
+     * Lists the frames with their durations, blank between the captions. The blank frame comes last, with no
+     * duration, so the overlay stays transparent until the end of the video.
+     */
+    private static void writeFrameList(List<Caption> captions, Path frameList) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(frameList)) {
+            writer.write("ffconcat version 1.0\n");
+            long cursorCs = 0;
+            for (int i = 0; i < captions.size(); i++) {
+                Caption caption = captions.get(i);
+                if (caption.startCs() > cursorCs) {
+                    writeEntry(writer, BLANK_FRAME, caption.startCs() - cursorCs);
+                }
+                writeEntry(writer, frameName(i), caption.endCs() - caption.startCs());
+                cursorCs = caption.endCs();
+            }
+            writer.write("file " + BLANK_FRAME + "\n");
+        }
+    }
+
+    private static void writeEntry(Writer writer, String frame, long durationCs) throws IOException {
+        writer.write("file " + frame + "\n");
+        writer.write(String.format(Locale.US, "duration %d.%02d%n", durationCs / 100, durationCs % 100));
+    }
+
+    private static BufferedImage draw(Caption caption, Style style) {
+        BufferedImage image = new BufferedImage(style.width(), style.height(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            FontRenderContext context = g.getFontRenderContext();
+            Font font = style.font();
+            double spaceWidth = font.getStringBounds(" ", context).getWidth();
+
+            // Wrapped greedily, like libass does for a style without \q
+            List<List<Integer>> lines = new ArrayList<>();
+            double[] wordWidths = new double[caption.words().size()];
+            double lineWidth = 0;
+            for (int i = 0; i < wordWidths.length; i++) {
+                wordWidths[i] = font.getStringBounds(caption.words().get(i), context).getWidth();
+                if (lines.isEmpty() || lineWidth + spaceWidth + wordWidths[i] > style.maxLineWidth()) {
+                    lines.add(new ArrayList<>());
+                    lineWidth = wordWidths[i];
+                } else {
+                    lineWidth += spaceWidth + wordWidths[i];
+                }
+                lines.get(lines.size() - 1).add(i);
+            }
+
+            LineMetrics metrics = font.getLineMetrics("X", context);
+            double lineHeight = metrics.getAscent() + metrics.getDescent();
+            double blockHeight = lineHeight * lines.size();
+            double top = switch (style.position()) {
+                case "top" -> style.marginV();
+                case "center" -> (style.height() - blockHeight) / 2;
+                default -> style.height() - style.marginV() - blockHeight; // bottom
+            };
+
+            g.setStroke(new BasicStroke(OUTLINE * 2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            for (int l = 0; l < lines.size(); l++) {
+                List<Integer> line = lines.get(l);
+                double width = spaceWidth * (line.size() - 1);
+                for (int i : line) {
+                    width += wordWidths[i];
+                }
+                double x = (style.width() - width) / 2;
+                double baseline = top + l * lineHeight + metrics.getAscent();
+                for (int i : line) {
+                    Shape glyphs = font.createGlyphVector(context, caption.words().get(i)).getOutline((float) x, (float) baseline);
+                    // Shadow of the bordered glyphs, then the border, then the fill
+                    Shape shadow = AffineTransform.getTranslateInstance(SHADOW, SHADOW).createTransformedShape(glyphs);
+                    g.setColor(Color.BLACK);
+                    g.fill(shadow);
+                    g.draw(shadow);
+                    g.draw(glyphs);
+                    g.setColor(i < caption.litWords() ? style.color() : style.unlitColor());
+                    g.fill(glyphs);
+                    x += wordWidths[i] + spaceWidth;
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static void writeFrame(BufferedImage image, Path file) throws IOException {
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    private Font baseFont(String fontName) {
+        Font font = fontIndexService.font(fontName).orElseGet(() -> new Font(fontName, Font.PLAIN, 1));
+        // The style asks for bold; faces which already are bold are not emboldened again, as with fontconfig
+        String name = font.getFontName(Locale.ROOT).toLowerCase(Locale.ROOT);
+        boolean boldFace = name.contains("bold") || name.contains("black") || name.contains("heavy");
+        return boldFace ? font : font.deriveFont(Font.BOLD);
+    }
+
+    private static Color parseColor(String color) {
+        return new Color(Integer.parseInt(color.substring(1, 7), 16));
+    }
+
+    private static String frameName(int index) {
+        return String.format(Locale.US, "caption-%05d.png", index);
+    }
+
+    private static long centiseconds(double timeInSeconds) {
+        return Math.round(timeInSeconds * 100);
+    }
+
+    /**
+     * The style of the subtitles, scaled to the video.
+     */
+    private record Style(Font font, Color color, Color unlitColor, String position, int width, int height,
+            double marginV, double maxLineWidth) {
+
+        Style(Font baseFont, Color color, String position, int width, int height) {
+            this(sizedFont(baseFont, FONT_SIZE * height / SCRIPT_HEIGHT), color,
+                new Color(color.getRed(), color.getGreen(), color.getBlue(), UNLIT_ALPHA), position.toLowerCase(Locale.ROOT),
+                width, height, MARGIN_V * height / SCRIPT_HEIGHT, width - 2 * MARGIN_H * width / SCRIPT_WIDTH);
+        }
+
+        // Like libass, the size is the height of a line (ascent plus descent), not the em size
+        private static Font sizedFont(Font font, double lineHeight) {
+            Font unit = font.deriveFont(100f);
+            LineMetrics metrics = unit.getLineMetrics("X", new FontRenderContext(null, true, true));
+            double lineHeightPerEm = (metrics.getAscent() + metrics.getDescent()) / 100.0;
+            return font.deriveFont((float) (lineHeight / lineHeightPerEm));
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package com.content_generation_service.generation.service.visual;
 
+import com.content_generation_service.config.AppProperties;
 import com.content_generation_service.generation.model.WordTiming;
-import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -15,34 +16,46 @@ import java.util.UUID;
 
 /**
  * Creates styled subtitle files in the Advanced SubStation Alpha (.ass) format.
+ * <p>
+ * Words are shown one event each, or grouped into phrases ('app.subtitles.grouping: phrase'): one event
+ * covers a few words, which karaoke tags reveal as they are spoken. libass evaluates the events on every
+ * frame, so long narrations render faster with phrases. Either way the file is written straight to disk.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SubtitleService {
 
+    private static final String PHRASE_GROUPING = "phrase";
+    private static final String EVENT_PREFIX = "Dialogue: 0,";
+    private static final String EVENT_STYLE = ",Default,,0,0,0,,";
+    private static final String FADE_TAG = "{\\fad(20,20)}";
+
+    private final AppProperties appProperties;
+
     /**
      * Creates a styled .ass subtitle file from word timings and style parameters.
      *
      * @param wordTimings A list of words and their start/end times.
-     * @param styleParams A JsonNode containing subtitle styling info (font, color, position).
+     * @param font The font family of the subtitles.
+     * @param color The color of the subtitles, as #RRGGBB.
+     * @param position Where the subtitles sit: 'top', 'center' or 'bottom'.
      * @return The path to the generated .ass file.
      */
     public Path createAssFile(List<WordTiming> wordTimings, String font, String color, String position) {
         log.info("Generating styled .ass subtitle file.");
+        boolean phrases = phraseGrouping();
 
-        // Build the .ass file content
-        StringBuilder assContent = new StringBuilder();
-        appendAssHeader(assContent, font, color, position);
-        appendAssEvents(assContent, wordTimings, true);
-
-        // Write content to a temporary file
-        Path assPath;
+        Path assPath = null;
         try {
             assPath = Files.createTempFile("subtitles-" + UUID.randomUUID(), ".ass");
-            Files.writeString(assPath, assContent.toString());
+            try (Writer writer = Files.newBufferedWriter(assPath)) {
+                writeAssHeader(writer, font, color, position, phrases);
+                writeAssEvents(writer, wordTimings, phrases, true);
+            }
         } catch (IOException e) {
             log.error("Failed to write temporary .ass file", e);
+            deleteQuietly(assPath);
             throw new RuntimeException("Could not create temporary subtitle file", e);
         }
 
@@ -50,7 +63,7 @@ public class SubtitleService {
         return assPath;
     }
 
-    private void appendAssHeader(StringBuilder builder, String font, String color, String position) {
+    private void writeAssHeader(Writer writer, String font, String color, String position, boolean phrases) throws IOException {
         // Alignment uses Numpad notation: 2=bottom-center, 5=middle-center, 8=top-center
         int alignment = switch (position.toLowerCase(Locale.ROOT)) {
             case "top" -> 8;
@@ -59,47 +72,137 @@ public class SubtitleService {
         };
 
         // Convert hex color #RRGGBB to ASS format &HBBGGRR&
-        String assColor = "&H" + color.substring(5, 7) + color.substring(3, 5) + color.substring(1, 3) + "&";
+        String bgr = color.substring(5, 7) + color.substring(3, 5) + color.substring(1, 3);
+        String assColor = "&H" + bgr + "&";
+        // Karaoke shows the words not spoken yet in the secondary color: the same color, half transparent
+        String secondaryColor = phrases ? "&H80" + bgr : "&H000000FF";
 
-        builder.append("[Script Info]\n");
-        builder.append("Title: Generated Subtitles\n");
-        builder.append("ScriptType: v4.00+\n\n");
-        builder.append("[V4+ Styles]\n");
-        builder.append("Format: Name, Fontname, Fontsize, PrimaryColour, SecondaryColour, OutlineColour, BackColour, Bold, Italic, Underline, StrikeOut, ScaleX, ScaleY, Spacing, Angle, BorderStyle, Outline, Shadow, Alignment, MarginL, MarginR, MarginV, Encoding\n");
+        writer.write("[Script Info]\n");
+        writer.write("Title: Generated Subtitles\n");
+        writer.write("ScriptType: v4.00+\n\n");
+        writer.write("[V4+ Styles]\n");
+        writer.write("Format: Name, Fontname, Fontsize, PrimaryColour, SecondaryColour, OutlineColour, BackColour, Bold, Italic, Underline, StrikeOut, ScaleX, ScaleY, Spacing, Angle, BorderStyle, Outline, Shadow, Alignment, MarginL, MarginR, MarginV, Encoding\n");
         // Define our custom style
-        builder.append(String.format("Style: Default,%s,21,%s,&H000000FF,&H00000000,&H00000000,1,0,0,0,100,100,0,0,1,6,2,%d,10,10,40,1\n\n",
-            font, assColor, alignment));
+        writer.write("Style: Default," + font + ",21," + assColor + "," + secondaryColor
+            + ",&H00000000,&H00000000,1,0,0,0,100,100,0,0,1,6,2," + alignment + ",10,10,40,1\n\n");
     }
 
-    private void appendAssEvents(StringBuilder builder, List<WordTiming> wordTimings, boolean capitalize) {
-        builder.append("[Events]\n");
-        builder.append("Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text\n");
+    private void writeAssEvents(Writer writer, List<WordTiming> wordTimings, boolean phrases, boolean capitalize) throws IOException {
+        writer.write("[Events]\n");
+        writer.write("Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text\n");
 
         if (wordTimings == null) return;
 
+        if (phrases) {
+            writePhraseEvents(writer, wordTimings, capitalize);
+            return;
+        }
         for (WordTiming timing : wordTimings) {
-            String startTime = formatAssTimestamp(timing.getStartTimeSeconds());
-            String endTime = formatAssTimestamp(timing.getEndTimeSeconds());
-            String text = timing.getWord();
-            if (capitalize) {
-                text = text.toUpperCase();
+            writeEventStart(writer, centiseconds(timing.getStartTimeSeconds()), centiseconds(timing.getEndTimeSeconds()));
+            writeWord(writer, timing.getWord(), capitalize);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Writes one event per phrase. Each word gets a {@code \k} tag lasting until the next word starts, so
+     * it lights up when spoken and stays lit until the phrase ends.
+     */
+    private void writePhraseEvents(Writer writer, List<WordTiming> wordTimings, boolean capitalize) throws IOException {
+        int first = 0;
+        while (first < wordTimings.size()) {
+            int end = phraseEnd(wordTimings, first);
+            long startCs = centiseconds(wordTimings.get(first).getStartTimeSeconds());
+            long endCs = Math.max(startCs, centiseconds(wordTimings.get(end - 1).getEndTimeSeconds()));
+            writeEventStart(writer, startCs, endCs);
+            for (int i = first; i < end; i++) {
+                long wordStartCs = centiseconds(wordTimings.get(i).getStartTimeSeconds());
+                long nextStartCs = i + 1 < end ? centiseconds(wordTimings.get(i + 1).getStartTimeSeconds()) : endCs;
+                writer.write("{\\k");
+                writer.write(Long.toString(Math.max(0, nextStartCs - wordStartCs)));
+                writer.write('}');
+                writeWord(writer, wordTimings.get(i).getWord(), capitalize);
+                if (i + 1 < end) {
+                    writer.write(' ');
+                }
             }
+            writer.write('\n');
+            first = end;
+        }
+    }
 
-            int fadeInMs = 20; // Example fade-in duration
-            int fadeOutMs = 20; // Example fade-out duration
-            
-            // Prepend the fade effect tag to the text
-            String effectTag = String.format("{\\fad(%d,%d)}", fadeInMs, fadeOutMs);
-            
-            builder.append(String.format("Dialogue: 0,%s,%s,Default,,0,0,0,,%s%s\n", startTime, endTime, effectTag, text));
+    /**
+     * @return Whether words are grouped into phrases, rather than shown one at a time.
+     */
+    boolean phraseGrouping() {
+        return PHRASE_GROUPING.equalsIgnoreCase(appProperties.getSubtitles().getGrouping());
+    }
+
+    /**
+     * @return The index after the last word of the phrase starting at {@code first}.
+     */
+    int phraseEnd(List<WordTiming> wordTimings, int first) {
+        AppProperties.Subtitles config = appProperties.getSubtitles();
+        int end = first + 1;
+        while (end < wordTimings.size()
+                && end - first < config.getPhraseMaxWords()
+                && !endsSentence(wordTimings.get(end - 1).getWord())
+                && wordTimings.get(end).getStartTimeSeconds() - wordTimings.get(end - 1).getEndTimeSeconds() <= config.getPhraseMaxGapSeconds()) {
+            end++;
         }
+        return end;
     }
 
-    private String formatAssTimestamp(double timeInSeconds) {
-        int hours = (int) (timeInSeconds / 3600);
-        int minutes = (int) ((timeInSeconds % 3600) / 60);
-        int seconds = (int) (timeInSeconds % 60);
-        int centiseconds = (int) ((timeInSeconds * 100) % 100);
-        return String.format(Locale.ROOT, "%d:%02d:%02d.%02d", hours, minutes, seconds, centiseconds);
+    private static boolean endsSentence(String word) {
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+        char last = word.charAt(word.length() - 1);
+        return last == '.' || last == '!' || last == '?';
+    }
+
+    private static void writeEventStart(Writer writer, long startCs, long endCs) throws IOException {
+        writer.write(EVENT_PREFIX);
+        writeTimestamp(writer, startCs);
+        writer.write(',');
+        writeTimestamp(writer, endCs);
+        writer.write(EVENT_STYLE);
+        writer.write(FADE_TAG);
+    }
+
+    private static void writeWord(Writer writer, String word, boolean capitalize) throws IOException {
+        writer.write(capitalize ? word.toUpperCase() : word);
+    }
+
+    // ASS timestamps have a precision of a centisecond
+    private static long centiseconds(double timeInSeconds) {
+        return Math.round(timeInSeconds * 100);
+    }
+
+    // H:MM:SS.CC, written digit by digit
+    private static void writeTimestamp(Writer writer, long centiseconds) throws IOException {
+        writer.write(Long.toString(centiseconds / 360_000));
+        writer.write(':');
+        writeTwoDigits(writer, (centiseconds / 6_000) % 60);
+        writer.write(':');
+        writeTwoDigits(writer, (centiseconds / 100) % 60);
+        writer.write('.');
+        writeTwoDigits(writer, centiseconds % 100);
+    }
+
+    private static void writeTwoDigits(Writer writer, long value) throws IOException {
+        writer.write((char) ('0' + value / 10));
+        writer.write((char) ('0' + value % 10));
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete the partial subtitle file {}: {}", path, e.getMessage());
+        }
     }
 }
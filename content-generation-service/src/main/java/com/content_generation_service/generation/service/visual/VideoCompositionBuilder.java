@@ -2,9 +2,7 @@ package com.content_generation_service.generation.service.visual;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -12,14 +10,14 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
 
 import com.content_generation_service.generation.model.ImagePosition;
 import com.content_generation_service.generation.model.VideoMetadata;
+import com.content_generation_service.generation.service.storage.ProgressivePreview;
 
 /**
  * A builder for creating and executing complex FFmpeg video compositions.
@@ -33,17 +31,21 @@ public class VideoCompositionBuilder {
     private final List<Path> inputs = new ArrayList<>();
     private final List<String> filterComplexParts = new ArrayList<>();
     private final List<Path> tempFilesToClean = new ArrayList<>();
-    private final List<String> outputOptions = new ArrayList<>();
-    private final List<String> inputOptions = new ArrayList<>();
     private final MediaMetadataService videoMetadataService = new MediaMetadataService(new com.fasterxml.jackson.databind.ObjectMapper());
 
     // Store paths for duration calculation
     private Path backgroundVideoPath = null;
     private Path narrationAudioPath = null;
+    private Path subtitleFilePath = null;
+    private Path fontDirsPath = null;
+    private Path subtitleFramesPath = null;
     
     private String lastVideoStreamTag = "[0:v]";
     private Integer narrationInputIndex = null;
+    private Integer musicInputIndex = null;
+    private double musicVolume = 0.0;
     private double outputDurationSeconds = -1.0; // To store the target output duration
+    private final List<DerivedOutput> derivedOutputs = new ArrayList<>();
 
     private int height;
     private int width;
@@ -52,19 +54,11 @@ public class VideoCompositionBuilder {
 
     // Progress listener
     private ProgressListener progressListener;
-
-    // Pattern to extract time from FFmpeg progress output
-    private static final Pattern FFMPEG_TIME_PATTERN = Pattern.compile("time=(\\d{2}:\\d{2}:\\d{2}\\.\\d{2})");
+    // Publishes fragments of a whole render while it encodes, if set
+    private ProgressivePreview preview;
 
     public VideoCompositionBuilder() throws IOException {
-        // Default output codecs
-        this.outputOptions.add("-c:v");
-        this.outputOptions.add("libx264");
-        this.outputOptions.add("-pix_fmt");
-        this.outputOptions.add("yuv420p");
-        this.outputOptions.add("-c:a");
-        this.outputOptions.add("aac");
-        this.outputOptions.add("-y"); // Overwrite output file
+        // Output codecs are chosen by the plan, see CompositionPlan#command
     }
 
     // Setter for the progress listener
@@ -73,6 +67,15 @@ public class VideoCompositionBuilder {
         return this;
     }
 
+    /**
+     * Publishes the video progressively while it renders. Only whole renders on this node write a preview;
+     * distributed renders are stitched too quickly for it to matter.
+     */
+    public VideoCompositionBuilder withPreview(ProgressivePreview preview) {
+        this.preview = preview;
+        return this;
+    }
+
     public VideoCompositionBuilder withDimensions(int width, int height) {
         this.width = width;
         this.height = height;
@@ -82,9 +85,7 @@ public class VideoCompositionBuilder {
     public VideoCompositionBuilder withBackground(Path videoPath) {
         this.backgroundVideoPath = videoPath;
         this.inputs.add(videoPath);
-        String filter = String.format(Locale.US, "[0:v]setpts=PTS-STARTPTS,scale=%d:%d:force_original_aspect_ratio=increase,crop=%d:%d,setsar=1[bg]",
-                width, height, width, height);
-        this.filterComplexParts.add(filter);
+        // The scaling filter of the background is added by the plan, which may shift its timestamps
         this.lastVideoStreamTag = "[bg]";
         return this;
     }
@@ -96,6 +97,20 @@ public class VideoCompositionBuilder {
         return this;
     }
 
+    /**
+     * Adds background music, looped for the length of the video and mixed under the narration,
+     * which ducks it while it speaks. The mix is part of the render, not a separate pass.
+     *
+     * @param musicPath A loopable track, ideally decoded PCM (see MusicLibraryService).
+     * @param volume The gain of the music before the ducking.
+     */
+    public VideoCompositionBuilder withBackgroundMusic(Path musicPath, double volume) {
+        this.musicInputIndex = this.inputs.size();
+        this.musicVolume = volume;
+        this.inputs.add(musicPath);
+        return this;
+    }
+
     /**
      * The primary, recommended method for adding an image overlay.
      * It uses an ImagePosition enum to automatically handle scaling and placement.
@@ -272,65 +287,67 @@ public class VideoCompositionBuilder {
         return this;
     }
 
+    /**
+     * Adds the subtitles, on top of every overlay.
+     *
+     * @param fontDirsPath The fonts libass may use; unused for rasterized subtitles.
+     * @param subtitleFilePath An .ass script, burned by libass, or the frame list of subtitles drawn
+     *                         by {@link SubtitleRasterizer}, overlaid as images.
+     */
     public VideoCompositionBuilder withSubtitles(Path fontDirsPath, Path subtitleFilePath) {
-        if (filterComplexParts.isEmpty()) {
+        if (backgroundVideoPath == null && filterComplexParts.isEmpty()) {
             throw new IllegalStateException("Subtitles can only be added after a video stream has been defined.");
         }
+        if (SubtitleRasterizer.isFrameList(subtitleFilePath)) {
+            // The frames are in the directory of their list
+            this.tempFilesToClean.add(subtitleFilePath.getParent());
+            this.subtitleFramesPath = subtitleFilePath;
+            return this;
+        }
         this.tempFilesToClean.add(subtitleFilePath);
-        String escapedPath = escapePathForFilter(subtitleFilePath.toAbsolutePath().toString());
-
-        // Get the video stream tag from the LAST operation (which includes all overlays)
-        String currentVideoTag = this.lastVideoStreamTag;
-        String newOutputTag = "[v_with_subs]"; // A new, final tag for the video stream
-
-        // Create a new, separate filter for the subtitles
-        String subtitleFilter = String.format(Locale.US, "%sass=filename='%s':fontsdir='%s'%s",
-                currentVideoTag, escapedPath, fontDirsPath.toAbsolutePath().toString(), newOutputTag);
-        // Add this filter as the NEW last step in the chain
-        this.filterComplexParts.add(subtitleFilter);
-        
-        // Update the final video tag to point to the stream with subtitles
-        this.lastVideoStreamTag = newOutputTag;
-        
+        // Burned in last, on top of every overlay, when the command is built
+        this.subtitleFilePath = subtitleFilePath;
+        this.fontDirsPath = fontDirsPath;
         return this;
     }
 
     public VideoCompositionBuilder withOutputDuration(double durationSeconds) {
         this.outputDurationSeconds = durationSeconds;
-        int tIndex = this.outputOptions.indexOf("-t");
-        if (tIndex != -1 && tIndex + 1 < this.outputOptions.size()) {
-            this.outputOptions.remove(tIndex + 1);
-            this.outputOptions.remove(tIndex);
+        return this;
+    }
+
+    /**
+     * Cuts extra assets (renditions, a poster, a preview clip) from the composed video in the same run,
+     * written next to the final video. Renditions no smaller than the video itself are left out.
+     */
+    public VideoCompositionBuilder withDerivedOutputs(List<DerivedOutput> outputs) {
+        for (DerivedOutput output : outputs) {
+            if (output.kind() == DerivedOutput.Kind.RENDITION && output.height() >= height) {
+                log.debug("Skipping the {}p rendition of a {}p video", output.height(), height);
+                continue;
+            }
+            this.derivedOutputs.add(output);
         }
-        
-        this.outputOptions.add("-t");
-        this.outputOptions.add(String.format(Locale.US, "%.3f", durationSeconds));
         return this;
     }
     
     public Path buildAndExecute(Path baseSavePath) throws IOException, InterruptedException {
-        //Path finalVideoPath = Files.createTempFile(baseSavePath + "final-video-" + UUID.randomUUID(), ".mp4");
-        // create the final video path with a unique name
-        Files.createDirectories(baseSavePath); // Ensure the base path exists
-        if (!Files.isDirectory(baseSavePath)) {
-            throw new IllegalArgumentException("Base save path must be a directory: " + baseSavePath);
-        }
-        Path finalVideoPath = baseSavePath.resolve("final-video-" + UUID.randomUUID() + ".mp4");
-
-        List<String> command = new ArrayList<>();
-        command.add("ffmpeg");
-        
-        // Add global input options
-        command.addAll(this.inputOptions);
+        return execute(plan(), baseSavePath);
+    }
 
+    /**
+     * Resolves the composition into a plan, choosing the random start in the background video.
+     */
+    public CompositionPlan plan() {
         // Randomization Logic
         double backgroundStartTime = 0.0;
+        double backgroundDuration = -1.0;
+        double narrationDuration = -1.0;
         if (this.backgroundVideoPath != null && this.narrationAudioPath != null) {
             VideoMetadata backgroundMetadata = videoMetadataService.getVideoMetadata(this.backgroundVideoPath);
-            double backgroundDuration = backgroundMetadata.duration();
-
-            double narrationDuration = videoMetadataService.getAudioDuration(this.narrationAudioPath);
+            backgroundDuration = backgroundMetadata.duration();
 
+            narrationDuration = videoMetadataService.getAudioDuration(this.narrationAudioPath);
 
             if (backgroundDuration > 0 && narrationDuration > 0) {
                 double maxStartTime = backgroundDuration - narrationDuration;
@@ -342,97 +359,69 @@ public class VideoCompositionBuilder {
                 }
             }
         }
-        
-        // Command construction to handle randomized start time
-        // Add background video input with the -ss (seek) option
-        if (this.backgroundVideoPath != null) {
-            command.add("-ss");
-            command.add(String.format(Locale.US, "%.3f", backgroundStartTime));
-            command.add("-i");
-            command.add(this.backgroundVideoPath.toAbsolutePath().toString());
+        if (this.narrationInputIndex == null) {
+            log.warn("No narration provided. Adding silent audio track to ensure compatibility.");
         }
 
-        // Add all file-based inputs
-        for (Path input : this.inputs) {
-            // Skip the background path since we already added it
-            if (input.equals(this.backgroundVideoPath)) {
-                continue;
-            }
-            command.add("-i");
-            command.add(input.toAbsolutePath().toString());
+        List<Path> planInputs = new ArrayList<>(inputs);
+        List<String> planFilters = new ArrayList<>(filterComplexParts);
+        String videoTag = lastVideoStreamTag;
+        if (subtitleFramesPath != null) {
+            // A sparse image stream: each frame stays on top of the video until the next one
+            int framesInputIndex = planInputs.size();
+            planInputs.add(subtitleFramesPath);
+            planFilters.add(String.format(Locale.US, "%s[%d:v]overlay=0:0:format=auto[v_with_subframes]", videoTag, framesInputIndex));
+            videoTag = "[v_with_subframes]";
         }
 
-        // Add virtual inputs (like silent audio) if necessary
-        boolean hasNarration = this.narrationInputIndex != null;
-        if (!hasNarration) {
-            log.warn("No narration provided. Adding silent audio track to ensure compatibility.");
-            command.add("-f");
-            command.add("lavfi");
-            command.add("-i");
-            command.add("anullsrc=channel_layout=stereo:sample_rate=44100");
-        }
+        return new CompositionPlan(width, height, backgroundVideoPath, backgroundStartTime, backgroundDuration,
+            List.copyOf(planInputs), narrationInputIndex, List.copyOf(planFilters), videoTag,
+            subtitleFilePath, fontDirsPath, outputDurationSeconds, narrationDuration, musicInputIndex, musicVolume,
+            derivedOutputsWithin(outputDurationSeconds > 0 ? outputDurationSeconds : narrationDuration));
+    }
 
-        // Add the filter complex chain
-        if (!filterComplexParts.isEmpty()) {
-            command.add("-filter_complex");
-            command.add(String.join(";", this.filterComplexParts));
+    // A poster or clip starting after the end of a short video would come out empty: it starts at the beginning instead
+    private List<DerivedOutput> derivedOutputsWithin(double durationSeconds) {
+        if (durationSeconds <= 0) {
+            return List.copyOf(derivedOutputs);
         }
-        
-        // --- MAPPING SECTION ---
-        // All mapping commands must come after all inputs.
-        
-        // Map video stream
-        command.add("-map");
-        command.add(filterComplexParts.isEmpty() ? "0:v" : this.lastVideoStreamTag);
-        
-        // Map audio stream
-        command.add("-map");
-        if (hasNarration) {
-            command.add(this.narrationInputIndex + ":a");
-        } else {
-            // The silent audio is the last input. Its index is inputs.size().
-            command.add(this.inputs.size() + ":a");
+        return derivedOutputs.stream()
+            .map(output -> output.startSeconds() < durationSeconds ? output
+                : new DerivedOutput(output.kind(), output.height(), 0.0, output.durationSeconds(), output.fps()))
+            .toList();
+    }
+
+    /**
+     * Renders a plan of this builder as a whole, on this node.
+     *
+     * @return The rendered video, in the base save path.
+     */
+    public Path execute(CompositionPlan plan, Path baseSavePath) throws IOException, InterruptedException {
+        // create the final video path with a unique name
+        Files.createDirectories(baseSavePath); // Ensure the base path exists
+        if (!Files.isDirectory(baseSavePath)) {
+            throw new IllegalArgumentException("Base save path must be a directory: " + baseSavePath);
         }
+        Path finalVideoPath = baseSavePath.resolve("final-video-" + UUID.randomUUID() + ".mp4");
 
-        // Add output options and final path
-        command.addAll(this.outputOptions);
-        command.add("-shortest"); // Ensure output duration matches shortest stream (video or audio)
-        command.add(finalVideoPath.toAbsolutePath().toString());
-
-        log.debug("Executing FFmpeg command: {}", String.join(" ", command));
-
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        Process process = processBuilder.start();
-
-        // Use a single-threaded executor for reading stderr to avoid blocking the main thread
-        StringBuilder errorOutput = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                //log.debug("FFMPEG: " + line);
-                errorOutput.append(line).append("\n");
-
-                // Parse progress
-                Matcher matcher = FFMPEG_TIME_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    String timeString = matcher.group(1);
-                    double currentTimeSeconds = parseTimeToSeconds(timeString);
-                    
-                    // Calculate progress percentage
-                    if (outputDurationSeconds > 0 && progressListener != null) {
-                        double percentage = (currentTimeSeconds / outputDurationSeconds) * 100.0;
-                        percentage = Math.min(100.0, Math.max(0.0, percentage)); // Clamp between 0 and 100
-                        progressListener.onProgress(percentage);
-                    }
+        try {
+            if (preview == null) {
+                FfmpegRunner.run(plan.command(finalVideoPath), finalVideoPath, plan.outputDurationSeconds(), progressListener);
+            } else {
+                Path previewDir = preview.start();
+                boolean rendered = false;
+                try {
+                    FfmpegRunner.run(plan.command(finalVideoPath, previewDir, preview.segmentSeconds()), finalVideoPath,
+                        plan.outputDurationSeconds(), progressListener);
+                    rendered = true;
+                } finally {
+                    preview.finish(rendered);
                 }
             }
-        } catch (IOException e) {
-            log.error("Error reading FFmpeg stderr: {}", e.getMessage(), e);
-        }
-
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new IOException("FFmpeg process exited with code " + exitCode + ". Full error output:\n" + errorOutput);
+        } catch (IOException | InterruptedException e) {
+            // FfmpegRunner only deletes the final video
+            DerivedOutput.deleteFor(finalVideoPath);
+            throw e;
         }
 
         log.debug("FFmpeg successfully composed final video at: {}", finalVideoPath);
@@ -440,10 +429,17 @@ public class VideoCompositionBuilder {
         return finalVideoPath;
     }
 
-    private void cleanupTempFiles() {
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Deletes the temporary files handed over to this builder (the subtitles).
+     */
+    public void cleanupTempFiles() {
         for (Path path : tempFilesToClean) {
             try {
-                Files.deleteIfExists(path);
+                FileSystemUtils.deleteRecursively(path);
                 log.debug("Cleaned up temporary file: {}", path);
             } catch (IOException e) {
                 log.warn("Could not delete temp file: {}", path, e);
@@ -451,24 +447,6 @@ public class VideoCompositionBuilder {
         }
     }
 
-    private String escapePathForFilter(String path) {
-        return path.replace("\\", "/").replace(":", "\\:");
-    }
-
-    // Helper method to parse HH:MM:SS.ms to seconds
-    private double parseTimeToSeconds(String timeString) {
-        try {
-            String[] parts = timeString.split(":");
-            double hours = Double.parseDouble(parts[0]);
-            double minutes = Double.parseDouble(parts[1]);
-            double seconds = Double.parseDouble(parts[2]);
-            return (hours * 3600) + (minutes * 60) + seconds;
-        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-            log.error("Failed to parse time string: {}", timeString, e);
-            return 0.0; // Return 0 or throw an exception based on desired error handling
-        }
-    }
-
     public int getHeight() {
         return height;
     }
@@ -0,0 +1,20 @@
+package com.content_generation_service.generation.service.visual.distributed;
+
+/**
+ * The progress of a chunk, sent by the worker rendering it to the coordinator.
+ *
+ * @param error The failure, when the status is FAILED.
+ * @param renderSeconds How long the render took, when the status is DONE.
+ */
+public record ChunkRenderReply(
+    String renderId,
+    int chunkIndex,
+    int attempt,
+    Status status,
+    String workerId,
+    String error,
+    double renderSeconds
+) {
+
+    public enum Status { STARTED, DONE, FAILED }
+}
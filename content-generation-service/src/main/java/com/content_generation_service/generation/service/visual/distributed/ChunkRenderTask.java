@@ -0,0 +1,22 @@
+package com.content_generation_service.generation.service.visual.distributed;
+
+import com.content_generation_service.generation.service.visual.CompositionPlan;
+
+/**
+ * A window of a composition to render, published by the coordinator to any idle render worker.
+ *
+ * @param renderId Identifies the distributed render the chunk belongs to; its directory on the shared temp storage.
+ * @param attempt Incremented every time the chunk is reassigned, so that the output of every attempt is distinct.
+ * @param plan The composition, with every input on storage shared by all the nodes.
+ * @param outputPath Where the worker writes the chunk, on the shared temp storage.
+ * @param replyTo The queue of the coordinator, which receives the {@link ChunkRenderReply replies}.
+ */
+public record ChunkRenderTask(
+    String renderId,
+    String contentId,
+    int attempt,
+    CompositionPlan plan,
+    CompositionPlan.Window window,
+    String outputPath,
+    String replyTo
+) {}
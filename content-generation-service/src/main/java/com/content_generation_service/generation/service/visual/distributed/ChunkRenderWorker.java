@@ -0,0 +1,85 @@
+package com.content_generation_service.generation.service.visual.distributed;
+
+import com.content_generation_service.generation.service.visual.FfmpegRunner;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * Renders chunks of distributed renders, for whichever node coordinates them.
+ * <p>
+ * Each worker takes one chunk at a time, so chunks go to idle workers. A worker reports when it
+ * starts a chunk and when it is done; a worker dying mid-chunk leaves the task unacknowledged, so
+ * the broker hands it to another worker, and a hung worker is timed out by the coordinator.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkRenderWorker {
+
+    // Id of the @RabbitListener consuming chunk render tasks
+    public static final String LISTENER_ID = "chunkRenderTasks";
+
+    private static final String WORKER_ID = workerId();
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @RabbitListener(id = LISTENER_ID, queues = "${app.rabbitmq.queues.render-chunks}",
+        concurrency = "${app.distributed-render.worker-concurrency:1}",
+        autoStartup = "false") // Started once the node is ready, see GenerationIntake
+    public void handleChunkRenderTask(ChunkRenderTask task) {
+        Path output = Paths.get(task.outputPath());
+        int chunkIndex = task.window().index();
+        // The coordinator deletes the directory of a render once it is finished, failed or cancelled
+        if (!Files.isDirectory(output.getParent())) {
+            log.debug("Dropping chunk {} of render {} for contentId: {}, the render is over", chunkIndex, task.renderId(), task.contentId());
+            return;
+        }
+
+        reply(task, ChunkRenderReply.Status.STARTED, null, 0.0);
+        long startedAt = System.nanoTime();
+        try {
+            FfmpegRunner.run(task.plan().chunkCommand(task.window(), output), output, task.window().durationSeconds(), null);
+            double renderSeconds = (System.nanoTime() - startedAt) / 1e9;
+            log.info("Rendered chunk {} of render {} for contentId: {} in {}s", chunkIndex, task.renderId(), task.contentId(),
+                String.format("%.1f", renderSeconds));
+            reply(task, ChunkRenderReply.Status.DONE, null, renderSeconds);
+        } catch (IOException e) {
+            log.warn("Rendering chunk {} of render {} failed: {}", chunkIndex, task.renderId(), e.getMessage());
+            reply(task, ChunkRenderReply.Status.FAILED, e.getMessage(), 0.0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply(task, ChunkRenderReply.Status.FAILED, "Worker interrupted", 0.0);
+        }
+    }
+
+    private void reply(ChunkRenderTask task, ChunkRenderReply.Status status, String error, double renderSeconds) {
+        try {
+            // Sent through the default exchange, straight to the queue of the coordinator
+            rabbitTemplate.convertAndSend("", task.replyTo(), new ChunkRenderReply(task.renderId(), task.window().index(),
+                task.attempt(), status, WORKER_ID, error, renderSeconds));
+        } catch (RuntimeException e) {
+            // A lost reply only delays the chunk: the coordinator times it out and reassigns it
+            log.warn("Could not send the {} reply of chunk {} of render {}: {}", status, task.window().index(), task.renderId(), e.getMessage());
+        }
+    }
+
+    private static String workerId() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        try {
+            return InetAddress.getLocalHost().getHostName() + "-" + suffix;
+        } catch (IOException e) {
+            return "worker-" + suffix;
+        }
+    }
+}
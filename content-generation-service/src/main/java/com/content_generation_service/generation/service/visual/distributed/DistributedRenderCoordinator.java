@@ -0,0 +1,343 @@
+package com.content_generation_service.generation.service.visual.distributed;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.generation.service.visual.CompositionPlan;
+import com.content_generation_service.generation.service.visual.DerivedOutput;
+import com.content_generation_service.generation.service.visual.FfmpegRunner;
+import com.content_generation_service.generation.service.visual.ProgressListener;
+import com.content_generation_service.generation.service.visual.VideoCompositionBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Renders long videos across the render workers of every node ({@link ChunkRenderWorker}).
+ * <p>
+ * The timeline is cut into windows of about 'app.distributed-render.chunk-seconds', and one task per
+ * window is published; the inputs not already on shared storage are copied to the shared temp storage
+ * first. Chunks failing on a worker, or running past 'chunk-timeout-seconds', are reassigned; a chunk
+ * no worker picks up, or which failed 'max-attempts' times, is rendered by this node itself. The video
+ * of the chunks is then stream-copied into one file, with the narration encoded once over the whole video.
+ * <p>
+ * Short videos, and every video while the coordinator mode is disabled, are rendered whole on this node.
+ */
+@Slf4j
+@Service
+public class DistributedRenderCoordinator {
+
+    private static final String RENDER_DIR = "render-chunks";
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+
+    private final AppProperties appProperties;
+    private final RabbitTemplate rabbitTemplate;
+    private final Path sharedTempRoot;
+    private final Path assetsRoot;
+    private final String replyQueueName;
+
+    // Replies of the renders in progress on this node, by render id
+    private final Map<String, BlockingQueue<ChunkRenderReply>> replies = new ConcurrentHashMap<>();
+
+    public DistributedRenderCoordinator(AppProperties appProperties, RabbitTemplate rabbitTemplate,
+            @Value("${app.storage.shared-temp.base-path}") String sharedTempBasePath,
+            @Value("${app.assets.base-path}") String assetsBasePath,
+            @Value("#{chunkRenderReplyQueue.name}") String replyQueueName) {
+        this.appProperties = appProperties;
+        this.rabbitTemplate = rabbitTemplate;
+        this.sharedTempRoot = Paths.get(sharedTempBasePath).toAbsolutePath().normalize();
+        this.assetsRoot = Paths.get(assetsBasePath).toAbsolutePath().normalize();
+        this.replyQueueName = replyQueueName;
+    }
+
+    /**
+     * Renders the composition of the builder, in chunks across the render workers when it qualifies,
+     * otherwise as a whole on this node.
+     *
+     * @return The rendered video, in the base save path.
+     */
+    public Path render(VideoCompositionBuilder builder, Path baseSavePath) throws IOException, InterruptedException {
+        CompositionPlan plan = builder.plan();
+        AppProperties.DistributedRender config = appProperties.getDistributedRender();
+        List<CompositionPlan.Window> windows = isDistributable(plan)
+            ? windows(plan.durationSeconds(), config.getChunkSeconds(), config.getMaxChunks())
+            : List.of();
+        if (windows.size() < 2) {
+            return builder.execute(plan, baseSavePath);
+        }
+        try {
+            return renderDistributed(plan, windows, baseSavePath, builder.getProgressListener());
+        } finally {
+            builder.cleanupTempFiles();
+        }
+    }
+
+    // Every node receives the replies to the chunks it published on its own anonymous queue
+    @RabbitListener(queues = "#{chunkRenderReplyQueue.name}")
+    public void handleChunkRenderReply(ChunkRenderReply reply) {
+        BlockingQueue<ChunkRenderReply> inbox = replies.get(reply.renderId());
+        if (inbox != null) {
+            inbox.offer(reply);
+        }
+    }
+
+    /**
+     * Cuts a timeline into about equal windows of roughly the target length. Boundaries fall on whole seconds,
+     * so that they are frame boundaries at the usual frame rates; the last window ends exactly at the end.
+     */
+    static List<CompositionPlan.Window> windows(double durationSeconds, int chunkSeconds, int maxChunks) {
+        int wholeSeconds = (int) Math.ceil(durationSeconds);
+        int count = (int) Math.max(1, Math.min(maxChunks, Math.round((double) wholeSeconds / chunkSeconds)));
+        int baseLength = wholeSeconds / count;
+        int longerWindows = wholeSeconds % count;
+
+        List<CompositionPlan.Window> windows = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int length = baseLength + (i < longerWindows ? 1 : 0);
+            double duration = i == count - 1 ? durationSeconds - start : length;
+            windows.add(new CompositionPlan.Window(i, start, duration));
+            start += length;
+        }
+        return windows;
+    }
+
+    private boolean isDistributable(CompositionPlan plan) {
+        AppProperties.DistributedRender config = appProperties.getDistributedRender();
+        return config.isEnabled()
+            && plan.background() != null
+            && plan.durationSeconds() >= config.getMinDurationSeconds()
+            // A background ending before the narration cuts the video short; only a whole render handles that
+            && plan.backgroundDurationSeconds() >= plan.backgroundStartSeconds() + plan.durationSeconds();
+    }
+
+    private Path renderDistributed(CompositionPlan plan, List<CompositionPlan.Window> windows, Path baseSavePath,
+            ProgressListener progressListener) throws IOException, InterruptedException {
+        AppProperties.DistributedRender config = appProperties.getDistributedRender();
+        Optional<JobContext> job = JobContext.current();
+        String renderId = UUID.randomUUID().toString();
+        String contentId = job.map(JobContext::getContentId).orElse(renderId);
+        Path renderDir = Files.createDirectories(sharedTempRoot.resolve(RENDER_DIR).resolve(renderId));
+        BlockingQueue<ChunkRenderReply> inbox = new LinkedBlockingQueue<>();
+        replies.put(renderId, inbox);
+        Instant startedAt = Instant.now();
+        try {
+            Render render = new Render(renderId, contentId, renderDir, shareInputs(plan, renderDir.resolve("inputs")),
+                windows.stream().map(Chunk::new).toList());
+            log.info("Rendering contentId: {} in {} chunks across the render workers (render {})", contentId, windows.size(), renderId);
+            for (Chunk chunk : render.chunks()) {
+                publish(render, chunk);
+            }
+
+            int reportedDone = 0;
+            while (render.doneCount() < windows.size()) {
+                if (job.isPresent()) {
+                    job.get().throwIfStopped();
+                }
+                ChunkRenderReply reply = inbox.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (reply != null && reply.chunkIndex() >= 0 && reply.chunkIndex() < windows.size()) {
+                    onReply(render, render.chunks().get(reply.chunkIndex()), reply);
+                }
+                reassignOverdue(render, config);
+
+                int done = render.doneCount();
+                if (done != reportedDone && progressListener != null) {
+                    progressListener.onProgress(done * 100.0 / windows.size());
+                }
+                reportedDone = done;
+            }
+
+            Path finalVideoPath = stitch(plan, render, baseSavePath);
+            log.info("Rendered contentId: {} in {} chunks in {}s", contentId, windows.size(),
+                Duration.between(startedAt, Instant.now()).toSeconds());
+            return finalVideoPath;
+        } finally {
+            replies.remove(renderId);
+            // Also tells the workers to drop the tasks of this render still queued
+            try {
+                FileSystemUtils.deleteRecursively(renderDir);
+            } catch (IOException e) {
+                log.warn("Could not delete the chunks of render {}: {}", renderDir.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private void onReply(Render render, Chunk chunk, ChunkRenderReply reply) throws IOException, InterruptedException {
+        if (chunk.output != null) {
+            return;
+        }
+        switch (reply.status()) {
+            case STARTED -> {
+                if (reply.attempt() == chunk.attempt) {
+                    chunk.startedAt = Instant.now();
+                    chunk.worker = reply.workerId();
+                }
+            }
+            case DONE -> {
+                // The output of any attempt will do, even one that was already reassigned
+                Path output = render.dir().resolve(chunkFileName(chunk.window.index(), String.valueOf(reply.attempt())));
+                if (Files.exists(output)) {
+                    chunk.output = output;
+                    log.debug("Chunk {} of render {} done by {} in {}s", chunk.window.index(), render.id(), reply.workerId(),
+                        String.format(Locale.US, "%.1f", reply.renderSeconds()));
+                } else if (reply.attempt() == chunk.attempt) {
+                    reassign(render, chunk, "its output is missing on the shared storage");
+                }
+            }
+            case FAILED -> {
+                if (reply.attempt() == chunk.attempt) {
+                    reassign(render, chunk, "it failed on " + reply.workerId() + ": " + reply.error());
+                }
+            }
+        }
+    }
+
+    private void reassignOverdue(Render render, AppProperties.DistributedRender config) throws IOException, InterruptedException {
+        Instant now = Instant.now();
+        for (Chunk chunk : render.chunks()) {
+            if (chunk.output != null) {
+                continue;
+            }
+            if (chunk.startedAt != null && now.isAfter(chunk.startedAt.plusSeconds(config.getChunkTimeoutSeconds()))) {
+                reassign(render, chunk, "it timed out on " + chunk.worker);
+            } else if (chunk.startedAt == null && now.isAfter(chunk.publishedAt.plusSeconds(config.getQueueTimeoutSeconds()))) {
+                renderLocally(render, chunk, "no render worker picked it up");
+            }
+        }
+    }
+
+    private void reassign(Render render, Chunk chunk, String reason) throws IOException, InterruptedException {
+        if (chunk.attempt >= appProperties.getDistributedRender().getMaxAttempts()) {
+            renderLocally(render, chunk, reason);
+            return;
+        }
+        log.warn("Reassigning chunk {} of render {}: {}", chunk.window.index(), render.id(), reason);
+        publish(render, chunk);
+    }
+
+    private void publish(Render render, Chunk chunk) throws IOException, InterruptedException {
+        chunk.attempt++;
+        chunk.publishedAt = Instant.now();
+        chunk.startedAt = null;
+        chunk.worker = null;
+        Path output = render.dir().resolve(chunkFileName(chunk.window.index(), String.valueOf(chunk.attempt)));
+        AppProperties.RabbitMQ rabbitmq = appProperties.getRabbitmq();
+        try {
+            rabbitTemplate.convertAndSend(rabbitmq.getExchange(), rabbitmq.getRoutingKeys().getRenderChunk(),
+                new ChunkRenderTask(render.id(), render.contentId(), chunk.attempt, render.sharedPlan(), chunk.window,
+                    output.toString(), replyQueueName));
+        } catch (RuntimeException e) {
+            renderLocally(render, chunk, "its task could not be published: " + e.getMessage());
+        }
+    }
+
+    private void renderLocally(Render render, Chunk chunk, String reason) throws IOException, InterruptedException {
+        log.warn("Rendering chunk {} of render {} on this node: {}", chunk.window.index(), render.id(), reason);
+        Path output = render.dir().resolve(chunkFileName(chunk.window.index(), "local"));
+        FfmpegRunner.run(render.sharedPlan().chunkCommand(chunk.window, output), output, chunk.window.durationSeconds(), null);
+        chunk.output = output;
+    }
+
+    private Path stitch(CompositionPlan plan, Render render, Path baseSavePath) throws IOException, InterruptedException {
+        List<String> concatList = render.chunks().stream()
+            .map(chunk -> "file '" + chunk.output.toAbsolutePath().toString().replace("'", "'\\''") + "'")
+            .toList();
+        Path listFile = Files.write(render.dir().resolve("chunks.txt"), concatList);
+
+        Files.createDirectories(baseSavePath);
+        Path finalVideoPath = baseSavePath.resolve("final-video-" + UUID.randomUUID() + ".mp4");
+        // The narration and music are read from this node, they were never shared
+        try {
+            FfmpegRunner.run(plan.stitchCommand(listFile, finalVideoPath), finalVideoPath, plan.durationSeconds(), null);
+        } catch (IOException | InterruptedException e) {
+            // FfmpegRunner only deletes the final video
+            DerivedOutput.deleteFor(finalVideoPath);
+            throw e;
+        }
+        return finalVideoPath;
+    }
+
+    /**
+     * Copies the inputs the workers cannot reach to the directory of the render. The shared temp storage and
+     * the assets are mounted on every node; the narration and music are left out, only the stitch on this node uses them.
+     */
+    private CompositionPlan shareInputs(CompositionPlan plan, Path inputsDir) throws IOException {
+        Files.createDirectories(inputsDir);
+        Map<Path, Path> copies = new HashMap<>();
+        try {
+            return plan.withPaths(path -> {
+                Path absolute = path.toAbsolutePath().normalize();
+                if (path.equals(plan.narration()) || path.equals(plan.music()) || absolute.startsWith(sharedTempRoot) || absolute.startsWith(assetsRoot)) {
+                    return path;
+                }
+                return copies.computeIfAbsent(absolute, source -> {
+                    Path copy = inputsDir.resolve(copies.size() + "-" + source.getFileName());
+                    try {
+                        copyRecursively(source, copy);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return copy;
+                });
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String chunkFileName(int index, String attempt) {
+        return String.format(Locale.US, "chunk-%03d-%s.mp4", index, attempt);
+    }
+
+    private static void copyRecursively(Path source, Path destination) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.toList()) {
+                Files.copy(path, destination.resolve(source.relativize(path).toString()));
+            }
+        }
+    }
+
+    private record Render(String id, String contentId, Path dir, CompositionPlan sharedPlan, List<Chunk> chunks) {
+
+        int doneCount() {
+            return (int) chunks.stream().filter(chunk -> chunk.output != null).count();
+        }
+    }
+
+    // The state of one window; only touched by the thread coordinating the render
+    private static final class Chunk {
+        private final CompositionPlan.Window window;
+        private int attempt = 0;
+        private Instant publishedAt;
+        private Instant startedAt;
+        private String worker;
+        private Path output;
+
+        private Chunk(CompositionPlan.Window window) {
+            this.window = window;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.content_generation_service.messaging;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Service;
+
+import com.content_generation_service.generation.job.JobRegistry;
+import com.shortscreator.shared.dto.GenerationCancelV1;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GenerationCancelListener {
+
+    private final JobRegistry jobRegistry;
+
+    // Every node receives every cancellation on its own anonymous queue; only the node running the job stops it
+    @RabbitListener(queues = "#{generationCancelQueue.name}")
+    public void handleGenerationCancel(GenerationCancelV1 cancel) {
+        if (jobRegistry.cancel(cancel.contentId())) {
+            log.info("Cancelled running generation for contentId: {}", cancel.contentId());
+        } else {
+            log.debug("No running generation for contentId: {} on this node, remembering the cancellation", cancel.contentId());
+        }
+    }
+}
@@ -4,15 +4,27 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
+
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
 import com.shortscreator.shared.dto.GenerationRequestV1;
 import com.shortscreator.shared.dto.GenerationResultV1;
 import com.shortscreator.shared.enums.ContentStatus;
 import com.shortscreator.shared.validation.TemplateValidator;
+import com.content_generation_service.generation.job.GenerationIntake;
+import com.content_generation_service.generation.job.JobContext.JobAbortedException;
+import com.content_generation_service.generation.job.JobContext.JobCancelledException;
+import com.content_generation_service.generation.job.JobRegistry;
+import com.content_generation_service.generation.job.JobRegistry.DuplicateJobException;
+import com.content_generation_service.generation.job.JobRegistry.LeaseContendedException;
+import com.content_generation_service.generation.job.RenderCostEstimator;
 import com.content_generation_service.generation.orchestrator.CharacterExplainsOrchestrator;
 import com.content_generation_service.generation.orchestrator.RedditStoryOrchestrator;
+import com.content_generation_service.messaging.ResultSpool.ResultSpooledException;
 
 @Slf4j
 @Service
@@ -25,13 +37,27 @@ public class GenerationRequestListener {
     private final TemplateValidator templateValidator; // Inject validator bean
     private final RedditStoryOrchestrator redditStoryOrchestrator; // Inject orchestrator bean
     private final CharacterExplainsOrchestrator characterExplainsOrchestrator;
+    private final JobRegistry jobRegistry;
+    private final ResultSpool resultSpool;
+    // Learns the render cost of each template, for the backlog estimate
+    private final RenderCostEstimator renderCostEstimator;
 
     // Must configure a MessageConverter bean that uses Jackson for this to work with JsonNode out-of-the-box.
     // Spring Boot's auto-configuration for AMQP usually does this if Jackson is on the classpath.
-    @RabbitListener(queues = "#{appProperties.rabbitmq.queues.generationRequests}")
-    public void handleGenerationRequest(GenerationRequestV1 request) {
+    @RabbitListener(id = GenerationIntake.GENERATION_REQUESTS_LISTENER_ID, queues = "#{appProperties.rabbitmq.queues.generationRequests}",
+        concurrency = "${app.backlog.render-slots:1}", autoStartup = "false") // Started once the node is ready, see GenerationIntake
+    public void handleGenerationRequest(GenerationRequestV1 request,
+                                        @Header(name = AmqpHeaders.TIMESTAMP, required = false) Date publishedAt) {
         log.info("Received generation request for contentId: {}", request.getContentId());
 
+        // The user may have cancelled while the request was still queued; CSS has already refunded it
+        if (jobRegistry.consumePendingCancellation(request.getContentId(), publishedAt == null ? null : publishedAt.toInstant())) {
+            log.info("Skipping generation request for contentId: {}, it was cancelled before it started", request.getContentId());
+            return;
+        }
+
+        renderCostEstimator.recordArrival(request.getTemplateId());
+        long startedAt = System.nanoTime();
         try {
             // Re-validate the parameters here against the given template.
             templateValidator.validate(request.getTemplateId(), request.getTemplateParams(), true);
@@ -41,6 +67,7 @@ public class GenerationRequestListener {
                 
                 // The orchestrator does all the heavy lifting
                 GeneratedVideoDetailsV1 videoDetails = redditStoryOrchestrator.generate(request.getTemplateParams(), request.getContentId(), request.getUserId());
+                renderCostEstimator.recordCompletion(request.getTemplateId(), secondsSince(startedAt));
                 GenerationResultV1 generationResult = new GenerationResultV1(
                     request.getContentId(),
                     ContentStatus.COMPLETED,
@@ -48,11 +75,12 @@ public class GenerationRequestListener {
                     null // No error message since this is a successful job
                 );
                 // send job to CSS
-                generationResultDispatcher.dispatch(generationResult);
+                dispatch(generationResult);
                 log.info("Successfully dispatched video upload job for contentId: {}", request.getContentId());
             } else if (CharacterExplainsOrchestrator.CHARACTER_EXPLAINS_TEMPLATE_ID.equals(request.getTemplateId())) {
                 // Handle the "Character Explains" template
                 GeneratedVideoDetailsV1 videoDetails = characterExplainsOrchestrator.generate(request.getTemplateParams(), request.getContentId(), request.getUserId());
+                renderCostEstimator.recordCompletion(request.getTemplateId(), secondsSince(startedAt));
                 GenerationResultV1 generationResult = new GenerationResultV1(
                     request.getContentId(),
                     ContentStatus.COMPLETED,
@@ -60,11 +88,28 @@ public class GenerationRequestListener {
                     null // No error message since this is a successful job
                 );
                 // send job to CSS
-                generationResultDispatcher.dispatch(generationResult);
+                dispatch(generationResult);
                 log.info("Successfully dispatched video upload job for contentId: {}", request.getContentId());
             } else {
                 throw new UnsupportedOperationException("Template ID not supported: " + request.getTemplateId());
             }
+        } catch (ResultSpooledException e) {
+            // Rendered, but not stored yet: the spool retries the upload and reports the result
+            log.warn("Result for contentId: {} was spooled: {}", request.getContentId(), e.getMessage());
+        } catch (DuplicateJobException e) {
+            // A redelivery of a request that is still being rendered: acknowledge it, the running job reports the result
+            log.info("Dropping duplicate generation request: {}", e.getMessage());
+        } catch (LeaseContendedException e) {
+            // Another node may still be rendering it, or may have died: requeue, the next delivery compares its heartbeats
+            log.debug("Requeueing generation request for contentId: {}: {}", request.getContentId(), e.getMessage());
+            throw e;
+        } catch (JobAbortedException e) {
+            // The node is shutting down: reject the request back to the queue, another node resumes it from its checkpoints
+            log.info("Requeueing generation request for contentId: {}: {}", request.getContentId(), e.getMessage());
+            throw e;
+        } catch (JobCancelledException e) {
+            // Not a failure: the content is already CANCELLED in CSS, so no result is sent
+            log.info("Generation stopped for contentId: {}: {}", request.getContentId(), e.getMessage());
         } catch (Exception e) {
             log.error("Failed to generate content for {}: {}", request.getContentId(), e.getMessage());
 
@@ -75,8 +120,24 @@ public class GenerationRequestListener {
                 "Video composition failed: " + e.getMessage()
             );
             // send failure result to CSS
-            generationResultDispatcher.dispatch(generationResult);
+            dispatch(generationResult);
             log.info("Dispatched failure result for contentId: {}", request.getContentId());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends a result to CSS. A result the broker does not take is spooled and sent again later,
+     * instead of failing (and re-rendering) the job.
+     */
+    private void dispatch(GenerationResultV1 generationResult) {
+        try {
+            generationResultDispatcher.dispatch(generationResult);
+        } catch (RuntimeException e) {
+            resultSpool.spoolResult(generationResult, e);
+        }
+    }
+
+    private static double secondsSince(long startedAtNanos) {
+        return (System.nanoTime() - startedAtNanos) / 1e9;
+    }
+}
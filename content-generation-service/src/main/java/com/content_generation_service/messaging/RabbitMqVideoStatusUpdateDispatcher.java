@@ -40,8 +40,12 @@ public class RabbitMqVideoStatusUpdateDispatcher implements VideoStatusUpdateDis
     public ProgressListener forContent(String userId, String contentId) {
         // Return an anonymous implementation that "captures" userId and contentId
         return new ProgressListener() {
+            // Preview announcements are PROCESSING updates, which must carry the progress
+            private volatile double lastPercentage = 0.0;
+
             @Override
             public void onProgress(double percentage) {
+                lastPercentage = percentage;
                 VideoStatusUpdateV1 statusUpdate = new VideoStatusUpdateV1(
                     userId,
                     contentId,
@@ -51,6 +55,18 @@ public class RabbitMqVideoStatusUpdateDispatcher implements VideoStatusUpdateDis
                 sendStatusUpdate(statusUpdate);
             }
 
+            @Override
+            public void onPreviewAvailable(String previewUrl) {
+                VideoStatusUpdateV1 statusUpdate = new VideoStatusUpdateV1(
+                    userId,
+                    contentId,
+                    ContentStatus.PROCESSING,
+                    lastPercentage,
+                    previewUrl
+                );
+                sendStatusUpdate(statusUpdate);
+            }
+
             @Override
             public void onComplete() {
                 VideoStatusUpdateV1 statusUpdate = new VideoStatusUpdateV1(
@@ -72,6 +88,17 @@ public class RabbitMqVideoStatusUpdateDispatcher implements VideoStatusUpdateDis
                 );
                 sendStatusUpdate(statusUpdate);
             }
+
+            @Override
+            public void onCancelled() {
+                VideoStatusUpdateV1 statusUpdate = new VideoStatusUpdateV1(
+                    userId,
+                    contentId,
+                    ContentStatus.CANCELLED,
+                    null
+                );
+                sendStatusUpdate(statusUpdate);
+            }
         };
     }
 }
\ No newline at end of file
@@ -0,0 +1,292 @@
+package com.content_generation_service.messaging;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.storage.RenderDeduplicationService;
+import com.content_generation_service.generation.service.storage.StorageService;
+import com.content_generation_service.generation.service.visual.DerivedOutput;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import com.shortscreator.shared.dto.GenerationResultV1;
+import com.shortscreator.shared.enums.ContentStatus;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local durable spool for the end of a job: rendered videos whose upload failed, and results the
+ * broker did not take. A successful render is never thrown away because of a transient downstream error.
+ * <p>
+ * The spool is a directory ('app.result-spool.path') holding the videos, plus a journal of JSON lines.
+ * Every change of an entry appends its new state, and a completed entry appends a tombstone; the journal
+ * is replayed (and compacted) on startup. Entries are retried with exponential backoff; an entry still
+ * failing after 'app.result-spool.max-age-hours' is reported as failed, so that the user is refunded.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ResultSpool {
+
+    private static final String JOURNAL = "journal.jsonl";
+
+    private final AppProperties appProperties;
+    private final ObjectMapper objectMapper;
+    private final StorageService storageService;
+    private final RenderDeduplicationService renderDeduplicationService;
+    private final GenerationResultDispatcher generationResultDispatcher;
+    private final VideoStatusUpdateDispatcher videoStatusUpdateDispatcher;
+
+    private final Map<String, SpooledResult> pending = new ConcurrentHashMap<>();
+    private Path spoolDir;
+
+    @PostConstruct
+    void replayJournal() throws IOException {
+        spoolDir = Files.createDirectories(Paths.get(appProperties.getResultSpool().getPath()));
+        Path journal = spoolDir.resolve(JOURNAL);
+        if (Files.exists(journal)) {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                try {
+                    JournalRecord record = objectMapper.readValue(line, JournalRecord.class);
+                    if (record.entry() == null) pending.remove(record.id());
+                    else pending.put(record.id(), record.entry());
+                } catch (IOException e) {
+                    // Only the last line can be torn by a crash while appending
+                    log.warn("Skipping unreadable result spool journal line: {}", e.getMessage());
+                }
+            }
+        }
+        compact();
+        if (!pending.isEmpty()) {
+            log.info("Result spool holds {} pending result(s) from an earlier run", pending.size());
+        }
+    }
+
+    /**
+     * Stores the final video, or spools it when the upload fails.
+     *
+     * @throws ResultSpooledException if the video was spooled: its upload and the result are now owned by the spool.
+     */
+    public GeneratedVideoDetailsV1 storeOrSpool(Path video, String templateId, String contentId, String userId, String fingerprint) {
+        try {
+            return storageService.storeFinalVideo(video, templateId, contentId, userId);
+        } catch (RuntimeException e) {
+            if (!Files.exists(video)) {
+                throw e;
+            }
+            String id = UUID.randomUUID().toString();
+            Path spooledVideo = spoolDir.resolve(id + ".mp4");
+            try {
+                // The derived outputs follow the video, named after it, so the retried upload finds them
+                for (DerivedOutput.Written derived : DerivedOutput.writtenFor(video)) {
+                    Files.move(derived.path(), spoolDir.resolve(id + derived.suffix()), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(video, spooledVideo, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                e.addSuppressed(moveError);
+                throw e;
+            }
+            Instant now = Instant.now();
+            append(new SpooledResult(id, contentId, userId, templateId, fingerprint, spooledVideo.getFileName().toString(),
+                null, 0, now.plus(backoff(0)), now));
+            log.warn("Upload of the video for contentId: {} failed, spooled it for retry: {}", contentId, e.getMessage());
+            throw new ResultSpooledException(contentId, e);
+        }
+    }
+
+    /**
+     * Spools a generation result whose dispatch failed, so that it is dispatched again later.
+     */
+    public void spoolResult(GenerationResultV1 result, Exception dispatchError) {
+        Instant now = Instant.now();
+        append(new SpooledResult(UUID.randomUUID().toString(), result.getContentId(), null, null, null, null, result,
+            0, now.plus(backoff(0)), now));
+        log.warn("Dispatch of the {} result for contentId: {} failed, spooled it for retry: {}",
+            result.getStatus(), result.getContentId(), dispatchError.getMessage());
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Retries the entries that are due. Runs right after startup too, which replays what an earlier run left behind.
+     */
+    @Scheduled(fixedDelayString = "${app.result-spool.retry-base-seconds:15}", timeUnit = TimeUnit.SECONDS)
+    public void retryDue() {
+        Instant now = Instant.now();
+        for (SpooledResult entry : List.copyOf(pending.values())) {
+            if (!entry.nextAttemptAt().isAfter(now)) {
+                retry(entry);
+            }
+        }
+    }
+
+    private void retry(SpooledResult entry) {
+        SpooledResult current = entry;
+        try {
+            if (current.videoFile() != null) {
+                Path video = spoolDir.resolve(current.videoFile());
+                GeneratedVideoDetailsV1 details = storageService.storeFinalVideo(video, current.templateId(), current.contentId(), current.userId());
+                renderDeduplicationService.register(current.fingerprint(), details);
+                // The upload is done: from now on only the result is pending
+                current = append(current.withResult(new GenerationResultV1(current.contentId(), ContentStatus.COMPLETED, details, null)));
+            }
+            generationResultDispatcher.dispatch(current.result());
+            complete(current);
+            log.info("Delivered spooled {} result for contentId: {} after {} attempt(s)",
+                current.result().getStatus(), current.contentId(), current.attempts() + 1);
+            if (current.userId() != null && current.result().getStatus() == ContentStatus.COMPLETED) {
+                notifyCompleted(current);
+            }
+        } catch (RuntimeException e) {
+            failed(current, e);
+        }
+    }
+
+    private void failed(SpooledResult entry, RuntimeException error) {
+        Duration age = Duration.between(entry.spooledAt(), Instant.now());
+        if (age.compareTo(Duration.ofHours(appProperties.getResultSpool().getMaxAgeHours())) < 0) {
+            int attempts = entry.attempts() + 1;
+            append(entry.retryAt(attempts, Instant.now().plus(backoff(attempts))));
+            log.warn("Retry {} of the spooled result for contentId: {} failed: {}", attempts, entry.contentId(), error.getMessage());
+            return;
+        }
+        log.error("Giving up on the spooled result for contentId: {} after {}", entry.contentId(), age, error);
+        if (entry.videoFile() == null) {
+            // Nothing left to do: the broker itself is what keeps failing
+            complete(entry);
+            return;
+        }
+        // The video could never be uploaded: report the job as failed (refunding the user), then drop the video
+        append(entry.withResult(new GenerationResultV1(entry.contentId(), ContentStatus.FAILED, null,
+            "Upload of the generated video failed: " + error.getMessage())));
+    }
+
+    private void notifyCompleted(SpooledResult entry) {
+        try {
+            videoStatusUpdateDispatcher.forContent(entry.userId(), entry.contentId()).onComplete();
+        } catch (RuntimeException e) {
+            log.warn("Could not send the completion status of contentId: {}: {}", entry.contentId(), e.getMessage());
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        AppProperties.ResultSpool config = appProperties.getResultSpool();
+        long seconds = config.getRetryBaseSeconds() << Math.min(attempts, 20);
+        return Duration.ofSeconds(Math.min(seconds, config.getRetryMaxSeconds()));
+    }
+
+    /**
+     * Journals the new state of an entry.
+     *
+     * @return The state as stored.
+     */
+    private synchronized SpooledResult append(SpooledResult entry) {
+        // A result without a video must not keep pointing at one
+        if (entry.videoFile() != null && entry.result() != null) {
+            deleteVideo(entry);
+            entry = entry.withoutVideo();
+        }
+        writeRecord(new JournalRecord(entry.id(), entry));
+        pending.put(entry.id(), entry);
+        return entry;
+    }
+
+    private synchronized void complete(SpooledResult entry) {
+        deleteVideo(entry);
+        writeRecord(new JournalRecord(entry.id(), null));
+        pending.remove(entry.id());
+        if (pending.isEmpty()) {
+            compact();
+        }
+    }
+
+    private void deleteVideo(SpooledResult entry) {
+        if (entry.videoFile() == null) return;
+        try {
+            Path video = spoolDir.resolve(entry.videoFile());
+            DerivedOutput.deleteFor(video);
+            Files.deleteIfExists(video);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled video {}: {}", entry.videoFile(), e.getMessage());
+        }
+    }
+
+    private void writeRecord(JournalRecord record) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(spoolDir.resolve(JOURNAL), line,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the result spool journal", e);
+        }
+    }
+
+    /**
+     * Rewrites the journal with one line per pending entry.
+     */
+    private synchronized void compact() {
+        try {
+            List<String> lines = new ArrayList<>();
+            for (SpooledResult entry : pending.values()) {
+                lines.add(objectMapper.writeValueAsString(new JournalRecord(entry.id(), entry)));
+            }
+            Path partial = spoolDir.resolve(JOURNAL + ".tmp");
+            Files.write(partial, lines, StandardCharsets.UTF_8);
+            Files.move(partial, spoolDir.resolve(JOURNAL), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not compact the result spool journal: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A pending result. While the upload is pending, videoFile names the spooled video and result is null.
+     */
+    record SpooledResult(String id, String contentId, String userId, String templateId, String fingerprint,
+                         String videoFile, GenerationResultV1 result, int attempts, Instant nextAttemptAt, Instant spooledAt) {
+
+        SpooledResult withResult(GenerationResultV1 result) {
+            return new SpooledResult(id, contentId, userId, templateId, fingerprint, videoFile, result, attempts, nextAttemptAt, spooledAt);
+        }
+
+        SpooledResult withoutVideo() {
+            return new SpooledResult(id, contentId, userId, templateId, fingerprint, null, result, attempts, nextAttemptAt, spooledAt);
+        }
+
+        SpooledResult retryAt(int attempts, Instant nextAttemptAt) {
+            return new SpooledResult(id, contentId, userId, templateId, fingerprint, videoFile, result, attempts, nextAttemptAt, spooledAt);
+        }
+    }
+
+    // A line of the journal; a null entry marks the result with this id as done
+    record JournalRecord(String id, SpooledResult entry) {}
+
+    /**
+     * Thrown when the rendered video could not be stored and was spooled instead. The job is not failed:
+     * the spool uploads the video and reports the result later.
+     */
+    public static class ResultSpooledException extends RuntimeException {
+        public ResultSpooledException(String contentId, Throwable cause) {
+            super("Storing the video for contentId: " + contentId + " failed, it was spooled for retry", cause);
+        }
+    }
+}
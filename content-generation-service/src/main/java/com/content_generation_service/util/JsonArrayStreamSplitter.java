@@ -0,0 +1,104 @@
+package com.content_generation_service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incrementally splits a JSON array that arrives in arbitrary text fragments
+ * (e.g. a streamed LLM answer) into its top-level elements.
+ * Any text before the opening '[' (such as a stray markdown fence) is ignored.
+ * The splitter only tracks nesting and string state; each returned element
+ * is the raw JSON text and still has to be parsed by the caller.
+ * Instances are stateful and not thread-safe.
+ */
+public class JsonArrayStreamSplitter {
+
+    private final StringBuilder current = new StringBuilder();
+    private boolean arrayStarted = false;
+    private boolean arrayClosed = false;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+
+    /**
+     * Feeds the next fragment of text into the splitter.
+     *
+     * @param fragment The next piece of the streamed JSON text.
+     * @return The top-level array elements completed by this fragment, in order.
+     */
+    public List<String> feed(String fragment) {
+        List<String> completed = new ArrayList<>();
+        for (int i = 0; i < fragment.length() && !arrayClosed; i++) {
+            char c = fragment.charAt(i);
+
+            if (!arrayStarted) {
+                if (c == '[') {
+                    arrayStarted = true;
+                    depth = 1;
+                }
+                continue;
+            }
+
+            if (inString) {
+                current.append(c);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    current.append(c);
+                }
+                case '{', '[' -> {
+                    depth++;
+                    current.append(c);
+                }
+                case '}', ']' -> {
+                    depth--;
+                    if (depth == 0) {
+                        // Closing bracket of the outer array
+                        emitCurrent(completed);
+                        arrayClosed = true;
+                    } else {
+                        current.append(c);
+                        if (depth == 1) {
+                            // An object or nested array element is complete
+                            emitCurrent(completed);
+                        }
+                    }
+                }
+                case ',' -> {
+                    if (depth == 1) {
+                        emitCurrent(completed);
+                    } else {
+                        current.append(c);
+                    }
+                }
+                default -> current.append(c);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return true once the closing bracket of the top-level array has been seen.
+     */
+    public boolean isArrayClosed() {
+        return arrayClosed;
+    }
+
+    private void emitCurrent(List<String> completed) {
+        String element = current.toString().trim();
+        current.setLength(0);
+        if (!element.isEmpty()) {
+            completed.add(element);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.content_generation_service.generation.job;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.job.GenerationLeaseStore.Acquisition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GenerationLeaseStoreTest {
+
+    @TempDir
+    Path sharedTemp;
+
+    private final AppProperties appProperties = new AppProperties();
+    private GenerationLeaseStore nodeA;
+    private GenerationLeaseStore nodeB;
+
+    @BeforeEach
+    void setUp() {
+        appProperties.getJobLeases().setHeartbeatSeconds(1);
+        nodeA = new GenerationLeaseStore(appProperties, sharedTemp.toString());
+        nodeB = new GenerationLeaseStore(appProperties, sharedTemp.toString());
+    }
+
+    @Test
+    void dropsTheJobWhileItsHolderIsAlive() throws Exception {
+        assertThat(nodeA.acquire("content-1")).isEqualTo(Acquisition.ACQUIRED);
+
+        // Node B can't tell yet whether A is alive, and does not wait to find out
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.UNDECIDED);
+
+        // By the time the request comes back to B, A has heartbeated
+        Thread.sleep(20);
+        nodeA.heartbeat();
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.RUN_ELSEWHERE);
+
+        nodeA.release("content-1");
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.ACQUIRED);
+    }
+
+    @Test
+    void judgesALeaseOnlyByItsOwnHeartbeats() throws Exception {
+        assertThat(nodeA.acquire("content-1")).isEqualTo(Acquisition.ACQUIRED);
+        // Node A's clock is far behind node B's: its heartbeats look old to B
+        Path lease = sharedTemp.resolve("leases").resolve("content-1.lease");
+        Files.setLastModifiedTime(lease, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.UNDECIDED);
+        // Still not stale-after-seconds without a heartbeat
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.UNDECIDED);
+    }
+
+    @Test
+    void takesOverALeaseWithoutHeartbeats() throws Exception {
+        appProperties.getJobLeases().setStaleAfterSeconds(0);
+        assertThat(nodeA.acquire("content-1")).isEqualTo(Acquisition.ACQUIRED);
+        Path lease = sharedTemp.resolve("leases").resolve("content-1.lease");
+
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.UNDECIDED);
+        assertThat(nodeB.acquire("content-1")).isEqualTo(Acquisition.ACQUIRED);
+
+        // The old holder must not release the lease it lost
+        nodeA.heartbeat();
+        nodeA.release("content-1");
+        assertThat(lease).exists();
+    }
+}
@@ -0,0 +1,33 @@
+package com.content_generation_service.generation.job;
+
+import com.content_generation_service.config.AppProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RenderCostEstimatorTest {
+
+    @Test
+    void weighsTemplateCostsByTheRecentRequestMix() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getBacklog().setTemplateCostSeconds(Map.of("short", 60.0, "long", 180.0));
+        RenderCostEstimator estimator = new RenderCostEstimator(appProperties);
+
+        // Nothing received yet
+        assertThat(estimator.expectedJobSeconds()).isEqualTo(appProperties.getBacklog().getDefaultJobSeconds());
+
+        estimator.recordArrival("short");
+        estimator.recordArrival("long");
+        assertThat(estimator.expectedJobSeconds()).isStrictlyBetween(60.0, 180.0);
+
+        // Observed jobs move the seeded cost of their template
+        for (int i = 0; i < 50; i++) {
+            estimator.recordCompletion("long", 300);
+        }
+        assertThat(estimator.costSeconds("long")).isCloseTo(300, within(1.0));
+        assertThat(estimator.costSeconds("unknown")).isEqualTo(appProperties.getBacklog().getDefaultJobSeconds());
+    }
+}
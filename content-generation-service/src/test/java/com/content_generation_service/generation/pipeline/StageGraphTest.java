@@ -0,0 +1,137 @@
+package com.content_generation_service.generation.pipeline;
+
+import com.content_generation_service.generation.job.JobContext;
+import com.content_generation_service.generation.job.JobContext.JobCancelledException;
+import com.content_generation_service.generation.pipeline.StageGraph.StageExecutionException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StageGraphTest {
+
+    private static final StageKey<String> A = StageKey.of("a");
+    private static final StageKey<String> B = StageKey.of("b");
+    private static final StageKey<String> C = StageKey.of("c");
+
+    @Test
+    void runsIndependentStagesConcurrentlyAndPassesOutputsToDependents() {
+        // Each independent stage waits for the other one to start, which only works if they overlap
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        StageResults results = new StageGraph("test")
+            .stage(C, List.of(A, B), in -> in.get(A) + in.get(B))
+            .stage(A, List.of(), in -> awaitOther(bothStarted, "a"))
+            .stage(B, List.of(), in -> awaitOther(bothStarted, "b"))
+            .execute();
+
+        assertThat(results.get(C)).isEqualTo("ab");
+        assertThat(results.getTimings()).extracting(StageResults.StageTiming::stage).containsExactly("c", "a", "b");
+    }
+
+    @Test
+    void skipsDependentsOfFailedStageAndReportsIt() {
+        AtomicBoolean dependentRan = new AtomicBoolean(false);
+
+        StageGraph graph = new StageGraph("test")
+            .reactiveStage(A, List.of(), in -> Mono.error(new IllegalStateException("boom")))
+            .stage(B, List.of(), in -> "b")
+            .stage(C, List.of(A, B), in -> {
+                dependentRan.set(true);
+                return "c";
+            });
+
+        assertThatThrownBy(graph::execute)
+            .isInstanceOf(StageExecutionException.class)
+            .hasRootCauseMessage("boom")
+            .extracting(e -> ((StageExecutionException) e).getStageName()).isEqualTo("a");
+        assertThat(dependentRan).isFalse();
+    }
+
+    @Test
+    void rejectsUndeclaredReadsAndCycles() {
+        StageGraph undeclared = new StageGraph("test")
+            .stage(A, List.of(), in -> "a")
+            .stage(B, List.of(), in -> in.get(A));
+        assertThatThrownBy(undeclared::execute).hasRootCauseInstanceOf(IllegalStateException.class);
+
+        StageGraph cyclic = new StageGraph("test")
+            .stage(A, List.of(B), in -> "a")
+            .stage(B, List.of(A), in -> "b");
+        assertThatThrownBy(cyclic::execute).isInstanceOf(IllegalStateException.class).hasMessageContaining("cycle");
+    }
+
+    @Test
+    void cancellingTheJobStopsRunningStages() {
+        JobContext job = new JobContext("content-1");
+        CountDownLatch started = new CountDownLatch(1);
+        StageGraph graph = new StageGraph("test")
+            .forJob(job)
+            .reactiveStage(A, List.of(), in -> Mono.<String>never().doOnSubscribe(s -> started.countDown()))
+            .stage(B, List.of(A), in -> in.get(A));
+
+        Thread canceller = new Thread(() -> {
+            try {
+                started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            job.cancel();
+        });
+        canceller.start();
+
+        assertThatThrownBy(graph::execute).isInstanceOf(JobCancelledException.class);
+    }
+
+    @Test
+    void restoresCheckpointedStagesAndSkipsWhatOnlyTheyNeeded() {
+        Map<String, String> saved = new HashMap<>();
+        StageCheckpoint checkpoint = new StageCheckpoint() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> Optional<T> restore(StageKey<T> key, StageCodec<T> codec) {
+                return Optional.ofNullable((T) saved.get(key.getName()));
+            }
+
+            @Override
+            public <T> void save(StageKey<T> key, StageCodec<T> codec, T value) {
+                saved.put(key.getName(), (String) value);
+            }
+        };
+        StageCodec<String> codec = StageCodecs.json(new ObjectMapper(), String.class);
+        saved.put("b", "restored-b");
+        AtomicInteger aRuns = new AtomicInteger();
+
+        StageResults results = new StageGraph("test")
+            .withCheckpoint(checkpoint)
+            .stage(A, List.of(), in -> "a" + aRuns.incrementAndGet())
+            .stage(B, List.of(A), in -> in.get(A) + "b")
+            .stage(C, List.of(B), in -> in.get(B) + "+c")
+            .checkpointed(B, codec)
+            .checkpointed(C, codec)
+            .execute();
+
+        assertThat(results.get(C)).isEqualTo("restored-b+c");
+        assertThat(aRuns).hasValue(0);
+        assertThat(saved).containsEntry("c", "restored-b+c");
+    }
+
+    private static String awaitOther(CountDownLatch latch, String value) throws InterruptedException {
+        latch.countDown();
+        if (!latch.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Stages did not run concurrently");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,48 @@
+package com.content_generation_service.generation.service;
+
+import com.content_generation_service.client.OpenAiLlmClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CharacterDialogueEnrichmentServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OpenAiLlmClient llmClient = mock(OpenAiLlmClient.class);
+    private final CharacterDialogueEnrichmentService service = new CharacterDialogueEnrichmentService(llmClient, objectMapper);
+
+    @Test
+    void keepsOnlyLinesMatchingTheirDialogueIndex() throws Exception {
+        JsonNode dialogue = objectMapper.readTree("""
+            [{"characterId": "a", "text": "Black holes bend light."},
+             {"characterId": "b", "text": "Really?"},
+             {"characterId": "a", "text": "Yes,  gravity   does it."},
+             {"characterId": "b", "text": "Neat."}]""");
+        // Line 1 was dropped, line 3 comes back twice and once with the text of another line, plus a line without index
+        when(llmClient.stream(anyString())).thenReturn(Flux.just(
+            "[{\"index\": 0, \"text\": \"Black holes bend light.\", \"query_list\": [\"black hole\"]},",
+            "{\"index\": 2, \"text\": \"Yes, gravity does it.\", \"query_list\": [\"gravity\"]},",
+            "{\"index\": 3, \"text\": \"Really?\", \"query_list\": [\"wrong\"]},",
+            "{\"index\": 2, \"text\": \"Yes, gravity does it.\", \"query_list\": [\"again\"]},",
+            "{\"text\": \"Neat.\", \"query_list\": [\"neat\"]}]"));
+
+        List<JsonNode> lines = service.streamEnrichedDialogue(dialogue).collectList().block();
+
+        assertThat(lines).extracting(line -> line.get("index").asInt()).containsExactly(0, 2);
+        assertThat(lines.get(1).get("query_list").get(0).asText()).isEqualTo("gravity");
+
+        ArgumentCaptor<String> prompt = ArgumentCaptor.forClass(String.class);
+        verify(llmClient).stream(prompt.capture());
+        assertThat(prompt.getValue()).contains("\"index\" : 3");
+    }
+}
@@ -0,0 +1,99 @@
+package com.content_generation_service.generation.service.assets;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.storage.RenderDeduplicationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FontIndexServiceTest {
+
+    // Any TrueType font of the build machine will do; the assets are not part of the repository
+    private static final Path SYSTEM_FONT = Paths.get("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @TempDir
+    Path tempDir;
+
+    private final AppProperties appProperties = new AppProperties();
+    private Path fontsDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fontsDir = Files.createDirectories(tempDir.resolve("assets").resolve("fonts"));
+        Files.writeString(fontsDir.resolve("README.md"), "Place font files here");
+        appProperties.getAssets().setFonts("fonts/");
+        appProperties.getFontIndex().setDir(tempDir.resolve("cache").toString());
+    }
+
+    @Test
+    void servesOnlyTheFamilyOfTheRequestedFont() throws Exception {
+        assumeTrue(Files.isReadable(SYSTEM_FONT), "no TrueType font to index");
+        Files.copy(SYSTEM_FONT, fontsDir.resolve("DejaVuSans.ttf"));
+        FontIndexService fontIndex = newFontIndex();
+
+        Path familyDir = fontIndex.fontDir("DejaVu Sans");
+        assertThat(familyDir).isNotEqualTo(fontsDir);
+        try (var files = Files.list(familyDir)) {
+            assertThat(files.map(path -> path.getFileName().toString())).containsExactly("DejaVuSans.ttf");
+        }
+        // Matched like fontconfig does, ignoring case and blanks, by family or PostScript name
+        assertThat(fontIndex.fontDir("dejavusans")).isEqualTo(familyDir);
+        assertThat(fontIndex.fontDir("DejaVuSans")).isEqualTo(familyDir);
+    }
+
+    @Test
+    void unknownFontsGetAnEmptyDirectory() throws Exception {
+        Path fontDir = newFontIndex().fontDir("Arial");
+
+        assertThat(fontDir).isEmptyDirectory();
+    }
+
+    @Test
+    void fallsBackToTheWholeFontsDirectoryWhenDisabled() throws Exception {
+        appProperties.getFontIndex().setEnabled(false);
+
+        assertThat(newFontIndex().fontDir("Arial")).isEqualTo(fontsDir);
+    }
+
+    @Test
+    void rebuildingTheIndexKeepsTheRenderFingerprint() throws Exception {
+        assumeTrue(Files.isReadable(SYSTEM_FONT), "no TrueType font to index");
+        Path font = Files.copy(SYSTEM_FONT, fontsDir.resolve("DejaVuSans.ttf"));
+        Files.setLastModifiedTime(font, FileTime.fromMillis(1_600_000_000_000L));
+        // As in the Docker image, the index lives on another file system than the assets when one is available,
+        // so the fonts are copied rather than linked
+        Path shm = Paths.get("/dev/shm");
+        Path cacheDir = Files.isDirectory(shm) && !Files.getFileStore(shm).equals(Files.getFileStore(tempDir))
+            ? Files.createTempDirectory(shm, "font-index")
+            : tempDir.resolve("cache");
+        appProperties.getFontIndex().setDir(cacheDir.toString());
+        RenderDeduplicationService dedup = new RenderDeduplicationService(null, appProperties, new ObjectMapper());
+        var params = new ObjectMapper().readTree("{\"subtitles\":{\"font\":\"DejaVu Sans\"}}");
+        try {
+            String beforeRestart = dedup.fingerprint("reddit_story_v1", params, List.of(newFontIndex().fontDir("DejaVu Sans")), Optional.empty());
+            String afterRestart = dedup.fingerprint("reddit_story_v1", params, List.of(newFontIndex().fontDir("DejaVu Sans")), Optional.empty());
+
+            assertThat(afterRestart).isEqualTo(beforeRestart);
+        } finally {
+            FileSystemUtils.deleteRecursively(cacheDir);
+        }
+    }
+
+    private FontIndexService newFontIndex() {
+        FontIndexService fontIndex = new FontIndexService(appProperties, new FileSystemAssetProvider(tempDir.resolve("assets").toString()));
+        fontIndex.index();
+        return fontIndex;
+    }
+}
@@ -0,0 +1,137 @@
+package com.content_generation_service.generation.service.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the audio CPU time of a job with MP3 intermediates against PCM WAV intermediates, from the
+ * narration chunks returned by the TTS provider to the AAC track of the final render.
+ * <p>
+ * Not part of the regular test run (surefire only picks up *Test classes). Needs ffmpeg and ffprobe on the PATH:
+ * <pre>
+ * mvn test -pl content-generation-service -am -Dtest=AudioIntermediateBenchmark -Dsurefire.failIfNoSpecifiedTests=false
+ * </pre>
+ * The 'mp3' chain probes every chunk, joins them with the FFmpeg concat filter into an MP3, probes it and
+ * encodes it to AAC, as the pipeline used to. The 'wav' chain reads the durations from the headers, joins the
+ * samples in Java and encodes the result to AAC. The CPU time is the user and system time FFmpeg reports;
+ * the drift is how far the duration of the AAC track is from the summed chunk durations used for the timings.
+ */
+class AudioIntermediateBenchmark {
+
+    private static final int[] CHUNK_COUNTS = {1, 4, 12};
+    private static final double CHUNK_SECONDS = 20.0;
+    private static final Pattern BENCH = Pattern.compile("bench: utime=([0-9.]+)s stime=([0-9.]+)s");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void audioCpuTimePerJob() throws Exception {
+        assumeTrue(ffmpegAvailable(), "ffmpeg is not on the PATH");
+
+        System.out.printf(Locale.US, "%-6s %8s %10s %10s %10s%n", "chain", "chunks", "cpu s", "wall s", "drift ms");
+        for (int chunks : CHUNK_COUNTS) {
+            for (String chain : List.of("mp3", "wav")) {
+                List<Path> files = new ArrayList<>();
+                for (int i = 0; i < chunks; i++) {
+                    files.add(providerChunk(chain, i));
+                }
+
+                long start = System.nanoTime();
+                double cpu = 0.0;
+                double duration = 0.0;
+                Path combined = tempDir.resolve("combined-" + chunks + "." + chain);
+                if (chain.equals("wav")) {
+                    for (Path file : files) {
+                        duration += WavFile.durationSeconds(file).orElseThrow();
+                    }
+                    if (files.size() > 1) {
+                        WavFile.concat(files, combined);
+                    } else {
+                        combined = files.get(0);
+                    }
+                } else {
+                    for (Path file : files) {
+                        duration += probeDuration(file);
+                    }
+                    if (files.size() > 1) {
+                        List<String> command = new ArrayList<>(List.of("ffmpeg", "-benchmark", "-y"));
+                        StringBuilder filter = new StringBuilder();
+                        for (int i = 0; i < files.size(); i++) {
+                            command.addAll(List.of("-i", files.get(i).toString()));
+                            filter.append("[").append(i).append(":a]");
+                        }
+                        filter.append("concat=n=").append(files.size()).append(":v=0:a=1[a]");
+                        command.addAll(List.of("-filter_complex", filter.toString(), "-map", "[a]", combined.toString()));
+                        cpu += ffmpeg(command);
+                        probeDuration(combined);
+                    } else {
+                        combined = files.get(0);
+                    }
+                }
+                Path aac = tempDir.resolve("final-" + chunks + "-" + chain + ".m4a");
+                cpu += ffmpeg(List.of("ffmpeg", "-benchmark", "-y", "-i", combined.toString(), "-c:a", "aac", aac.toString()));
+                double wall = (System.nanoTime() - start) / 1e9;
+
+                System.out.printf(Locale.US, "%-6s %8d %10.2f %10.2f %10.0f%n", chain, chunks, cpu, wall,
+                    (probeDuration(aac) - duration) * 1000);
+            }
+        }
+    }
+
+    // A chunk of speech-like audio in the format the provider returns it in
+    private Path providerChunk(String chain, int index) throws IOException, InterruptedException {
+        Path file = tempDir.resolve("chunk-" + index + "." + chain);
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-y", "-f", "lavfi", "-i",
+            String.format(Locale.US, "sine=frequency=%d:sample_rate=24000:duration=%.1f", 180 + index * 20, CHUNK_SECONDS)));
+        command.addAll(chain.equals("wav") ? List.of("-c:a", "pcm_s16le") : List.of("-c:a", "libmp3lame", "-b:a", "160k"));
+        command.add(file.toString());
+        ffmpeg(command);
+        return file;
+    }
+
+    /**
+     * @return The CPU seconds FFmpeg reports for the command, or 0 if it does not report them.
+     */
+    private static double ffmpeg(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        if (!process.waitFor(10, TimeUnit.MINUTES) || process.exitValue() != 0) {
+            process.destroyForcibly();
+            throw new IOException("ffmpeg failed: " + String.join(" ", command) + "\n" + output);
+        }
+        Matcher matcher = BENCH.matcher(output);
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) + Double.parseDouble(matcher.group(2)) : 0.0;
+    }
+
+    private static double probeDuration(Path file) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("ffprobe", "-v", "error", "-show_entries", "format=duration",
+            "-of", "default=noprint_wrappers=1:nokey=1", file.toString()).start();
+        String output = new String(process.getInputStream().readAllBytes()).trim();
+        if (!process.waitFor(30, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IOException("ffprobe failed for " + file);
+        }
+        return Double.parseDouble(output);
+    }
+
+    private static boolean ffmpegAvailable() {
+        try {
+            Process process = new ProcessBuilder("ffmpeg", "-version").redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            return process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}
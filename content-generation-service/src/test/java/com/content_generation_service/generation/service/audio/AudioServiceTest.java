@@ -0,0 +1,68 @@
+package com.content_generation_service.generation.service.audio;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.NarrationSegment;
+import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.util.ResourceHelperService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AudioServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AudioService audioService = new AudioService(new ResourceHelperService(), new AppProperties());
+
+    @Test
+    void splitsBatchTimingsBackToSegmentsByOffset() {
+        // Two segments of 2.0s and 1.5s, separated by a 1.0s gap: the second starts at 3.0s
+        List<WordTiming> batchTimings = List.of(
+            new WordTiming("hello", 0.1, 0.6),
+            new WordTiming("world", 1.5, 2.3), // runs past the end of the first segment
+            new WordTiming("second", 2.9, 3.4), // starts slightly early, in the gap
+            new WordTiming("part", 3.5, 4.2)
+        );
+
+        List<List<WordTiming>> perSegment = audioService.splitTimingsBySegment(batchTimings, List.of(0.0, 3.0), List.of(2.0, 1.5));
+
+        assertThat(perSegment.get(0)).extracting(WordTiming::getWord).containsExactly("hello", "world");
+        assertThat(perSegment.get(0).get(1).getEndTimeSeconds()).isEqualTo(2.0);
+        assertThat(perSegment.get(1)).extracting(WordTiming::getWord).containsExactly("second", "part");
+        assertThat(perSegment.get(1).get(0).getStartTimeSeconds()).isEqualTo(0.0);
+        assertThat(perSegment.get(1).get(1).getStartTimeSeconds()).isEqualTo(0.5);
+        assertThat(perSegment.get(1).get(1).getEndTimeSeconds()).isCloseTo(1.2, within(1e-9));
+    }
+
+    @Test
+    void combinesPcmSegmentsWithoutLosingTimeOrTimings() throws Exception {
+        NarrationSegment first = new NarrationSegment(pcm("first.wav", 36000), 0.75, List.of(new WordTiming("hello", 0.1, 0.7)));
+        NarrationSegment second = new NarrationSegment(pcm("second.wav", 24000), 0.5, List.of(new WordTiming("world", 0.0, 0.4)));
+
+        NarrationSegment combined = audioService.combineAudioTracks(List.of(first, second)).block();
+
+        try {
+            assertThat(combined.getDurationSeconds()).isEqualTo(1.25);
+            assertThat(WavFile.durationSeconds(combined.getAudioFilePath())).hasValue(1.25);
+            assertThat(combined.getWordTimings().get(1).getStartTimeSeconds()).isEqualTo(0.75);
+            assertThat(combined.getWordTimings().get(1).getEndTimeSeconds()).isEqualTo(1.15);
+            assertThat(first.getAudioFilePath()).doesNotExist();
+        } finally {
+            Files.deleteIfExists(combined.getAudioFilePath());
+        }
+    }
+
+    // A 24 kHz mono 16-bit file of silence
+    private Path pcm(String name, int dataSize) throws Exception {
+        Path wav = Files.write(tempDir.resolve(name), new byte[WavFile.HEADER_SIZE + dataSize]);
+        WavFile.writePcmHeader(wav, 24000, 1, 16);
+        return wav;
+    }
+}
@@ -0,0 +1,37 @@
+package com.content_generation_service.generation.service.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextChunkerTest {
+
+    @Test
+    void keepsShortTextAsSingleChunk() {
+        assertThat(TextChunker.split("  Hello there. General Kenobi!  ", 100)).containsExactly("Hello there. General Kenobi!");
+        assertThat(TextChunker.split("   ", 100)).isEmpty();
+    }
+
+    @Test
+    void packsWholeSentencesIntoChunksWithinTheLimit() {
+        String text = "First sentence is here. Second one follows. Third sentence ends it.";
+
+        List<String> chunks = TextChunker.split(text, 45);
+
+        assertThat(chunks).containsExactly("First sentence is here. Second one follows.", "Third sentence ends it.");
+        assertThat(String.join(" ", chunks)).isEqualTo(text);
+    }
+
+    @Test
+    void splitsOverlongSentenceAtWordBoundaries() {
+        String text = "Short one. This sentence has no end and keeps going for quite a while";
+
+        List<String> chunks = TextChunker.split(text, 20);
+
+        assertThat(chunks).allMatch(chunk -> chunk.length() <= 20);
+        assertThat(chunks.get(0)).isEqualTo("Short one.");
+        assertThat(String.join(" ", chunks)).isEqualTo(text);
+    }
+}
@@ -0,0 +1,99 @@
+package com.content_generation_service.generation.service.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WavFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sizesTheHeaderAfterTheStreamedSamples() throws Exception {
+        // Half a second of 24 kHz mono 16-bit samples, after the space left for the header
+        Path wav = tempDir.resolve("narration.wav");
+        Files.write(wav, new byte[WavFile.HEADER_SIZE + 24000]);
+
+        WavFile.writePcmHeader(wav, 24000, 1, 16);
+
+        WavFile.Format format = WavFile.readFormat(wav).orElseThrow();
+        assertThat(format.sampleRate()).isEqualTo(24000);
+        assertThat(format.dataOffset()).isEqualTo(WavFile.HEADER_SIZE);
+        assertThat(format.dataSize()).isEqualTo(24000);
+        assertThat(WavFile.durationSeconds(wav)).hasValue(0.5);
+    }
+
+    @Test
+    void readsHeadersOfStreamingEncodersFromTheFileLength() throws Exception {
+        Path wav = tempDir.resolve("streamed.wav");
+        Files.write(wav, new byte[WavFile.HEADER_SIZE + 8000]);
+        WavFile.writePcmHeader(wav, 16000, 1, 16);
+        // Streaming encoders cannot know the data size up front and leave a placeholder
+        byte[] bytes = Files.readAllBytes(wav);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(40, -1);
+        Files.write(wav, bytes);
+
+        assertThat(WavFile.durationSeconds(wav)).hasValue(0.25);
+        assertThat(WavFile.durationSeconds(tempDir.resolve("narration.mp3"))).isEmpty();
+    }
+
+    @Test
+    void concatenatesSamplesBehindASingleHeader() throws Exception {
+        Path first = pcm("first.wav", (byte) 1, 4800);
+        Path second = pcm("second.wav", (byte) 2, 2400);
+        Path combined = tempDir.resolve("combined.wav");
+
+        assertThat(WavFile.concat(List.of(first, second), combined)).isTrue();
+
+        assertThat(WavFile.durationSeconds(combined)).hasValue(0.15);
+        byte[] samples = Arrays.copyOfRange(Files.readAllBytes(combined), WavFile.HEADER_SIZE, WavFile.HEADER_SIZE + 7200);
+        assertThat(samples[4799]).isEqualTo((byte) 1);
+        assertThat(samples[4800]).isEqualTo((byte) 2);
+    }
+
+    @Test
+    void refusesToConcatenateDifferentEncodings() throws Exception {
+        Path first = pcm("first.wav", (byte) 1, 4800);
+        Path other = tempDir.resolve("other.wav");
+        Files.write(other, new byte[WavFile.HEADER_SIZE + 4400]);
+        WavFile.writePcmHeader(other, 22050, 1, 16);
+        Path combined = tempDir.resolve("combined.wav");
+
+        assertThat(WavFile.concat(List.of(first, other), combined)).isFalse();
+        assertThat(combined).doesNotExist();
+    }
+
+    @Test
+    void fadesTheEdgesSoTheTrackLoopsWithoutAClick() throws Exception {
+        // One second of a constant 24 kHz mono signal at 0x0101
+        Path wav = pcm("loop.wav", (byte) 1, 48000);
+
+        WavFile.fadeEdges(wav, 0.01);
+
+        ByteBuffer samples = ByteBuffer.wrap(Files.readAllBytes(wav)).order(ByteOrder.LITTLE_ENDIAN);
+        short full = 0x0101;
+        assertThat(samples.getShort(WavFile.HEADER_SIZE)).isZero();
+        assertThat(samples.getShort(WavFile.HEADER_SIZE + 120 * 2)).isEqualTo((short) Math.round(full * 0.5));
+        assertThat(samples.getShort(WavFile.HEADER_SIZE + 240 * 2)).isEqualTo(full);
+        assertThat(samples.getShort(WavFile.HEADER_SIZE + 23999 * 2)).isZero();
+        assertThat(WavFile.durationSeconds(wav)).hasValue(1.0);
+    }
+
+    // A 24 kHz mono 16-bit file whose sample bytes all hold the given value
+    private Path pcm(String name, byte value, int dataSize) throws Exception {
+        byte[] bytes = new byte[WavFile.HEADER_SIZE + dataSize];
+        Arrays.fill(bytes, WavFile.HEADER_SIZE, bytes.length, value);
+        Path wav = Files.write(tempDir.resolve(name), bytes);
+        WavFile.writePcmHeader(wav, 24000, 1, 16);
+        return wav;
+    }
+}
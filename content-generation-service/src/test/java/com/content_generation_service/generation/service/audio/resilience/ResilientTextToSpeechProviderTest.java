@@ -0,0 +1,96 @@
+package com.content_generation_service.generation.service.audio.resilience;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.NarrationSegment;
+import com.content_generation_service.generation.service.audio.TextToSpeechProvider;
+import com.content_generation_service.generation.service.audio.resilience.ResilientTextToSpeechProvider.CircuitOpenException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResilientTextToSpeechProviderTest {
+
+    @Test
+    void hedgesSlowCallAfterObservedP95() {
+        FakeProvider fake = new FakeProvider();
+        AppProperties.Resilience config = config();
+        config.setMaxHedgeRatio(1.0);
+        ResilientTextToSpeechProvider provider = new ResilientTextToSpeechProvider(fake, config);
+
+        // Learn a fast baseline
+        for (int i = 0; i < 5; i++) {
+            fake.responses.add(Mono.just(segment("fast")));
+            provider.generate("text", "voice", false).block();
+        }
+
+        // The next primary hangs; the hedged duplicate answers
+        fake.responses.add(Mono.never());
+        fake.responses.add(Mono.just(segment("hedge")));
+        NarrationSegment result = provider.generate("text", "voice", false).block(Duration.ofSeconds(5));
+
+        assertThat(result.getAudioFilePath()).isEqualTo(Path.of("hedge"));
+        assertThat(fake.calls).hasValue(7);
+    }
+
+    @Test
+    void surfacesPrimaryErrorWithoutWaitingForHedgeAndOpensCircuit() {
+        FakeProvider fake = new FakeProvider();
+        ResilientTextToSpeechProvider provider = new ResilientTextToSpeechProvider(fake, config());
+        for (int i = 0; i < 5; i++) {
+            fake.responses.add(Mono.just(segment("fast")));
+            provider.generate("text", "voice", false).block();
+        }
+
+        for (int i = 0; i < 5; i++) {
+            fake.responses.add(Mono.error(new IOException("provider down")));
+            assertThatThrownBy(() -> provider.generate("text", "voice", false).block(Duration.ofSeconds(1)))
+                .hasRootCauseInstanceOf(IOException.class);
+        }
+
+        // 5 of the last 10 calls failed: the circuit is open and the provider is not called anymore
+        int callsBefore = fake.calls.get();
+        assertThatThrownBy(() -> provider.generate("text", "voice", false).block())
+            .isInstanceOf(CircuitOpenException.class);
+        assertThat(fake.calls).hasValue(callsBefore);
+    }
+
+    private static AppProperties.Resilience config() {
+        AppProperties.Resilience config = new AppProperties.Resilience();
+        config.setMinLatencySamples(5);
+        config.setMinHedgeDelayMillis(50);
+        config.setBreakerMinimumCalls(10);
+        return config;
+    }
+
+    private static NarrationSegment segment(String name) {
+        return new NarrationSegment(Path.of(name), 1.0, List.of());
+    }
+
+    private static class FakeProvider implements TextToSpeechProvider {
+        private final Queue<Mono<NarrationSegment>> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Mono<NarrationSegment> generate(String text, String voiceId, boolean generateTimings) {
+            return Mono.defer(() -> {
+                calls.incrementAndGet();
+                return responses.poll();
+            });
+        }
+
+        @Override
+        public String getProviderId() {
+            return "fake";
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.content_generation_service.generation.service.cache;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.NarrationSegment;
+import com.content_generation_service.generation.model.WordTiming;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StageArtifactCacheTest {
+
+    @TempDir
+    Path sharedTemp;
+
+    private final AppProperties appProperties = new AppProperties();
+
+    @Test
+    void returnsPrivateCopiesOfCachedNarration() throws Exception {
+        StageArtifactCache cache = new StageArtifactCache(appProperties, new ObjectMapper(), sharedTemp.toString());
+        Path audio = Files.writeString(sharedTemp.resolve("narration.mp3"), "audio");
+        String key = cache.key("narration", "openai", "alloy", "Hello there");
+        cache.putNarration("content-1", key, new NarrationSegment(audio, 1.5, List.of(new WordTiming("Hello", 0.0, 0.4))));
+
+        NarrationSegment cached = cache.getNarration("content-1", key).orElseThrow();
+        try {
+            assertThat(cached.getAudioFilePath()).isNotEqualTo(audio).hasContent("audio").hasExtension("mp3");
+            assertThat(cached.getDurationSeconds()).isEqualTo(1.5);
+            assertThat(cached.getWordTimings()).extracting(WordTiming::getWord).containsExactly("Hello");
+        } finally {
+            Files.deleteIfExists(cached.getAudioFilePath());
+        }
+
+        // Other inputs, other contents and other pipeline versions miss
+        assertThat(cache.getNarration("content-1", cache.key("narration", "openai", "alloy", "Hello there!"))).isEmpty();
+        assertThat(cache.getNarration("content-2", key)).isEmpty();
+        appProperties.getRenderDedup().setPipelineVersion(appProperties.getRenderDedup().getPipelineVersion() + "-next");
+        assertThat(cache.key("narration", "openai", "alloy", "Hello there")).isNotEqualTo(key);
+    }
+
+    @Test
+    void evictsContentsUnusedForLongerThanTheTtl() throws Exception {
+        StageArtifactCache cache = new StageArtifactCache(appProperties, new ObjectMapper(), sharedTemp.toString());
+        Path image = Files.writeString(sharedTemp.resolve("title.png"), "png");
+        cache.putFile("old", "titleImage-1", image);
+        cache.putFile("recent", "titleImage-1", image);
+        Path oldDir = sharedTemp.resolve("artifact-cache").resolve("old");
+        Files.setLastModifiedTime(oldDir, FileTime.from(Instant.now().minus(Duration.ofHours(appProperties.getArtifactCache().getTtlHours() + 1))));
+
+        cache.evictExpired();
+
+        assertThat(oldDir).doesNotExist();
+        assertThat(cache.getFile("recent", "titleImage-1", ".png")).isPresent();
+    }
+}
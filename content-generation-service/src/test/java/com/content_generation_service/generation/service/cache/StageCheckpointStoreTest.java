@@ -0,0 +1,65 @@
+package com.content_generation_service.generation.service.cache;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.pipeline.StageCheckpoint;
+import com.content_generation_service.generation.pipeline.StageCodecs;
+import com.content_generation_service.generation.pipeline.StageKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StageCheckpointStoreTest {
+
+    private static final StageKey<Path> SUBTITLES = StageKey.of("subtitles");
+    private static final StageKey<Path> RENDER = StageKey.of("render");
+    private static final StageKey<GeneratedVideoDetailsV1> STORE = StageKey.of("store");
+
+    @TempDir
+    Path sharedTemp;
+    @TempDir
+    Path nodeTemp;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void resumesFromTheStagesSavedByAnEarlierRun() throws Exception {
+        StageCheckpointStore store = new StageCheckpointStore(new AppProperties(), objectMapper, sharedTemp.toString());
+        Path subtitles = Files.writeString(nodeTemp.resolve("subtitles.ass"), "ass");
+        Path render = Files.writeString(sharedTemp.resolve("final.mp4"), "video");
+
+        StageCheckpoint first = store.open("content-1", "fp-1");
+        first.save(SUBTITLES, StageCodecs.file(), subtitles);
+        first.save(RENDER, StageCodecs.file(), render);
+        // The node dies and takes its local temp files with it
+        Files.delete(subtitles);
+
+        StageCheckpoint resumed = store.open("content-1", "fp-1");
+        assertThat(resumed.restore(SUBTITLES, StageCodecs.file())).get().satisfies(path -> {
+            assertThat(path).hasContent("ass");
+            assertThat(path.startsWith(sharedTemp)).isTrue();
+        });
+        // Files already on the shared storage are referenced in place
+        assertThat(resumed.restore(RENDER, StageCodecs.file())).contains(render.toAbsolutePath().normalize());
+        assertThat(resumed.restore(STORE, StageCodecs.json(objectMapper, GeneratedVideoDetailsV1.class))).isEmpty();
+    }
+
+    @Test
+    void discardsTheCheckpointOfAnotherVersionOfTheRequest() throws Exception {
+        StageCheckpointStore store = new StageCheckpointStore(new AppProperties(), objectMapper, sharedTemp.toString());
+        Path render = Files.writeString(sharedTemp.resolve("final.mp4"), "video");
+        store.open("content-1", "fp-1").save(RENDER, StageCodecs.file(), render);
+
+        assertThat(store.open("content-1", "fp-2").restore(RENDER, StageCodecs.file())).isEmpty();
+
+        // A file referenced by a checkpoint that is gone makes the stage run again
+        store.open("content-1", "fp-2").save(RENDER, StageCodecs.file(), render);
+        Files.delete(render);
+        assertThat(store.open("content-1", "fp-2").restore(RENDER, StageCodecs.file())).isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package com.content_generation_service.generation.service.google;
+
+import com.content_generation_service.config.AppProperties;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GoogleImageSearchServiceTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0};
+
+    @TempDir
+    Path tempDir;
+
+    private final AppProperties appProperties = new AppProperties();
+    // Answers the image download; the search always finds the same image
+    private Function<String, ClientResponse> imageResponse;
+
+    private GoogleImageSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        appProperties.getGoogle().setMaxImageSizeMb(1);
+        ProviderHttpClientFactory httpClientFactory = mock(ProviderHttpClientFactory.class);
+        when(httpClientFactory.builderFor(anyString())).thenAnswer(invocation -> WebClient.builder().exchangeFunction(request -> {
+            if (request.url().getHost().equals("www.googleapis.com")) {
+                return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .body("{\"items\":[{\"link\":\"https://images.example.com/cat\"}]}")
+                    .build());
+            }
+            return Mono.just(imageResponse.apply(request.url().toString()));
+        }));
+        service = new GoogleImageSearchService(httpClientFactory, appProperties);
+        ReflectionTestUtils.setField(service, "sharedTempBasePath", tempDir.toString());
+    }
+
+    @Test
+    void namesTheImageAfterItsMagicBytesRatherThanItsContentType() throws IOException {
+        imageResponse = url -> image("image/jpeg", PNG);
+
+        Path image = service.downloadImageForQuery("cat").block();
+
+        assertThat(image.getFileName().toString()).endsWith(".png");
+        assertThat(Files.readAllBytes(image)).isEqualTo(PNG);
+        assertThat(files()).containsExactly(image);
+    }
+
+    @Test
+    void fallsBackToTheContentTypeForUnknownMagicBytes() {
+        imageResponse = url -> image("image/webp", new byte[] {1, 2, 3, 4});
+
+        Path image = service.downloadImageForQuery("cat").block();
+
+        assertThat(image.getFileName().toString()).endsWith(".webp");
+        assertThat(files()).containsExactly(image);
+    }
+
+    @Test
+    void rejectsFilesThatAreNotImagesAndDeletesThePartialFile() {
+        imageResponse = url -> image("text/html", "<html></html>".getBytes());
+
+        assertThatThrownBy(() -> service.downloadImageForQuery("cat").block())
+            .hasRootCauseInstanceOf(IOException.class)
+            .hasStackTraceContaining("not a supported image");
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void abortsDownloadsOverTheSizeCapAndDeletesThePartialFile() {
+        // No Content-Length: the cap is only hit while streaming the second chunk
+        byte[] chunk = new byte[700 * 1024];
+        System.arraycopy(PNG, 0, chunk, 0, PNG.length);
+        imageResponse = url -> ClientResponse.create(HttpStatus.OK)
+            .header(HttpHeaders.CONTENT_TYPE, "image/png")
+            .body(Flux.just(chunk, Arrays.copyOf(chunk, chunk.length)).map(GoogleImageSearchServiceTest::buffer))
+            .build();
+
+        assertThatThrownBy(() -> service.downloadImageForQuery("cat").block())
+            .hasCauseInstanceOf(GoogleImageSearchService.ImageTooLargeException.class);
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void rejectsADeclaredLengthOverTheCapBeforeWritingAnything() {
+        imageResponse = url -> ClientResponse.create(HttpStatus.OK)
+            .header(HttpHeaders.CONTENT_TYPE, "image/png")
+            .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(5L * 1024 * 1024))
+            .body(Flux.just(buffer(PNG)))
+            .build();
+
+        assertThatThrownBy(() -> service.downloadImageForQuery("cat").block())
+            .hasCauseInstanceOf(GoogleImageSearchService.ImageTooLargeException.class);
+        assertThat(files()).isEmpty();
+    }
+
+    private static ClientResponse image(String contentType, byte[] body) {
+        return ClientResponse.create(HttpStatus.OK)
+            .header(HttpHeaders.CONTENT_TYPE, contentType)
+            .body(Flux.just(buffer(body)))
+            .build();
+    }
+
+    private static DataBuffer buffer(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    private List<Path> files() {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.content_generation_service.generation.service.local.audio;
+
+import com.content_generation_service.generation.model.WordTiming;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ForcedAlignerTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    void placesWordsOnSpeechAndSkipsPauses() {
+        // 0.5s silence, 1s "speech", 0.5s silence, 1s "speech"
+        short[] samples = concat(silence(0.5), tone(1.0), silence(0.5), tone(1.0));
+
+        List<WordTiming> timings = ForcedAligner.align(samples, SAMPLE_RATE, "One, two!");
+
+        assertThat(timings).extracting(WordTiming::getWord).containsExactly("One", "two");
+        assertThat(timings.get(0).getStartTimeSeconds()).isCloseTo(0.5, within(0.03));
+        assertThat(timings.get(0).getEndTimeSeconds()).isCloseTo(1.5, within(0.03));
+        assertThat(timings.get(1).getStartTimeSeconds()).isCloseTo(2.0, within(0.03));
+        assertThat(timings.get(1).getEndTimeSeconds()).isCloseTo(3.0, within(0.03));
+    }
+
+    @Test
+    void weightsWordsBySyllables() {
+        assertThat(ForcedAligner.syllables("cat")).isEqualTo(1);
+        assertThat(ForcedAligner.syllables("make")).isEqualTo(1);
+        assertThat(ForcedAligner.syllables("entanglement")).isEqualTo(4);
+        assertThat(ForcedAligner.syllables("1234")).isEqualTo(2);
+
+        // One continuous region: "cat" gets a third of it, "banana" the rest
+        List<WordTiming> timings = ForcedAligner.align(concat(silence(0.2), tone(1.2), silence(0.2)), SAMPLE_RATE, "cat banana");
+        assertThat(timings.get(0).getEndTimeSeconds()).isCloseTo(0.5, within(0.03));
+        assertThat(timings.get(1).getStartTimeSeconds()).isCloseTo(0.5, within(0.03));
+    }
+
+    private static short[] tone(double seconds) {
+        short[] samples = new short[(int) (seconds * SAMPLE_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (8000 * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static short[] silence(double seconds) {
+        short[] samples = new short[(int) (seconds * SAMPLE_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((i % 7) - 3); // faint noise floor
+        }
+        return samples;
+    }
+
+    private static short[] concat(short[]... parts) {
+        int length = 0;
+        for (short[] part : parts) length += part.length;
+        short[] result = new short[length];
+        int offset = 0;
+        for (short[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
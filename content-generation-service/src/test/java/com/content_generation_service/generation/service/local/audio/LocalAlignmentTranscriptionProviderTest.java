@@ -0,0 +1,42 @@
+package com.content_generation_service.generation.service.local.audio;
+
+import com.content_generation_service.generation.service.visual.MediaMetadataService;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LocalAlignmentTranscriptionProviderTest {
+
+    private final MediaMetadataService mediaMetadataService = mock(MediaMetadataService.class);
+    private final LocalAlignmentTranscriptionProvider provider = new LocalAlignmentTranscriptionProvider(mediaMetadataService);
+
+    @Test
+    void refusesToTimeAudioWithoutTheSpokenText() {
+        Path audio = Path.of("narration.mp3");
+
+        assertThat(provider.requiresSpokenText()).isTrue();
+        assertThatThrownBy(() -> provider.getNarrationSegmentFromAudioFile(audio, true))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("narration.mp3");
+        assertThatThrownBy(() -> provider.getWordTimings(audio))
+            .isInstanceOf(IllegalStateException.class);
+        verifyNoInteractions(mediaMetadataService);
+    }
+
+    @Test
+    void reportsTheDurationWhenNoTimingsAreNeeded() throws Exception {
+        Path audio = Path.of("narration.mp3");
+        when(mediaMetadataService.getAudioDuration(audio)).thenReturn(4.2);
+
+        var segment = provider.getNarrationSegmentFromAudioFile(audio, false).block();
+
+        assertThat(segment.getDurationSeconds()).isEqualTo(4.2);
+        assertThat(segment.getWordTimings()).isEmpty();
+    }
+}
@@ -0,0 +1,69 @@
+package com.content_generation_service.generation.service.storage;
+
+import com.content_generation_service.generation.service.visual.ProgressListener;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProgressivePreviewTest {
+
+    private static final String PLAYLIST = """
+        #EXTM3U
+        #EXT-X-VERSION:7
+        #EXT-X-TARGETDURATION:2
+        #EXT-X-PLAYLIST-TYPE:EVENT
+        #EXT-X-MAP:URI="init.mp4"
+        #EXTINF:2.000000,
+        index0.m4s
+        #EXTINF:2.000000,
+        index1.m4s
+        """;
+
+    @Test
+    void readsTheInitSegmentThenTheMediaSegments() {
+        assertThat(ProgressivePreview.referencedFiles(PLAYLIST)).containsExactly("init.mp4", "index0.m4s", "index1.m4s");
+        assertThat(ProgressivePreview.referencedFiles("#EXTM3U\n#EXT-X-MAP:URI=\"init.mp4\"\n")).containsExactly("init.mp4");
+    }
+
+    @Test
+    void publishesSegmentsBeforeThePlaylistAndAnnouncesItOnce() throws Exception {
+        StorageService storage = mock(StorageService.class);
+        when(storage.storePreviewFile(any(), any(), any())).thenAnswer(call -> "https://cdn/" + call.getArgument(2));
+        ProgressListener listener = mock(ProgressListener.class);
+        ProgressivePreview preview = new ProgressivePreview(storage, "reddit/1/a", 2.0, 60_000, listener);
+
+        Path dir = preview.start();
+        Files.writeString(dir.resolve("init.mp4"), "init");
+        Files.writeString(dir.resolve(ProgressivePreview.PLAYLIST), "#EXTM3U\n#EXT-X-MAP:URI=\"init.mp4\"\n");
+        preview.publish();
+        verify(listener, never()).onPreviewAvailable(any());
+
+        Files.writeString(dir.resolve("index0.m4s"), "0");
+        Files.writeString(dir.resolve("index1.m4s"), "1");
+        Files.writeString(dir.resolve(ProgressivePreview.PLAYLIST), PLAYLIST);
+        preview.publish();
+        preview.finish(true);
+
+        InOrder order = inOrder(storage, listener);
+        order.verify(storage).storePreviewFile(dir.resolve("init.mp4"), "reddit/1/a", "init.mp4");
+        order.verify(storage).storePreviewFile(dir.resolve("index0.m4s"), "reddit/1/a", "index0.m4s");
+        order.verify(storage).storePreviewFile(dir.resolve("index1.m4s"), "reddit/1/a", "index1.m4s");
+        order.verify(listener).onPreviewAvailable("https://cdn/index.m3u8");
+        verify(storage, times(1)).storePreviewFile(any(), any(), eq("init.mp4"));
+        verify(storage, times(2)).storePreviewFile(any(), any(), eq(ProgressivePreview.PLAYLIST));
+        verify(listener, times(1)).onPreviewAvailable(any());
+        assertThat(dir).doesNotExist();
+    }
+}
@@ -0,0 +1,76 @@
+package com.content_generation_service.generation.service.storage;
+
+import com.content_generation_service.config.AppProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenderDeduplicationServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AppProperties appProperties = new AppProperties();
+    private final RenderDeduplicationService service = new RenderDeduplicationService(null, appProperties, objectMapper);
+
+    @TempDir
+    Path assetDir;
+
+    @Test
+    void equivalentParamsGiveTheSameFingerprint() throws Exception {
+        Path video = Files.writeString(assetDir.resolve("minecraft.mp4"), "video");
+        String a = service.fingerprint("reddit_story_v1",
+            objectMapper.readTree("{\"postTitle\":\"Hello\",\"subtitles\":{\"font\":\"Arial\",\"size\":1.50},\"extra\":null}"), List.of(video), Optional.empty());
+        String b = service.fingerprint("reddit_story_v1",
+            objectMapper.readTree("{\"subtitles\":{\"size\":1.5,\"font\":\"Arial\"},\"postTitle\":\" Hello \"}"), List.of(video), Optional.empty());
+
+        assertThat(a).isEqualTo(b).hasSize(64);
+    }
+
+    @Test
+    void paramsAssetsPipelineVersionDerivedOutputsAndSubtitlesChangeTheFingerprint() throws Exception {
+        Path video = Files.writeString(assetDir.resolve("minecraft.mp4"), "video");
+        var params = objectMapper.readTree("{\"postTitle\":\"Hello\"}");
+        String original = service.fingerprint("reddit_story_v1", params, List.of(assetDir), Optional.empty());
+
+        assertThat(service.fingerprint("reddit_story_v1", objectMapper.readTree("{\"postTitle\":\"Hello!\"}"), List.of(assetDir), Optional.empty()))
+            .isNotEqualTo(original);
+        assertThat(service.fingerprint("character_explains_v1", params, List.of(assetDir), Optional.empty())).isNotEqualTo(original);
+
+        Files.setLastModifiedTime(video, FileTime.fromMillis(Files.getLastModifiedTime(video).toMillis() + 1000));
+        String afterAssetUpdate = service.fingerprint("reddit_story_v1", params, List.of(assetDir), Optional.empty());
+        assertThat(afterAssetUpdate).isNotEqualTo(original);
+
+        appProperties.getRenderDedup().setPipelineVersion(appProperties.getRenderDedup().getPipelineVersion() + "-next");
+        String afterPipelineUpdate = service.fingerprint("reddit_story_v1", params, List.of(assetDir), Optional.empty());
+        assertThat(afterPipelineUpdate).isNotEqualTo(afterAssetUpdate);
+
+        appProperties.getDerivedOutputs().setRenditionHeights(List.of(720, 480));
+        String afterDerivedUpdate = service.fingerprint("reddit_story_v1", params, List.of(assetDir), Optional.empty());
+        assertThat(afterDerivedUpdate).isNotEqualTo(afterPipelineUpdate);
+
+        appProperties.getSubtitles().setGrouping("phrase");
+        assertThat(service.fingerprint("reddit_story_v1", params, List.of(assetDir), Optional.empty())).isNotEqualTo(afterDerivedUpdate);
+    }
+
+    @Test
+    void theResolvedMusicTrackChangesTheFingerprint() throws Exception {
+        Path video = Files.writeString(assetDir.resolve("minecraft.mp4"), "video");
+        Path music = Files.writeString(assetDir.resolve("lofi1.wav"), "music");
+        var params = objectMapper.readTree("{\"postTitle\":\"Hello\",\"backgroundMusicId\":\"lofi1\"}");
+
+        // Same request, but the track was missing when the first one was rendered
+        String withoutMusic = service.fingerprint("reddit_story_v1", params, List.of(video), Optional.empty());
+        String withMusic = service.fingerprint("reddit_story_v1", params, List.of(video), Optional.of(music));
+        assertThat(withMusic).isNotEqualTo(withoutMusic);
+
+        Files.writeString(music, "another music");
+        assertThat(service.fingerprint("reddit_story_v1", params, List.of(video), Optional.of(music))).isNotEqualTo(withMusic);
+    }
+}
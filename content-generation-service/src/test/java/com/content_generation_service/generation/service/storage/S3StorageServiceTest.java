@@ -0,0 +1,60 @@
+package com.content_generation_service.generation.service.storage;
+
+import com.content_generation_service.generation.service.visual.MediaMetadataService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3StorageServiceTest {
+
+    private final S3Client s3Client = mock(S3Client.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final S3StorageService storageService = new S3StorageService(s3Client, mock(MediaMetadataService.class), objectMapper);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(storageService, "bucketName", "videos");
+        GeneratedVideoDetailsV1 indexed = new GeneratedVideoDetailsV1("https://videos/old.mp4", "reddit_story_v1/old/video.mp4", 30.0, 1080, 1920);
+        when(s3Client.getObjectAsBytes(any(Consumer.class)))
+            .thenReturn(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), objectMapper.writeValueAsBytes(indexed)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dropsAnIndexEntryWhoseVideoWasDeleted() {
+        // CopyObject answers a missing source with a plain 404, not a NoSuchKeyException
+        when(s3Client.copyObject(any(Consumer.class))).thenThrow(S3Exception.builder().statusCode(404).message("Not Found").build());
+
+        assertThat(storageService.copyRenderedVideo("abc", "reddit_story_v1", "content-1", "user-1")).isEmpty();
+
+        verify(s3Client).deleteObject(any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void keepsTheIndexEntryWhenTheCopyFailsForAnotherReason() {
+        when(s3Client.copyObject(any(Consumer.class))).thenThrow(S3Exception.builder().statusCode(403).message("Access Denied").build());
+
+        assertThatThrownBy(() -> storageService.copyRenderedVideo("abc", "reddit_story_v1", "content-1", "user-1"))
+            .isInstanceOf(S3Exception.class);
+
+        verify(s3Client, never()).deleteObject(any(Consumer.class));
+    }
+}
@@ -0,0 +1,41 @@
+package com.content_generation_service.generation.service.visual;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class DerivedOutputTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsTheOutputsWrittenNextToTheVideoOnly() throws Exception {
+        Path video = Files.writeString(dir.resolve("final-video-1.mp4"), "video");
+        for (DerivedOutput output : new DerivedOutput[] {
+                DerivedOutput.rendition(720), DerivedOutput.rendition(480), DerivedOutput.poster(1.0, 960), DerivedOutput.previewClip(0, 3, 8, 480)}) {
+            Files.writeString(output.pathFor(video), "derived");
+        }
+        // Another video, and a file that only looks like it belongs to this one
+        Files.writeString(dir.resolve("final-video-12-720p.mp4"), "other");
+        Files.writeString(dir.resolve("final-video-1-notes.txt"), "other");
+
+        assertThat(DerivedOutput.writtenFor(video))
+            .extracting(DerivedOutput.Written::kind, DerivedOutput.Written::suffix)
+            .containsExactly(
+                tuple(DerivedOutput.Kind.RENDITION, "-480p.mp4"),
+                tuple(DerivedOutput.Kind.RENDITION, "-720p.mp4"),
+                tuple(DerivedOutput.Kind.POSTER, "-poster.jpg"),
+                tuple(DerivedOutput.Kind.PREVIEW_CLIP, "-clip.mp4"));
+
+        DerivedOutput.deleteFor(video);
+        assertThat(DerivedOutput.writtenFor(video)).isEmpty();
+        assertThat(video).exists();
+        assertThat(dir.resolve("final-video-12-720p.mp4")).exists();
+    }
+}
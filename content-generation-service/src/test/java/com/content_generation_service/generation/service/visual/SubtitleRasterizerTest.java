@@ -0,0 +1,80 @@
+package com.content_generation_service.generation.service.visual;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.generation.service.assets.FileSystemAssetProvider;
+import com.content_generation_service.generation.service.assets.FontIndexService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubtitleRasterizerTest {
+
+    private static final List<WordTiming> WORDS = List.of(
+        new WordTiming("hello", 0.50, 0.90),
+        new WordTiming("there", 0.90, 1.30),
+        new WordTiming("friend.", 1.60, 2.00));
+
+    @TempDir
+    Path tempDir;
+
+    private final AppProperties appProperties = new AppProperties();
+
+    @Test
+    void drawsEachCaptionOnceAndListsItWithItsDuration() throws Exception {
+        Path frameList = rasterizer().rasterize(WORDS, "Arial", "#FFCC00", "bottom", 216, 384, tempDir);
+
+        assertThat(SubtitleRasterizer.isFrameList(frameList)).isTrue();
+        assertThat(Files.readAllLines(frameList)).containsExactly(
+            "ffconcat version 1.0",
+            "file blank.png", "duration 0.50",
+            "file caption-00000.png", "duration 0.40",
+            "file caption-00001.png", "duration 0.40",
+            "file blank.png", "duration 0.30",
+            "file caption-00002.png", "duration 0.40",
+            "file blank.png");
+
+        BufferedImage caption = ImageIO.read(frameList.resolveSibling("caption-00000.png").toFile());
+        assertThat(caption.getWidth()).isEqualTo(216);
+        assertThat(caption.getHeight()).isEqualTo(384);
+        assertThat(opaquePixels(caption, 0, 192)).as("nothing drawn in the top half").isZero();
+        assertThat(opaquePixels(caption, 192, 384)).as("bottom subtitles").isPositive();
+        assertThat(opaquePixels(ImageIO.read(frameList.resolveSibling("blank.png").toFile()), 0, 384)).isZero();
+    }
+
+    @Test
+    void lightsTheWordsOfAPhraseAsTheyAreSpoken() {
+        appProperties.getSubtitles().setGrouping("phrase");
+
+        // The phrase ends with the sentence; each state lasts until the next word starts
+        assertThat(rasterizer().captions(WORDS)).containsExactly(
+            new SubtitleRasterizer.Caption(50, 90, List.of("HELLO", "THERE", "FRIEND."), 1),
+            new SubtitleRasterizer.Caption(90, 160, List.of("HELLO", "THERE", "FRIEND."), 2),
+            new SubtitleRasterizer.Caption(160, 200, List.of("HELLO", "THERE", "FRIEND."), 3));
+    }
+
+    private SubtitleRasterizer rasterizer() {
+        // Not indexed: the font falls back to a logical one, as for fonts missing from the assets
+        FontIndexService fontIndex = new FontIndexService(appProperties, new FileSystemAssetProvider(tempDir.toString()));
+        return new SubtitleRasterizer(appProperties, new SubtitleService(appProperties), fontIndex);
+    }
+
+    private static int opaquePixels(BufferedImage image, int fromY, int toY) {
+        int count = 0;
+        for (int y = fromY; y < toY; y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
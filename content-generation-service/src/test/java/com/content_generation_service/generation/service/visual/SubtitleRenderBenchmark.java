@@ -0,0 +1,133 @@
+package com.content_generation_service.generation.service.visual;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.WordTiming;
+import com.content_generation_service.generation.service.assets.FileSystemAssetProvider;
+import com.content_generation_service.generation.service.assets.FontIndexService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures how fast subtitles are burned, against the number of events, for word and phrase grouping, with
+ * libass ('ass') and with frames drawn in Java and overlaid ('raster').
+ * <p>
+ * Not part of the regular test run (surefire only picks up *Test classes). Needs ffmpeg on the PATH:
+ * <pre>
+ * mvn test -pl content-generation-service -am -Dtest=SubtitleRenderBenchmark -Dsurefire.failIfNoSpecifiedTests=false
+ * </pre>
+ * Each case renders a minute of 1080x1920 video at 30 fps with the subtitles burned in, discarding the
+ * output, and prints the render fps next to the fps of the same video without subtitles. The time spent
+ * drawing the frames of the 'raster' cases is part of their fps, and also printed on its own.
+ */
+class SubtitleRenderBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int FPS = 30;
+    private static final double DURATION_SECONDS = 60.0;
+    private static final int[] WORD_COUNTS = {150, 600, 2400, 9600};
+    private static final String[] GROUPINGS = {"word", "phrase"};
+    private static final String[] RENDERERS = {"ass", "raster"};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void renderFpsAgainstEventCount() throws Exception {
+        assumeTrue(ffmpegAvailable(), "ffmpeg is not on the PATH");
+
+        double baselineFps = DURATION_SECONDS * FPS / render(null);
+        System.out.printf(Locale.US, "%-8s %-8s %8s %8s %10s %10s %10s%n", "renderer", "grouping", "words", "events", "fps", "vs. none", "raster ms");
+        System.out.printf(Locale.US, "%-8s %-8s %8d %8d %10.1f %9.0f%% %10s%n", "none", "-", 0, 0, baselineFps, 100.0, "-");
+        for (int words : WORD_COUNTS) {
+            for (String grouping : GROUPINGS) {
+                for (String renderer : RENDERERS) {
+                    AppProperties appProperties = new AppProperties();
+                    appProperties.getSubtitles().setGrouping(grouping);
+                    appProperties.getSubtitles().setRenderer(renderer);
+                    SubtitleService subtitleService = new SubtitleService(appProperties);
+                    SubtitleRasterizer rasterizer = new SubtitleRasterizer(appProperties, subtitleService,
+                        new FontIndexService(appProperties, new FileSystemAssetProvider(tempDir.toString())));
+
+                    long start = System.nanoTime();
+                    Path subtitles = rasterizer.isEnabled()
+                        ? rasterizer.rasterize(words(words), "DejaVu Sans", "#FFFFFF", "bottom", WIDTH, HEIGHT, tempDir)
+                        : subtitleService.createAssFile(words(words), "DejaVu Sans", "#FFFFFF", "bottom");
+                    double prepareSeconds = (System.nanoTime() - start) / 1e9;
+                    try {
+                        double fps = DURATION_SECONDS * FPS / (prepareSeconds + render(subtitles));
+                        System.out.printf(Locale.US, "%-8s %-8s %8d %8d %10.1f %9.0f%% %10s%n", renderer, grouping, words,
+                            eventCount(subtitles), fps, 100.0 * fps / baselineFps,
+                            rasterizer.isEnabled() ? String.format(Locale.US, "%.0f", prepareSeconds * 1000) : "-");
+                    } finally {
+                        FileSystemUtils.deleteRecursively(SubtitleRasterizer.isFrameList(subtitles) ? subtitles.getParent() : subtitles);
+                    }
+                }
+            }
+        }
+    }
+
+    // Evenly paced speech, with a sentence end every 12 words and a pause every 30
+    private static List<WordTiming> words(int count) {
+        List<WordTiming> words = new ArrayList<>(count);
+        double slot = DURATION_SECONDS / count;
+        for (int i = 0; i < count; i++) {
+            double start = i * slot + (i % 30 == 29 ? slot * 0.5 : 0.0);
+            words.add(new WordTiming(i % 12 == 11 ? "word" + i + "." : "word" + i, start, (i + 1) * slot - slot * 0.1));
+        }
+        return words;
+    }
+
+    // Dialogue events of a script, or frames of a frame list
+    private static long eventCount(Path subtitles) throws IOException {
+        String prefix = SubtitleRasterizer.isFrameList(subtitles) ? "file caption-" : "Dialogue:";
+        try (var lines = Files.lines(subtitles)) {
+            return lines.filter(line -> line.startsWith(prefix)).count();
+        }
+    }
+
+    /**
+     * @return The seconds FFmpeg takes to burn the subtitles, or to render the bare video if there are none.
+     */
+    private static double render(Path subtitles) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-hide_banner", "-nostats",
+            "-f", "lavfi", "-i", String.format(Locale.US, "color=c=gray:s=%dx%d:r=%d:d=%.0f", WIDTH, HEIGHT, FPS, DURATION_SECONDS)));
+        if (subtitles != null && SubtitleRasterizer.isFrameList(subtitles)) {
+            command.addAll(List.of("-f", "concat", "-safe", "0", "-i", subtitles.toAbsolutePath().toString(),
+                "-filter_complex", "[0:v][1:v]overlay=0:0:format=auto"));
+        } else if (subtitles != null) {
+            command.add("-vf");
+            command.add("ass=filename='" + subtitles.toAbsolutePath() + "'");
+        }
+        command.addAll(List.of("-f", "null", "-"));
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (!process.waitFor(10, TimeUnit.MINUTES) || process.exitValue() != 0) {
+            process.destroyForcibly();
+            throw new IOException("ffmpeg failed: " + String.join(" ", command));
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static boolean ffmpegAvailable() {
+        try {
+            Process process = new ProcessBuilder("ffmpeg", "-version").redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            return process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}
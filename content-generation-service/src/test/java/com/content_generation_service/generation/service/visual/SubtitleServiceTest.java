@@ -0,0 +1,67 @@
+package com.content_generation_service.generation.service.visual;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.model.WordTiming;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubtitleServiceTest {
+
+    private static final List<WordTiming> WORDS = List.of(
+        new WordTiming("so", 0.10, 0.30),
+        new WordTiming("this", 0.30, 0.55),
+        new WordTiming("happened", 0.60, 1.00),
+        new WordTiming("today.", 1.00, 1.40), // ends a sentence
+        new WordTiming("I", 1.50, 1.60),
+        new WordTiming("was", 1.60, 1.80),
+        new WordTiming("late", 2.80, 3.10)); // after a long pause
+
+    private final AppProperties appProperties = new AppProperties();
+
+    @Test
+    void writesOneEventPerWordByDefault() throws Exception {
+        List<String> events = events(new SubtitleService(appProperties).createAssFile(WORDS, "Oswald", "#FFCC00", "bottom"));
+
+        assertThat(events).hasSize(WORDS.size());
+        assertThat(events.get(0)).isEqualTo("Dialogue: 0,0:00:00.10,0:00:00.30,Default,,0,0,0,,{\\fad(20,20)}SO");
+        assertThat(events.get(6)).isEqualTo("Dialogue: 0,0:00:02.80,0:00:03.10,Default,,0,0,0,,{\\fad(20,20)}LATE");
+    }
+
+    @Test
+    void groupsWordsIntoKaraokePhrases() throws Exception {
+        appProperties.getSubtitles().setGrouping("phrase");
+        Path assFile = new SubtitleService(appProperties).createAssFile(WORDS, "Oswald", "#FFCC00", "bottom");
+        // Words not spoken yet show in the subtitle color, half transparent
+        assertThat(Files.readString(assFile)).contains("Style: Default,Oswald,21,&H00CCFF&,&H8000CCFF,");
+
+        // Phrases end at the end of a sentence and at a pause; each word lasts until the next one starts
+        assertThat(events(assFile)).containsExactly(
+            "Dialogue: 0,0:00:00.10,0:00:01.40,Default,,0,0,0,,{\\fad(20,20)}{\\k20}SO {\\k30}THIS {\\k40}HAPPENED {\\k40}TODAY.",
+            "Dialogue: 0,0:00:01.50,0:00:01.80,Default,,0,0,0,,{\\fad(20,20)}{\\k10}I {\\k20}WAS",
+            "Dialogue: 0,0:00:02.80,0:00:03.10,Default,,0,0,0,,{\\fad(20,20)}{\\k30}LATE");
+    }
+
+    @Test
+    void capsPhrasesAtTheMaximumWordCount() throws Exception {
+        appProperties.getSubtitles().setGrouping("phrase");
+        appProperties.getSubtitles().setPhraseMaxWords(2);
+
+        List<String> events = events(new SubtitleService(appProperties).createAssFile(WORDS, "Oswald", "#FFCC00", "bottom"));
+
+        assertThat(events).hasSize(4);
+        assertThat(events.get(1)).endsWith("{\\k40}HAPPENED {\\k40}TODAY.");
+    }
+
+    private static List<String> events(Path assFile) throws Exception {
+        try {
+            return Files.readAllLines(assFile).stream().filter(line -> line.startsWith("Dialogue:")).toList();
+        } finally {
+            Files.deleteIfExists(assFile);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.content_generation_service.generation.service.visual.distributed;
+
+import com.content_generation_service.generation.service.visual.CompositionPlan;
+import com.content_generation_service.generation.service.visual.DerivedOutput;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistributedRenderCoordinatorTest {
+
+    @Test
+    void cutsTheTimelineIntoWholeSecondWindowsCoveringItExactly() {
+        List<CompositionPlan.Window> windows = DistributedRenderCoordinator.windows(300.4, 20, 16);
+
+        assertThat(windows).hasSize(15);
+        assertThat(windows.get(0).startSeconds()).isZero();
+        for (int i = 1; i < windows.size(); i++) {
+            CompositionPlan.Window previous = windows.get(i - 1);
+            assertThat(windows.get(i).startSeconds()).isEqualTo(previous.startSeconds() + previous.durationSeconds());
+            assertThat(previous.durationSeconds()).isIn(20.0, 21.0);
+        }
+        CompositionPlan.Window last = windows.get(windows.size() - 1);
+        assertThat(last.startSeconds() + last.durationSeconds()).isEqualTo(300.4);
+
+        // Capped, and a video barely longer than a chunk is not split
+        assertThat(DistributedRenderCoordinator.windows(600, 20, 16)).hasSize(16);
+        assertThat(DistributedRenderCoordinator.windows(25, 20, 16)).hasSize(1);
+    }
+
+    @Test
+    void chunkCommandKeepsTheAbsoluteTimelineAndLeavesTheNarrationOut() {
+        Path background = Path.of("/assets/videos/bg.mp4");
+        Path narration = Path.of("/shared/narration.mp3");
+        Path image = Path.of("/shared/title.png");
+        CompositionPlan plan = new CompositionPlan(1080, 1920, background, 12.5, 600, List.of(background, narration, image), 1,
+            List.of("[bg][2:v]overlay=0:0:enable='between(t,40.00,45.00)'[ovr]"), "[ovr]", null, null, -1, 100);
+
+        List<String> command = plan.chunkCommand(new CompositionPlan.Window(2, 40, 20), Path.of("/shared/chunk.mp4"));
+
+        assertThat(command).containsSequence("-ss", "52.500", "-i", background.toString());
+        assertThat(command).containsSequence("-f", "lavfi", "-i").doesNotContain(narration.toString());
+        String graph = command.get(command.indexOf("-filter_complex") + 1);
+        assertThat(graph).contains("setpts=PTS-STARTPTS+40.000/TB").endsWith("[ovr]setpts=PTS-STARTPTS[chunk]");
+        assertThat(command).containsSequence("-map", "[chunk]", "-an").containsSequence("-t", "20.000");
+    }
+
+    @Test
+    void loopsTheMusicAndDucksItUnderTheNarrationInTheSamePass() {
+        Path background = Path.of("/assets/videos/bg.mp4");
+        Path narration = Path.of("/shared/narration.wav");
+        Path music = Path.of("/cache/music/lofi1.wav");
+        CompositionPlan plan = new CompositionPlan(1080, 1920, background, 12.5, 600, List.of(background, narration, music), 1,
+            List.of(), "[bg]", null, null, -1, 100, 2, 0.25);
+
+        List<String> whole = plan.command(Path.of("/shared/out.mp4"));
+        assertThat(whole).containsSequence("-stream_loop", "-1", "-i", music.toString()).doesNotContain("lavfi");
+        assertThat(whole.get(whole.indexOf("-filter_complex") + 1))
+            .contains("[2:a]aformat=sample_rates=44100:channel_layouts=stereo,volume=0.250[music]")
+            .contains("[music][voice_key]sidechaincompress=")
+            .endsWith("[narration][ducked]amix=inputs=2:duration=first:dropout_transition=0:normalize=0[a_mixed]");
+        assertThat(whole).containsSequence("-map", "[a_mixed]", "-c:v");
+
+        // Chunks carry no audio; the stitch mixes it once, with the music after the narration
+        assertThat(plan.chunkCommand(new CompositionPlan.Window(0, 0, 20), Path.of("/shared/chunk.mp4"))).doesNotContain(music.toString());
+        List<String> stitch = plan.stitchCommand(Path.of("/shared/chunks.txt"), Path.of("/shared/out.mp4"));
+        assertThat(stitch).containsSequence("-i", narration.toString(), "-stream_loop", "-1", "-i", music.toString());
+        assertThat(stitch.get(stitch.indexOf("-filter_complex") + 1)).startsWith("[1:a]").contains("[2:a]");
+        assertThat(stitch).containsSequence("-map", "0:v", "-map", "[a_mixed]", "-c:v", "copy");
+    }
+
+    @Test
+    void fastStartsTheMp4AndTeesHlsFragmentsForThePreview() {
+        Path background = Path.of("/assets/videos/bg.mp4");
+        CompositionPlan plan = new CompositionPlan(1080, 1920, background, 12.5, 600, List.of(background, Path.of("/shared/narration.wav")), 1,
+            List.of(), "[bg]", null, null, -1, 100);
+        Path output = Path.of("/shared/out.mp4");
+
+        assertThat(plan.command(output)).containsSequence("-movflags", "+faststart", output.toString());
+        assertThat(plan.stitchCommand(Path.of("/shared/chunks.txt"), output)).containsSequence("-movflags", "+faststart", output.toString());
+
+        List<String> preview = plan.command(output, Path.of("/tmp/preview"), 2.0);
+        assertThat(preview).containsSequence("-force_key_frames", "expr:gte(t,n_forced*2.000)").doesNotContain("-movflags");
+        assertThat(preview.get(preview.indexOf("tee") + 1))
+            .startsWith("[f=mp4:movflags=+faststart]/shared/out.mp4|[f=hls:hls_time=2.000:")
+            .contains("hls_segment_type=fmp4")
+            .endsWith("]/tmp/preview/index.m3u8");
+    }
+
+    @Test
+    void derivesRenditionsPosterAndClipFromTheSameDecode() {
+        Path background = Path.of("/assets/videos/bg.mp4");
+        Path narration = Path.of("/shared/narration.wav");
+        Path music = Path.of("/cache/music/lofi1.wav");
+        CompositionPlan plan = new CompositionPlan(1080, 1920, background, 12.5, 600, List.of(background, narration, music), 1,
+            List.of(), "[bg]", null, null, -1, 100, 2, 0.25, List.of(DerivedOutput.rendition(720), DerivedOutput.poster(1.0, 960),
+            DerivedOutput.previewClip(0.0, 3.0, 8.0, 480)));
+        Path output = Path.of("/shared/out.mp4");
+
+        List<String> whole = plan.command(output);
+        String graph = whole.get(whole.indexOf("-filter_complex") + 1);
+        assertThat(graph)
+            .contains("[bg]split=4[v_main][v_split0][v_split1][v_split2]")
+            .contains("[v_split0]scale=-2:720[v_derived0]")
+            .contains("[v_split1]trim=start=1.000,setpts=PTS-STARTPTS,scale=-2:960[v_derived1]")
+            .contains("[v_split2]trim=start=0.000:duration=3.000,setpts=PTS-STARTPTS,fps=8.0,scale=-2:480[v_derived2]")
+            // Only the rendition carries the mixed audio
+            .endsWith("[a_mixed]asplit=2[a_main][a_derived0]");
+        assertThat(whole).containsSequence("-map", "[v_main]", "-map", "[a_main]");
+        assertThat(whole).containsSequence("-map", "[v_derived0]", "-map", "[a_derived0]");
+        assertThat(whole).containsSequence("-map", "[v_derived1]", "-frames:v", "1");
+        assertThat(whole).contains("/shared/out-720p.mp4", "/shared/out-poster.jpg", "/shared/out-clip.mp4");
+        assertThat(whole.indexOf("/shared/out.mp4")).isLessThan(whole.indexOf("/shared/out-720p.mp4"));
+
+        // The stitch still copies the final video, and decodes the chunks once for the derived outputs
+        List<String> stitch = plan.stitchCommand(Path.of("/shared/chunks.txt"), output);
+        assertThat(stitch.get(stitch.indexOf("-filter_complex") + 1)).contains("[0:v]split=3[v_split0][v_split1][v_split2]");
+        assertThat(stitch).containsSequence("-map", "0:v", "-map", "[a_main]", "-c:v", "copy");
+        assertThat(stitch).contains("/shared/out-clip.mp4");
+    }
+}
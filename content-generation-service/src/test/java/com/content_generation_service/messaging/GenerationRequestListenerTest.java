@@ -1,6 +1,8 @@
 package com.content_generation_service.messaging;
 
 import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.job.JobRegistry;
+import com.content_generation_service.generation.job.RenderCostEstimator;
 import com.content_generation_service.generation.orchestrator.RedditStoryOrchestrator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
@@ -17,6 +19,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 
+import java.util.Date;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -46,6 +50,12 @@ class GenerationRequestListenerTest {
     private RedditStoryOrchestrator redditStoryOrchestrator;
     @Mock
     private GenerationResultDispatcher generationResultDispatcher; // Mock the dispatcher
+    @Mock
+    private JobRegistry jobRegistry;
+    @Mock
+    private ResultSpool resultSpool;
+    @Mock
+    private RenderCostEstimator renderCostEstimator;
 
     @InjectMocks // Creates an instance of the listener and injects the mocks into it
     private GenerationRequestListener listener;
@@ -72,7 +82,7 @@ class GenerationRequestListenerTest {
         when(redditStoryOrchestrator.generate(any(), any(), any()))
             .thenReturn(videoDetails);
 
-        listener.handleGenerationRequest(sampleRequest);
+        listener.handleGenerationRequest(sampleRequest, new Date());
 
         // ASSERT: Verify that the "success" path was taken.
         // For example, capture the argument and check for a COMPLETED status.
@@ -91,11 +101,20 @@ class GenerationRequestListenerTest {
             .when(templateValidator).validate(anyString(), any(), anyBoolean());
 
         // When the listener processes the request, it should catch the exception
-        listener.handleGenerationRequest(sampleRequest);
+        listener.handleGenerationRequest(sampleRequest, new Date());
 
         // This part will likely still fail, but the console output above will tell us why.
         ArgumentCaptor<GenerationResultV1> statusUpdateCaptor = ArgumentCaptor.forClass(GenerationResultV1.class);
         verify(generationResultDispatcher, times(1)).dispatch(statusUpdateCaptor.capture());
         assertThat(statusUpdateCaptor.getValue().getStatus()).isEqualTo(ContentStatus.FAILED);
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenCancelledWhileQueued_thenSkipsGenerationWithoutResult() {
+        when(jobRegistry.consumePendingCancellation(eq("content-id-123"), any())).thenReturn(true);
+
+        listener.handleGenerationRequest(sampleRequest, new Date());
+
+        verifyNoInteractions(redditStoryOrchestrator, generationResultDispatcher);
+    }
+}
@@ -0,0 +1,96 @@
+package com.content_generation_service.messaging;
+
+import com.content_generation_service.config.AppProperties;
+import com.content_generation_service.generation.service.storage.RenderDeduplicationService;
+import com.content_generation_service.generation.service.storage.StorageService;
+import com.content_generation_service.generation.service.visual.ProgressListener;
+import com.content_generation_service.messaging.ResultSpool.ResultSpooledException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import com.shortscreator.shared.dto.GenerationResultV1;
+import com.shortscreator.shared.enums.ContentStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ResultSpoolTest {
+
+    @TempDir
+    Path spoolDir;
+    @TempDir
+    Path sharedTemp;
+
+    private final AppProperties appProperties = new AppProperties();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final StorageService storageService = mock(StorageService.class);
+    private final GenerationResultDispatcher dispatcher = mock(GenerationResultDispatcher.class);
+    private final VideoStatusUpdateDispatcher statusDispatcher = mock(VideoStatusUpdateDispatcher.class);
+
+    @BeforeEach
+    void setUp() {
+        appProperties.getResultSpool().setPath(spoolDir.toString());
+        // Entries are due again right away
+        appProperties.getResultSpool().setRetryBaseSeconds(0);
+        when(statusDispatcher.forContent(anyString(), anyString())).thenReturn(mock(ProgressListener.class));
+    }
+
+    @Test
+    void keepsTheRenderedVideoAcrossARestartUntilItIsUploaded() throws Exception {
+        Path video = Files.writeString(sharedTemp.resolve("final.mp4"), "video");
+        when(storageService.storeFinalVideo(any(), eq("reddit_story_v1"), eq("content-1"), eq("user-1")))
+            .thenThrow(new RuntimeException("S3 unavailable"))
+            .thenAnswer(invocation -> {
+                assertThat((Path) invocation.getArgument(0)).hasContent("video");
+                return new GeneratedVideoDetailsV1("url", "key", 10, 1080, 1920);
+            });
+
+        assertThatThrownBy(() -> newSpool().storeOrSpool(video, "reddit_story_v1", "content-1", "user-1", "fp"))
+            .isInstanceOf(ResultSpooledException.class);
+        assertThat(video).doesNotExist();
+
+        // A new instance replays the journal, as after a restart
+        ResultSpool restarted = newSpool();
+        assertThat(restarted.pendingCount()).isEqualTo(1);
+        restarted.retryDue();
+
+        ArgumentCaptor<GenerationResultV1> result = ArgumentCaptor.forClass(GenerationResultV1.class);
+        verify(dispatcher).dispatch(result.capture());
+        assertThat(result.getValue().getStatus()).isEqualTo(ContentStatus.COMPLETED);
+        assertThat(result.getValue().getGeneratedVideoDetails().getS3Key()).isEqualTo("key");
+        assertThat(restarted.pendingCount()).isZero();
+        assertThat(newSpool().pendingCount()).isZero();
+    }
+
+    @Test
+    void redispatchesSpooledResultsUntilTheBrokerTakesThem() throws Exception {
+        GenerationResultV1 failed = new GenerationResultV1("content-1", ContentStatus.FAILED, null, "boom");
+        doThrow(new RuntimeException("broker down")).doNothing().when(dispatcher).dispatch(any());
+        ResultSpool spool = newSpool();
+        spool.spoolResult(failed, new RuntimeException("broker down"));
+
+        spool.retryDue();
+        assertThat(spool.pendingCount()).isEqualTo(1);
+        spool.retryDue();
+
+        verify(dispatcher, times(2)).dispatch(failed);
+        assertThat(spool.pendingCount()).isZero();
+    }
+
+    private ResultSpool newSpool() throws Exception {
+        ResultSpool spool = new ResultSpool(appProperties, objectMapper, storageService,
+            mock(RenderDeduplicationService.class), dispatcher, statusDispatcher);
+        spool.replayJournal();
+        return spool;
+    }
+}
@@ -0,0 +1,38 @@
+package com.content_generation_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonArrayStreamSplitterTest {
+
+    @Test
+    void emitsEachObjectAsSoonAsItIsComplete() {
+        JsonArrayStreamSplitter splitter = new JsonArrayStreamSplitter();
+
+        assertThat(splitter.feed("```json\n[ {\"text\": \"a, [b]\", ")).isEmpty();
+        assertThat(splitter.feed("\"query_list\": [\"x\"]}")).containsExactly("{\"text\": \"a, [b]\", \"query_list\": [\"x\"]}");
+        assertThat(splitter.isArrayClosed()).isFalse();
+
+        assertThat(splitter.feed(", {\"text\": \"say \\\"hi}\\\"\"}]\n```"))
+            .containsExactly("{\"text\": \"say \\\"hi}\\\"\"}");
+        assertThat(splitter.isArrayClosed()).isTrue();
+    }
+
+    @Test
+    void handlesCharacterByCharacterFragments() {
+        JsonArrayStreamSplitter splitter = new JsonArrayStreamSplitter();
+        String json = "[{\"a\":1},{\"b\":[1,2]}, 3]";
+
+        List<String> elements = new ArrayList<>();
+        for (char c : json.toCharArray()) {
+            elements.addAll(splitter.feed(String.valueOf(c)));
+        }
+
+        assertThat(elements).containsExactly("{\"a\":1}", "{\"b\":[1,2]}", "3");
+        assertThat(splitter.isArrayClosed()).isTrue();
+    }
+}
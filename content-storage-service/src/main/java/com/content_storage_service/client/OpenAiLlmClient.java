@@ -13,6 +13,7 @@ import com.content_storage_service.config.AppProperties;
 import com.content_storage_service.dto.OpenAiChatMessage;
 import com.content_storage_service.dto.OpenAiChatRequest;
 import com.content_storage_service.dto.OpenAiChatResponse;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
 
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
@@ -35,12 +36,12 @@ public class OpenAiLlmClient {
     private final int maxRetryAttempts;
     private final long minBackoffSeconds;
 
-    public OpenAiLlmClient(WebClient.Builder webClientBuilder, AppProperties appProperties,
+    public OpenAiLlmClient(ProviderHttpClientFactory httpClientFactory, AppProperties appProperties,
             @Value("${app.openai.llm.timeout-seconds}") long timeoutSeconds,
             @Value("${app.openai.llm.retry.max-attempts}") int maxRetryAttempts,
             @Value("${app.openai.llm.retry.min-backoff-seconds}") long minBackoffSeconds) {
         this.appProperties = appProperties;
-        this.webClient = webClientBuilder
+        this.webClient = httpClientFactory.builderFor(Providers.OPENAI_LLM)
             .baseUrl(appProperties.getOpenai().getLlm().getUrl())
             .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
             .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + appProperties.getOpenai().getApiKey())
@@ -3,6 +3,7 @@ package com.content_storage_service.client;
 import com.content_storage_service.config.AppProperties;
 import com.content_storage_service.exception.InsufficientFundsClientException;
 import com.content_storage_service.exception.PaymentServiceInternalErrorException;
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
 import com.shortscreator.shared.dto.DebitRequestV1;
 import com.shortscreator.shared.dto.ErrorResponse;
 import com.shortscreator.shared.dto.RefundRequestV1;
@@ -18,8 +19,8 @@ public class PaymentServiceClient {
 
     private final WebClient webClient;
 
-    public PaymentServiceClient(WebClient.Builder webClientBuilder, AppProperties appProperties) {
-        this.webClient = webClientBuilder.baseUrl(appProperties.getServices().getPaymentService().getUrl()).build();
+    public PaymentServiceClient(ProviderHttpClientFactory httpClientFactory, AppProperties appProperties) {
+        this.webClient = httpClientFactory.builderFor(Providers.PAYMENT_SERVICE).baseUrl(appProperties.getServices().getPaymentService().getUrl()).build();
     }
 
     public Mono<Void> debitBalance(DebitRequestV1 debitRequest) {
@@ -0,0 +1,15 @@
+package com.content_storage_service.client;
+
+/**
+ * Names of the external providers this service calls. They are the keys of 'app.rate-limits'
+ * and 'app.http-pools', and name the shared limiter and connection pool of each provider.
+ */
+public final class Providers {
+
+    public static final String OPENAI_LLM = "openai-llm";
+    // Internal payment service; pooled but not rate limited
+    public static final String PAYMENT_SERVICE = "payment-service";
+
+    private Providers() {
+    }
+}
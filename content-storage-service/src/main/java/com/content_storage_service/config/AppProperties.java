@@ -1,6 +1,12 @@
 package com.content_storage_service.config;
 
+import com.shortscreator.shared.client.http.HttpPoolProperties;
+import com.shortscreator.shared.client.ratelimit.RateLimitProperties;
 import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
@@ -37,6 +43,8 @@ public class AppProperties {
         private String generationRequestPrefix;
         @NotEmpty
         private String generationResult;
+        @NotEmpty
+        private String generationCancel;
     }
 
     // Properties for Services configuration
@@ -75,4 +83,10 @@ public class AppProperties {
         private Double temperature;
         private Integer maxTokens;
     }
-}
\ No newline at end of file
+
+    // Outbound limits per external provider, keyed by provider name (e.g. "openai-llm")
+    private Map<String, RateLimitProperties> rateLimits = new HashMap<>();
+
+    // Outbound connection pools per provider, keyed by the same provider names as the rate limits
+    private Map<String, HttpPoolProperties> httpPools = new HashMap<>();
+}
@@ -0,0 +1,23 @@
+package com.content_storage_service.config;
+
+import com.shortscreator.shared.client.http.ProviderHttpClientFactory;
+import com.shortscreator.shared.client.ratelimit.RateLimiterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+@Configuration
+public class ProviderClientConfig {
+
+    @Bean
+    public RateLimiterRegistry rateLimiterRegistry(AppProperties appProperties) {
+        // One limiter per provider for the whole instance, from this service's 'app.rate-limits'
+        return new RateLimiterRegistry(appProperties.getRateLimits());
+    }
+
+    @Bean
+    public ProviderHttpClientFactory providerHttpClientFactory(WebClient.Builder webClientBuilder, AppProperties appProperties,
+                                                               RateLimiterRegistry rateLimiterRegistry) {
+        return new ProviderHttpClientFactory(webClientBuilder, appProperties.getHttpPools(), rateLimiterRegistry);
+    }
+}
@@ -17,12 +17,6 @@ import reactor.netty.resources.ConnectionProvider;
 @Configuration
 public class WebClientConfig {
 
-    private final AppProperties appProperties;
-
-    public WebClientConfig(AppProperties appProperties) {
-        this.appProperties = appProperties;
-    }
-
     @Bean
     public HttpClient httpClient() {
         // Configure the connection provider for the connection pool
@@ -49,11 +43,4 @@ public class WebClientConfig {
         return WebClient.builder()
             .clientConnector(new ReactorClientHttpConnector(httpClient));
     }
-
-    @Bean
-    public WebClient paymentServiceWebClient() {
-        return WebClient.builder()
-                .baseUrl(appProperties.getServices().getPaymentService().getUrl())
-                .build();
-    }
 }
\ No newline at end of file
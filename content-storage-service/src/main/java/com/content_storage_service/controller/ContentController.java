@@ -63,6 +63,13 @@ public class ContentController {
         return contentService.submitForGeneration(contentId, userId);
     }
 
+    // Endpoint for a user to cancel a generation in progress
+    @PostMapping("/{contentId}/cancel")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<Content> cancelContentGeneration(@PathVariable String contentId, @RequestHeader("X-User-ID") String userId) {
+        return contentService.cancelGeneration(contentId, userId);
+    }
+
     // New endpoint to delete content
     @DeleteMapping("/{contentId}") // Path variable for the content ID
     @ResponseStatus(HttpStatus.NO_CONTENT) // 204 No Content is standard for successful DELETE
@@ -8,6 +8,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Instant;
 
@@ -81,6 +82,27 @@ public class GlobalExceptionHandler {
 
         return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
     }
+
+    /**
+     * Keeps the status chosen by the code that threw (e.g. 404 for content that is missing or
+     * belongs to another user) instead of letting the catch-all turn it into a 500.
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorResponse> handleResponseStatus(ResponseStatusException ex, ServerHttpRequest request) {
+        String path = request.getURI().getPath();
+        log.warn("Request Rejected ({} {}): {} {}", request.getMethod(), path, ex.getStatusCode().value(), ex.getReason());
+
+        HttpStatus status = HttpStatus.valueOf(ex.getStatusCode().value());
+        ErrorResponse errorResponse = new ErrorResponse(
+            Instant.now(),
+            status.value(),
+            status.name(),
+            ex.getReason(),
+            path
+        );
+
+        return new ResponseEntity<>(errorResponse, status);
+    }
     
     /**
      * This is the "catch-all" handler.
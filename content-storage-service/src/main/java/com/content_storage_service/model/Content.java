@@ -30,7 +30,7 @@ public class Content { // No need for abstract here, unless you'll have multiple
 
     private ContentType contentType; // Enum for content type (e.g., Reddit story, etc)
 
-    private ContentStatus status; // Enum for content status (DRAFT, PROCESSING, COMPLETED, FAILED)
+    private ContentStatus status; // Enum for content status (DRAFT, PROCESSING, COMPLETED, FAILED, CANCELLED)
 
     @CreatedDate // Spring Data MongoDB automatically sets this on creation
     private Instant createdAt;
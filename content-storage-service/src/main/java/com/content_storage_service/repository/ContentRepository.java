@@ -9,7 +9,7 @@ import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import com.content_storage_service.model.Content;
 import com.shortscreator.shared.enums.ContentStatus;
 
-public interface ContentRepository extends ReactiveMongoRepository<Content, String> {
+public interface ContentRepository extends ReactiveMongoRepository<Content, String>, ContentRepositoryCustom {
 
     // Custom query to find content by userId and status (get drafts of a user)
     Flux<Content> findByUserIdAndStatus(String userId, ContentStatus status);
@@ -0,0 +1,22 @@
+package com.content_storage_service.repository;
+
+import com.content_storage_service.model.Content;
+import com.shortscreator.shared.enums.ContentStatus;
+
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+public interface ContentRepositoryCustom {
+
+    /**
+     * Atomically moves a content item from one status to another, in a single conditional update,
+     * so that concurrent transitions (e.g. a cancellation racing the generation result) can't both win.
+     * @param contentId The ID of the content.
+     * @param userId The owner the content must belong to, or null to skip the ownership check.
+     * @param from The status the content must still be in.
+     * @param to The new status.
+     * @param changes Further fields to set together with the status.
+     * @return A Mono emitting the updated Content, or empty if no content matched (missing, foreign, or no longer in 'from').
+     */
+    Mono<Content> transitionStatus(String contentId, String userId, ContentStatus from, ContentStatus to, Update changes);
+}
@@ -0,0 +1,31 @@
+package com.content_storage_service.repository;
+
+import com.content_storage_service.model.Content;
+import com.shortscreator.shared.enums.ContentStatus;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+@RequiredArgsConstructor
+public class ContentRepositoryCustomImpl implements ContentRepositoryCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Override
+    public Mono<Content> transitionStatus(String contentId, String userId, ContentStatus from, ContentStatus to, Update changes) {
+        Criteria criteria = Criteria.where("_id").is(contentId).and("status").is(from);
+        if (userId != null) {
+            criteria = criteria.and("userId").is(userId);
+        }
+        // findAndModify bypasses auditing, so the modification date is set here
+        Update update = changes.set("status", to).set("lastModifiedAt", Instant.now());
+        return mongoTemplate.findAndModify(Query.query(criteria), update, FindAndModifyOptions.options().returnNew(true), Content.class);
+    }
+}
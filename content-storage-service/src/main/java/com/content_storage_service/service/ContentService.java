@@ -12,12 +12,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.shortscreator.shared.dto.ChargeReasonV1;
 import com.shortscreator.shared.dto.ContentPriceV1;
 import com.shortscreator.shared.dto.DebitRequestV1;
+import com.shortscreator.shared.dto.GenerationCancelV1;
 import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
 import com.shortscreator.shared.dto.GenerationRequestV1;
 import com.shortscreator.shared.dto.GenerationResultV1;
 import com.shortscreator.shared.dto.OutputAssetsV1;
 
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -25,6 +27,7 @@ import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -91,9 +94,11 @@ public class ContentService {
         return contentRepository.findByIdAndUserId(contentId, userId)
                 .flatMap(existingContent -> {
                     log.debug("Found draft [{}] for update. Current status: {}", contentId, existingContent.getStatus());
-                    if (existingContent.getStatus() != ContentStatus.DRAFT && existingContent.getStatus() != ContentStatus.FAILED) {
-                        log.warn("User [{}] attempted to update content [{}] whose state isnt DRAFT nor FAILED (status: {})", userId, contentId, existingContent.getStatus());
-                        return Mono.error(new IllegalStateException("Cannot update a content item whose state isnt DRAFT nor FAILED. Current status: " + existingContent.getStatus()));
+                    // Completed content can be edited and generated again; the generation service reuses the unchanged stages
+                    if (existingContent.getStatus() != ContentStatus.DRAFT && existingContent.getStatus() != ContentStatus.FAILED
+                            && existingContent.getStatus() != ContentStatus.CANCELLED && existingContent.getStatus() != ContentStatus.COMPLETED) {
+                        log.warn("User [{}] attempted to update content [{}] whose state isnt DRAFT, FAILED, CANCELLED nor COMPLETED (status: {})", userId, contentId, existingContent.getStatus());
+                        return Mono.error(new IllegalStateException("Cannot update a content item whose state isnt DRAFT, FAILED, CANCELLED nor COMPLETED. Current status: " + existingContent.getStatus()));
                     }
 
                     existingContent.setStatus(ContentStatus.DRAFT); // Ensure status is DRAFT for updates
@@ -220,55 +225,95 @@ public class ContentService {
                     );
                     String routingKey = appProperties.getRabbitmq().getRoutingKeys().getGenerationRequestPrefix() + processingContent.getTemplateId();
                     String exchangeName = appProperties.getRabbitmq().getExchange();
-                    rabbitTemplate.convertAndSend(exchangeName, routingKey, request);
+                    // The publish time lets generation nodes tell a cancellation of this request apart from one of an earlier submission
+                    rabbitTemplate.convertAndSend(exchangeName, routingKey, request, message -> {
+                        message.getMessageProperties().setTimestamp(new Date());
+                        return message;
+                    });
                     log.info("Sent generation request for contentId [{}] with routingKey: {}", processingContent.getId(), routingKey);
                 });
         });
     }
 
+    /**
+     * Cancels the generation of a content item that is still PROCESSING.
+     * The content is marked CANCELLED and refunded right away, and a cancellation event is broadcast
+     * so that the generation node working on it stops and releases its resources.
+     * The status change is a single conditional update, so a generation result arriving at the same time
+     * either lands before it (and the cancellation is rejected) or is ignored after it; never both.
+     * @param contentId The ID of the content to cancel.
+     * @param userId The ID of the user (for security/ownership check).
+     * @return A Mono emitting the cancelled Content object.
+     */
+    public Mono<Content> cancelGeneration(String contentId, String userId) {
+        log.info("User [{}] attempting to cancel generation of content [{}]", userId, contentId);
+        return contentRepository.transitionStatus(contentId, userId, ContentStatus.PROCESSING, ContentStatus.CANCELLED, new Update())
+                // Only the request that actually cancelled the content broadcasts and refunds
+                .doOnNext(cancelled -> {
+                    String exchangeName = appProperties.getRabbitmq().getExchange();
+                    String routingKey = appProperties.getRabbitmq().getRoutingKeys().getGenerationCancel();
+                    rabbitTemplate.convertAndSend(exchangeName, routingKey, new GenerationCancelV1(contentId, userId));
+                    log.info("Sent cancellation for contentId [{}] with routingKey: {}", contentId, routingKey);
+
+                    paymentServiceClient.requestRefund(contentId)
+                            .doOnError(e -> log.error("CRITICAL: Refund request failed for cancelled contentId {}: {}", contentId, e.getMessage()))
+                            .doOnSuccess(s -> log.info("Refund request successfully sent for cancelled contentId {}", contentId))
+                            .subscribe(); // Fire-and-forget the refund call
+                })
+                .switchIfEmpty(Mono.defer(() -> contentRepository.findByIdAndUserId(contentId, userId)
+                        .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Content not found or does not belong to user")))
+                        .flatMap(content -> {
+                            log.warn("Cancellation failed: Content [{}] is not PROCESSING (status: {})", contentId, content.getStatus());
+                            return Mono.error(new IllegalStateException("Only content being generated can be cancelled. Current status: " + content.getStatus()));
+                        })));
+    }
+
     /**
      * Processes the result of a content generation request.
-     * This updates the content status based on the GenerationResultV1 received.
+     * This updates the content status based on the GenerationResultV1 received. Only content still PROCESSING
+     * is updated, in a single conditional update: results for content that was cancelled, edited or already
+     * finished are ignored, and a failed generation is refunded only when its result was applied.
      * @param generationResult The result of the content generation.
      * @return A Mono emitting the updated Content object.
      */
     public Mono<Content> processGenerationResult(GenerationResultV1 generationResult) {
-        log.info("Processing status update for content [{}]. New status: {}", generationResult.getContentId(), generationResult.getStatus());
-        return contentRepository.findById(generationResult.getContentId())
-            .switchIfEmpty(Mono.error(new IllegalArgumentException("Content not found for status update")))
-            .flatMap(content -> {
-                ContentStatus newStatus = generationResult.getStatus();
+        String contentId = generationResult.getContentId();
+        ContentStatus newStatus = generationResult.getStatus();
+        log.info("Processing status update for content [{}]. New status: {}", contentId, newStatus);
 
-                // Idempotency check: Don't re-process a terminal state.
-                if (content.getStatus() == ContentStatus.COMPLETED || content.getStatus() == ContentStatus.FAILED) {
-                    log.warn("Content {} is already in a terminal state ({}). Ignoring update.", content.getId(), content.getStatus());
-                    return Mono.just(content);
-                }
+        Update changes = new Update();
+        if (newStatus == ContentStatus.COMPLETED) {
+            GeneratedVideoDetailsV1 details = generationResult.getGeneratedVideoDetails();
+            changes.set("outputAssets", new OutputAssetsV1(
+                details.getS3Url(),
+                details.getS3Key(),
+                details.getDurationSeconds(), // Use the real duration
+                details.getPosterUrl(),
+                details.getPreviewClipUrl(),
+                details.getRenditions()
+            ));
+        } else if (newStatus == ContentStatus.FAILED) {
+            changes.set("errorMessage", generationResult.getErrorMessage());
+        }
 
-                content.setStatus(newStatus);
+        return contentRepository.transitionStatus(contentId, null, ContentStatus.PROCESSING, newStatus, changes)
+            .doOnNext(content -> {
                 if (newStatus == ContentStatus.COMPLETED) {
-                    log.info("Content [{}] has been successfully COMPLETED.", content.getId());
-                    GeneratedVideoDetailsV1 details = generationResult.getGeneratedVideoDetails();
-                    OutputAssetsV1 outputAssets = new OutputAssetsV1(
-                        details.getS3Url(),
-                        details.getS3Key(),
-                        details.getDurationSeconds() // Use the real duration
-                    );
-                    content.setOutputAssets(outputAssets);
+                    log.info("Content [{}] has been successfully COMPLETED.", contentId);
                 } else if (newStatus == ContentStatus.FAILED) {
-                    log.error("Content [{}] has FAILED processing. Reason: {}", content.getId(), generationResult.getErrorMessage());
-                    content.setErrorMessage(generationResult.getErrorMessage());
+                    log.error("Content [{}] has FAILED processing. Reason: {}", contentId, generationResult.getErrorMessage());
                     // Refund the user if the content generation failed
-                    paymentServiceClient.requestRefund(content.getId())
-                            .doOnError(e -> log.error("CRITICAL: Refund request failed for contentId {}: {}", content.getId(), e.getMessage()))
-                            .doOnSuccess(s -> log.info("Refund request successfully sent for contentId {}", content.getId()))
+                    paymentServiceClient.requestRefund(contentId)
+                            .doOnError(e -> log.error("CRITICAL: Refund request failed for contentId {}: {}", contentId, e.getMessage()))
+                            .doOnSuccess(s -> log.info("Refund request successfully sent for contentId {}", contentId))
                             .subscribe(); // Fire-and-forget the refund call
                 }
-                
-                return contentRepository.save(content)
-                .doOnSuccess(saved -> log.info("Successfully updated status for content [{}] to {}", saved.getId(), saved.getStatus()));
-
-            });
+                log.info("Successfully updated status for content [{}] to {}", contentId, content.getStatus());
+            })
+            // Idempotency: content no longer PROCESSING (finished, cancelled or edited since) keeps its state
+            .switchIfEmpty(Mono.defer(() -> contentRepository.findById(contentId)
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("Content not found for status update")))
+                .doOnNext(content -> log.warn("Content {} is no longer PROCESSING ({}). Ignoring update.", contentId, content.getStatus()))));
     }
 
     /**
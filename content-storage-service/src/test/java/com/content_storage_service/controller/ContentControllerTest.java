@@ -12,10 +12,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 import java.time.Duration;
 
@@ -108,4 +110,63 @@ class ContentControllerTest {
             .jsonPath("$.id").isEqualTo(contentId)
             .jsonPath("$.status").isEqualTo("PROCESSING");
     }
-}
\ No newline at end of file
+
+    @Test
+    @WithMockUser(username = "test-user")
+    void cancelContentGeneration_whenProcessing_returns202Accepted() {
+        // ARRANGE
+        String contentId = "content-being-generated";
+        Content mockResponse = new Content();
+        mockResponse.setId(contentId);
+        mockResponse.setUserId("test-user");
+        mockResponse.setStatus(ContentStatus.CANCELLED);
+        when(contentService.cancelGeneration(contentId, "test-user")).thenReturn(Mono.just(mockResponse));
+
+        // ACT & ASSERT
+        webTestClient
+            .mutateWith(csrf())
+            .post().uri("/api/v1/content/{contentId}/cancel", contentId)
+            .header("X-User-ID", "test-user")
+            .exchange()
+            .expectStatus().isAccepted()
+            .expectBody()
+            .jsonPath("$.id").isEqualTo(contentId)
+            .jsonPath("$.status").isEqualTo("CANCELLED");
+    }
+
+    @Test
+    @WithMockUser(username = "test-user")
+    void cancelContentGeneration_whenNotProcessing_returns409Conflict() {
+        // ARRANGE
+        String contentId = "finished-content";
+        when(contentService.cancelGeneration(contentId, "test-user"))
+            .thenReturn(Mono.error(new IllegalStateException("Only content being generated can be cancelled. Current status: COMPLETED")));
+
+        // ACT & ASSERT
+        webTestClient
+            .mutateWith(csrf())
+            .post().uri("/api/v1/content/{contentId}/cancel", contentId)
+            .header("X-User-ID", "test-user")
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+            .expectBody()
+            .jsonPath("$.errorCode").isEqualTo("RESOURCE_STATE_CONFLICT");
+    }
+
+    @Test
+    @WithMockUser(username = "test-user")
+    void cancelContentGeneration_whenMissingOrForeign_returns404NotFound() {
+        // ARRANGE
+        String contentId = "someone-elses-content";
+        when(contentService.cancelGeneration(contentId, "test-user"))
+            .thenReturn(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Content not found or does not belong to user")));
+
+        // ACT & ASSERT
+        webTestClient
+            .mutateWith(csrf())
+            .post().uri("/api/v1/content/{contentId}/cancel", contentId)
+            .header("X-User-ID", "test-user")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+}
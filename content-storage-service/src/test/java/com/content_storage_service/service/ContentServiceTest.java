@@ -1,15 +1,19 @@
 package com.content_storage_service.service;
 
+import com.content_storage_service.client.PaymentServiceClient;
 import com.content_storage_service.config.AppProperties;
 import com.content_storage_service.model.Content;
 import com.content_storage_service.repository.ContentRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shortscreator.shared.dto.GeneratedVideoDetailsV1;
+import com.shortscreator.shared.dto.GenerationCancelV1;
 import com.shortscreator.shared.dto.GenerationRequestV1;
 import com.shortscreator.shared.dto.GenerationResultV1;
 import com.shortscreator.shared.enums.ContentStatus;
 import com.shortscreator.shared.validation.TemplateValidator;
 import com.shortscreator.shared.validation.TemplateValidator.ValidationException;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -20,6 +24,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -27,6 +34,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,6 +48,8 @@ class ContentServiceTest {
     private RabbitTemplate rabbitTemplate;
     @Mock
     private AppProperties appProperties; // This also needs to be mocked
+    @Mock
+    private PaymentServiceClient paymentServiceClient;
 
     @InjectMocks // Creates an instance of ContentService and injects the mocks
     private ContentService contentService;
@@ -118,6 +128,27 @@ class ContentServiceTest {
                 .verifyComplete();
         }
 
+        @Test
+        void whenContentIsCompleted_reopensItAsDraft() {
+            // ARRANGE
+            sampleDraft.setStatus(ContentStatus.COMPLETED);
+            JsonNode updatedParams = objectMapper.createObjectNode().put("title", "An Edited Title");
+            doNothing().when(templateValidator).validate(anyString(), any(), eq(false));
+            when(contentRepository.findByIdAndUserId(anyString(), anyString())).thenReturn(Mono.just(sampleDraft));
+            when(contentRepository.save(any(Content.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+            // ACT
+            Mono<Content> resultMono = contentService.updateDraft("content-id-123", "user-id-abc", updatedParams);
+
+            // ASSERT
+            StepVerifier.create(resultMono)
+                .assertNext(content -> {
+                    assertThat(content.getStatus()).isEqualTo(ContentStatus.DRAFT);
+                    assertThat(content.getTemplateParams().get("title").asText()).isEqualTo("An Edited Title");
+                })
+                .verifyComplete();
+        }
+
         @Test
         void whenUpdatingNonDraftContent_returnsError() {
             // ARRANGE
@@ -187,19 +218,91 @@ class ContentServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("cancelGeneration Tests")
+    class CancelGenerationTests {
+
+        @Test
+        void whenContentIsProcessing_cancelsRefundsAndBroadcasts() {
+            // ARRANGE
+            AppProperties.RabbitMQ rabbitMQMock = mock(AppProperties.RabbitMQ.class);
+            AppProperties.RoutingKeys routingKeysMock = mock(AppProperties.RoutingKeys.class);
+            when(appProperties.getRabbitmq()).thenReturn(rabbitMQMock);
+            when(rabbitMQMock.getExchange()).thenReturn("test-exchange");
+            when(rabbitMQMock.getRoutingKeys()).thenReturn(routingKeysMock);
+            when(routingKeysMock.getGenerationCancel()).thenReturn("generation.cancel");
+
+            sampleDraft.setStatus(ContentStatus.CANCELLED); // What the conditional update returns
+            when(contentRepository.transitionStatus(eq("content-id-123"), eq("user-id-abc"), eq(ContentStatus.PROCESSING),
+                    eq(ContentStatus.CANCELLED), any(Update.class))).thenReturn(Mono.just(sampleDraft));
+            when(paymentServiceClient.requestRefund("content-id-123")).thenReturn(Mono.empty());
+
+            // ACT
+            Mono<Content> resultMono = contentService.cancelGeneration("content-id-123", "user-id-abc");
+
+            // ASSERT
+            StepVerifier.create(resultMono)
+                .assertNext(content -> assertThat(content.getStatus()).isEqualTo(ContentStatus.CANCELLED))
+                .verifyComplete();
+            ArgumentCaptor<GenerationCancelV1> cancelCaptor = ArgumentCaptor.forClass(GenerationCancelV1.class);
+            verify(rabbitTemplate).convertAndSend(eq("test-exchange"), eq("generation.cancel"), cancelCaptor.capture());
+            assertThat(cancelCaptor.getValue().contentId()).isEqualTo("content-id-123");
+            verify(paymentServiceClient).requestRefund("content-id-123");
+        }
+
+        @Test
+        void whenContentIsNotProcessing_rejectsWithoutRefundOrBroadcast() {
+            // ARRANGE: the conditional update matches nothing, the content is still there as a DRAFT
+            when(contentRepository.transitionStatus(anyString(), anyString(), any(), any(), any())).thenReturn(Mono.empty());
+            when(contentRepository.findByIdAndUserId("content-id-123", "user-id-abc")).thenReturn(Mono.just(sampleDraft));
+
+            // ACT
+            Mono<Content> resultMono = contentService.cancelGeneration("content-id-123", "user-id-abc");
+
+            // ASSERT
+            StepVerifier.create(resultMono)
+                .expectError(IllegalStateException.class)
+                .verify();
+            verifyNoInteractions(rabbitTemplate, paymentServiceClient);
+        }
+
+        @Test
+        void whenContentIsMissingOrForeign_returnsNotFound() {
+            // ARRANGE
+            when(contentRepository.transitionStatus(anyString(), anyString(), any(), any(), any())).thenReturn(Mono.empty());
+            when(contentRepository.findByIdAndUserId("content-id-123", "other-user")).thenReturn(Mono.empty());
+
+            // ACT
+            Mono<Content> resultMono = contentService.cancelGeneration("content-id-123", "other-user");
+
+            // ASSERT
+            StepVerifier.create(resultMono)
+                .expectErrorMatches(throwable -> throwable instanceof ResponseStatusException e
+                    && e.getStatusCode() == HttpStatus.NOT_FOUND)
+                .verify();
+            verifyNoInteractions(rabbitTemplate, paymentServiceClient);
+        }
+    }
+
     @Nested
     @DisplayName("processStatusUpdate Tests")
     class ProcessStatusUpdateTests {
         @Test
         void whenStatusIsCompleted_updatesContentCorrectly() {
             // ARRANGE
-            GenerationResultV1 generationResult = new GenerationResultV1("contend-id-123", ContentStatus.COMPLETED, null, null);
-            when(contentRepository.findById(anyString())).thenReturn(Mono.just(sampleDraft));
-            when(contentRepository.save(any(Content.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
-            
+            GeneratedVideoDetailsV1 details = new GeneratedVideoDetailsV1("https://cdn/video.mp4", "videos/video.mp4", 42.0, 1080, 1920);
+            GenerationResultV1 generationResult = new GenerationResultV1("content-id-123", ContentStatus.COMPLETED, details, null);
+            ArgumentCaptor<Update> updateCaptor = ArgumentCaptor.forClass(Update.class);
+            when(contentRepository.transitionStatus(eq("content-id-123"), isNull(), eq(ContentStatus.PROCESSING),
+                    eq(ContentStatus.COMPLETED), updateCaptor.capture()))
+                .thenAnswer(inv -> {
+                    sampleDraft.setStatus(ContentStatus.COMPLETED);
+                    return Mono.just(sampleDraft);
+                });
+
             // ACT
             Mono<Content> resultMono = contentService.processGenerationResult(generationResult);
-            
+
             // ASSERT
             StepVerifier.create(resultMono)
                 .assertNext(content -> {
@@ -207,14 +310,41 @@ class ContentServiceTest {
                     assertThat(content.getErrorMessage()).isNull();
                 })
                 .verifyComplete();
+            assertThat(updateCaptor.getValue().getUpdateObject().get("$set", Document.class))
+                .containsKey("outputAssets");
+            verifyNoInteractions(paymentServiceClient);
         }
 
         @Test
-        void whenContentIsInTerminalState_ignoresUpdate() {
+        void whenStatusIsFailed_refundsOnlyTheAppliedResult() {
             // ARRANGE
-            sampleDraft.setStatus(ContentStatus.COMPLETED); // Set a terminal state
-            GenerationResultV1 generationResult = new GenerationResultV1("contend-id-123", ContentStatus.COMPLETED, null, null);
-            when(contentRepository.findById(anyString())).thenReturn(Mono.just(sampleDraft));
+            GenerationResultV1 generationResult = new GenerationResultV1("content-id-123", ContentStatus.FAILED, null, "ffmpeg exited with 1");
+            when(contentRepository.transitionStatus(eq("content-id-123"), isNull(), eq(ContentStatus.PROCESSING),
+                    eq(ContentStatus.FAILED), any(Update.class)))
+                .thenAnswer(inv -> {
+                    sampleDraft.setStatus(ContentStatus.FAILED);
+                    sampleDraft.setErrorMessage("ffmpeg exited with 1");
+                    return Mono.just(sampleDraft);
+                });
+            when(paymentServiceClient.requestRefund("content-id-123")).thenReturn(Mono.empty());
+
+            // ACT
+            Mono<Content> resultMono = contentService.processGenerationResult(generationResult);
+
+            // ASSERT
+            StepVerifier.create(resultMono)
+                .assertNext(content -> assertThat(content.getStatus()).isEqualTo(ContentStatus.FAILED))
+                .verifyComplete();
+            verify(paymentServiceClient).requestRefund("content-id-123");
+        }
+
+        @Test
+        void whenContentIsInTerminalState_ignoresUpdate() {
+            // ARRANGE: a cancellation won the race, so the conditional update matches nothing
+            sampleDraft.setStatus(ContentStatus.CANCELLED);
+            GenerationResultV1 generationResult = new GenerationResultV1("content-id-123", ContentStatus.FAILED, null, "interrupted");
+            when(contentRepository.transitionStatus(anyString(), isNull(), any(), any(), any())).thenReturn(Mono.empty());
+            when(contentRepository.findById("content-id-123")).thenReturn(Mono.just(sampleDraft));
 
             // ACT
             Mono<Content> resultMono = contentService.processGenerationResult(generationResult);
@@ -223,12 +353,13 @@ class ContentServiceTest {
             StepVerifier.create(resultMono)
                 .assertNext(content -> {
                     // Verify that the status DID NOT change
-                    assertThat(content.getStatus()).isEqualTo(ContentStatus.COMPLETED);
+                    assertThat(content.getStatus()).isEqualTo(ContentStatus.CANCELLED);
                 })
                 .verifyComplete();
-            
-            // Verify that save was NEVER called
+
+            // Verify that nothing was saved and the cancellation's refund is not repeated
             verify(contentRepository, never()).save(any(Content.class));
+            verifyNoInteractions(paymentServiceClient);
         }
     }
-}
\ No newline at end of file
+}
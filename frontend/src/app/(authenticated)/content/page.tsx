@@ -23,6 +23,7 @@ import {
   Eye,
   Edit,
   HelpCircle,
+  XCircle,
 } from "lucide-react";
 
 import apiClient from '@/lib/apiClient';
@@ -53,6 +54,8 @@ const getStatusBadge = (status: ContentStatus) => {
             return <Badge className="bg-green-100 text-green-800 dark:bg-green-900/50 dark:text-green-300 border-green-300/50" variant="outline">Completed</Badge>;
         case ContentStatus.FAILED:
             return <Badge variant="destructive">Failed</Badge>;
+        case ContentStatus.CANCELLED:
+            return <Badge variant="outline" className="border-border bg-muted text-muted-foreground hover:bg-muted">Cancelled</Badge>;
         case ContentStatus.DRAFT:
             return <Badge variant="outline" className="border-border bg-muted text-muted-foreground hover:bg-muted">Draft</Badge>;
         default:
@@ -76,7 +79,7 @@ export default function ContentLibrary() {
     setIsLoading(true);
     setError(null);
     try {
-      const statusesToFetch = ['PROCESSING', 'COMPLETED', 'FAILED', 'DRAFT'];
+      const statusesToFetch = ['PROCESSING', 'COMPLETED', 'FAILED', 'CANCELLED', 'DRAFT'];
       const response = await apiClient.get<Draft[]>('/content', {
         params: { statuses: statusesToFetch.join(',') },
       });
@@ -174,6 +177,17 @@ export default function ContentLibrary() {
     }
   };
   
+  const handleCancel = async (item: Draft) => {
+    if (window.confirm(`Cancel the generation of "${getDraftTitle(item)}"? You will be refunded.`)) {
+        try {
+            await apiClient.post(`/content/${item.id}/cancel`);
+            setContents(prev => prev.map(i => i.id === item.id ? { ...i, status: ContentStatus.CANCELLED, progressPercentage: undefined } : i));
+        } catch (error) {
+            console.error("Failed to cancel generation", error);
+        }
+    }
+  };
+
   const handleContinue = (item: Draft) => {
       console.log(`Continuing draft: ${item.id}`);
       // Navigate to the editor page with the draft ID
@@ -339,7 +353,13 @@ export default function ContentLibrary() {
                                         Get Help
                                     </Button>
                                 )}
-                                {item.status === ContentStatus.DRAFT && (
+                                {item.status === ContentStatus.PROCESSING && (
+                                    <Button size="sm" variant="outline" onClick={() => handleCancel(item)}>
+                                        <XCircle className="h-4 w-4 mr-1" />
+                                        Cancel
+                                    </Button>
+                                )}
+                                {(item.status === ContentStatus.DRAFT || item.status === ContentStatus.CANCELLED) && (
                                     <Button size="sm" variant="outline" onClick={() => handleContinue(item)}>
                                     <Edit className="h-4 w-4 mr-1" />
                                     Continue
@@ -5,6 +5,7 @@ export enum ContentStatus {
     PROCESSING = 'PROCESSING',
     COMPLETED = 'COMPLETED',
     FAILED = 'FAILED',
+    CANCELLED = 'CANCELLED',
 }
 
 export type ContentType = 'REDDIT_STORY' | 'CHARACTER_EXPLAINS';
@@ -36,4 +37,5 @@ export interface VideoStatusUpdate {
     contentId: string;
     status: ContentStatus;
     progressPercentage?: number; // Optional, used for PROCESSING status
+    previewUrl?: string; // HLS playlist of the video while it renders, when previews are enabled
 }
\ No newline at end of file
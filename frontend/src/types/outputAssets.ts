@@ -1,5 +1,15 @@
+export type VideoRenditionV1 = {
+  url: string;
+  s3Key: string;
+  width: number;
+  height: number;
+};
+
 export type OutputAssetsV1 = {
   videoUrl?: string;
   thumbnailUrl?: string;
   metadataUrl?: string;
+  posterUrl?: string;
+  previewClipUrl?: string;
+  renditions?: VideoRenditionV1[];
 };
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.shortscreator.shared.client.http;
+
+import lombok.Data;
+
+/**
+ * Outbound connection pool for one external provider, bound by each service under 'app.http-pools.&lt;provider&gt;'.
+ */
+@Data
+public class HttpPoolProperties {
+    // Open connections to the provider; calls beyond this wait for a connection to be released
+    private int maxConnections = 50;
+    // Calls allowed to wait for a connection, and for how long, before failing fast
+    private int pendingAcquireMaxCount = 200;
+    private long pendingAcquireTimeoutSeconds = 30;
+    // Close idle connections before the provider or a NAT gateway silently drops them
+    private long maxIdleSeconds = 55;
+    // Recycle connections now and then so DNS changes on the provider side are picked up
+    private long maxLifeSeconds = 600;
+    // Maximum silence while waiting for or reading a response
+    private long responseTimeoutSeconds = 30;
+    // Negotiate HTTP/2 (falling back to HTTP/1.1), so concurrent calls share a few connections
+    private boolean http2 = false;
+    // Connections opened at startup with a HEAD request to the warm-up URL, so that the
+    // first requests don't pay for the TCP and TLS handshakes
+    private int warmupConnections = 0;
+    private String warmupUrl;
+}
@@ -0,0 +1,135 @@
+package com.shortscreator.shared.client.http;
+
+import com.shortscreator.shared.client.ratelimit.RateLimiterRegistry;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the WebClients used to call external providers, with one named connection pool per provider
+ * (configured by each service under 'app.http-pools.&lt;provider&gt;') so that a slow provider can't starve the others
+ * of connections. Pools publish Reactor Netty's Micrometer metrics
+ * ('reactor.netty.connection.provider.*', tagged with the pool name), which makes pool exhaustion visible,
+ * and are warmed up once the application is ready.
+ * <p>
+ * Each service declares it as a bean from its own pool configuration and {@link RateLimiterRegistry}.
+ */
+@Slf4j
+public class ProviderHttpClientFactory implements DisposableBean {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final Duration WARMUP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final WebClient.Builder webClientBuilder;
+    private final Map<String, HttpPoolProperties> httpPools;
+    private final RateLimiterRegistry rateLimiterRegistry;
+    private final Map<String, HttpClient> httpClients = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+
+    public ProviderHttpClientFactory(WebClient.Builder webClientBuilder, Map<String, HttpPoolProperties> httpPools, RateLimiterRegistry rateLimiterRegistry) {
+        this.webClientBuilder = webClientBuilder;
+        this.httpPools = httpPools;
+        this.rateLimiterRegistry = rateLimiterRegistry;
+    }
+
+    /**
+     * Returns a new WebClient builder bound to the provider's connection pool. When a rate limit is
+     * configured for the provider, its shared limiter is applied as well.
+     *
+     * @param provider The provider name, as used in the service's pool and rate-limit configuration.
+     */
+    public WebClient.Builder builderFor(String provider) {
+        WebClient.Builder builder = webClientBuilder.clone()
+            .clientConnector(new ReactorClientHttpConnector(httpClientFor(provider)));
+        if (rateLimiterRegistry.isConfigured(provider)) {
+            builder.filter(rateLimiterRegistry.filterFor(provider));
+        }
+        return builder;
+    }
+
+    private HttpClient httpClientFor(String provider) {
+        return httpClients.computeIfAbsent(provider, name -> {
+            HttpPoolProperties config = poolConfig(name);
+            ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(config.getMaxConnections())
+                .pendingAcquireMaxCount(config.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofSeconds(config.getPendingAcquireTimeoutSeconds()))
+                .maxIdleTime(Duration.ofSeconds(config.getMaxIdleSeconds()))
+                .maxLifeTime(Duration.ofSeconds(config.getMaxLifeSeconds()))
+                // Idle connections are also closed in the background, not only when they are next acquired
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true)
+                .build();
+            connectionProviders.put(name, connectionProvider);
+
+            HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                // Applies only while a response is awaited, so pooled keep-alive connections are not cut while idle
+                .responseTimeout(Duration.ofSeconds(config.getResponseTimeoutSeconds()));
+            if (config.isHttp2()) {
+                httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+            }
+            log.info("Created HTTP connection pool '{}' (maxConnections={}, http2={})", name, config.getMaxConnections(), config.isHttp2());
+            return httpClient;
+        });
+    }
+
+    private HttpPoolProperties poolConfig(String provider) {
+        HttpPoolProperties config = httpPools.get(provider);
+        if (config == null) {
+            log.warn("No HTTP pool configured for provider '{}', using defaults.", provider);
+            config = new HttpPoolProperties();
+        }
+        return config;
+    }
+
+    /**
+     * Opens the configured number of connections per pool so that the TCP and TLS handshakes
+     * happen before the first job needs them. Runs in the background; failures are only logged.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Flux.fromIterable(httpPools.entrySet())
+            .filter(entry -> entry.getValue().getWarmupConnections() > 0 && entry.getValue().getWarmupUrl() != null)
+            .flatMap(entry -> warmUp(entry.getKey(), entry.getValue()))
+            .subscribe();
+    }
+
+    private Mono<Void> warmUp(String provider, HttpPoolProperties config) {
+        HttpClient httpClient = httpClientFor(provider);
+        int connections = config.getWarmupConnections();
+        long start = System.nanoTime();
+        // Concurrent requests each need their own connection (one is enough for HTTP/2, the rest just share it)
+        return httpClient.warmup()
+            .thenMany(Flux.range(0, connections)
+                .flatMap(i -> httpClient.head().uri(config.getWarmupUrl()).response()
+                    .timeout(WARMUP_TIMEOUT), connections))
+            .then()
+            .doOnSuccess(v -> log.info("Warmed up {} connection(s) for provider '{}' in {} ms", connections, provider,
+                Duration.ofNanos(System.nanoTime() - start).toMillis()))
+            .onErrorResume(e -> {
+                log.warn("Could not warm up connections for provider '{}': {}", provider, e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    @Override
+    public void destroy() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+    }
+}
@@ -0,0 +1,231 @@
+package com.shortscreator.shared.client.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared limiter for all calls to one external provider.
+ * <p>
+ * Two mechanisms are combined:
+ * <ul>
+ *   <li>a token bucket that paces requests to the provider's documented requests-per-minute,</li>
+ *   <li>an AIMD concurrency limit: it grows by roughly one slot per round of successful calls,
+ *       is halved when the provider answers 429, and is trimmed when latency spikes well above
+ *       the usual level (a sign the provider is queueing us).</li>
+ * </ul>
+ * A 429 also pauses the token bucket for the Retry-After period, so retries issued by the
+ * callers wait instead of piling onto a provider that is already rejecting us.
+ * All waiting is non-blocking.
+ */
+@Slf4j
+public class AdaptiveRateLimiter {
+
+    private static final double DECREASE_ON_THROTTLE = 0.5;
+    private static final double DECREASE_ON_LATENCY = 0.9;
+    private static final double LATENCY_EWMA_WEIGHT = 0.1;
+    private static final long DEFAULT_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Several in-flight calls usually fail together; only one decrease is applied per window
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final RateLimitProperties config;
+    private final double nanosPerToken;
+
+    // --- Token bucket state (guarded by this) ---
+    private double availableTokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    // --- Adaptive concurrency state (guarded by this) ---
+    private double concurrencyLimit;
+    private int inFlight;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private double latencyEwmaMillis = -1;
+    private long lastDecreaseNanos;
+
+    public AdaptiveRateLimiter(String name, RateLimitProperties config) {
+        this.name = name;
+        this.config = config;
+        this.nanosPerToken = TimeUnit.MINUTES.toNanos(1) / (double) Math.max(1, config.getRequestsPerMinute());
+        this.availableTokens = Math.max(1, config.getBurst());
+        this.lastRefillNanos = System.nanoTime();
+        this.concurrencyLimit = Math.max(config.getMinConcurrency(), Math.min(config.getInitialConcurrency(), config.getMaxConcurrency()));
+    }
+
+    /**
+     * Waits (without blocking) for a concurrency slot and a request token.
+     * The returned permit must be released exactly once when the call is over; releasing is idempotent.
+     */
+    public Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+                Permit granted = null;
+                synchronized (this) {
+                    if (inFlight < currentLimit()) {
+                        inFlight++;
+                        granted = new Permit();
+                    } else {
+                        Waiter waiter = new Waiter(sink);
+                        waiters.addLast(waiter);
+                        sink.onCancel(() -> cancelWaiter(waiter));
+                    }
+                }
+                if (granted != null) {
+                    sink.success(granted);
+                }
+            })
+            .flatMap(permit -> {
+                long delayNanos = reserveToken();
+                Mono<Permit> ready = delayNanos <= 0
+                    ? Mono.just(permit)
+                    : Mono.delay(Duration.ofNanos(delayNanos)).thenReturn(permit);
+                return ready
+                    .doOnNext(Permit::markStarted)
+                    .doOnCancel(permit::releaseCancelled);
+            });
+    }
+
+    /**
+     * @return The current adaptive concurrency limit, for logging and metrics.
+     */
+    public synchronized int currentLimit() {
+        return (int) Math.floor(concurrencyLimit);
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private synchronized long reserveToken() {
+        long now = System.nanoTime();
+        availableTokens = Math.min(config.getBurst(), availableTokens + (now - lastRefillNanos) / nanosPerToken);
+        lastRefillNanos = now;
+        // Tokens may go negative: that is a reservation for a future slot of the bucket
+        availableTokens -= 1;
+        long waitForToken = availableTokens >= 0 ? 0 : (long) (-availableTokens * nanosPerToken);
+        return Math.max(waitForToken, pausedUntilNanos - now);
+    }
+
+    private void cancelWaiter(Waiter waiter) {
+        synchronized (this) {
+            if (waiters.remove(waiter)) {
+                return;
+            }
+        }
+        // Already granted concurrently with the cancellation: give the slot back
+        if (waiter.permit != null) {
+            waiter.permit.releaseCancelled();
+        }
+    }
+
+    private void onReleased(Permit permit, Outcome outcome, long retryAfterNanos) {
+        List<Waiter> toGrant = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            long now = System.nanoTime();
+            switch (outcome) {
+                case THROTTLED -> {
+                    decrease(DECREASE_ON_THROTTLE, now, "429 from provider");
+                    pausedUntilNanos = Math.max(pausedUntilNanos, now + (retryAfterNanos > 0 ? retryAfterNanos : DEFAULT_RETRY_AFTER_NANOS));
+                    availableTokens = Math.min(availableTokens, 0);
+                }
+                case SUCCESS -> {
+                    double latencyMillis = (now - permit.startNanos) / 1_000_000.0;
+                    if (latencyEwmaMillis > 0 && latencyMillis > latencyEwmaMillis * config.getLatencyTolerance()) {
+                        decrease(DECREASE_ON_LATENCY, now, String.format("latency %.0fms vs usual %.0fms", latencyMillis, latencyEwmaMillis));
+                    } else {
+                        // Additive increase: about one extra slot per full window of successful calls
+                        concurrencyLimit = Math.min(config.getMaxConcurrency(), concurrencyLimit + 1.0 / concurrencyLimit);
+                    }
+                    latencyEwmaMillis = latencyEwmaMillis < 0
+                        ? latencyMillis
+                        : latencyEwmaMillis + LATENCY_EWMA_WEIGHT * (latencyMillis - latencyEwmaMillis);
+                }
+                case IGNORED -> {
+                    // Errors and cancellations say nothing about the provider's capacity
+                }
+            }
+            while (inFlight < currentLimit() && !waiters.isEmpty()) {
+                Waiter waiter = waiters.pollFirst();
+                inFlight++;
+                waiter.permit = new Permit();
+                toGrant.add(waiter);
+            }
+        }
+        toGrant.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    private void decrease(double factor, long now, String reason) {
+        if (now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        double previous = concurrencyLimit;
+        concurrencyLimit = Math.max(config.getMinConcurrency(), concurrencyLimit * factor);
+        log.warn("Reducing concurrency limit for provider '{}' from {} to {} ({})", name, (int) previous, (int) concurrencyLimit, reason);
+    }
+
+    enum Outcome { SUCCESS, THROTTLED, IGNORED }
+
+    /**
+     * A granted slot for one call. Releasing feeds the outcome back into the limiter.
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private long startNanos = System.nanoTime();
+
+        private void markStarted() {
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Releases the permit for a call that received an HTTP response.
+         *
+         * @param statusCode The HTTP status code of the response.
+         * @param retryAfter The provider's requested back-off, or null/zero if none was given.
+         */
+        public void release(int statusCode, Duration retryAfter) {
+            if (statusCode == 429) {
+                release(Outcome.THROTTLED, retryAfter == null ? 0 : retryAfter.toNanos());
+            } else if (statusCode >= 500) {
+                release(Outcome.IGNORED, 0);
+            } else {
+                release(Outcome.SUCCESS, 0);
+            }
+        }
+
+        /**
+         * Releases the permit for a call that failed or was cancelled before a response arrived.
+         */
+        public void releaseCancelled() {
+            release(Outcome.IGNORED, 0);
+        }
+
+        private void release(Outcome outcome, long retryAfterNanos) {
+            if (released.compareAndSet(false, true)) {
+                onReleased(this, outcome, retryAfterNanos);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private volatile Permit permit;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+}
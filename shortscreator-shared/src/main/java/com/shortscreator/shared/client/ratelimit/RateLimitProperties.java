@@ -0,0 +1,20 @@
+package com.shortscreator.shared.client.ratelimit;
+
+import lombok.Data;
+
+/**
+ * Outbound limits for one external provider, bound by each service under 'app.rate-limits.&lt;provider&gt;'.
+ */
+@Data
+public class RateLimitProperties {
+    // Documented requests-per-minute of the provider for our account
+    private int requestsPerMinute = 60;
+    // Requests that may be sent back to back before the per-minute pacing kicks in
+    private int burst = 10;
+    // Adaptive concurrency bounds: the limit grows while calls succeed and is cut on 429s
+    private int initialConcurrency = 4;
+    private int minConcurrency = 1;
+    private int maxConcurrency = 32;
+    // A call slower than this multiple of the typical latency counts as a congestion signal
+    private double latencyTolerance = 3.0;
+}
@@ -0,0 +1,48 @@
+package com.shortscreator.shared.client.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one {@link AdaptiveRateLimiter} per external provider, shared by every client and job
+ * of a service instance. Each service declares it as a bean from its own 'app.rate-limits' map;
+ * the provider names are the keys of that map.
+ */
+@Slf4j
+public class RateLimiterRegistry {
+
+    private final Map<String, RateLimitProperties> rateLimits;
+    private final Map<String, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    public RateLimiterRegistry(Map<String, RateLimitProperties> rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    public AdaptiveRateLimiter getLimiter(String provider) {
+        return limiters.computeIfAbsent(provider, name -> {
+            RateLimitProperties config = rateLimits.get(name);
+            if (config == null) {
+                log.warn("No rate limit configured for provider '{}', using defaults.", name);
+                config = new RateLimitProperties();
+            }
+            return new AdaptiveRateLimiter(name, config);
+        });
+    }
+
+    /**
+     * @return Whether the given provider has its own limits, i.e. whether its calls should be limited at all.
+     */
+    public boolean isConfigured(String provider) {
+        return rateLimits.containsKey(provider);
+    }
+
+    /**
+     * @return A WebClient filter applying the shared limiter of the given provider.
+     */
+    public ExchangeFilterFunction filterFor(String provider) {
+        return new RateLimitingFilter(getLimiter(provider));
+    }
+}
@@ -0,0 +1,53 @@
+package com.shortscreator.shared.client.ratelimit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * WebClient filter that runs every request through the shared limiter of its provider.
+ * The permit is held until the response headers arrive, and the response status
+ * (in particular 429 and its Retry-After) is fed back to the limiter.
+ * Because retries resubscribe to the exchange, they go through the limiter as well.
+ */
+public class RateLimitingFilter implements ExchangeFilterFunction {
+
+    private final AdaptiveRateLimiter limiter;
+
+    public RateLimitingFilter(AdaptiveRateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return limiter.acquire()
+            .flatMap(permit -> next.exchange(request)
+                .doOnNext(response -> permit.release(response.statusCode().value(), retryAfter(response.headers().asHttpHeaders())))
+                // Errors and cancellations before a response (no-op if already released)
+                .doFinally(signal -> permit.releaseCancelled()));
+    }
+
+    /**
+     * Reads the provider's requested back-off: 'retry-after-ms' (OpenAI) or a 'Retry-After' in seconds.
+     */
+    private static Duration retryAfter(HttpHeaders headers) {
+        try {
+            String millis = headers.getFirst("retry-after-ms");
+            if (millis != null) {
+                return Duration.ofMillis((long) Double.parseDouble(millis));
+            }
+            String seconds = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (seconds != null) {
+                return Duration.ofMillis((long) (Double.parseDouble(seconds) * 1000));
+            }
+        } catch (NumberFormatException e) {
+            // HTTP-date form or garbage: fall back to the limiter's default pause
+        }
+        return null;
+    }
+}
@@ -1,5 +1,7 @@
 package com.shortscreator.shared.dto;
 
+import java.util.List;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,4 +15,12 @@ public class GeneratedVideoDetailsV1 {
     private double durationSeconds;
     private int width;
     private int height;
-}
\ No newline at end of file
+    // Assets derived from the video in the same render; null when not produced
+    private String posterUrl; // JPEG frame of the video
+    private String previewClipUrl; // Short, silent, low frame rate MP4 loop
+    private List<VideoRenditionV1> renditions;
+
+    public GeneratedVideoDetailsV1(String s3Url, String s3Key, double durationSeconds, int width, int height) {
+        this(s3Url, s3Key, durationSeconds, width, height, null, null, null);
+    }
+}
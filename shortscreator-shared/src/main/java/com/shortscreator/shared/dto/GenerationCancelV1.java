@@ -0,0 +1,4 @@
+package com.shortscreator.shared.dto;
+
+// Broadcast to every generation node when a user cancels content that is being generated.
+public record GenerationCancelV1(String contentId, String userId) {}
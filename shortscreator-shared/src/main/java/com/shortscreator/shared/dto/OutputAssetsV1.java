@@ -1,5 +1,7 @@
 package com.shortscreator.shared.dto;
 
+import java.util.List;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,4 +15,11 @@ public class OutputAssetsV1 {
     private String finalVideoUrl;
     private String finalVideoS3Key;
     private double durationSeconds;
-}
\ No newline at end of file
+    private String posterUrl;
+    private String previewClipUrl;
+    private List<VideoRenditionV1> renditions;
+
+    public OutputAssetsV1(String finalVideoUrl, String finalVideoS3Key, double durationSeconds) {
+        this(finalVideoUrl, finalVideoS3Key, durationSeconds, null, null, null);
+    }
+}
@@ -0,0 +1,18 @@
+package com.shortscreator.shared.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An extra, smaller encode of a generated video, e.g. 720p for mobile previews.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VideoRenditionV1 {
+    private String url;
+    private String s3Key;
+    private int width;
+    private int height;
+}
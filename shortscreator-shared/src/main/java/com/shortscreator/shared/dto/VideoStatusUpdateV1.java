@@ -6,8 +6,15 @@ public record VideoStatusUpdateV1(
     String userId, 
     String contentId, 
     ContentStatus status,
-    Double progressPercentage
+    Double progressPercentage,
+    // HLS playlist of the video while it is still rendering, or null
+    String previewUrl
 ) {
+
+    public VideoStatusUpdateV1(String userId, String contentId, ContentStatus status, Double progressPercentage) {
+        this(userId, contentId, status, progressPercentage, null);
+    }
+
     // Compact constructor for validation
     public VideoStatusUpdateV1 {
         if (status == ContentStatus.PROCESSING) {
@@ -22,9 +29,9 @@ public record VideoStatusUpdateV1(
             if (progressPercentage != null && progressPercentage != 100.0) {
                  throw new IllegalArgumentException("COMPLETED status must have 100% progress or null.");
             }
-        } else if (status == ContentStatus.FAILED || status == ContentStatus.DRAFT) {
+        } else if (status == ContentStatus.FAILED || status == ContentStatus.DRAFT || status == ContentStatus.CANCELLED) {
             if (progressPercentage != null) {
-                throw new IllegalArgumentException("DRAFT or FAILED status must not have a progressPercentage.");
+                throw new IllegalArgumentException("DRAFT, FAILED or CANCELLED status must not have a progressPercentage.");
             }
         }
     }
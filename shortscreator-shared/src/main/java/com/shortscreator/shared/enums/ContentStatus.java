@@ -7,5 +7,6 @@ public enum ContentStatus {
     DRAFT,
     PROCESSING,
     COMPLETED,
-    FAILED
+    FAILED,
+    CANCELLED
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.shortscreator.shared.client.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveRateLimiterTest {
+
+    @Test
+    void queuesCallsBeyondTheConcurrencyLimitAndHandsOverOnRelease() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", config(4));
+        List<AdaptiveRateLimiter.Permit> granted = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire().subscribe(granted::add);
+        }
+        assertThat(granted).hasSize(4);
+
+        granted.get(0).release(200, null);
+        granted.get(0).release(200, null); // releasing twice has no effect
+        assertThat(granted).hasSize(5);
+        assertThat(limiter.inFlight()).isEqualTo(4);
+    }
+
+    @Test
+    void halvesTheLimitOn429AndReleasesCancelledWaiters() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", config(8));
+        List<AdaptiveRateLimiter.Permit> granted = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            limiter.acquire().subscribe(granted::add);
+        }
+
+        granted.get(0).release(429, Duration.ofMillis(10));
+        assertThat(limiter.currentLimit()).isEqualTo(4);
+
+        // A waiter that gives up must not keep a slot
+        Disposable waiting = limiter.acquire().subscribe(granted::add);
+        waiting.dispose();
+        granted.subList(1, 8).forEach(permit -> permit.release(200, null));
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    private static RateLimitProperties config(int concurrency) {
+        RateLimitProperties config = new RateLimitProperties();
+        config.setRequestsPerMinute(60_000);
+        config.setBurst(100);
+        config.setInitialConcurrency(concurrency);
+        config.setMaxConcurrency(concurrency);
+        return config;
+    }
+}